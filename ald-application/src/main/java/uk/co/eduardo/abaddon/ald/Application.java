@@ -20,6 +20,7 @@ import android.content.res.Resources;
 import uk.co.eduardo.abaddon.ald.actions.CopyAction;
 import uk.co.eduardo.abaddon.ald.actions.CutAction;
 import uk.co.eduardo.abaddon.ald.actions.ExitAction;
+import uk.co.eduardo.abaddon.ald.actions.FindUsagesAction;
 import uk.co.eduardo.abaddon.ald.actions.MapCloseAction;
 import uk.co.eduardo.abaddon.ald.actions.MapNewAction;
 import uk.co.eduardo.abaddon.ald.actions.MapSaveAction;
@@ -29,13 +30,17 @@ import uk.co.eduardo.abaddon.ald.actions.ProjectCloseAction;
 import uk.co.eduardo.abaddon.ald.actions.ProjectExportAction;
 import uk.co.eduardo.abaddon.ald.actions.ProjectOpenAction;
 import uk.co.eduardo.abaddon.ald.actions.RedoAction;
+import uk.co.eduardo.abaddon.ald.actions.ReplaceAllAction;
 import uk.co.eduardo.abaddon.ald.actions.UndoAction;
+import uk.co.eduardo.abaddon.ald.actions.ZoomInAction;
+import uk.co.eduardo.abaddon.ald.actions.ZoomOutAction;
 import uk.co.eduardo.abaddon.ald.data.project.Project;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectListener;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectManager;
 import uk.co.eduardo.abaddon.ald.layer.ControlLayerProvider;
 import uk.co.eduardo.abaddon.ald.ui.ApplicationUI;
 import uk.co.eduardo.abaddon.ald.ui.MapEditor;
+import uk.co.eduardo.abaddon.ald.ui.OverviewPaletteWindow;
 import uk.co.eduardo.abaddon.ald.ui.ProjectBrowser;
 import uk.co.eduardo.abaddon.ald.ui.SwingHacks;
 import uk.co.eduardo.abaddon.ald.ui.TilesetPaletteWindow;
@@ -143,8 +148,17 @@ public class Application
       editMenu.add( new CutAction() );
       editMenu.add( new CopyAction() );
       editMenu.add( new PasteAction() );
+      editMenu.addSeparator();
+      editMenu.add( new FindUsagesAction() );
+      editMenu.add( new ReplaceAllAction() );
       menuBar.add( editMenu );
 
+      // View menu
+      final JMenu viewMenu = new JMenu( resources.getString( "uk.co.eduardo.abaddon.menu.view" ) ); //$NON-NLS-1$
+      viewMenu.add( new ZoomInAction() );
+      viewMenu.add( new ZoomOutAction() );
+      menuBar.add( viewMenu );
+
       // Tools menu
       final JMenu toolsMenu = new JMenu( resources.getString( "uk.co.eduardo.abaddon.menu.tools" ) ); //$NON-NLS-1$
       for( final ControlLayerProvider provider : ServiceLoader.load( ControlLayerProvider.class ) )
@@ -191,6 +205,11 @@ public class Application
       workspaceArea.add( tilesetPalette );
       tilesetPalette.setLocation( 0, 200 );
 
+      // Create the map overview palette window.
+      final JInternalFrame overviewPalette = new OverviewPaletteWindow();
+      workspaceArea.add( overviewPalette );
+      overviewPalette.setLocation( 0, 450 );
+
       workspaceArea.setLayout( new BorderLayout() );
       ProjectManager.getInstance().addProjectListener( new ProjectListener()
       {
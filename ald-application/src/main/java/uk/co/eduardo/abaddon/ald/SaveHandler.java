@@ -5,6 +5,7 @@ import java.util.ResourceBundle;
 
 import javax.swing.JOptionPane;
 
+import uk.co.eduardo.abaddon.ald.data.journal.MapJournal;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
 import uk.co.eduardo.abaddon.ald.data.project.OpenMapAdapter;
@@ -12,6 +13,7 @@ import uk.co.eduardo.abaddon.ald.data.project.OpenMapListener;
 import uk.co.eduardo.abaddon.ald.data.project.Project;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectListener;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectManager;
+import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
 import uk.co.eduardo.abaddon.ald.utils.SaveUtilities;
 
 /**
@@ -28,7 +30,29 @@ public class SaveHandler
       @Override
       public void mapClosed( final PropertyModel closed )
       {
-         offerToSave( closed );
+         final boolean settled = offerToSave( closed );
+
+         // The history of a closed map can never be used again, so release it and its journal.
+         final UndoManager undoManager = closed.get( Properties.UndoManager );
+         if( undoManager != null )
+         {
+            undoManager.dispose();
+         }
+
+         // Changes that were saved or discarded no longer need recovering, but changes that failed to save are left in the
+         // journal to be recovered when the map is next opened.
+         final MapJournal journal = closed.get( Properties.MapJournal );
+         if( journal != null )
+         {
+            if( settled )
+            {
+               journal.close();
+            }
+            else
+            {
+               journal.closeAndKeep();
+            }
+         }
       }
    };
 
@@ -56,6 +80,7 @@ public class SaveHandler
                project.getOpenMapsModel().closeMap( open );
             }
             project.getOpenMapsModel().removeMapModelListener( OPEN_MAP_LISTENER );
+            project.dispose();
          }
       }
    };
@@ -91,12 +116,18 @@ public class SaveHandler
       }
    }
 
-   private static void offerToSave( final PropertyModel map )
+   /**
+    * Asks whether to save a map that has uncommitted changes, and saves it if the user agrees.
+    *
+    * @return <code>true</code> if the map has no uncommitted changes left or the user chose to discard them;
+    *         <code>false</code> if the user cancelled or the map could not be saved.
+    */
+   private static boolean offerToSave( final PropertyModel map )
    {
       if( !map.get( Properties.UncommittedChanges ) )
       {
          // Do nothing there are no changes to save.
-         return;
+         return true;
       }
       final String message = resources.getString( "uk.co.eduardo.abaddon.save.file.offer" ); //$NON-NLS-1$
       final String title = resources.getString( "uk.co.eduardo.abaddon.title" ); //$NON-NLS-1$
@@ -106,6 +137,8 @@ public class SaveHandler
          // Get the save location
          final Project project = ProjectManager.getInstance().getLockedProject();
          SaveUtilities.saveMap( project, map );
+         return !map.get( Properties.UncommittedChanges );
       }
+      return option == JOptionPane.NO_OPTION;
    }
 }
@@ -0,0 +1,42 @@
+package uk.co.eduardo.abaddon.ald.actions;
+
+import java.awt.event.ActionEvent;
+import java.util.ResourceBundle;
+
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.ui.action.AbstractMapActiveAction;
+
+/**
+ * Action to highlight every use of the selected tile on the active layer. Performing the action again while the selected
+ * tile is highlighted removes the highlight.
+ *
+ * @author Ed
+ */
+public class FindUsagesAction extends AbstractMapActiveAction
+{
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
+
+   /**
+    * Initializes an action that highlights the uses of the selected tile.
+    */
+   public FindUsagesAction()
+   {
+      super( resources, "uk.co.eduardo.abaddon.action.find.usages" ); //$NON-NLS-1$
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void actionPerformed( final ActionEvent e )
+   {
+      final int[] selected = getModel().get( Properties.SelectedTiles );
+      if( ( selected == null ) || ( selected.length == 0 ) )
+      {
+         return;
+      }
+      final Integer highlighted = getModel().get( Properties.HighlightedTile );
+      final Integer tile = Integer.valueOf( selected[ 0 ] );
+      getModel().set( Properties.HighlightedTile, tile.equals( highlighted ) ? null : tile );
+   }
+}
@@ -110,6 +110,12 @@ public class MapNewAction extends AbstractProjectAction
             // Not interested
          }
 
+         @Override
+         public void fileChanged( final File changedMap )
+         {
+            // Not interested
+         }
+
          @Override
          public void fileAdded( final File addedMap )
          {
@@ -2,43 +2,34 @@ package uk.co.eduardo.abaddon.ald.actions;
 
 import java.awt.Window;
 import java.awt.event.ActionEvent;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.util.Enumeration;
+import java.text.MessageFormat;
 import java.util.ResourceBundle;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
 
-import uk.co.eduardo.abaddon.ald.data.project.ProjectSettings;
 import uk.co.eduardo.abaddon.ald.ui.WindowAncestorUtilities;
 import uk.co.eduardo.abaddon.ald.ui.action.AbstractProjectAction;
-import uk.co.eduardo.abaddon.ald.utils.FileUtilities;
+import uk.co.eduardo.abaddon.ald.utils.ProjectExporter;
 
 /**
  * This action packages together all the game resources in the project into a resource bundle ready to plug into the game engine.
+ * <p>
+ * The export runs in the background, with a progress dialog from which it can be cancelled.
  *
  * @author Ed
  */
 public class ProjectExportAction extends AbstractProjectAction
 {
-   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
-
-   private static final String RAW = "res/raw"; //$NON-NLS-1$
-
-   private static final String DRAWABLE = "res/drawable"; //$NON-NLS-1$
-
-   private static final String LAYOUT = "res/layout"; //$NON-NLS-1$
+   private static final Logger logger = Logger.getLogger( ProjectExportAction.class );
 
-   private static final String GAME_LAYOUT_FILE = "game_layout.xml"; //$NON-NLS-1$
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
 
    /**
     * Initializes an action that exports all project files into a bundle ready for use with the game engine.
@@ -54,184 +45,121 @@ public class ProjectExportAction extends AbstractProjectAction
    @Override
    public void actionPerformed( final ActionEvent e )
    {
-      final File exportDirectory = getExportDirectory( WindowAncestorUtilities.getWindow( e ) );
+      final Window parent = WindowAncestorUtilities.getWindow( e );
+      final File exportDirectory = getExportDirectory( parent );
       if( exportDirectory == null )
       {
          return;
       }
 
-      try
-      {
-         setupBaseFiles( exportDirectory );
-
-         exportMaps( exportDirectory );
-         exportTilesets( exportDirectory );
-         exportNpcs( exportDirectory );
-         exportPcs( exportDirectory );
-         exportMusic( exportDirectory );
-         exportSettings( exportDirectory );
-      }
-      catch( final IOException exception )
-      {
-         JOptionPane.showMessageDialog( WindowAncestorUtilities.getWindow( e ),
-                                        resources.getString( "uk.co.eduardo.abaddon.map.export.error" ), //$NON-NLS-1$
-                                        resources.getString( "uk.co.eduardo.abaddon.title" ), //$NON-NLS-1$
-                                        JOptionPane.INFORMATION_MESSAGE );
-      }
-   }
-
-   private File getExportDirectory( final Window parent )
-   {
-      final JFileChooser chooser = new JFileChooser();
-      chooser.setFileSelectionMode( JFileChooser.DIRECTORIES_ONLY );
-      chooser.showSaveDialog( parent );
-
-      return chooser.getSelectedFile();
-   }
-
-   private void setupBaseFiles( final File exportDirectory ) throws IOException
-   {
-      // Unzip the contents of the base files to the export directory
-      ZipFile zip = null;
-      try
+      // The note must not start out null, or the monitor leaves no room for it.
+      final ProgressMonitor monitor = new ProgressMonitor( parent,
+                                                           resources.getString( "uk.co.eduardo.abaddon.map.export.progress" ), //$NON-NLS-1$
+                                                           formatNote( 0, 0 ),
+                                                           0,
+                                                           1 );
+      final ProgressUpdater updater = new ProgressUpdater( monitor );
+      final ProjectExporter exporter = new ProjectExporter( getProject(), exportDirectory, updater );
+      updater.setExporter( exporter );
+
+      final Thread thread = new Thread( new Runnable()
       {
-         final URL url = ClassLoader.getSystemResource( "uk/co/eduardo/abaddon/ald/package.zip" ); //$NON-NLS-1$
-         final File zipFile = new File( url.toURI() );
-         zip = new ZipFile( zipFile );
-         final Enumeration< ? extends ZipEntry > entries = zip.entries();
-         while( entries.hasMoreElements() )
+         @Override
+         public void run()
          {
-            final ZipEntry entry = entries.nextElement();
-            final File output = new File( exportDirectory, entry.getName() );
-            if( entry.isDirectory() )
+            boolean failed = false;
+            try
             {
-               output.mkdirs();
+               exporter.export();
             }
-            else
+            catch( final IOException exception )
             {
-               output.createNewFile();
-               InputStream in = null;
-               OutputStream out = null;
-               try
-               {
-                  in = zip.getInputStream( entry );
-                  out = new BufferedOutputStream( new FileOutputStream( output ) );
-                  FileUtilities.copy( in, out );
-               }
-               finally
+               logger.error( "Project export failed", exception ); //$NON-NLS-1$
+               failed = true;
+            }
+            final boolean showError = failed;
+            SwingUtilities.invokeLater( new Runnable()
+            {
+               @Override
+               public void run()
                {
-                  if( in != null )
+                  monitor.close();
+                  if( showError )
                   {
-                     in.close();
-                  }
-                  if( out != null )
-                  {
-                     out.close();
+                     JOptionPane.showMessageDialog( parent,
+                                                    resources.getString( "uk.co.eduardo.abaddon.map.export.error" ), //$NON-NLS-1$
+                                                    resources.getString( "uk.co.eduardo.abaddon.title" ), //$NON-NLS-1$
+                                                    JOptionPane.INFORMATION_MESSAGE );
                   }
                }
-            }
+            } );
          }
-      }
-      catch( final URISyntaxException e )
-      {
-         throw new IOException( "Failed to find zip file.", e ); //$NON-NLS-1$
-      }
-      finally
-      {
-         if( zip != null )
-         {
-            zip.close();
-         }
-      }
+      }, "Project export" ); //$NON-NLS-1$
+      thread.setDaemon( true );
+      thread.start();
    }
 
-   private void exportMaps( final File exportDirectory ) throws IOException
+   private static String formatNote( final int done, final int total )
    {
-      final File output = getRawDir( exportDirectory );
-      output.mkdirs();
-      for( final File map : getProject().getAvailableMapsModel().getAvailableMapFiles() )
+      final String noteFormat = resources.getString( "uk.co.eduardo.abaddon.map.export.progress.note" ); //$NON-NLS-1$
+      return MessageFormat.format( noteFormat, new Object[]
       {
-         FileUtilities.copy( map, output );
-      }
+         Integer.valueOf( done ), Integer.valueOf( total )
+      } );
    }
 
-   private void exportTilesets( final File exportDirectory ) throws IOException
+   private File getExportDirectory( final Window parent )
    {
-      // Copy ".png" files to the drawble directory.
-      final File drawable = getDrawableDir( exportDirectory );
-      drawable.mkdirs();
-      for( final File png : getProject().getAvailableTilesetsModel().getAvailablePngTilesetFiles() )
-      {
-         FileUtilities.copy( png, drawable );
-      }
-
-      // Copy ".dsc" files to the raw directory.
-      final File raw = getRawDir( exportDirectory );
-      raw.mkdirs();
-      for( final File dsc : getProject().getAvailableTilesetsModel().getAvailableDscTilesetFiles() )
-      {
-         FileUtilities.copy( dsc, raw );
-      }
+      final JFileChooser chooser = new JFileChooser();
+      chooser.setFileSelectionMode( JFileChooser.DIRECTORIES_ONLY );
+      chooser.showSaveDialog( parent );
 
+      return chooser.getSelectedFile();
    }
 
-   private void exportNpcs( final File exportDirectory ) throws IOException
+   /**
+    * Shows the progress of one export in its monitor, and cancels that export when the monitor is cancelled.
+    */
+   private static final class ProgressUpdater implements ProjectExporter.ProgressListener
    {
-      final File drawable = getDrawableDir( exportDirectory );
-      drawable.mkdirs();
-      for( final File npc : getProject().getAvailableNpcsModel().getAvailableNpcFiles() )
+      private final ProgressMonitor monitor;
+
+      /** Set before the export starts. */
+      private ProjectExporter exporter;
+
+      ProgressUpdater( final ProgressMonitor monitor )
       {
-         FileUtilities.copy( npc, drawable );
+         this.monitor = monitor;
       }
-   }
 
-   private void exportPcs( final File exportDirectory ) throws IOException
-   {
-      final File drawable = getDrawableDir( exportDirectory );
-      drawable.mkdirs();
-      for( final File pc : getProject().getAvailablePcsModel().getAvailablePcFiles() )
+      void setExporter( final ProjectExporter exporter )
       {
-         FileUtilities.copy( pc, drawable );
+         this.exporter = exporter;
       }
-   }
 
-   private void exportMusic( final File exportDirectory ) throws IOException
-   {
-      final File raw = getRawDir( exportDirectory );
-      raw.mkdirs();
-      for( final File music : getProject().getAvailableMusicModel().getAvailableMusicFiles() )
+      @Override
+      public void progress( final int done, final int total )
       {
-         FileUtilities.copy( music, raw );
+         SwingUtilities.invokeLater( new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               update( done, total );
+            }
+         } );
       }
-   }
-
-   private void exportSettings( final File exportDirectory ) throws IOException
-   {
-      // We want to replace the placeholder tokens in the res/layout/game_layout.xml file
-      final File target = new File( getLayoutDir( exportDirectory ), GAME_LAYOUT_FILE );
-      final ProjectSettings settings = getProject().getSettings();
-
-      // First replace the tileSize token
-      final String tileSize = Integer.toString( settings.get( ProjectSettings.TILE_WIDTH ) );
-      FileUtilities.replace( target, ProjectSettings.TILE_WIDTH, tileSize );
-
-      // Now replace the spriteHeight token
-      final String spriteHeight = Integer.toString( settings.get( ProjectSettings.SPRITE_HEIGHT ) );
-      FileUtilities.replace( target, ProjectSettings.SPRITE_HEIGHT, spriteHeight );
-   }
-
-   private static File getRawDir( final File root )
-   {
-      return new File( root, RAW );
-   }
 
-   private static File getDrawableDir( final File root )
-   {
-      return new File( root, DRAWABLE );
-   }
-
-   private static File getLayoutDir( final File root )
-   {
-      return new File( root, LAYOUT );
+      private void update( final int done, final int total )
+      {
+         if( this.monitor.isCanceled() )
+         {
+            this.exporter.cancel();
+            return;
+         }
+         this.monitor.setMaximum( total );
+         this.monitor.setProgress( done );
+         this.monitor.setNote( formatNote( done, total ) );
+      }
    }
 }
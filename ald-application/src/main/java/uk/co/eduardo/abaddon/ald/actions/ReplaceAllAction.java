@@ -0,0 +1,95 @@
+package uk.co.eduardo.abaddon.ald.actions;
+
+import java.awt.event.ActionEvent;
+import java.util.ResourceBundle;
+
+import javax.swing.undo.UndoableEdit;
+
+import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+import uk.co.eduardo.abaddon.ald.ui.action.AbstractMapActiveAction;
+
+/**
+ * Action to replace every use of the highlighted tile on the active layer with the selected tile, as a single undoable
+ * edit.
+ *
+ * @author Ed
+ * @see FindUsagesAction
+ */
+public class ReplaceAllAction extends AbstractMapActiveAction
+{
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
+
+   private final PropertyListener listener = new PropertyListener()
+   {
+      @Override
+      public void propertyChanged( final PropertyModel model )
+      {
+         setEnabled( updateEnabled() );
+      }
+   };
+
+   /**
+    * Initializes an action that replaces the highlighted tile with the selected tile.
+    */
+   public ReplaceAllAction()
+   {
+      super( resources, "uk.co.eduardo.abaddon.action.replace.all" ); //$NON-NLS-1$
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void actionPerformed( final ActionEvent e )
+   {
+      final Integer highlighted = getModel().get( Properties.HighlightedTile );
+      final int[] selected = getModel().get( Properties.SelectedTiles );
+      if( ( highlighted == null ) || ( selected == null ) || ( selected.length == 0 ) )
+      {
+         return;
+      }
+      final MapData mapData = getModel().get( Properties.MapData );
+      final int layer = getModel().get( Properties.ActiveLayer );
+      final UndoableEdit edit = mapData.replaceTile( layer, highlighted, selected[ 0 ] );
+      if( edit != null )
+      {
+         getModel().get( Properties.UndoManager ).addEdit( edit );
+      }
+
+      // Highlight the replacement tile, which now covers the replaced positions as well as any uses it already had.
+      getModel().set( Properties.HighlightedTile, Integer.valueOf( selected[ 0 ] ) );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void mapModelChanged( final PropertyModel oldModel, final PropertyModel newModel )
+   {
+      if( oldModel != null )
+      {
+         oldModel.removePropertyListener( Properties.HighlightedTile, this.listener );
+      }
+      if( newModel != null )
+      {
+         newModel.addPropertyListener( Properties.HighlightedTile, this.listener );
+      }
+      setEnabled( updateEnabled() );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected boolean updateEnabled()
+   {
+      if( !super.updateEnabled() )
+      {
+         return false;
+      }
+      return getModel().get( Properties.HighlightedTile ) != null;
+   }
+}
@@ -0,0 +1,34 @@
+package uk.co.eduardo.abaddon.ald.actions;
+
+import java.awt.event.ActionEvent;
+import java.util.ResourceBundle;
+
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.ui.action.AbstractMapActiveAction;
+
+/**
+ * Action to display the active map at the next larger zoom.
+ *
+ * @author Ed
+ */
+public class ZoomInAction extends AbstractMapActiveAction
+{
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
+
+   /**
+    * Initializes an action that zooms the active map in.
+    */
+   public ZoomInAction()
+   {
+      super( resources, "uk.co.eduardo.abaddon.action.zoom.in" ); //$NON-NLS-1$
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void actionPerformed( final ActionEvent e )
+   {
+      getModel().set( Properties.Zoom, getModel().get( Properties.Zoom ).zoomIn() );
+   }
+}
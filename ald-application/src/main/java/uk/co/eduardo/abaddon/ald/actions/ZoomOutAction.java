@@ -0,0 +1,34 @@
+package uk.co.eduardo.abaddon.ald.actions;
+
+import java.awt.event.ActionEvent;
+import java.util.ResourceBundle;
+
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.ui.action.AbstractMapActiveAction;
+
+/**
+ * Action to display the active map at the next smaller zoom.
+ *
+ * @author Ed
+ */
+public class ZoomOutAction extends AbstractMapActiveAction
+{
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
+
+   /**
+    * Initializes an action that zooms the active map out.
+    */
+   public ZoomOutAction()
+   {
+      super( resources, "uk.co.eduardo.abaddon.action.zoom.out" ); //$NON-NLS-1$
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void actionPerformed( final ActionEvent e )
+   {
+      getModel().set( Properties.Zoom, getModel().get( Properties.Zoom ).zoomOut() );
+   }
+}
@@ -76,7 +76,7 @@ public abstract class AbstractDraggingLayer extends AbstractTilesetAwareLayer
          dragUpdate( tileX, tileY, tileRect.width, tileRect.height, modifiers );
          if( dirtyRect != null )
          {
-            getHost().repaint( dirtyRect );
+            repaint( dirtyRect );
          }
       }
    }
@@ -95,7 +95,7 @@ public abstract class AbstractDraggingLayer extends AbstractTilesetAwareLayer
 
       if( ( pixelBounds != null ) && ( tileBounds != null ) )
       {
-         getHost().repaint();
+         repaint();
          dragComplete( tileBounds.x, tileBounds.y, tileBounds.width, tileBounds.height, modifiers );
       }
    }
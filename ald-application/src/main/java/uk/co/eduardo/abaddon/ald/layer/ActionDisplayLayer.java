@@ -89,6 +89,6 @@ public class ActionDisplayLayer extends AbstractTilesetAwareLayer
    private void updateDisplay( final ActionAdapter action )
    {
       final Point display = TileConversionUtilities.convertToPixel( getTilesetData(), action.getPosition() );
-      getHost().repaint( display.x, display.y, getTilesetData().getTileWidth(), getTilesetData().getTileHeight() );
+      repaint( new Rectangle( display.x, display.y, getTilesetData().getTileWidth(), getTilesetData().getTileHeight() ) );
    }
 }
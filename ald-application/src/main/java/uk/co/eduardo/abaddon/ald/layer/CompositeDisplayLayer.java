@@ -0,0 +1,84 @@
+package uk.co.eduardo.abaddon.ald.layer;
+
+import java.awt.Graphics2D;
+
+import javax.swing.JComponent;
+
+import uk.co.eduardo.abaddon.ald.data.Zoom;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+
+/**
+ * Paints the map layers composited by a {@link LayerCompositor}, keeping the compositor's active layer and zoom in step
+ * with the model.
+ *
+ * @author Ed
+ */
+public class CompositeDisplayLayer extends MapLayer
+{
+   private final LayerCompositor compositor;
+
+   /**
+    * @param model the current model.
+    * @param host the host for the layer.
+    * @param compositor the compositor that draws the map layers.
+    * @param activeLayerProperty property for the currently selected layer.
+    */
+   public CompositeDisplayLayer( final PropertyModel model,
+                                 final JComponent host,
+                                 final LayerCompositor compositor,
+                                 final Property< Integer > activeLayerProperty )
+   {
+      super( model, host );
+      this.compositor = compositor;
+
+      compositor.setActiveLayer( model.get( activeLayerProperty ) );
+      model.addPropertyListener( activeLayerProperty, new PropertyListener()
+      {
+         @Override
+         public void propertyChanged( final PropertyModel s )
+         {
+            compositor.setActiveLayer( s.get( activeLayerProperty ) );
+         }
+      } );
+      compositor.setZoom( model.get( Properties.Zoom ) );
+      model.addPropertyListener( Properties.Zoom, new PropertyListener()
+      {
+         @Override
+         public void propertyChanged( final PropertyModel s )
+         {
+            compositor.setZoom( s.get( Properties.Zoom ) );
+         }
+      } );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void paint( final Graphics2D g2d )
+   {
+      this.compositor.paint( g2d );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void paintZoomed( final Graphics2D g2d, final Zoom zoom )
+   {
+      // The compositor draws each zoom from tiles that have already been scaled.
+      this.compositor.paint( g2d );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void releaseResources()
+   {
+      this.compositor.releaseResources();
+   }
+}
@@ -1,6 +1,8 @@
 package uk.co.eduardo.abaddon.ald.layer;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JComponent;
 
@@ -9,7 +11,6 @@ import uk.co.eduardo.abaddon.ald.data.HeaderData.HeaderDataListener;
 import uk.co.eduardo.abaddon.ald.data.TilesetData;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
-import uk.co.eduardo.abaddon.ald.data.project.ProjectSettings;
 import uk.co.eduardo.abaddon.ald.sprite.SpriteUtilities;
 
 /**
@@ -21,37 +22,37 @@ public class HeroDisplayLayer extends SpriteDisplaylayer
 {
    private final HeaderData headerData;
 
-   private final Property< ProjectSettings > settingsProperty;
+   /** The bounds the hero was last drawn in on this layer, or <code>null</code> if it is not drawn here. */
+   private Rectangle drawnBounds;
 
    /**
     * Initializes a layer that displays the hero when it has <code>layerIndex</code> number of sparse map layers below it.
     *
     * @param model the current model.
     * @param host the host for the layer.
+    * @param compositor the compositor that draws the map layers.
     * @param layerIndex the map layer index of the player character.
     * @param tilesetProperty property for the currently selected tileset.
     * @param visibleProperty property that determines whether to draw the hero or not.
     * @param headerDataProperty property for the map header data.
-    * @param settingsProperty property for the current project settings.
     */
    public HeroDisplayLayer( final PropertyModel model,
                             final JComponent host,
+                            final LayerCompositor compositor,
                             final int layerIndex,
                             final Property< TilesetData > tilesetProperty,
                             final Property< Boolean > visibleProperty,
-                            final Property< HeaderData > headerDataProperty,
-                            final Property< ProjectSettings > settingsProperty )
+                            final Property< HeaderData > headerDataProperty )
    {
-      super( model, host, layerIndex, tilesetProperty, visibleProperty );
+      super( model, host, compositor, layerIndex, tilesetProperty, visibleProperty );
       this.headerData = model.get( headerDataProperty );
-      this.settingsProperty = settingsProperty;
 
       this.headerData.addHeaderDataListener( new HeaderDataListener()
       {
          @Override
          public void headerChanged()
          {
-            getHost().repaint();
+            updateHero();
          }
       } );
    }
@@ -60,22 +61,34 @@ public class HeroDisplayLayer extends SpriteDisplaylayer
     * {@inheritDoc}
     */
    @Override
-   public void paint( final Graphics2D g2d )
+   protected void paintSprites( final Graphics2D g2d )
    {
-      if( !isVisible() )
+      if( getHeaderData() == null )
       {
          return;
       }
-      if( ( getTilesetData() == null ) || ( getHeaderData() == null ) )
+      if( getLayerIndex() == this.headerData.getLayerIndex() )
       {
-         return;
+         final BufferedImage image = getHeroImage();
+         this.drawnBounds = getDisplayPixelBounds( image, getHeaderData().getStartPosition() );
+         drawSprite( g2d, image, getHeaderData().getStartPosition() );
       }
-      if( getLayerIndex() == this.headerData.getLayerIndex() )
+   }
+
+   private void updateHero()
+   {
+      final Rectangle oldBounds = this.drawnBounds;
+      this.drawnBounds = null;
+      if( ( getLayerIndex() == this.headerData.getLayerIndex() ) && ( getTilesetData() != null ) )
       {
-         drawSprite( g2d,
-                     SpriteUtilities.getPCImage( getModel().get( this.settingsProperty ), this.headerData.getDirection() ),
-                     getHeaderData().getStartPosition() );
+         this.drawnBounds = getDisplayPixelBounds( getHeroImage(), getHeaderData().getStartPosition() );
       }
+      updateSprite( oldBounds, this.drawnBounds );
+   }
+
+   private BufferedImage getHeroImage()
+   {
+      return SpriteUtilities.getPCImage( this.headerData.getDirection() );
    }
 
    private HeaderData getHeaderData()
@@ -151,12 +151,12 @@ public class InteractiveElementsEditorLayer extends AbstractDraggingLayer
             {
                addToSelected( element );
             }
-            getHost().repaint();
+            repaint();
          }
          else
          {
             clearSelected();
-            getHost().repaint();
+            repaint();
          }
       }
    }
@@ -258,7 +258,7 @@ public class InteractiveElementsEditorLayer extends AbstractDraggingLayer
 
          if( this.selected.size() > 0 )
          {
-            getHost().repaint();
+            repaint();
          }
       }
    }
@@ -325,7 +325,7 @@ public class InteractiveElementsEditorLayer extends AbstractDraggingLayer
                }
                // Make the sprite glow.
                found = true;
-               getHost().repaint( getDirtyRegion( getTilesetData(), updatePoints.toArray( new Coordinate[ 0 ] ) ) );
+               repaint( getDirtyRegion( getTilesetData(), updatePoints.toArray( new Coordinate[ 0 ] ) ) );
                break;
             }
          }
@@ -359,7 +359,7 @@ public class InteractiveElementsEditorLayer extends AbstractDraggingLayer
          }
 
          clearHover();
-         getHost().repaint( getDirtyRegion( getTilesetData(), updatePoints.toArray( new Coordinate[ 0 ] ) ) );
+         repaint( getDirtyRegion( getTilesetData(), updatePoints.toArray( new Coordinate[ 0 ] ) ) );
       }
    }
 
@@ -471,7 +471,7 @@ public class InteractiveElementsEditorLayer extends AbstractDraggingLayer
                {
                   clearSelected();
                   clearHover();
-                  getHost().repaint();
+                  repaint();
                   popup.show( getHost(), displayPoint.x, displayPoint.y );
                }
             };
@@ -31,6 +31,10 @@ public class MarkModifiedLayer extends MapLayer
          {
             // map model was just saved.
             MarkModifiedLayer.this.lastSaveUndoStackSize = MarkModifiedLayer.this.undoManager.getUndoStackSize();
+
+            // Edits made after the save must not be coalesced into the edit at the save point, otherwise the stack
+            // size would not change and the map would not be marked as modified.
+            MarkModifiedLayer.this.undoManager.markSavePoint();
          }
       }
    };
@@ -62,7 +66,8 @@ public class MarkModifiedLayer extends MapLayer
       super( model, host );
       this.uncommittedChangesProperty = uncommittedChangesProperty;
       this.undoManager = model.get( undoManagerProperty );
-      this.lastSaveUndoStackSize = this.undoManager.getUndoStackSize();
+      // A map that starts with uncommitted changes (e.g. recovered from its journal) has no save point on the stack.
+      this.lastSaveUndoStackSize = model.get( uncommittedChangesProperty ) ? -1 : this.undoManager.getUndoStackSize();
 
       this.undoManager.addUndoManagerListener( this.undoManagerListener );
       model.addPropertyListener( uncommittedChangesProperty, this.saveListener );
@@ -3,6 +3,8 @@ package uk.co.eduardo.abaddon.ald.layer;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.swing.JComponent;
 
@@ -12,7 +14,6 @@ import uk.co.eduardo.abaddon.ald.data.TilesetData;
 import uk.co.eduardo.abaddon.ald.data.adapter.NpcAdapter;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
-import uk.co.eduardo.abaddon.ald.data.project.ProjectSettings;
 import uk.co.eduardo.abaddon.ald.sprite.SpriteUtilities;
 
 /**
@@ -35,7 +36,7 @@ public class NpcDisplayLayer extends SpriteDisplaylayer
       @Override
       public void npcRemoved( final NpcAdapter npc )
       {
-         updateMapArea( npc );
+         updateSprite( NpcDisplayLayer.this.drawnBounds.remove( npc ), null );
       }
 
       @Override
@@ -45,29 +46,29 @@ public class NpcDisplayLayer extends SpriteDisplaylayer
       }
    };
 
-   private final Property< ProjectSettings > settingsProperty;
+   /** The bounds each NPC on this layer was last drawn in, so that they can be redrawn when it moves or is removed. */
+   private final Map< NpcAdapter, Rectangle > drawnBounds = new HashMap<>();
 
    /**
     * Initializes a layer that displays all NPCs that exist on the map layer <code>layerIndex</code>.
     *
     * @param model the current model.
     * @param host the host for the layer.
+    * @param compositor the compositor that draws the map layers.
     * @param layerIndex the index of the map layer.
     * @param tilesetProperty property for the currently selected tileset.
     * @param visibleProperty property that determines whether to draw the NPCs or not.
     * @param npcDataProperty property for the NPC data.
-    * @param settingsProperty property for the current project settings.
     */
    public NpcDisplayLayer( final PropertyModel model,
                            final JComponent host,
+                           final LayerCompositor compositor,
                            final int layerIndex,
                            final Property< TilesetData > tilesetProperty,
                            final Property< Boolean > visibleProperty,
-                           final Property< NpcData > npcDataProperty,
-                           final Property< ProjectSettings > settingsProperty )
+                           final Property< NpcData > npcDataProperty )
    {
-      super( model, host, layerIndex, tilesetProperty, visibleProperty );
-      this.settingsProperty = settingsProperty;
+      super( model, host, compositor, layerIndex, tilesetProperty, visibleProperty );
       this.npcData = model.get( npcDataProperty );
       this.npcData.addNpcDataListener( this.npcListener );
    }
@@ -76,13 +77,9 @@ public class NpcDisplayLayer extends SpriteDisplaylayer
     * {@inheritDoc}
     */
    @Override
-   public void paint( final Graphics2D g2d )
+   protected void paintSprites( final Graphics2D g2d )
    {
-      if( !isVisible() )
-      {
-         return;
-      }
-      if( ( getTilesetData() == null ) || ( getNpcData() == null ) )
+      if( getNpcData() == null )
       {
          return;
       }
@@ -90,8 +87,12 @@ public class NpcDisplayLayer extends SpriteDisplaylayer
       {
          if( npc.getLayerIndex() == getLayerIndex() )
          {
-            final ProjectSettings settings = getModel().get( this.settingsProperty );
-            final BufferedImage image = SpriteUtilities.getSpriteImage( npc, settings );
+            final BufferedImage image = SpriteUtilities.getSpriteImage( npc );
+            if( image == null )
+            {
+               continue;
+            }
+            this.drawnBounds.put( npc, getDisplayPixelBounds( image, npc.getPosition() ) );
             drawSprite( g2d, image, npc.getPosition() );
          }
       }
@@ -104,8 +105,16 @@ public class NpcDisplayLayer extends SpriteDisplaylayer
 
    private void updateMapArea( final NpcAdapter npc )
    {
-      final ProjectSettings settings = getModel().get( this.settingsProperty );
-      final Rectangle rect = getDisplayPixelBounds( SpriteUtilities.getSpriteImage( npc, settings ), npc.getPosition() );
-      getHost().repaint( rect );
+      Rectangle newBounds = null;
+      if( ( npc.getLayerIndex() == getLayerIndex() ) && ( getTilesetData() != null ) )
+      {
+         final BufferedImage image = SpriteUtilities.getSpriteImage( npc );
+         newBounds = image == null ? null : getDisplayPixelBounds( image, npc.getPosition() );
+         updateSprite( this.drawnBounds.put( npc, newBounds ), newBounds );
+      }
+      else
+      {
+         updateSprite( this.drawnBounds.remove( npc ), null );
+      }
    }
 }
@@ -8,11 +8,15 @@ import javax.swing.JComponent;
 
 import uk.co.eduardo.abaddon.ald.data.TilesetData;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
 import uk.co.eduardo.abaddon.util.Coordinate;
 
 /**
  * Abstract layer for drawing sprites on the map. This layer will only draw sprites defined on a particular map layer.
+ * <p>
+ * The sprites are drawn as an overlay of their map layer by the {@link LayerCompositor}, so that they appear above the
+ * tiles of their own layer and below those of the layers above it.
  *
  * @author Ed
  */
@@ -22,17 +26,21 @@ public abstract class SpriteDisplaylayer extends AbstractTilesetAwareLayer
 
    private final Property< Boolean > visibleProperty;
 
+   private final LayerCompositor compositor;
+
    /**
     * Initializes a layer that displays all sprites that exist on the map layer <code>layerIndex</code>.
     *
     * @param model the current moddel.
     * @param host the host for the layer.
+    * @param compositor the compositor that draws the map layers.
     * @param layerIndex the layer index.
     * @param tilesetProperty property for the currently selected tileset.
     * @param visibleProperty property that determines whether to draw the sprites or not.
     */
    public SpriteDisplaylayer( final PropertyModel model,
                               final JComponent host,
+                              final LayerCompositor compositor,
                               final int layerIndex,
                               final Property< TilesetData > tilesetProperty,
                               final Property< Boolean > visibleProperty )
@@ -40,6 +48,52 @@ public abstract class SpriteDisplaylayer extends AbstractTilesetAwareLayer
       super( model, host, tilesetProperty );
       this.layerIndex = layerIndex;
       this.visibleProperty = visibleProperty;
+      this.compositor = compositor;
+
+      compositor.addOverlay( layerIndex, new TiledBackingStore.Renderer()
+      {
+         @Override
+         public void render( final Graphics2D g2d, final Rectangle area )
+         {
+            if( isVisible() && ( getTilesetData() != null ) )
+            {
+               paintSprites( g2d );
+            }
+         }
+      } );
+      model.addPropertyListener( visibleProperty, new PropertyListener()
+      {
+         @Override
+         public void propertyChanged( final PropertyModel s )
+         {
+            compositor.invalidateOverlays( layerIndex );
+         }
+      } );
+   }
+
+   /**
+    * Draws the sprites of the layer. Only called when the layer is visible and there is a tileset.
+    *
+    * @param g2d the graphics on which to draw, clipped to the area that needs drawing.
+    */
+   protected abstract void paintSprites( Graphics2D g2d );
+
+   /**
+    * Redraws the areas a sprite was and is now drawn in.
+    *
+    * @param oldBounds the bounds the sprite was drawn in, or <code>null</code> if it was not drawn.
+    * @param newBounds the bounds the sprite is now drawn in, or <code>null</code> if it is no longer drawn.
+    */
+   protected void updateSprite( final Rectangle oldBounds, final Rectangle newBounds )
+   {
+      if( oldBounds != null )
+      {
+         this.compositor.invalidateOverlay( this.layerIndex, oldBounds );
+      }
+      if( ( newBounds != null ) && !newBounds.equals( oldBounds ) )
+      {
+         this.compositor.invalidateOverlay( this.layerIndex, newBounds );
+      }
    }
 
    /**
@@ -1,57 +1,77 @@
 package uk.co.eduardo.abaddon.ald.layer;
 
-import java.awt.AlphaComposite;
 import java.awt.Color;
-import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 import javax.swing.JComponent;
 
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
 import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.MapSnapshot;
 import uk.co.eduardo.abaddon.ald.data.TilesetData;
+import uk.co.eduardo.abaddon.ald.data.Zoom;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
 
 /**
- * This layer is responsible for displaying one of the map layers.
+ * This layer is responsible for rasterizing one of the map layers.
+ * <p>
+ * The tiles are drawn into the layer's store in the {@link LayerCompositor}, which composites all the map layers and
+ * only asks for the parts of the map that are scrolled into view. Drawing may happen on worker threads, so it reads
+ * from a {@link MapSnapshot} taken on the Event Dispatch Thread rather than from the map data. This layer does not
+ * paint anything itself.
  *
  * @author Ed
  */
 public class TileDisplayLayer extends AbstractTilesetAwareLayer
 {
-   private BufferedImage buffer;
+   /** Painted in place of the bottom layer until it has been drawn. */
+   private static final Color PLACEHOLDER = new Color( 0xE0, 0xE0, 0xE0 );
 
-   private final int layerIndex;
+   private final LayerCompositor compositor;
 
-   private final Property< Boolean > visibleProperty;
+   private final int layerIndex;
 
    private TilesetData lastData;
 
    /**
     * @param model the current model.
     * @param host the host for the layer.
+    * @param compositor the compositor that draws the map layers.
     * @param layerIndex the layer of the map to paint.
     * @param tilesetProperty property for the currently selected tileset.
     * @param visibleProperty the property specifying whether the layer is currently visible or not
     */
    public TileDisplayLayer( final PropertyModel model,
                             final JComponent host,
+                            final LayerCompositor compositor,
                             final int layerIndex,
                             final Property< TilesetData > tilesetProperty,
                             final Property< Boolean > visibleProperty )
    {
       super( model, host, tilesetProperty );
       this.layerIndex = layerIndex;
-      this.visibleProperty = visibleProperty;
+      this.compositor = compositor;
 
-      model.addPropertyListener( this.visibleProperty, new PropertyListener()
+      compositor.setRenderer( layerIndex, new LayerCompositor.LayerRenderer()
+      {
+         @Override
+         public TiledBackingStore.Renderer prepare( final Zoom zoom )
+         {
+            return createRenderer( zoom );
+         }
+      }, layerIndex == 0 ? PLACEHOLDER : null );
+      compositor.setLayerVisible( layerIndex, model.get( visibleProperty ) );
+      model.addPropertyListener( visibleProperty, new PropertyListener()
       {
          @Override
          public void propertyChanged( final PropertyModel s )
          {
-            updateAll();
+            // Only the composite needs redrawing; the layer's tiles have not changed.
+            compositor.setLayerVisible( layerIndex, s.get( visibleProperty ) );
          }
       } );
       updateAll();
@@ -61,93 +81,155 @@ public class TileDisplayLayer extends AbstractTilesetAwareLayer
     * {@inheritDoc}
     */
    @Override
-   public void paint( final Graphics2D g2d )
+   public void updateSection( final int startX, final int startY, final int width, final int height )
    {
-      if( getModel().get( this.visibleProperty ) && ( this.buffer != null ) )
+      if( this.compositor == null )
       {
-         g2d.drawImage( this.buffer, 0, 0, null );
+         // Called while the super class is being constructed.
+         return;
+      }
+      final boolean redrawn = updateStore();
+      if( ( getTilesetData() == null ) || redrawn )
+      {
+         return;
       }
+      invalidateTiles( startX, startY, width, height );
    }
 
    /**
     * {@inheritDoc}
     */
    @Override
-   public void updateSection( final int startX, final int startY, final int width, final int height )
+   public void updateRegion( final DirtyRegion region )
    {
-      updateBuffer();
-      if( this.buffer != null )
+      if( !region.containsLayer( this.layerIndex ) )
       {
-         final Graphics2D g2d = this.buffer.createGraphics();
+         // Another layer was edited, so neither this layer's store nor the composites containing it are stale.
+         return;
+      }
+      final boolean redrawn = updateStore();
+      if( ( getTilesetData() == null ) || redrawn )
+      {
+         return;
+      }
+      for( final Rectangle rectangle : region.getRectangles() )
+      {
+         invalidateTiles( rectangle.x, rectangle.y, rectangle.width, rectangle.height );
+      }
+   }
+
+   // ================| Private Methods |====================================
+
+   /**
+    * Invalidates the part of a rectangle of tiles that lies within the map.
+    *
+    * @param startX the X tile coordinate of the top-left of the rectangle.
+    * @param startY the Y tile coordinate of the top-left of the rectangle.
+    * @param width the number of tiles wide the rectangle is.
+    * @param height the number of tiles high the rectangle is.
+    */
+   private void invalidateTiles( final int startX, final int startY, final int width, final int height )
+   {
+      final int endX = Math.min( startX + width, getMapData().getWidth() );
+      final int endY = Math.min( startY + height, getMapData().getHeight() );
+      final int fromX = Math.max( 0, startX );
+      final int fromY = Math.max( 0, startY );
+      if( ( fromX < endX ) && ( fromY < endY ) )
+      {
+         final int tileWidth = getTilesetData().getTileWidth();
+         final int tileHeight = getTilesetData().getTileHeight();
+         this.compositor.invalidate( this.layerIndex,
+                                     new Rectangle( fromX * tileWidth,
+                                                    fromY * tileHeight,
+                                                    ( endX - fromX ) * tileWidth,
+                                                    ( endY - fromY ) * tileHeight ) );
+      }
+   }
 
-         int y = startY * getTilesetData().getTileHeight();
-         final int[][] layerMap = getMapData().getData()[ this.layerIndex ];
-         for( int row = startY; row < ( startY + height ); row++ )
+   /**
+    * @param zoom the zoom to draw at.
+    * @return a renderer that draws the map and tileset as they are now at the zoom, and may be used from any thread.
+    */
+   private TiledBackingStore.Renderer createRenderer( final Zoom zoom )
+   {
+      final TilesetData tileset = getTilesetData();
+      final MapSnapshot snapshot = getMapData().snapshot();
+      final int layer = this.layerIndex;
+      return new TiledBackingStore.Renderer()
+      {
+         @Override
+         public void render( final Graphics2D g2d, final Rectangle area )
          {
-            int x = startX * getTilesetData().getTileWidth();
-            final int[] rowMap = layerMap[ row ];
-            for( int col = startX; col < ( startX + width ); col++ )
+            if( ( tileset == null ) || ( layer >= snapshot.getLayerCount() ) )
             {
-               final int tileId = rowMap[ col ];
-               // If we're a sparse layer always clear the tile first
-               if( this.layerIndex > 0 )
-               {
-                  clearTile( g2d, x, y );
-               }
-               if( tileId != -1 )
+               return;
+            }
+            final int tileWidth = tileset.getTileWidth();
+            final int tileHeight = tileset.getTileHeight();
+            final Rectangle mapArea = zoom.unscale( area );
+            final int fromX = mapArea.x / tileWidth;
+            final int fromY = mapArea.y / tileHeight;
+            final int endX = Math.min( ( ( mapArea.x + mapArea.width ) + tileWidth - 1 ) / tileWidth,
+                                       snapshot.getWidth() );
+            final int endY = Math.min( ( ( mapArea.y + mapArea.height ) + tileHeight - 1 ) / tileHeight,
+                                       snapshot.getHeight() );
+
+            int[] rowTiles = null;
+            for( int row = fromY; ( row < endY ) && ( fromX < endX ); row++ )
+            {
+               // Positions are rounded so that neighbouring tiles meet exactly when they are shrunk.
+               final int y = zoom.scalePosition( row * tileHeight );
+               final int height = zoom.scalePosition( ( row + 1 ) * tileHeight ) - y;
+               rowTiles = snapshot.getRow( layer, row, fromX, endX - fromX, rowTiles );
+               for( int col = fromX; col < endX; col++ )
                {
-                  final BufferedImage tile = getTilesetData().getTile( tileId );
-                  g2d.drawImage( tile, x, y, null );
+                  final int tileId = rowTiles[ col - fromX ];
+                  if( tileId != -1 )
+                  {
+                     final int x = zoom.scalePosition( col * tileWidth );
+                     final int width = zoom.scalePosition( ( col + 1 ) * tileWidth ) - x;
+                     final BufferedImage tile = tileset.getTile( tileId, zoom );
+                     if( ( tile.getWidth() == width ) && ( tile.getHeight() == height ) )
+                     {
+                        g2d.drawImage( tile, x, y, null );
+                     }
+                     else
+                     {
+                        g2d.drawImage( tile, x, y, width, height, null );
+                     }
+                  }
                }
-               x += getTilesetData().getTileWidth();
             }
-            y += getTilesetData().getTileHeight();
          }
-         getHost().repaint();
-      }
+      };
    }
 
-   private void updateBuffer()
+   /**
+    * Makes sure the compositor matches the size of the map and the tileset.
+    *
+    * @return whether the whole layer has been invalidated because the size of the map or the tileset changed.
+    */
+   private boolean updateStore()
    {
       final TilesetData currentTileset = getTilesetData();
-      if( currentTileset == null )
+      final boolean tilesetChanged = currentTileset != this.lastData;
+      this.lastData = currentTileset;
+      if( ( currentTileset == null ) || ( this.layerIndex >= MapData.MAX_LAYERS ) )
       {
-         if( this.buffer != null )
-         {
-            this.buffer = null;
-         }
-         return;
+         return false;
       }
 
-      if( this.layerIndex >= MapData.MAX_LAYERS )
+      final int height = getMapData().getHeight() * currentTileset.getTileHeight();
+      final int width = getMapData().getWidth() * currentTileset.getTileWidth();
+      if( this.compositor.setSize( width, height ) )
       {
-         return;
+         return true;
       }
-      final int tileYCount = getMapData().getHeight();
-      final int tileXCount = getMapData().getWidth();
-
-      final int height = tileYCount * currentTileset.getTileHeight();
-      final int width = tileXCount * currentTileset.getTileWidth();
-
-      final boolean tilesetChanged = currentTileset != this.lastData;
-      this.lastData = currentTileset;
-      final boolean dimChanged = this.buffer != null ? ( this.buffer.getHeight() != height ) ||
-                                                       ( this.buffer.getWidth() != width ) : true;
-
-      if( dimChanged || tilesetChanged )
+      if( tilesetChanged )
       {
-         this.buffer = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
+         this.compositor.invalidate( this.layerIndex, new Rectangle( 0, 0, width, height ) );
+         return true;
       }
-   }
-
-   private void clearTile( final Graphics2D g2d, final int xStart, final int yStart )
-   {
-      final Color oldColor = g2d.getColor();
-      final Composite oldComposite = g2d.getComposite();
-      g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC ) );
-      g2d.setColor( new Color( 0, 0, 0, 0 ) );
-      g2d.fillRect( xStart, yStart, getTilesetData().getTileWidth(), getTilesetData().getTileHeight() );
-      g2d.setComposite( oldComposite );
-      g2d.setColor( oldColor );
+      return false;
    }
 }
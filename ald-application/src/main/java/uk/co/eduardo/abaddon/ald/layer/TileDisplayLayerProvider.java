@@ -17,29 +17,33 @@ public class TileDisplayLayerProvider implements LayerProvider
    @Override
    public void populateLayerHost( final MapPanel host, final PropertyModel model )
    {
+      final LayerCompositor compositor = new LayerCompositor( host, 3 );
+      host.addLayer( Level.Display, new CompositeDisplayLayer( model, host, compositor, Properties.ActiveLayer ) );
+
       for( int layerIndex = 0; layerIndex < 3; layerIndex++ )
       {
          final Property< Boolean > mapVisible = Property.getLayerProperty( layerIndex, Properties.LayerVisible );
 
-         host.addLayer( Level.Display, new TileDisplayLayer( model, host, layerIndex, Properties.Tileset, mapVisible ) );
+         host.addLayer( Level.Display,
+                        new TileDisplayLayer( model, host, compositor, layerIndex, Properties.Tileset, mapVisible ) );
 
          host.addLayer( Level.Display,
                         new HeroDisplayLayer( model,
                                               host,
+                                              compositor,
                                               layerIndex,
                                               Properties.Tileset,
                                               Properties.SpriteVisible,
-                                              Properties.HeaderData,
-                                              Properties.ProjectSettings ) );
+                                              Properties.HeaderData ) );
 
          host.addLayer( Level.Display,
                         new NpcDisplayLayer( model,
                                              host,
+                                             compositor,
                                              layerIndex,
                                              Properties.Tileset,
                                              Properties.SpriteVisible,
-                                             Properties.NpcData,
-                                             Properties.ProjectSettings ) );
+                                             Properties.NpcData ) );
       }
    }
 }
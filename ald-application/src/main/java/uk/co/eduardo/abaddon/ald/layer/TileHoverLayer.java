@@ -54,7 +54,7 @@ public class TileHoverLayer extends AbstractTilesetAwareLayer
          if( ( tileX != this.last.x ) || ( tileY != this.last.y ) )
          {
             this.last = new Coordinate( tileX, tileY );
-            getHost().repaint( TileConversionUtilities.pixelUnion( getTilesetData(), old, this.last ) );
+            repaint( TileConversionUtilities.pixelUnion( getTilesetData(), old, this.last ) );
          }
 
          final Coordinate toSet = this.last.equals( new Coordinate( -1, -1 ) ) ? null : this.last;
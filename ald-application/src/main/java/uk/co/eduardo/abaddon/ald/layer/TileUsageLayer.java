@@ -0,0 +1,156 @@
+package uk.co.eduardo.abaddon.ald.layer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
+import uk.co.eduardo.abaddon.ald.data.TilesetData;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+
+/**
+ * Highlights every use of a tile on the active layer.
+ * <p>
+ * The uses are looked up in the tile index of the map data, so they can be refreshed after every edit without scanning
+ * the whole map.
+ *
+ * @author Ed
+ */
+public class TileUsageLayer extends AbstractTilesetAwareLayer
+{
+   private static final Color HIGHLIGHT = new Color( 0xFF, 0xC0, 0x20, 0x7F );
+
+   private final Property< Integer > highlightedTileProperty;
+
+   private final Property< Integer > activeLayerProperty;
+
+   /** The positions to highlight, each packed as <code>(row &lt;&lt; 16) | col</code>. */
+   private int[] positions = new int[ 0 ];
+
+   private final PropertyListener refreshListener = new PropertyListener()
+   {
+      @Override
+      public void propertyChanged( final PropertyModel model )
+      {
+         refresh();
+      }
+   };
+
+   /**
+    * @param model the current model.
+    * @param host the host for the layer.
+    * @param tilesetProperty property for the currently selected tileset.
+    * @param highlightedTileProperty property for the tile whose uses are highlighted.
+    * @param activeLayerProperty property for the active layer.
+    */
+   public TileUsageLayer( final PropertyModel model,
+                          final JComponent host,
+                          final Property< TilesetData > tilesetProperty,
+                          final Property< Integer > highlightedTileProperty,
+                          final Property< Integer > activeLayerProperty )
+   {
+      super( model, host, tilesetProperty );
+      this.highlightedTileProperty = highlightedTileProperty;
+      this.activeLayerProperty = activeLayerProperty;
+      model.addPropertyListener( highlightedTileProperty, this.refreshListener );
+      model.addPropertyListener( activeLayerProperty, this.refreshListener );
+      refresh();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void updateSection( final int startX, final int startY, final int width, final int height )
+   {
+      refresh();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void updateRegion( final DirtyRegion region )
+   {
+      // One lookup covers every rectangle of the region.
+      refresh();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void paint( final Graphics2D g2d )
+   {
+      final TilesetData tileset = getTilesetData();
+      if( ( tileset == null ) || ( this.positions.length == 0 ) )
+      {
+         return;
+      }
+      final int tileWidth = tileset.getTileWidth();
+      final int tileHeight = tileset.getTileHeight();
+      final Rectangle clip = g2d.getClipBounds();
+
+      final Color oldColor = g2d.getColor();
+      g2d.setColor( HIGHLIGHT );
+      for( final int position : this.positions )
+      {
+         final int x = ( position & 0xFFFF ) * tileWidth;
+         final int y = ( position >>> 16 ) * tileHeight;
+         if( ( clip == null ) || clip.intersects( x, y, tileWidth, tileHeight ) )
+         {
+            g2d.fillRect( x, y, tileWidth, tileHeight );
+         }
+      }
+      g2d.setColor( oldColor );
+   }
+
+   private void refresh()
+   {
+      if( this.highlightedTileProperty == null )
+      {
+         // Called while the layer is still being constructed.
+         return;
+      }
+      final Integer tile = getModel().get( this.highlightedTileProperty );
+      final int[] previous = this.positions;
+      this.positions = tile == null ? new int[ 0 ] : getMapData().findTile( getModel().get( this.activeLayerProperty ), tile );
+      if( !Arrays.equals( previous, this.positions ) )
+      {
+         // Only the tiles that were or are now highlighted need repainting.
+         repaint( getBounds( getBounds( null, previous ), this.positions ) );
+      }
+   }
+
+   /**
+    * @param bounds the area to add the positions to, or <code>null</code> for none.
+    * @param tiles the packed positions of tiles.
+    * @return the area in pixels covering the original bounds and the tiles, or <code>null</code> if there is none or the
+    *         tile size is not known.
+    */
+   private Rectangle getBounds( final Rectangle bounds, final int[] tiles )
+   {
+      final TilesetData tileset = getTilesetData();
+      if( tileset == null )
+      {
+         return bounds;
+      }
+      final int tileWidth = tileset.getTileWidth();
+      final int tileHeight = tileset.getTileHeight();
+      Rectangle union = bounds;
+      for( final int position : tiles )
+      {
+         final Rectangle tile = new Rectangle( ( position & 0xFFFF ) * tileWidth,
+                                               ( position >>> 16 ) * tileHeight,
+                                               tileWidth,
+                                               tileHeight );
+         union = union == null ? tile : union.union( tile );
+      }
+      return union;
+   }
+}
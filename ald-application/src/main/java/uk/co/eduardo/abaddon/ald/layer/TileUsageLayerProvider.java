@@ -0,0 +1,22 @@
+package uk.co.eduardo.abaddon.ald.layer;
+
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+
+/**
+ * Adds the layer that highlights the uses of a tile.
+ *
+ * @author Ed
+ */
+public class TileUsageLayerProvider implements LayerProvider
+{
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void populateLayerHost( final MapPanel host, final PropertyModel model )
+   {
+      host.addLayer( Level.Overlay,
+                     new TileUsageLayer( model, host, Properties.Tileset, Properties.HighlightedTile, Properties.ActiveLayer ) );
+   }
+}
@@ -3,10 +3,12 @@ package uk.co.eduardo.abaddon.ald.layer.control;
 import java.awt.Cursor;
 
 import javax.swing.JComponent;
+import javax.swing.undo.UndoableEdit;
 
 import uk.co.eduardo.abaddon.ald.data.TilesetData;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
 import uk.co.eduardo.abaddon.ald.layer.AbstractDraggingLayer;
 import uk.co.eduardo.abaddon.ald.ui.Cursors;
 
@@ -17,14 +19,24 @@ import uk.co.eduardo.abaddon.ald.ui.Cursors;
  */
 public class CropControlLayer extends AbstractDraggingLayer
 {
+   private final UndoManager undoManager;
+
+   /** All the resizes made during the current drag, merged into one edit. */
+   private UndoableEdit resizeEdit;
+
    /**
     * @param model the current map model.
     * @param host the host for the layer.
     * @param tilesetProperty property for the currently selected tileset
+    * @param undoManagerProperty property for the undo manager.
     */
-   public CropControlLayer( final PropertyModel model, final JComponent host, final Property< TilesetData > tilesetProperty )
+   public CropControlLayer( final PropertyModel model,
+                            final JComponent host,
+                            final Property< TilesetData > tilesetProperty,
+                            final Property< UndoManager > undoManagerProperty )
    {
       super( model, host, tilesetProperty, false, false );
+      this.undoManager = model.get( undoManagerProperty );
    }
 
    /**
@@ -42,7 +54,11 @@ public class CropControlLayer extends AbstractDraggingLayer
    @Override
    protected void dragComplete( final int tileX, final int tileY, final int width, final int height, final int modifiers )
    {
-      // Do nothing.
+      if( this.resizeEdit != null )
+      {
+         this.undoManager.addEdit( this.resizeEdit );
+         this.resizeEdit = null;
+      }
    }
 
    /**
@@ -51,6 +67,14 @@ public class CropControlLayer extends AbstractDraggingLayer
    @Override
    protected void dragUpdate( final int tileX, final int tileY, final int width, final int height, final int modifiers )
    {
-      getMapData().setWidthAndHeight( tileX + 1, tileY + 1 );
+      final UndoableEdit edit = getMapData().setWidthAndHeight( Math.max( 1, tileX + 1 ), Math.max( 1, tileY + 1 ) );
+      if( this.resizeEdit == null )
+      {
+         this.resizeEdit = edit;
+      }
+      else if( edit != null )
+      {
+         this.resizeEdit.addEdit( edit );
+      }
    }
 }
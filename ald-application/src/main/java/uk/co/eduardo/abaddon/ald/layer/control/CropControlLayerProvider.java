@@ -42,7 +42,7 @@ public class CropControlLayerProvider implements ControlLayerProvider
    @Override
    public MapLayer getControlLayer( final PropertyModel model, final JComponent host )
    {
-      return new CropControlLayer( model, host, Properties.Tileset );
+      return new CropControlLayer( model, host, Properties.Tileset, Properties.UndoManager );
    }
 
    /**
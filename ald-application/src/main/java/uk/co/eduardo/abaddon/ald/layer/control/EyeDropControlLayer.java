@@ -59,7 +59,7 @@ public class EyeDropControlLayer extends MapLayer
          return;
       }
       final int selectedLayer = getModel().get( this.selectedLayerProperty );
-      final int tileId = getMapData().getData()[ selectedLayer ][ tileY ][ tileX ];
+      final int tileId = getMapData().getTile( selectedLayer, tileY, tileX );
       if( tileId == -1 )
       {
          return;
@@ -1,13 +1,16 @@
 package uk.co.eduardo.abaddon.ald.layer.control;
 
 import java.awt.Cursor;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Random;
 
 import javax.swing.JComponent;
-import javax.swing.undo.CompoundEdit;
 import javax.swing.undo.UndoableEdit;
 
 import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.TileSources;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
 import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
@@ -96,90 +99,134 @@ public class FillControlLayer extends MapLayer
       }
    }
 
-   private static final class FloodFillerContext
+   /**
+    * Works out which tiles a flood fill covers, then fills them all in one edit.
+    * <p>
+    * The fill is a scanline fill driven by an explicit stack of seeds rather than recursion, so its depth is not limited
+    * by the thread's stack however large the area is. Each seed is expanded into the longest run of matching tiles along
+    * its row, and only one new seed is pushed for each run of fillable tiles found in the rows above and below.
+    */
+   static final class FloodFillerContext
    {
       private final int layer;
 
       private final MapData mapData;
 
-      private FloodFillerContext( final MapData mapData, final int layer )
+      private final int width;
+
+      private final int height;
+
+      /** A copy of the tiles of the layer, row by row, so that the fill does not go through the map's storage per tile. */
+      private int[] tiles;
+
+      /** The positions to fill, row by row across the whole map. */
+      private BitSet mask;
+
+      /** Seeds still to be expanded, packed as <code>(y * width) + x</code>. */
+      private int[] stack = new int[ 64 ];
+
+      private int stackSize;
+
+      FloodFillerContext( final MapData mapData, final int layer )
       {
          this.mapData = mapData;
          this.layer = layer;
+         this.width = mapData.getWidth();
+         this.height = mapData.getHeight();
       }
 
       UndoableEdit floodFill( final Coordinate seed, final int[] newTiles )
       {
-         final int width = this.mapData.getWidth();
-         final int height = this.mapData.getHeight();
-
-         if( ( seed.x < 0 ) || ( seed.x >= width ) || ( seed.y < 0 ) || ( seed.y >= height ) )
+         if( ( seed.x < 0 ) || ( seed.x >= this.width ) || ( seed.y < 0 ) || ( seed.y >= this.height ) )
          {
             // Do nothing.
             return null;
          }
 
-         final int[][] map = this.mapData.getData()[ this.layer ];
-         final int current = map[ seed.y ][ seed.x ];
+         this.tiles = new int[ this.width * this.height ];
+         final int[] row = new int[ this.width ];
+         for( int y = 0; y < this.height; y++ )
+         {
+            this.mapData.getRow( this.layer, y, 0, this.width, row );
+            System.arraycopy( row, 0, this.tiles, y * this.width, this.width );
+         }
 
-         final CompoundEdit edit = new CompoundEdit();
-         flood( map, seed.x, seed.y, newTiles, current, edit );
-         edit.end();
-         return edit;
+         // Work out which tiles to fill first, then fill them all in one edit.
+         this.mask = new BitSet( this.width * this.height );
+         flood( seed.x, seed.y, this.tiles[ ( seed.y * this.width ) + seed.x ] );
+         this.tiles = null;
+
+         final Rectangle region = new Rectangle( 0, 0, this.width, this.height );
+         return this.mapData.setRegion( this.layer, region, this.mask, TileSources.random( newTiles, new Random() ) );
       }
 
-      private void flood( final int[][] map,
-                          final int x,
-                          final int y,
-                          final int[] newTiles,
-                          final int old,
-                          final CompoundEdit edit )
+      private void flood( final int seedX, final int seedY, final int old )
       {
-         final int width = this.mapData.getWidth();
-         final int height = this.mapData.getHeight();
-
-         // Scan left filling along the way.
-         int fillL = x;
-         do
+         push( ( seedY * this.width ) + seedX );
+         while( this.stackSize > 0 )
          {
-            set( fillL--, y, newTiles, edit );
-         }
-         while( ( fillL >= 0 ) && ( map[ y ][ fillL ] == old ) );
-         fillL++;
+            final int position = this.stack[ --this.stackSize ];
+            if( this.mask.get( position ) )
+            {
+               // Already filled as part of another run.
+               continue;
+            }
+            final int y = position / this.width;
+            final int rowStart = y * this.width;
 
-         // Scan right filling along the way.
-         int fillR = x;
-         do
-         {
-            set( fillR++, y, newTiles, edit );
-         }
-         while( ( fillR < width ) && ( map[ y ][ fillR ] == old ) );
-         fillR--;
+            // Extend the run left and right as far as it matches.
+            int left = position - rowStart;
+            while( ( left > 0 ) && canFill( rowStart + left - 1, old ) )
+            {
+               left--;
+            }
+            int right = position - rowStart;
+            while( ( ( right + 1 ) < this.width ) && canFill( rowStart + right + 1, old ) )
+            {
+               right++;
+            }
+            this.mask.set( rowStart + left, rowStart + right + 1 );
 
-         // Iterate along the scanline checking above and below each point
-         // to see if a scanline can be drawn there.
-         for( int i = fillL; i <= fillR; i++ )
-         {
-            if( ( y > 0 ) && ( map[ y - 1 ][ i ] == old ) )
+            if( y > 0 )
+            {
+               pushRuns( rowStart - this.width, left, right, old );
+            }
+            if( ( y + 1 ) < this.height )
             {
-               flood( map, i, y - 1, newTiles, old, edit );
+               pushRuns( rowStart + this.width, left, right, old );
             }
-            if( ( y < height ) && ( map[ y + 1 ][ i ] == old ) )
+         }
+      }
+
+      /**
+       * Pushes one seed for each run of fillable tiles between two columns of a row.
+       */
+      private void pushRuns( final int rowStart, final int left, final int right, final int old )
+      {
+         boolean inRun = false;
+         for( int x = left; x <= right; x++ )
+         {
+            final boolean fillable = canFill( rowStart + x, old );
+            if( fillable && !inRun )
             {
-               flood( map, i, y + 1, newTiles, old, edit );
+               push( rowStart + x );
             }
+            inRun = fillable;
          }
       }
 
-      private void set( final int x, final int y, final int[] newTiles, final CompoundEdit edit )
+      private boolean canFill( final int position, final int old )
+      {
+         return ( this.tiles[ position ] == old ) && !this.mask.get( position );
+      }
+
+      private void push( final int position )
       {
-         final Random rng = new Random();
-         final int nextTile = newTiles[ rng.nextInt( newTiles.length ) ];
-         final UndoableEdit newEdit = this.mapData.setData( this.layer, y, x, nextTile );
-         if( newEdit != null )
+         if( this.stackSize == this.stack.length )
          {
-            edit.addEdit( newEdit );
+            this.stack = Arrays.copyOf( this.stack, this.stackSize * 2 );
          }
+         this.stack[ this.stackSize++ ] = position;
       }
    }
 }
@@ -29,7 +29,10 @@ public class PencilControlLayer extends AbstractDraggingLayer
 
    private final UndoManager undoManager;
 
-   private CompoundEdit compoundEdit;
+   /** The edit for the stroke being drawn. Each change made during the stroke is merged into it. */
+   private UndoableEdit strokeEdit;
+
+   private boolean stroking;
 
    /**
     * @param model the current model.
@@ -80,7 +83,8 @@ public class PencilControlLayer extends AbstractDraggingLayer
    @Override
    public void dragStart( final int tileX, final int tileY, final int modifiers )
    {
-      this.compoundEdit = new CompoundEdit();
+      this.strokeEdit = null;
+      this.stroking = true;
       super.dragStart( tileX, tileY, modifiers );
    }
 
@@ -90,12 +94,25 @@ public class PencilControlLayer extends AbstractDraggingLayer
    @Override
    protected void dragUpdate( final int tileX, final int tileY, final int width, final int height, final int modifiers )
    {
-      if( this.compoundEdit != null )
+      if( this.stroking )
       {
          final UndoableEdit edit = setTile( tileX, tileY, modifiers );
-         if( edit != null )
+         if( edit == null )
+         {
+            return;
+         }
+         if( this.strokeEdit == null )
+         {
+            this.strokeEdit = edit;
+         }
+         else if( !this.strokeEdit.addEdit( edit ) )
          {
-            this.compoundEdit.addEdit( edit );
+            // Should not happen as a stroke stays on one layer, but don't lose the change if it does.
+            final CompoundEdit compoundEdit = new CompoundEdit();
+            compoundEdit.addEdit( this.strokeEdit );
+            compoundEdit.addEdit( edit );
+            compoundEdit.end();
+            this.strokeEdit = compoundEdit;
          }
       }
    }
@@ -106,12 +123,12 @@ public class PencilControlLayer extends AbstractDraggingLayer
    @Override
    protected void dragComplete( final int tileX, final int tileY, final int width, final int height, final int modifiers )
    {
-      if( this.compoundEdit != null )
+      if( this.strokeEdit != null )
       {
-         this.compoundEdit.end();
-         addEdit( this.compoundEdit );
-         this.compoundEdit = null;
+         addEdit( this.strokeEdit );
       }
+      this.strokeEdit = null;
+      this.stroking = false;
    }
 
    private UndoableEdit setTile( final int tileX, final int tileY, final int modifiers )
@@ -142,6 +159,6 @@ public class PencilControlLayer extends AbstractDraggingLayer
 
    private void addEdit( final UndoableEdit edit )
    {
-      this.undoManager.addEdit( edit );
+      this.undoManager.addStroke( edit );
    }
 }
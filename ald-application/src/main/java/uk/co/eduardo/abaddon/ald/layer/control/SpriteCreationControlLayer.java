@@ -91,7 +91,7 @@ public class SpriteCreationControlLayer extends AbstractTilesetAwareLayer
             undoManager.addEdit( new CreateSpriteUndoableEdit( newNpc ) );
          }
       }
-      getHost().repaint();
+      repaint();
 
       // We don't want to display the context right on top of the item
       final Coordinate offset = new Coordinate( position.x + 1, position.y - 1 );
@@ -35,7 +35,7 @@ public class HeroInteractiveElement implements InteractiveElement
    {
       this.header = header;
       this.settings = settings;
-      this.image = SpriteUtilities.getGlowOverlay( SpriteUtilities.getPCImage( settings, header.getDirection() ) );
+      this.image = SpriteUtilities.getGlowOverlay( SpriteUtilities.getPCImage( header.getDirection() ) );
    }
 
    /**
@@ -5,6 +5,7 @@ import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
@@ -132,11 +133,18 @@ public class NpcContextEditor extends JPanel
       Icon initialSelected = null;
       for( final File npcFile : model.getAvailableNpcFiles() )
       {
-         icons.add( new ImageIcon( SpriteUtilities.getSpriteImage( npcFile.getName(),
-                                                                   model.getDirectory(),
-                                                                   Direction.DOWN,
-                                                                   this.settings ),
-                                   npcFile.getName() ) );
+         BufferedImage image = SpriteUtilities.getNpcImage( AvailableNpcsModel.getType( npcFile.getName() ),
+                                                            Direction.DOWN );
+         if( image == null )
+         {
+            // The sprite sheet could not be read, so show the type as an outline that can still be selected.
+            image = SpriteUtilities.getOutlineImage( Direction.DOWN, this.settings );
+         }
+         if( image == null )
+         {
+            continue;
+         }
+         icons.add( new ImageIcon( image, npcFile.getName() ) );
          if( npcFile.equals( npcFileToSelect ) )
          {
             initialSelected = icons.get( icons.size() - 1 );
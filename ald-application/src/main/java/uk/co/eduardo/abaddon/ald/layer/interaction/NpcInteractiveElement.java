@@ -37,7 +37,7 @@ public class NpcInteractiveElement implements InteractiveElement
    {
       this.npc = npc;
       this.settings = settings;
-      final BufferedImage original = SpriteUtilities.getSpriteImage( npc, settings );
+      final BufferedImage original = SpriteUtilities.getSpriteImage( npc );
       this.hoverImage = SpriteUtilities.getGlowOverlay( original );
    }
 
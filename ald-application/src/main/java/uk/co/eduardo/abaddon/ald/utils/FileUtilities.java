@@ -1,17 +1,22 @@
 package uk.co.eduardo.abaddon.ald.utils;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Utility methods for {@link File}s
@@ -20,6 +25,10 @@ import java.io.OutputStream;
  */
 public final class FileUtilities
 {
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
    private FileUtilities()
    {
       // Hide constructor for utility class.
@@ -58,38 +67,26 @@ public final class FileUtilities
       {
          output.getParentFile().mkdirs();
       }
-      InputStream inStream = null;
-      OutputStream outStream = null;
+      FileInputStream inStream = null;
+      FileOutputStream outStream = null;
       try
       {
-         inStream = new BufferedInputStream( new FileInputStream( source ) );
-         outStream = new BufferedOutputStream( new FileOutputStream( output ) );
-         copy( inStream, outStream );
+         inStream = new FileInputStream( source );
+         outStream = new FileOutputStream( output );
+         // Lets the operating system move the bytes without copying them through the Java heap.
+         final FileChannel in = inStream.getChannel();
+         final FileChannel out = outStream.getChannel();
+         final long size = in.size();
+         long position = 0;
+         while( position < size )
+         {
+            position += in.transferTo( position, size - position, out );
+         }
       }
       finally
       {
-         if( inStream != null )
-         {
-            try
-            {
-               inStream.close();
-            }
-            catch( final IOException e )
-            {
-               // Ignore
-            }
-         }
-         if( outStream != null )
-         {
-            try
-            {
-               outStream.close();
-            }
-            catch( final IOException e )
-            {
-               // Ignore
-            }
-         }
+         close( inStream );
+         close( outStream );
       }
    }
 
@@ -101,7 +98,7 @@ public final class FileUtilities
    public static void copy( final InputStream inStream, final OutputStream outStream ) throws IOException
    {
       // Transfer bytes from in to out
-      final byte[] buf = new byte[ 1024 ];
+      final byte[] buf = new byte[ BUFFER_SIZE ];
       int len;
       while( ( len = inStream.read( buf ) ) > 0 )
       {
@@ -117,55 +114,117 @@ public final class FileUtilities
     */
    public static void replace( final File target, final String token, final String replacement ) throws IOException
    {
-      // First we create a temporary file.
-      File tempFile = null;
-      BufferedWriter output = null;
-      BufferedReader input = null;
-      try
+      replace( target, Collections.singletonMap( token, replacement ) );
+   }
+
+   /**
+    * Replaces every occurrence of each of a number of tokens in a file, reading and writing the file once.
+    *
+    * @param target the file in which to search
+    * @param replacements the replacement for each token.
+    * @throws IOException if an error occurred during reading/writing
+    */
+   public static void replace( final File target, final Map< String, String > replacements ) throws IOException
+   {
+      final Charset charset = Charset.defaultCharset();
+      final String text = new String( Files.readAllBytes( target.toPath() ), charset );
+      final String replaced = replace( text, replacements );
+      if( !replaced.equals( text ) )
+      {
+         Files.write( target.toPath(), replaced.getBytes( charset ) );
+      }
+   }
+
+   /**
+    * Replaces every occurrence of each of a number of tokens in a single pass over some text.
+    *
+    * @param text the text in which to search.
+    * @param replacements the replacement for each token. Tokens are matched literally.
+    * @return the text with the tokens replaced.
+    */
+   public static String replace( final String text, final Map< String, String > replacements )
+   {
+      if( replacements.isEmpty() )
       {
-         tempFile = File.createTempFile( "ald", "replace" ); //$NON-NLS-1$ //$NON-NLS-2$
-         output = new BufferedWriter( new FileWriter( tempFile ) );
-         input = new BufferedReader( new FileReader( target ) );
-         String line;
-         while( ( line = input.readLine() ) != null )
+         return text;
+      }
+      final StringBuilder pattern = new StringBuilder();
+      for( final String token : replacements.keySet() )
+      {
+         if( pattern.length() > 0 )
          {
-            // I understand that this only works by accident as '.' matches '.'.
-            output.write( line.replaceFirst( token, replacement ) );
-            output.newLine();
+            pattern.append( '|' );
          }
+         pattern.append( Pattern.quote( token ) );
+      }
 
+      final Matcher matcher = Pattern.compile( pattern.toString() ).matcher( text );
+      final StringBuffer result = new StringBuffer( text.length() );
+      while( matcher.find() )
+      {
+         matcher.appendReplacement( result, Matcher.quoteReplacement( replacements.get( matcher.group() ) ) );
+      }
+      matcher.appendTail( result );
+      return result.toString();
+   }
+
+   /**
+    * @param file the file to hash.
+    * @return a hash of the contents of the file, as hexadecimal digits.
+    * @throws IOException if the file could not be read.
+    */
+   public static String hash( final File file ) throws IOException
+   {
+      final MessageDigest digest;
+      try
+      {
+         digest = MessageDigest.getInstance( "SHA-1" ); //$NON-NLS-1$
+      }
+      catch( final NoSuchAlgorithmException e )
+      {
+         throw new IOException( "No hash algorithm available.", e ); //$NON-NLS-1$
+      }
+
+      FileInputStream stream = null;
+      try
+      {
+         stream = new FileInputStream( file );
+         final FileChannel channel = stream.getChannel();
+         final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+         while( channel.read( buffer ) != -1 )
+         {
+            buffer.flip();
+            digest.update( buffer );
+            buffer.clear();
+         }
       }
       finally
       {
-         if( output != null )
+         close( stream );
+      }
+
+      final byte[] bytes = digest.digest();
+      final char[] hex = new char[ bytes.length * 2 ];
+      for( int i = 0; i < bytes.length; i++ )
+      {
+         hex[ i * 2 ] = HEX_DIGITS[ ( bytes[ i ] >> 4 ) & 0xF ];
+         hex[ ( i * 2 ) + 1 ] = HEX_DIGITS[ bytes[ i ] & 0xF ];
+      }
+      return new String( hex );
+   }
+
+   private static void close( final Closeable closeable )
+   {
+      if( closeable != null )
+      {
+         try
          {
-            try
-            {
-               output.close();
-            }
-            catch( final IOException e )
-            {
-               // Do nothing.
-            }
+            closeable.close();
          }
-         if( input != null )
+         catch( final IOException e )
          {
-            try
-            {
-               input.close();
-            }
-            catch( final IOException e )
-            {
-               // Do nothing.
-            }
+            // Ignore
          }
       }
-      // Now we replace the original file with our temporary one.
-      if( tempFile != null )
-      {
-         target.delete();
-         target.createNewFile();
-         copy( tempFile, target );
-      }
    }
 }
@@ -0,0 +1,582 @@
+package uk.co.eduardo.abaddon.ald.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import uk.co.eduardo.abaddon.ald.data.project.AvailableTilesetsModel;
+import uk.co.eduardo.abaddon.ald.data.project.Project;
+import uk.co.eduardo.abaddon.ald.data.project.ProjectSettings;
+import uk.co.eduardo.abaddon.map.CompiledMap;
+import uk.co.eduardo.abaddon.map.MapDefinition;
+import uk.co.eduardo.abaddon.map.MapFactory;
+import uk.co.eduardo.abaddon.tileset.TileDescription;
+import uk.co.eduardo.abaddon.tileset.TileDescriptionReader;
+
+/**
+ * Packages together all the game resources in a project into a resource bundle ready to plug into the game engine.
+ * <p>
+ * The files are copied on a pool of worker threads. The export directory keeps a manifest of what was copied into it:
+ * the size and last modified time of each source and copy, and a hash of the source's contents. A file is only copied
+ * again if it has changed since the last export, so exporting an unchanged project again only has to check the files.
+ * A source whose last modified time has changed is hashed, and is not copied if its contents are the same.
+ * <p>
+ * Maps are not copied as they are but compiled into a {@link CompiledMap}, which the game engine can load much more
+ * quickly. A map is compiled again if either it or the description of its tileset has changed.
+ *
+ * @author Ed
+ */
+public class ProjectExporter
+{
+   /**
+    * Notified as files are exported. Called from the thread that runs the export.
+    */
+   public interface ProgressListener
+   {
+      /**
+       * @param done the number of files that have been checked or exported.
+       * @param total the number of files to export.
+       */
+      void progress( int done, int total );
+   }
+
+   private static final String RAW = "res/raw"; //$NON-NLS-1$
+
+   private static final String DRAWABLE = "res/drawable"; //$NON-NLS-1$
+
+   private static final String LAYOUT = "res/layout"; //$NON-NLS-1$
+
+   private static final String GAME_LAYOUT_FILE = "game_layout.xml"; //$NON-NLS-1$
+
+   private static final String PACKAGE_RESOURCE = "uk/co/eduardo/abaddon/ald/package.zip"; //$NON-NLS-1$
+
+   private static final String MANIFEST_FILE_NAME = ".export.cfg"; //$NON-NLS-1$
+
+   private static final String SEPARATOR = "|"; //$NON-NLS-1$
+
+   private static final String SEPARATOR_PATTERN = "\\|"; //$NON-NLS-1$
+
+   private static final int THREADS = Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors() ) );
+
+   private final Project project;
+
+   private final File exportDirectory;
+
+   private final ProgressListener listener;
+
+   /** What was copied into the export directory, keyed by the path relative to the export directory. */
+   private final Properties manifest = new Properties();
+
+   private volatile boolean cancelled;
+
+   /**
+    * @param project the project to export.
+    * @param exportDirectory the directory into which the project is exported.
+    * @param listener notified as files are exported.
+    */
+   public ProjectExporter( final Project project, final File exportDirectory, final ProgressListener listener )
+   {
+      this.project = project;
+      this.exportDirectory = exportDirectory;
+      this.listener = listener;
+   }
+
+   /**
+    * Stops the export as soon as the files being copied have been finished. Files that have been copied are kept and
+    * will not be copied again by the next export.
+    */
+   public void cancel()
+   {
+      this.cancelled = true;
+   }
+
+   /**
+    * @return whether the export has been cancelled.
+    */
+   public boolean isCancelled()
+   {
+      return this.cancelled;
+   }
+
+   /**
+    * Exports the project. This may take some time so should not be called on the Event Dispatch Thread.
+    *
+    * @throws IOException if any of the files could not be exported. The rest are still exported.
+    */
+   public void export() throws IOException
+   {
+      loadManifest();
+      final Map< File, File > copies = getCopies();
+      final Set< File > maps = new HashSet<>( this.project.getAvailableMapsModel().getAvailableMapFiles() );
+      final int total = copies.size() + 1;
+      IOException failure = null;
+
+      final ExecutorService workers = Executors.newFixedThreadPool( THREADS, new ThreadFactory()
+      {
+         @Override
+         public Thread newThread( final Runnable runnable )
+         {
+            final Thread thread = new Thread( runnable, "Project export" ); //$NON-NLS-1$
+            thread.setDaemon( true );
+            return thread;
+         }
+      } );
+      try
+      {
+         setupBaseFiles();
+         this.listener.progress( 1, total );
+
+         final List< Future< ? > > futures = new ArrayList<>();
+         for( final Map.Entry< File, File > copy : copies.entrySet() )
+         {
+            final File destination = copy.getKey();
+            final File source = copy.getValue();
+            futures.add( workers.submit( new Callable< Void >()
+            {
+               @Override
+               public Void call() throws IOException
+               {
+                  if( ProjectExporter.this.cancelled )
+                  {
+                     return null;
+                  }
+                  if( maps.contains( source ) )
+                  {
+                     compileIfChanged( source, destination );
+                  }
+                  else
+                  {
+                     copyIfChanged( source, destination );
+                  }
+                  return null;
+               }
+            } ) );
+         }
+
+         int done = 1;
+         for( final Future< ? > future : futures )
+         {
+            try
+            {
+               future.get();
+            }
+            catch( final ExecutionException e )
+            {
+               if( ( failure == null ) && ( e.getCause() instanceof IOException ) )
+               {
+                  failure = (IOException) e.getCause();
+               }
+               else if( failure == null )
+               {
+                  failure = new IOException( e.getCause() );
+               }
+            }
+            this.listener.progress( ++done, total );
+         }
+      }
+      catch( final InterruptedException e )
+      {
+         this.cancelled = true;
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         workers.shutdownNow();
+         saveManifest();
+      }
+      if( failure != null )
+      {
+         throw failure;
+      }
+   }
+
+   /**
+    * @return the source of each file to be copied, keyed by its destination.
+    */
+   private Map< File, File > getCopies()
+   {
+      final File raw = new File( this.exportDirectory, RAW );
+      final File drawable = new File( this.exportDirectory, DRAWABLE );
+      raw.mkdirs();
+      drawable.mkdirs();
+
+      // Later files replace earlier ones with the same name, as they did when the files were copied in turn.
+      final Map< File, File > copies = new LinkedHashMap<>();
+      // Maps are compiled into the raw directory rather than copied.
+      addCopies( copies, this.project.getAvailableMapsModel().getAvailableMapFiles(), raw );
+      // Tileset images go in the drawable directory and their descriptions in the raw directory.
+      addCopies( copies, this.project.getAvailableTilesetsModel().getAvailablePngTilesetFiles(), drawable );
+      addCopies( copies, this.project.getAvailableTilesetsModel().getAvailableDscTilesetFiles(), raw );
+      addCopies( copies, this.project.getAvailableNpcsModel().getAvailableNpcFiles(), drawable );
+      addCopies( copies, this.project.getAvailablePcsModel().getAvailablePcFiles(), drawable );
+      addCopies( copies, this.project.getAvailableMusicModel().getAvailableMusicFiles(), raw );
+      return copies;
+   }
+
+   private static void addCopies( final Map< File, File > copies, final List< File > sources, final File directory )
+   {
+      for( final File source : sources )
+      {
+         final File destination = new File( directory, source.getName() );
+         copies.remove( destination );
+         copies.put( destination, source );
+      }
+   }
+
+   /**
+    * Unzips the base files of the game into the export directory, filling in the project settings in the game layout.
+    */
+   private void setupBaseFiles() throws IOException
+   {
+      ZipFile zip = null;
+      try
+      {
+         final URL url = ClassLoader.getSystemResource( PACKAGE_RESOURCE );
+         if( url == null )
+         {
+            throw new IOException( "Failed to find zip file." ); //$NON-NLS-1$
+         }
+         zip = new ZipFile( new File( url.toURI() ) );
+         final Enumeration< ? extends ZipEntry > entries = zip.entries();
+         while( entries.hasMoreElements() && !this.cancelled )
+         {
+            final ZipEntry entry = entries.nextElement();
+            final File output = new File( this.exportDirectory, entry.getName() );
+            if( entry.isDirectory() )
+            {
+               output.mkdirs();
+            }
+            else if( entry.getName().equals( LAYOUT + "/" + GAME_LAYOUT_FILE ) ) //$NON-NLS-1$
+            {
+               writeLayout( zip, entry, output );
+            }
+            else
+            {
+               unzipIfChanged( zip, entry, output );
+            }
+         }
+      }
+      catch( final URISyntaxException e )
+      {
+         throw new IOException( "Failed to find zip file.", e ); //$NON-NLS-1$
+      }
+      finally
+      {
+         if( zip != null )
+         {
+            zip.close();
+         }
+      }
+   }
+
+   private void unzipIfChanged( final ZipFile zip, final ZipEntry entry, final File output ) throws IOException
+   {
+      final String key = entry.getName();
+      final String hash = Long.toHexString( entry.getCrc() );
+      final String[] record = getRecord( key );
+      if( isUnchanged( record, output ) && hash.equals( record[ 2 ] ) )
+      {
+         return;
+      }
+
+      output.getParentFile().mkdirs();
+      InputStream in = null;
+      OutputStream out = null;
+      try
+      {
+         in = zip.getInputStream( entry );
+         out = new BufferedOutputStream( new FileOutputStream( output ) );
+         FileUtilities.copy( in, out );
+      }
+      finally
+      {
+         if( in != null )
+         {
+            in.close();
+         }
+         if( out != null )
+         {
+            out.close();
+         }
+      }
+      putRecord( key, entry.getSize(), entry.getTime(), hash, output );
+   }
+
+   /**
+    * Writes the game layout with the placeholder tokens replaced by the project settings. The file is only written if
+    * its contents would change.
+    */
+   private void writeLayout( final ZipFile zip, final ZipEntry entry, final File output ) throws IOException
+   {
+      final ByteArrayOutputStream layout = new ByteArrayOutputStream();
+      final InputStream in = new BufferedInputStream( zip.getInputStream( entry ) );
+      try
+      {
+         FileUtilities.copy( in, layout );
+      }
+      finally
+      {
+         in.close();
+      }
+
+      final ProjectSettings settings = this.project.getSettings();
+      final Map< String, String > tokens = new HashMap<>();
+      tokens.put( ProjectSettings.TILE_WIDTH, Integer.toString( settings.get( ProjectSettings.TILE_WIDTH ) ) );
+      tokens.put( ProjectSettings.SPRITE_HEIGHT, Integer.toString( settings.get( ProjectSettings.SPRITE_HEIGHT ) ) );
+
+      final Charset charset = Charset.defaultCharset();
+      final byte[] contents = FileUtilities.replace( new String( layout.toByteArray(), charset ), tokens )
+                                           .getBytes( charset );
+      if( !output.isFile() || !Arrays.equals( contents, Files.readAllBytes( output.toPath() ) ) )
+      {
+         output.getParentFile().mkdirs();
+         Files.write( output.toPath(), contents );
+      }
+   }
+
+   private void copyIfChanged( final File source, final File destination ) throws IOException
+   {
+      final String key = getKey( destination );
+      final String[] record = getRecord( key );
+      String hash = null;
+      if( isUnchanged( record, destination ) )
+      {
+         if( record[ 0 ].equals( Long.toString( source.length() ) )
+             && record[ 1 ].equals( Long.toString( source.lastModified() ) ) )
+         {
+            return;
+         }
+         // The source has been touched; it only needs copying if its contents are different.
+         hash = FileUtilities.hash( source );
+         if( hash.equals( record[ 2 ] ) )
+         {
+            putRecord( key, source.length(), source.lastModified(), hash, destination );
+            return;
+         }
+      }
+
+      FileUtilities.copy( source, destination );
+      putRecord( key,
+                 source.length(),
+                 source.lastModified(),
+                 hash != null ? hash : FileUtilities.hash( source ),
+                 destination );
+   }
+
+   /**
+    * Compiles a map unless neither it nor its tileset description have changed since it was last compiled.
+    */
+   private void compileIfChanged( final File mapFile, final File destination ) throws IOException
+   {
+      final String tilesetName = this.project.getAvailableMapsModel().getTilesetName( mapFile );
+      if( tilesetName == null )
+      {
+         throw new IOException( "Failed to read map " + mapFile ); //$NON-NLS-1$
+      }
+      final File dscFile = new File( this.project.getAvailableTilesetsModel().getDirectory(),
+                                     AvailableTilesetsModel.getDscFileNameFor( tilesetName ) );
+
+      // The record covers both sources, separated by a slash.
+      final String sourceLength = mapFile.length() + "/" + dscFile.length(); //$NON-NLS-1$
+      final String sourceModified = mapFile.lastModified() + "/" + dscFile.lastModified(); //$NON-NLS-1$
+      final String key = getKey( destination );
+      final String[] record = getRecord( key );
+      String hash = null;
+      if( isUnchanged( record, destination ) )
+      {
+         if( record[ 0 ].equals( sourceLength ) && record[ 1 ].equals( sourceModified ) )
+         {
+            return;
+         }
+         hash = FileUtilities.hash( mapFile ) + "/" + FileUtilities.hash( dscFile ); //$NON-NLS-1$
+         if( hash.equals( record[ 2 ] ) )
+         {
+            putRecord( key, sourceLength, sourceModified, hash, destination );
+            return;
+         }
+      }
+
+      final MapDefinition map = MapFactory.readMap( mapFile );
+      final TileDescription description;
+      final InputStream dscStream = new BufferedInputStream( new FileInputStream( dscFile ) );
+      try
+      {
+         description = TileDescriptionReader.readStream( dscStream );
+      }
+      finally
+      {
+         dscStream.close();
+      }
+      if( description == null )
+      {
+         throw new IOException( "Failed to read tileset description " + dscFile ); //$NON-NLS-1$
+      }
+
+      final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( destination ) ) );
+      try
+      {
+         CompiledMap.write( out, map, description );
+      }
+      finally
+      {
+         out.close();
+      }
+      putRecord( key,
+                 sourceLength,
+                 sourceModified,
+                 hash != null ? hash : FileUtilities.hash( mapFile ) + "/" + FileUtilities.hash( dscFile ), //$NON-NLS-1$
+                 destination );
+   }
+
+   /**
+    * @return whether the destination has not been changed since it was recorded.
+    */
+   private static boolean isUnchanged( final String[] record, final File destination )
+   {
+      return ( record != null ) && destination.isFile() && record[ 3 ].equals( Long.toString( destination.length() ) )
+             && record[ 4 ].equals( Long.toString( destination.lastModified() ) );
+   }
+
+   /**
+    * @return the source length, source last modified time, hash, destination length and destination last modified time
+    *         recorded for the destination, or <code>null</code> if there is no valid record.
+    */
+   private String[] getRecord( final String key )
+   {
+      final String value;
+      synchronized( this.manifest )
+      {
+         value = this.manifest.getProperty( key );
+      }
+      if( value == null )
+      {
+         return null;
+      }
+      final String[] record = value.split( SEPARATOR_PATTERN );
+      return record.length == 5 ? record : null;
+   }
+
+   private void putRecord( final String key,
+                           final long sourceLength,
+                           final long sourceModified,
+                           final String hash,
+                           final File destination )
+   {
+      putRecord( key, Long.toString( sourceLength ), Long.toString( sourceModified ), hash, destination );
+   }
+
+   private void putRecord( final String key,
+                           final String sourceLength,
+                           final String sourceModified,
+                           final String hash,
+                           final File destination )
+   {
+      final String value = sourceLength + SEPARATOR + sourceModified + SEPARATOR + hash + SEPARATOR + destination.length()
+                           + SEPARATOR + destination.lastModified();
+      synchronized( this.manifest )
+      {
+         this.manifest.setProperty( key, value );
+      }
+   }
+
+   private String getKey( final File destination )
+   {
+      final String root = this.exportDirectory.getAbsolutePath() + File.separator;
+      final String path = destination.getAbsolutePath();
+      return ( path.startsWith( root ) ? path.substring( root.length() ) : path ).replace( File.separatorChar, '/' );
+   }
+
+   private void loadManifest()
+   {
+      final File source = new File( this.exportDirectory, MANIFEST_FILE_NAME );
+      if( !source.isFile() )
+      {
+         return;
+      }
+      InputStream stream = null;
+      try
+      {
+         stream = new BufferedInputStream( new FileInputStream( source ) );
+         this.manifest.load( stream );
+      }
+      catch( final IOException e )
+      {
+         // Everything will be copied again.
+         this.manifest.clear();
+      }
+      finally
+      {
+         if( stream != null )
+         {
+            try
+            {
+               stream.close();
+            }
+            catch( final IOException e )
+            {
+               // Ignore.
+            }
+         }
+      }
+   }
+
+   private void saveManifest()
+   {
+      OutputStream stream = null;
+      try
+      {
+         stream = new BufferedOutputStream( new FileOutputStream( new File( this.exportDirectory, MANIFEST_FILE_NAME ) ) );
+         synchronized( this.manifest )
+         {
+            this.manifest.store( stream, null );
+         }
+      }
+      catch( final IOException e )
+      {
+         // Everything will be copied again next time.
+      }
+      finally
+      {
+         if( stream != null )
+         {
+            try
+            {
+               stream.close();
+            }
+            catch( final IOException e )
+            {
+               // Ignore.
+            }
+         }
+      }
+   }
+}
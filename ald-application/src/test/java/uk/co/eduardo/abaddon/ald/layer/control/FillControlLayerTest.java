@@ -0,0 +1,123 @@
+package uk.co.eduardo.abaddon.ald.layer.control;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import javax.swing.undo.UndoableEdit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
+import uk.co.eduardo.abaddon.util.Coordinate;
+import uk.co.eduardo.map.sections.MapSection;
+
+/**
+ * Checks the scanline flood fill of {@link FillControlLayer}.
+ *
+ * @author Ed
+ */
+public class FillControlLayerTest
+{
+   /** Large enough that a fill recursing once per tile would overflow the stack. */
+   private static final int SIZE = 1024;
+
+   private MapData data;
+
+   private UndoManager undoManager;
+
+   /**
+    * Creates a large map whose base layer is all tile 0.
+    */
+   @Before
+   public void setUp()
+   {
+      final int[][][] tiles = new int[ 3 ][ SIZE ][ SIZE ];
+      for( int layer = 1; layer < tiles.length; layer++ )
+      {
+         for( final int[] row : tiles[ layer ] )
+         {
+            Arrays.fill( row, -1 );
+         }
+      }
+      this.data = new MapData( new MapSection( SIZE, SIZE, tiles ) );
+      this.undoManager = new UndoManager();
+   }
+
+   /**
+    * Discards the history.
+    */
+   @After
+   public void tearDown()
+   {
+      this.undoManager.dispose();
+   }
+
+   /**
+    * Filling a large open area covers all of it in a single edit, which undoes in one step.
+    */
+   @Test
+   public void testFillLargeOpenArea()
+   {
+      final UndoableEdit edit = fill( SIZE / 2, SIZE / 2, 5 );
+      assertNotNull( edit );
+      this.undoManager.addEdit( edit );
+      assertEquals( 1, this.undoManager.getUndoStackSize() );
+      assertEquals( SIZE * SIZE, this.data.getTileCount( 0, 5 ) );
+
+      this.undoManager.undo();
+      assertEquals( SIZE * SIZE, this.data.getTileCount( 0, 0 ) );
+   }
+
+   /**
+    * A fill stops at tiles that differ from the seed, following a winding path between them.
+    */
+   @Test
+   public void testFillFollowsWalls()
+   {
+      // Walls across every other row, each with a gap at alternate ends, make a single path that zig-zags down the map.
+      int path = SIZE * SIZE;
+      for( int row = 1; row < SIZE; row += 2 )
+      {
+         final int gap = ( ( row / 2 ) % 2 ) == 0 ? SIZE - 1 : 0;
+         for( int col = 0; col < SIZE; col++ )
+         {
+            if( col != gap )
+            {
+               this.data.setData( 0, row, col, 1 );
+               path--;
+            }
+         }
+      }
+
+      this.undoManager.addEdit( fill( 0, 0, 5 ) );
+      assertEquals( 1, this.undoManager.getUndoStackSize() );
+      assertEquals( path, this.data.getTileCount( 0, 5 ) );
+      assertEquals( 0, this.data.getTileCount( 0, 0 ) );
+      assertEquals( 1, this.data.getTile( 0, 1, 0 ) );
+   }
+
+   /**
+    * Filling with the tile already under the seed changes nothing and makes no edit.
+    */
+   @Test
+   public void testFillWithSameTile()
+   {
+      assertNull( fill( 3, 3, 0 ) );
+   }
+
+   // ================| Private Methods |====================================
+
+   private UndoableEdit fill( final int x, final int y, final int tile )
+   {
+      return new FillControlLayer.FloodFillerContext( this.data, 0 ).floodFill( new Coordinate( x, y ), new int[]
+      {
+         tile
+      } );
+   }
+}
@@ -0,0 +1,522 @@
+package uk.co.eduardo.abaddon.map;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.eduardo.abaddon.graphics.Animation;
+import uk.co.eduardo.abaddon.graphics.AnimationFactory;
+import uk.co.eduardo.abaddon.graphics.layer.Direction;
+import uk.co.eduardo.abaddon.graphics.layer.NPC;
+import uk.co.eduardo.abaddon.tileset.TileDescription;
+import uk.co.eduardo.abaddon.util.Coordinate;
+import uk.co.eduardo.abaddon.util.ResourceUtilities;
+import uk.co.eduardo.map.sections.ActionSection;
+import uk.co.eduardo.map.sections.ActionSectionProducer;
+import uk.co.eduardo.map.sections.HeaderSection;
+import uk.co.eduardo.map.sections.MapSection;
+import uk.co.eduardo.map.sections.MonsterSection;
+import uk.co.eduardo.map.sections.MonsterSectionProducer;
+import uk.co.eduardo.map.sections.NpcSection;
+import uk.co.eduardo.map.sections.TileGrid;
+
+/**
+ * A map compiled for the game engine, along with the walkability of each of its tiles.
+ * <p>
+ * Compiled maps are written when a project is exported and are laid out so that they can be loaded with a single read.
+ * Every layer is a dense block of tiles, the walkability of the tiles is worked out from the tileset description in
+ * advance, and every string (including the names of the NPC drawables) is held once in a string table. The layout is:
+ *
+ * <pre>
+ * short  {@link #VERSION}
+ * int    length of the rest of the map in bytes
+ * short  string count
+ * per string:
+ *   short  length in bytes
+ *   bytes  UTF-8 encoded string
+ * short  map name (string index)
+ * short  tileset name (string index)
+ * short  start x
+ * short  start y
+ * byte   start layer index
+ * short  start direction ({@link Direction#offset})
+ * short  width
+ * short  height
+ * byte   layer count
+ * per layer:
+ *   short[ width * height ]  tiles row by row, -1 where there is no tile
+ * per layer:
+ *   long[ ( width * height + 63 ) / 64 ]  bit set where the tile can be walked on
+ * short  NPC count
+ * per NPC:
+ *   short  type
+ *   short  drawable name (string index)
+ *   short  x
+ *   short  y
+ *   byte   layer index
+ *   byte   1 if fixed
+ *   short  speech count
+ *   per speech:
+ *     short  event
+ *     short  speech (string index)
+ * int    length of the action section, followed by the section encoded as in a version 0 map
+ * int    length of the monster section, followed by the section encoded as in a version 0 map
+ * </pre>
+ *
+ * The version number cannot be mistaken for that of an editor map, so {@link MapFactory#readMap(InputStream)} reads
+ * either.
+ *
+ * @author Ed
+ */
+public class CompiledMap implements TileGrid
+{
+   // ================| Fields |====================================
+
+   /** The number at the start of a compiled map, in place of the version number of an editor map. */
+   public static final int VERSION = 0x4143;
+
+   private static final Charset UTF8 = Charset.forName( "UTF-8" ); //$NON-NLS-1$
+
+   private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+
+   private final MapDefinition mapDefinition;
+
+   private final int width;
+
+   private final int height;
+
+   /** The tiles of each layer, row by row. */
+   private final short[][] tiles;
+
+   /** One bit per tile of each layer, set where the tile can be walked on. */
+   private final long[][] walkable;
+
+   // ================| Constructors |====================================
+
+   private CompiledMap( final ByteBuffer buffer ) throws IOException
+   {
+      final String[] strings = readStrings( buffer );
+
+      final HeaderSection header = new HeaderSection( getString( strings, buffer.getShort() ),
+                                                      getString( strings, buffer.getShort() ),
+                                                      new Coordinate( buffer.getShort(), buffer.getShort() ),
+                                                      buffer.get() & 0xFF,
+                                                      Direction.fromOffset( buffer.getShort() ) );
+
+      this.width = buffer.getShort() & MAX_UNSIGNED_SHORT;
+      this.height = buffer.getShort() & MAX_UNSIGNED_SHORT;
+      final int layerCount = buffer.get() & 0xFF;
+      final int tileCount = this.width * this.height;
+
+      this.tiles = new short[ layerCount ][ tileCount ];
+      for( final short[] layer : this.tiles )
+      {
+         buffer.asShortBuffer().get( layer );
+         skip( buffer, tileCount * 2 );
+      }
+      this.walkable = new long[ layerCount ][ getBitsetLength( tileCount ) ];
+      for( final long[] layer : this.walkable )
+      {
+         buffer.asLongBuffer().get( layer );
+         skip( buffer, layer.length * 8 );
+      }
+
+      final NpcSection npcs = readNpcs( buffer, strings );
+
+      final ByteBuffer actions = slice( buffer );
+      final ByteBuffer monsters = slice( buffer );
+      this.mapDefinition = new MapDefinition( header,
+                                              npcs,
+                                              new ActionSectionProducer().readSection( actions ),
+                                              new MapSection( this ),
+                                              new MonsterSectionProducer().readSection( monsters ),
+                                              this );
+   }
+
+   // ================| Public Methods |====================================
+
+   /**
+    * Reads a compiled map. The whole map is read from the stream in one go before any of it is decoded.
+    *
+    * @param stream the stream from which to read.
+    * @return the compiled map.
+    * @throws IOException if a problem occurs reading from the stream or it does not hold a compiled map.
+    */
+   public static CompiledMap read( final InputStream stream ) throws IOException
+   {
+      final DataInputStream dis = new DataInputStream( stream );
+      final int version = dis.readShort();
+      if( version != VERSION )
+      {
+         throw new IOException( "Not a compiled map" ); //$NON-NLS-1$
+      }
+      return readContents( dis );
+   }
+
+   /**
+    * Compiles a map.
+    *
+    * @param stream the stream to which the compiled map is written.
+    * @param map the map to compile.
+    * @param description the description of the map's tileset, from which the walkability of the tiles is worked out.
+    * @throws IOException if a problem occurs writing to the stream, or the map is too large to compile.
+    */
+   public static void write( final DataOutputStream stream, final MapDefinition map, final TileDescription description )
+      throws IOException
+   {
+      final Map< String, Integer > stringIndices = new HashMap<>();
+      final List< String > strings = new ArrayList<>();
+
+      // Everything after the string table refers to the strings by index, so write it first and the table afterwards.
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream body = new DataOutputStream( bytes );
+
+      final HeaderSection header = map.headerSection;
+      body.writeShort( getIndex( header.getMapName(), stringIndices, strings ) );
+      body.writeShort( getIndex( header.getTilesetName(), stringIndices, strings ) );
+      body.writeShort( header.getStartPos().x );
+      body.writeShort( header.getStartPos().y );
+      body.write( header.getLayerIndex() );
+      body.writeShort( header.getDirection().offset );
+
+      writeTiles( body, map.mapsSection, description );
+
+      final NPC[] npcs = map.npcsSection.getNpcs();
+      body.writeShort( npcs.length );
+      for( final NPC npc : npcs )
+      {
+         body.writeShort( npc.getType() );
+         body.writeShort( getIndex( getDrawableName( npc.getType() ), stringIndices, strings ) );
+         body.writeShort( npc.getTilePosition().x );
+         body.writeShort( npc.getTilePosition().y );
+         body.write( npc.getLayerIndex() );
+         body.write( npc.isFixed() ? 1 : 0 );
+         body.writeShort( npc.getSpeechCount() );
+         for( int s = 0; s < npc.getSpeechCount(); s++ )
+         {
+            body.writeShort( npc.getSpeechEvent( s ) );
+            body.writeShort( getIndex( npc.getSpeech( s ), stringIndices, strings ) );
+         }
+      }
+
+      final ByteArrayOutputStream section = new ByteArrayOutputStream();
+      new ActionSectionProducer().writeSection( new DataOutputStream( section ), map.actionsSection );
+      body.writeInt( section.size() );
+      section.writeTo( body );
+
+      section.reset();
+      new MonsterSectionProducer().writeSection( new DataOutputStream( section ), map.monstersSection );
+      body.writeInt( section.size() );
+      section.writeTo( body );
+      body.flush();
+
+      final ByteArrayOutputStream table = new ByteArrayOutputStream();
+      final DataOutputStream tableStream = new DataOutputStream( table );
+      tableStream.writeShort( strings.size() );
+      for( final String string : strings )
+      {
+         final byte[] encoded = string.getBytes( UTF8 );
+         if( encoded.length > MAX_UNSIGNED_SHORT )
+         {
+            throw new IOException( "String too long to compile: " + string ); //$NON-NLS-1$
+         }
+         tableStream.writeShort( encoded.length );
+         tableStream.write( encoded );
+      }
+      tableStream.flush();
+
+      stream.writeShort( VERSION );
+      stream.writeInt( table.size() + bytes.size() );
+      table.writeTo( stream );
+      bytes.writeTo( stream );
+      stream.flush();
+   }
+
+   /**
+    * @return the map. Its walk checks are answered by this compiled map.
+    */
+   public MapDefinition getMapDefinition()
+   {
+      return this.mapDefinition;
+   }
+
+   /**
+    * @param layer the map layer.
+    * @param row the row within the layer.
+    * @param col the column within the layer.
+    * @return whether the tile at that position can be walked on. Positions with no tile can always be walked on.
+    */
+   public boolean canWalk( final int layer, final int row, final int col )
+   {
+      final int index = ( row * this.width ) + col;
+      return ( this.walkable[ layer ][ index >> 6 ] & ( 1L << index ) ) != 0;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getWidth()
+   {
+      return this.width;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getHeight()
+   {
+      return this.height;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getLayerCount()
+   {
+      return this.tiles.length;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getTile( final int layer, final int row, final int col )
+   {
+      return this.tiles[ layer ][ ( row * this.width ) + col ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int[] getRow( final int layer, final int row, final int startCol, final int length, final int[] dest )
+   {
+      final int[] result = ( ( dest == null ) || ( dest.length < length ) ) ? new int[ length ] : dest;
+      final short[] source = this.tiles[ layer ];
+      final int start = ( row * this.width ) + startCol;
+      for( int col = 0; col < length; col++ )
+      {
+         result[ col ] = source[ start + col ];
+      }
+      return result;
+   }
+
+   // ================| Default Methods |====================================
+
+   /**
+    * Reads a compiled map whose version number has already been read.
+    */
+   static CompiledMap readContents( final DataInputStream stream ) throws IOException
+   {
+      final int length = stream.readInt();
+      if( length < 0 )
+      {
+         throw new IOException( "Corrupt compiled map" ); //$NON-NLS-1$
+      }
+      final byte[] data = new byte[ length ];
+      stream.readFully( data );
+      try
+      {
+         return new CompiledMap( ByteBuffer.wrap( data ) );
+      }
+      catch( final BufferUnderflowException e )
+      {
+         throw new IOException( "Truncated compiled map", e ); //$NON-NLS-1$
+      }
+   }
+
+   /**
+    * Looks up the index of a string in the string table being compiled, adding it if it is not there yet. Indices are
+    * written as unsigned shorts, as is the size of the table, so the table holds at most 65535 strings.
+    *
+    * @param string the string.
+    * @param indices the index of each string already in the table.
+    * @param strings the table.
+    * @return the index of the string.
+    * @throws IOException if the string is new and the table is full.
+    */
+   static int getIndex( final String string, final Map< String, Integer > indices, final List< String > strings )
+      throws IOException
+   {
+      final Integer index = indices.get( string );
+      if( index != null )
+      {
+         return index.intValue();
+      }
+      if( strings.size() >= MAX_UNSIGNED_SHORT )
+      {
+         throw new IOException( "Too many strings to compile" ); //$NON-NLS-1$
+      }
+      indices.put( string, Integer.valueOf( strings.size() ) );
+      strings.add( string );
+      return strings.size() - 1;
+   }
+
+   // ================| Private Methods |====================================
+
+   private static void writeTiles( final DataOutputStream stream,
+                                   final MapSection section,
+                                   final TileDescription description ) throws IOException
+   {
+      final int width = section.getWidth();
+      final int height = section.getHeight();
+      final int layerCount = section.getLayerCount();
+      if( ( width > MAX_UNSIGNED_SHORT ) || ( height > MAX_UNSIGNED_SHORT ) || ( layerCount > 0xFF ) )
+      {
+         throw new IOException( "Map too large to compile" ); //$NON-NLS-1$
+      }
+      stream.writeShort( width );
+      stream.writeShort( height );
+      stream.write( layerCount );
+
+      final long[][] walkable = new long[ layerCount ][ getBitsetLength( width * height ) ];
+      int[] row = new int[ width ];
+      for( int layer = 0; layer < layerCount; layer++ )
+      {
+         for( int y = 0; y < height; y++ )
+         {
+            row = section.getRow( layer, y, 0, width, row );
+            for( int x = 0; x < width; x++ )
+            {
+               stream.writeShort( row[ x ] );
+               if( canWalk( description, row[ x ] ) )
+               {
+                  final int index = ( y * width ) + x;
+                  walkable[ layer ][ index >> 6 ] |= 1L << index;
+               }
+            }
+         }
+      }
+      for( final long[] layer : walkable )
+      {
+         for( final long bits : layer )
+         {
+            stream.writeLong( bits );
+         }
+      }
+   }
+
+   /**
+    * A tile can be walked on if at least one of its edges is not blocked, as for
+    * {@link uk.co.eduardo.abaddon.tileset.Tileset#canWalk(int)}. Tiles the description does not cover are blocked.
+    */
+   private static boolean canWalk( final TileDescription description, final int tile )
+   {
+      if( tile < 0 )
+      {
+         return true;
+      }
+      if( tile >= description.walkable.length )
+      {
+         return false;
+      }
+      final int blocked = TileDescription.LEFT | TileDescription.RIGHT | TileDescription.TOP | TileDescription.BOTTOM
+                          | TileDescription.TL_BR_DIAG | TileDescription.TR_BL_DIAG;
+      return ( description.walkable[ tile ] & blocked ) != blocked;
+   }
+
+   private static NpcSection readNpcs( final ByteBuffer buffer, final String[] strings ) throws IOException
+   {
+      // Each drawable is only looked up once however many NPCs use it.
+      final int[] resourceIds = new int[ strings.length ];
+
+      final NPC[] npcs = new NPC[ buffer.getShort() & MAX_UNSIGNED_SHORT ];
+      for( int n = 0; n < npcs.length; n++ )
+      {
+         final int type = buffer.getShort();
+         final int drawable = buffer.getShort() & MAX_UNSIGNED_SHORT;
+         final int x = buffer.getShort();
+         final int y = buffer.getShort();
+         final int layerIndex = buffer.get() & 0xFF;
+         final boolean fixed = buffer.get() == 1;
+         final int speechCount = buffer.getShort() & MAX_UNSIGNED_SHORT;
+
+         if( resourceIds[ drawable ] == 0 )
+         {
+            resourceIds[ drawable ] = ResourceUtilities.getDrawableResourceId( getString( strings, drawable ) );
+         }
+         final Animation anim = AnimationFactory.getAnimation( resourceIds[ drawable ] );
+
+         npcs[ n ] = new NPC( anim, x, y, type, fixed, speechCount );
+         npcs[ n ].setLayerIndex( layerIndex );
+         for( int s = 0; s < speechCount; s++ )
+         {
+            final int event = buffer.getShort();
+            npcs[ n ].setSpeech( s, getString( strings, buffer.getShort() ), event );
+         }
+      }
+      return new NpcSection( npcs );
+   }
+
+   private static String[] readStrings( final ByteBuffer buffer )
+   {
+      final String[] strings = new String[ buffer.getShort() & MAX_UNSIGNED_SHORT ];
+      for( int s = 0; s < strings.length; s++ )
+      {
+         final int length = buffer.getShort() & MAX_UNSIGNED_SHORT;
+         if( length > buffer.remaining() )
+         {
+            throw new BufferUnderflowException();
+         }
+         strings[ s ] = new String( buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8 );
+         skip( buffer, length );
+      }
+      return strings;
+   }
+
+   private static String getString( final String[] strings, final int index ) throws IOException
+   {
+      final int unsigned = index & MAX_UNSIGNED_SHORT;
+      if( unsigned >= strings.length )
+      {
+         throw new IOException( "Corrupt string index " + unsigned ); //$NON-NLS-1$
+      }
+      return strings[ unsigned ];
+   }
+
+   /**
+    * @return the name of the drawable resource holding the sprite for NPCs of the given type.
+    */
+   private static String getDrawableName( final int type )
+   {
+      return "npc" + String.valueOf( type ); //$NON-NLS-1$
+   }
+
+   /**
+    * @return the section that follows in the buffer, which is advanced past it.
+    */
+   private static ByteBuffer slice( final ByteBuffer buffer )
+   {
+      final int length = buffer.getInt();
+      final ByteBuffer section = buffer.slice();
+      skip( buffer, length );
+      section.limit( length );
+      return section;
+   }
+
+   private static int getBitsetLength( final int bits )
+   {
+      return ( bits + 63 ) / 64;
+   }
+
+   private static void skip( final ByteBuffer buffer, final int count )
+   {
+      if( ( count < 0 ) || ( count > buffer.remaining() ) )
+      {
+         throw new BufferUnderflowException();
+      }
+      buffer.position( buffer.position() + count );
+   }
+}
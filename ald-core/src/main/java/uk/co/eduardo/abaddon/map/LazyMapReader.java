@@ -0,0 +1,189 @@
+package uk.co.eduardo.abaddon.map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import uk.co.eduardo.map.sections.ActionSection;
+import uk.co.eduardo.map.sections.FileSection;
+import uk.co.eduardo.map.sections.HeaderSection;
+import uk.co.eduardo.map.sections.MapSection;
+import uk.co.eduardo.map.sections.MonsterSection;
+import uk.co.eduardo.map.sections.NpcSection;
+import uk.co.eduardo.map.sections.SectionType;
+
+/**
+ * Reads the whole of a map file into the heap in one go, and decodes each section from that buffer only when it is
+ * first asked for.
+ * <p>
+ * Tools that only need part of a map (e.g. the header or the tile grid) never pay for decoding the rest of it. Version 1
+ * maps are looked up through their table of contents; version 0 maps have none, so the sections before the one asked
+ * for are skipped over without being decoded.
+ *
+ * @author Ed
+ */
+public class LazyMapReader implements Closeable
+{
+   // ================| Fields |====================================
+
+   private final MapVersion mapVersion;
+
+   private final FileSection[] sections = new FileSection[ SectionType.values().length ];
+
+   /** The map data, positioned immediately after the version number. */
+   private ByteBuffer buffer;
+
+   // ================| Constructors |====================================
+
+   /**
+    * @param file the map file to read.
+    * @throws IOException if a problem occurs reading from the file or the map version is not supported.
+    */
+   public LazyMapReader( final File file ) throws IOException
+   {
+      final RandomAccessFile raf = new RandomAccessFile( file, "r" ); //$NON-NLS-1$
+      try
+      {
+         // The file is read into the heap rather than memory mapped. On some platforms a mapped file cannot be
+         // overwritten until the mapping has been garbage collected, which would stop a map that has just been read
+         // from being saved.
+         final FileChannel channel = raf.getChannel();
+         final long size = channel.size();
+         if( size > Integer.MAX_VALUE )
+         {
+            throw new IOException( "Map file too large " + file ); //$NON-NLS-1$
+         }
+         this.buffer = ByteBuffer.allocate( (int) size );
+         while( this.buffer.hasRemaining() && ( channel.read( this.buffer ) >= 0 ) )
+         {
+            // Keep reading until the buffer is full.
+         }
+         this.buffer.flip();
+      }
+      finally
+      {
+         raf.close();
+      }
+
+      if( this.buffer.remaining() < 2 )
+      {
+         throw new IOException( "Truncated map file " + file ); //$NON-NLS-1$
+      }
+
+      final int version = this.buffer.getShort();
+      this.mapVersion = MapFactory.getMapVersion( version );
+      if( this.mapVersion == null )
+      {
+         throw new IOException( "Unsupported map version " + version + " in " + file ); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      this.buffer = this.buffer.slice();
+   }
+
+   // ================| Public Methods |====================================
+
+   /**
+    * @return the version number of the map file.
+    */
+   public int getVersion()
+   {
+      return this.mapVersion.getVersion();
+   }
+
+   /**
+    * @return the header section of the map.
+    * @throws IOException if the section could not be decoded.
+    */
+   public HeaderSection getHeaderSection() throws IOException
+   {
+      return (HeaderSection) getSection( SectionType.HEADER );
+   }
+
+   /**
+    * @return the NPC section of the map.
+    * @throws IOException if the section could not be decoded.
+    */
+   public NpcSection getNpcSection() throws IOException
+   {
+      return (NpcSection) getSection( SectionType.NPCS );
+   }
+
+   /**
+    * @return the action section of the map.
+    * @throws IOException if the section could not be decoded.
+    */
+   public ActionSection getActionSection() throws IOException
+   {
+      return (ActionSection) getSection( SectionType.ACTIONS );
+   }
+
+   /**
+    * @return the tile grid section of the map.
+    * @throws IOException if the section could not be decoded.
+    */
+   public MapSection getMapSection() throws IOException
+   {
+      return (MapSection) getSection( SectionType.MAP );
+   }
+
+   /**
+    * @return the monster section of the map.
+    * @throws IOException if the section could not be decoded.
+    */
+   public MonsterSection getMonsterSection() throws IOException
+   {
+      return (MonsterSection) getSection( SectionType.MONSTERS );
+   }
+
+   /**
+    * Decodes all of the sections of the map that have not already been decoded.
+    *
+    * @return the whole map.
+    * @throws IOException if any of the sections could not be decoded.
+    */
+   public MapDefinition getMapDefinition() throws IOException
+   {
+      return new MapDefinition( getHeaderSection(),
+                                getNpcSection(),
+                                getActionSection(),
+                                getMapSection(),
+                                getMonsterSection() );
+   }
+
+   /**
+    * Releases the file data. Sections that have already been decoded remain valid.
+    */
+   @Override
+   public void close()
+   {
+      this.buffer = null;
+   }
+
+   // ================| Private Methods |====================================
+
+   private synchronized FileSection getSection( final SectionType type ) throws IOException
+   {
+      FileSection section = this.sections[ type.ordinal() ];
+      if( section == null )
+      {
+         if( this.buffer == null )
+         {
+            throw new IOException( "The map reader has been closed" ); //$NON-NLS-1$
+         }
+
+         try
+         {
+            section = this.mapVersion.readSection( this.buffer, type );
+         }
+         catch( final BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e )
+         {
+            throw new IOException( "Corrupt " + type + " section in map", e ); //$NON-NLS-1$ //$NON-NLS-2$
+         }
+         this.sections[ type.ordinal() ] = section;
+      }
+      return section;
+   }
+}
@@ -34,6 +34,9 @@ public class MapDefinition
    /** Map monster information */
    public final MonsterSection monstersSection;
 
+   /** The map as compiled for the game engine, holding the walkability of its tiles, or <code>null</code>. */
+   private final CompiledMap compiledMap;
+
    /** Towns have this string in their map name. */
    private static final String TOWN_ID = "town"; //$NON-NLS-1$
 
@@ -57,6 +60,24 @@ public class MapDefinition
                          final ActionSection actions,
                          final MapSection maps,
                          final MonsterSection monsters )
+   {
+      this( header, npcs, actions, maps, monsters, null );
+   }
+
+   /**
+    * @param header the header section of the map.
+    * @param npcs the NPC section of the map.
+    * @param actions the actions section of the map.
+    * @param maps the tile section of the map.
+    * @param monsters the monster section of the map.
+    * @param compiledMap the compiled map the sections were read from, or <code>null</code> if the map was not compiled.
+    */
+   MapDefinition( final HeaderSection header,
+                  final NpcSection npcs,
+                  final ActionSection actions,
+                  final MapSection maps,
+                  final MonsterSection monsters,
+                  final CompiledMap compiledMap )
    {
       if( ( header == null ) || ( npcs == null ) || ( actions == null ) || ( maps == null ) || ( monsters == null ) )
       {
@@ -68,6 +89,7 @@ public class MapDefinition
       this.actionsSection = actions;
       this.mapsSection = maps;
       this.monstersSection = monsters;
+      this.compiledMap = compiledMap;
    }
 
    // ================| Public Methods |====================================
@@ -90,6 +112,25 @@ public class MapDefinition
       return this.mapName;
    }
 
+   /**
+    * Checks whether a tile of the map can be walked on. A compiled map answers from the walkability worked out when it
+    * was compiled, without looking at the tileset; other maps look up the tile in the tileset.
+    *
+    * @param tileset the tileset of the map.
+    * @param layer the map layer.
+    * @param row the row within the layer.
+    * @param col the column within the layer.
+    * @return whether the tile at that position can be walked on.
+    */
+   public boolean canWalk( final Tileset tileset, final int layer, final int row, final int col )
+   {
+      if( this.compiledMap != null )
+      {
+         return this.compiledMap.canWalk( layer, row, col );
+      }
+      return tileset.canWalk( this.mapsSection.getTile( layer, row, col ) );
+   }
+
    /**
     * @return the map name without identifying suffixes
     */
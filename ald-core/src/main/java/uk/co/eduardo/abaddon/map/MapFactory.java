@@ -2,6 +2,7 @@ package uk.co.eduardo.abaddon.map;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -20,10 +21,13 @@ public class MapFactory
    static
    {
       Versions.add( new Version0Map() );
+      Versions.add( new Version1Map() );
    }
 
    /**
-    * Detects the version number of the serialized map and uses the appropriate read to deserialize the map.
+    * Detects the version number of the serialized map and uses the appropriate read to deserialize the map. Maps that
+    * have been compiled for the game engine are read as a {@link CompiledMap}, which then answers the walk checks of the
+    * returned map through {@link MapDefinition#canWalk(uk.co.eduardo.abaddon.tileset.Tileset, int, int, int)}.
     *
     * @param stream the stream from which to read.
     * @return the read {@link MapDefinition}.
@@ -33,10 +37,51 @@ public class MapFactory
    {
       final DataInputStream dis = new DataInputStream( stream );
       final int version = dis.readShort();
+      if( version == CompiledMap.VERSION )
+      {
+         return CompiledMap.readContents( dis ).getMapDefinition();
+      }
 
       return getMapVersion( version ).readMap( dis );
    }
 
+   /**
+    * Reads the whole of a map file.
+    * <p>
+    * The file is read through a {@link LazyMapReader}, which reads the whole file in one go and then decodes each section
+    * from memory.
+    *
+    * @param file the map file to read.
+    * @return the read {@link MapDefinition}.
+    * @throws IOException if a problem occurs reading from the file.
+    */
+   public static MapDefinition readMap( final File file ) throws IOException
+   {
+      final LazyMapReader reader = openMap( file );
+      try
+      {
+         return reader.getMapDefinition();
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /**
+    * Opens a map file for reading without decoding any of it. Each section is decoded on demand.
+    * <p>
+    * The caller is responsible for closing the returned reader.
+    *
+    * @param file the map file to read.
+    * @return a reader for the map.
+    * @throws IOException if a problem occurs reading from the file or the map version is not supported.
+    */
+   public static LazyMapReader openMap( final File file ) throws IOException
+   {
+      return new LazyMapReader( file );
+   }
+
    /**
     * Uses the latest encoding for serializing the map.
     *
@@ -52,7 +97,11 @@ public class MapFactory
       latestMapVersion.writeMap( dos, map );
    }
 
-   private static MapVersion getMapVersion( final int version )
+   /**
+    * @param version the version number read from a map file.
+    * @return the reader/writer for that version, or <code>null</code> if the version is not supported.
+    */
+   static MapVersion getMapVersion( final int version )
    {
       for( final MapVersion mapVersion : Versions )
       {
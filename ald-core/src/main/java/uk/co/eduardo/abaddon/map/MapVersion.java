@@ -3,6 +3,10 @@ package uk.co.eduardo.abaddon.map;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import uk.co.eduardo.map.sections.FileSection;
+import uk.co.eduardo.map.sections.SectionType;
 
 /**
  * Reads/writes a {@link MapDefinition}.
@@ -23,6 +27,17 @@ public interface MapVersion
     */
    MapDefinition readMap( DataInputStream stream ) throws IOException;
 
+   /**
+    * Decodes a single section of the map straight from a buffer, without decoding any of the others.
+    *
+    * @param buffer the map data, positioned immediately after the version number. The position of the buffer is not
+    *           modified.
+    * @param type the section to read.
+    * @return the read section.
+    * @throws IOException if the buffer does not hold a valid map.
+    */
+   FileSection readSection( ByteBuffer buffer, SectionType type ) throws IOException;
+
    /**
     * @param stream the stream to which the map is to be written.
     * @param map the map to write.
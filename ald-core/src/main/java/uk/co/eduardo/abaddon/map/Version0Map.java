@@ -3,12 +3,15 @@ package uk.co.eduardo.abaddon.map;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import uk.co.eduardo.map.sections.ActionSectionProducer;
+import uk.co.eduardo.map.sections.FileSection;
 import uk.co.eduardo.map.sections.HeaderSectionProducer;
 import uk.co.eduardo.map.sections.MapSectionProducer;
 import uk.co.eduardo.map.sections.MonsterSectionProducer;
 import uk.co.eduardo.map.sections.NpcSectionProducer;
+import uk.co.eduardo.map.sections.SectionType;
 
 /**
  * Support for version 0 map files.
@@ -39,6 +42,27 @@ public class Version0Map implements MapVersion
                                 new MonsterSectionProducer().readSection( stream ) );
    }
 
+   /**
+    * {@inheritDoc}
+    * <p>
+    * Version 0 maps store their sections back to back with no index, so the preceding sections are skipped over (but
+    * not decoded) to find the requested one.
+    */
+   @Override
+   public FileSection readSection( final ByteBuffer buffer, final SectionType type ) throws IOException
+   {
+      final ByteBuffer view = buffer.duplicate();
+      for( final SectionType section : SectionType.values() )
+      {
+         if( section == type )
+         {
+            return section.createProducer().readSection( view );
+         }
+         section.createProducer().skipSection( view );
+      }
+      throw new IllegalArgumentException( "Unknown section type " + type ); //$NON-NLS-1$
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -0,0 +1,247 @@
+package uk.co.eduardo.abaddon.map;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import uk.co.eduardo.map.sections.ActionSection;
+import uk.co.eduardo.map.sections.ActionSectionProducer;
+import uk.co.eduardo.map.sections.FileSection;
+import uk.co.eduardo.map.sections.FileSectionProducer;
+import uk.co.eduardo.map.sections.HeaderSection;
+import uk.co.eduardo.map.sections.HeaderSectionProducer;
+import uk.co.eduardo.map.sections.MapSection;
+import uk.co.eduardo.map.sections.MapSectionProducer;
+import uk.co.eduardo.map.sections.MonsterSection;
+import uk.co.eduardo.map.sections.MonsterSectionProducer;
+import uk.co.eduardo.map.sections.NpcSection;
+import uk.co.eduardo.map.sections.NpcSectionProducer;
+import uk.co.eduardo.map.sections.SectionType;
+
+/**
+ * Support for version 1 map files.
+ * <p>
+ * The sections are preceded by a table of contents so that any one of them can be found and decoded without reading
+ * the others. The table is laid out as:
+ *
+ * <pre>
+ * byte  section count
+ * per section:
+ *   byte  section type ({@link SectionType#id})
+ *   byte  section encoding (the tile grid uses {@link MapSectionProducer#COMPACT_ENCODING}, everything else is
+ *         encoded as in a version 0 map)
+ *   int   offset of the section from the start of the table
+ *   int   length of the section in bytes
+ *   int   CRC32 of the section bytes
+ * </pre>
+ *
+ * @author Ed
+ */
+public class Version1Map implements MapVersion
+{
+   // ================| Fields |====================================
+
+   /** The size in bytes of each entry in the table of contents. */
+   private static final int ENTRY_SIZE = 1 + 1 + 4 + 4 + 4;
+
+   /** Sections other than the tile grid are written with the same encoding as a version 0 map. */
+   private static final int DEFAULT_ENCODING = 0;
+
+   // ================| Public Methods |====================================
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getVersion()
+   {
+      return 1;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public MapDefinition readMap( final DataInputStream stream ) throws IOException
+   {
+      // Read the table and all the sections it refers to so that they can be decoded from a buffer.
+      final int sectionCount = stream.read();
+      if( sectionCount < 0 )
+      {
+         throw new IOException( "Truncated map file" ); //$NON-NLS-1$
+      }
+      final byte[] table = new byte[ 1 + ( sectionCount * ENTRY_SIZE ) ];
+      table[ 0 ] = (byte) sectionCount;
+      stream.readFully( table, 1, table.length - 1 );
+
+      final ByteBuffer tableBuffer = ByteBuffer.wrap( table, 1, table.length - 1 );
+      int end = table.length;
+      for( int entry = 0; entry < sectionCount; entry++ )
+      {
+         final TableEntry tableEntry = readEntry( tableBuffer, entry );
+         end = Math.max( end, tableEntry.offset + tableEntry.length );
+      }
+
+      final byte[] data = new byte[ end ];
+      System.arraycopy( table, 0, data, 0, table.length );
+      stream.readFully( data, table.length, end - table.length );
+
+      final ByteBuffer buffer = ByteBuffer.wrap( data );
+      return new MapDefinition( (HeaderSection) readSection( buffer, SectionType.HEADER ),
+                                (NpcSection) readSection( buffer, SectionType.NPCS ),
+                                (ActionSection) readSection( buffer, SectionType.ACTIONS ),
+                                (MapSection) readSection( buffer, SectionType.MAP ),
+                                (MonsterSection) readSection( buffer, SectionType.MONSTERS ) );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public FileSection readSection( final ByteBuffer buffer, final SectionType type ) throws IOException
+   {
+      final ByteBuffer table = buffer.duplicate();
+      final int sectionCount = table.get() & 0xFF;
+
+      for( int entry = 0; entry < sectionCount; entry++ )
+      {
+         final TableEntry tableEntry = readEntry( table, entry );
+         if( tableEntry.type != type.id )
+         {
+            continue;
+         }
+
+         if( ( tableEntry.offset + tableEntry.length ) > buffer.remaining() )
+         {
+            throw new IOException( "Truncated " + type + " section" ); //$NON-NLS-1$ //$NON-NLS-2$
+         }
+
+         final ByteBuffer section = buffer.duplicate();
+         section.position( buffer.position() + tableEntry.offset );
+         section.limit( section.position() + tableEntry.length );
+
+         final CRC32 crc = new CRC32();
+         crc.update( section.duplicate() );
+         if( (int) crc.getValue() != tableEntry.crc )
+         {
+            throw new IOException( "Checksum mismatch in " + type + " section" ); //$NON-NLS-1$ //$NON-NLS-2$
+         }
+
+         return createProducer( type, tableEntry.encoding ).readSection( section );
+      }
+      throw new IOException( "Map has no " + type + " section" ); //$NON-NLS-1$ //$NON-NLS-2$
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void writeMap( final DataOutputStream stream, final MapDefinition map ) throws IOException
+   {
+      final byte[][] sections = new byte[][]
+      {
+         encode( new HeaderSectionProducer(), map.headerSection ),
+         encode( new NpcSectionProducer(), map.npcsSection ),
+         encode( new ActionSectionProducer(), map.actionsSection ),
+         encode( new MapSectionProducer( MapSectionProducer.COMPACT_ENCODING ), map.mapsSection ),
+         encode( new MonsterSectionProducer(), map.monstersSection )
+      };
+      final SectionType[] types = new SectionType[]
+      {
+         SectionType.HEADER, SectionType.NPCS, SectionType.ACTIONS, SectionType.MAP, SectionType.MONSTERS
+      };
+      final int[] encodings = new int[]
+      {
+         DEFAULT_ENCODING, DEFAULT_ENCODING, DEFAULT_ENCODING, MapSectionProducer.COMPACT_ENCODING, DEFAULT_ENCODING
+      };
+
+      stream.write( sections.length );
+
+      int offset = 1 + ( sections.length * ENTRY_SIZE );
+      for( int s = 0; s < sections.length; s++ )
+      {
+         final CRC32 crc = new CRC32();
+         crc.update( sections[ s ] );
+
+         stream.write( types[ s ].id );
+         stream.write( encodings[ s ] );
+         stream.writeInt( offset );
+         stream.writeInt( sections[ s ].length );
+         stream.writeInt( (int) crc.getValue() );
+         offset += sections[ s ].length;
+      }
+
+      for( final byte[] section : sections )
+      {
+         stream.write( section );
+      }
+   }
+
+   // ================| Private Methods |====================================
+
+   private static < T extends FileSection > byte[] encode( final FileSectionProducer< T > producer, final T section )
+      throws IOException
+   {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream stream = new DataOutputStream( bytes );
+      producer.writeSection( stream, section );
+      stream.flush();
+      return bytes.toByteArray();
+   }
+
+   private static FileSectionProducer< ? extends FileSection > createProducer( final SectionType type,
+                                                                            final int encoding ) throws IOException
+   {
+      if( ( type == SectionType.MAP ) && ( encoding == MapSectionProducer.COMPACT_ENCODING ) )
+      {
+         return new MapSectionProducer( encoding );
+      }
+      if( encoding != DEFAULT_ENCODING )
+      {
+         throw new IOException( "Unsupported encoding " + encoding + " for " + type + " section" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      }
+      return type.createProducer();
+   }
+
+   private static TableEntry readEntry( final ByteBuffer table, final int entry ) throws IOException
+   {
+      final int type = table.get() & 0xFF;
+      final int encoding = table.get() & 0xFF;
+      final TableEntry tableEntry = new TableEntry( type, encoding, table.getInt(), table.getInt(), table.getInt() );
+      if( ( tableEntry.offset < 0 ) || ( tableEntry.length < 0 ) )
+      {
+         throw new IOException( "Corrupt table of contents entry " + entry ); //$NON-NLS-1$
+      }
+      return tableEntry;
+   }
+
+   // ================| Inner Classes |====================================
+
+   /**
+    * An entry in the table of contents.
+    */
+   private static class TableEntry
+   {
+      final int type;
+
+      final int encoding;
+
+      final int offset;
+
+      final int length;
+
+      final int crc;
+
+      TableEntry( final int type, final int encoding, final int offset, final int length, final int crc )
+      {
+         this.type = type;
+         this.encoding = encoding;
+         this.offset = offset;
+         this.length = length;
+         this.crc = crc;
+      }
+   }
+}
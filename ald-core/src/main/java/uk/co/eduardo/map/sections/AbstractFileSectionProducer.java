@@ -3,6 +3,8 @@ package uk.co.eduardo.map.sections;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 /**
  * Abstract implementation that provides utility methods for reading from streams.
@@ -72,6 +74,49 @@ public abstract class AbstractFileSectionProducer< T extends FileSection > imple
       return new String( buffer );
    }
 
+   /**
+    * Reads a string from the buffer.
+    * <p>
+    * It is assumed that the length of the string is encoded as a short followed by the byte data for the string.
+    *
+    * @param buffer the buffer from which to read.
+    * @return a string read from the buffer.
+    */
+   protected String readString( final ByteBuffer buffer )
+   {
+      final int length = buffer.getShort() & 0xFFFF;
+
+      final byte[] bytes = new byte[ length ];
+      buffer.get( bytes );
+      return new String( bytes );
+   }
+
+   /**
+    * Advances the buffer past a string encoded as for {@link #readString(ByteBuffer)}.
+    *
+    * @param buffer the buffer from which to read.
+    */
+   protected void skipString( final ByteBuffer buffer )
+   {
+      skip( buffer, buffer.getShort() & 0xFFFF );
+   }
+
+   /**
+    * Advances the position of the buffer.
+    *
+    * @param buffer the buffer to advance.
+    * @param count the number of bytes to skip.
+    * @throws BufferUnderflowException if fewer than <code>count</code> bytes remain.
+    */
+   protected static void skip( final ByteBuffer buffer, final int count )
+   {
+      if( ( count < 0 ) || ( count > buffer.remaining() ) )
+      {
+         throw new BufferUnderflowException();
+      }
+      buffer.position( buffer.position() + count );
+   }
+
    /**
     * Writes a string to the stream.
     * <p>
@@ -3,6 +3,7 @@ package uk.co.eduardo.map.sections;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import uk.co.eduardo.abaddon.map.actions.ChangeLayerAction;
 import uk.co.eduardo.abaddon.map.actions.MapAction;
@@ -67,6 +68,63 @@ public class ActionSectionProducer extends AbstractFileSectionProducer< ActionSe
       return new ActionSection( readActions );
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ActionSection readSection( final ByteBuffer buffer ) throws IOException
+   {
+      final int actionCount = buffer.getShort();
+
+      final MapAction[] readActions = new MapAction[ actionCount ];
+
+      for( int action = 0; action < actionCount; action++ )
+      {
+         final int actionType = buffer.getShort();
+         final Coordinate source = new Coordinate( buffer.getShort(), buffer.getShort() );
+
+         if( actionType == TeleportAction.TELEPORT_ACTION_TYPE )
+         {
+            final String name = readString( buffer );
+            final Coordinate target = new Coordinate( buffer.getShort(), buffer.getShort() );
+
+            readActions[ action ] = new TeleportAction( source, target, name );
+         }
+         else if( actionType == ChangeLayerAction.CHANGE_LAYER_TYPE )
+         {
+            readActions[ action ] = new ChangeLayerAction( source, buffer.getShort() );
+         }
+      }
+      return new ActionSection( readActions );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void skipSection( final ByteBuffer buffer ) throws IOException
+   {
+      final int actionCount = buffer.getShort();
+
+      for( int action = 0; action < actionCount; action++ )
+      {
+         final int actionType = buffer.getShort();
+
+         // Source coordinate
+         skip( buffer, 2 * 2 );
+
+         if( actionType == TeleportAction.TELEPORT_ACTION_TYPE )
+         {
+            skipString( buffer );
+            skip( buffer, 2 * 2 );
+         }
+         else if( actionType == ChangeLayerAction.CHANGE_LAYER_TYPE )
+         {
+            skip( buffer, 2 );
+         }
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
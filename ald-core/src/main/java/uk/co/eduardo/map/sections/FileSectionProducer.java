@@ -3,6 +3,7 @@ package uk.co.eduardo.map.sections;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * A handler for a file section with methods to read and write the section.
@@ -21,6 +22,23 @@ public interface FileSectionProducer< T extends FileSection >
     */
    T readSection( final DataInputStream stream ) throws IOException;
 
+   /**
+    * Decodes the section directly from a buffer. On return the buffer is positioned immediately after the section.
+    *
+    * @param buffer the buffer from which to read.
+    * @return the read section.
+    * @throws IOException if the buffer does not hold a valid section.
+    */
+   T readSection( final ByteBuffer buffer ) throws IOException;
+
+   /**
+    * Advances the buffer past the section without decoding it.
+    *
+    * @param buffer the buffer positioned at the start of the section.
+    * @throws IOException if the buffer does not hold a valid section.
+    */
+   void skipSection( final ByteBuffer buffer ) throws IOException;
+
    /**
     * Writes the section to the stream. A previous call to {@link #canWriteSection(FileSection)} must be made before caling this
     * method.
@@ -3,6 +3,7 @@ package uk.co.eduardo.map.sections;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import uk.co.eduardo.abaddon.graphics.layer.Direction;
 import uk.co.eduardo.abaddon.util.Coordinate;
@@ -40,6 +41,33 @@ public class HeaderSectionProducer extends AbstractFileSectionProducer< HeaderSe
       return new HeaderSection( mapName, tilesetName, startPos, layerIndex, startingDirection );
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public HeaderSection readSection( final ByteBuffer buffer ) throws IOException
+   {
+      final String mapName = readString( buffer );
+      final String tilesetName = readString( buffer );
+      final Coordinate startPos = new Coordinate( buffer.getShort(), buffer.getShort() );
+      final int layerIndex = buffer.getShort();
+      final Direction startingDirection = Direction.fromOffset( buffer.getShort() );
+      return new HeaderSection( mapName, tilesetName, startPos, layerIndex, startingDirection );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void skipSection( final ByteBuffer buffer ) throws IOException
+   {
+      skipString( buffer );
+      skipString( buffer );
+
+      // Start position, layer index and direction.
+      skip( buffer, 4 * 2 );
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -2,10 +2,12 @@ package uk.co.eduardo.map.sections;
 
 /**
  * Contains the 2D tile grid information from a map file
+ * <p>
+ * The tiles are either held in arrays or read on demand from a {@link TileGrid}.
  *
  * @author Ed
  */
-public class MapSection implements FileSection
+public class MapSection implements FileSection, TileGrid
 {
    // ================| Fields |====================================
 
@@ -16,7 +18,10 @@ public class MapSection implements FileSection
    private int sparseMapCount;
 
    /** all the map layers */
-   private final int[][][] maps;
+   private int[][][] maps;
+
+   /** Where the tiles are read from when the section is not backed by arrays. */
+   private final TileGrid grid;
 
    /** The number of tiles wide the maps are. */
    private final int width;
@@ -34,6 +39,7 @@ public class MapSection implements FileSection
    public MapSection( final int width, final int height, final int[][][] maps )
    {
       this.maps = maps;
+      this.grid = null;
 
       this.height = height;
       this.width = width;
@@ -47,33 +53,101 @@ public class MapSection implements FileSection
       }
    }
 
+   /**
+    * Creates a section that reads its tiles from a grid rather than copying them. The grid must not change while the
+    * section is in use.
+    *
+    * @param grid the tiles of the map.
+    */
+   public MapSection( final TileGrid grid )
+   {
+      this.grid = grid;
+      this.width = grid.getWidth();
+      this.height = grid.getHeight();
+      this.sparseMapCount = grid.getLayerCount() - 1;
+   }
+
    // ================| Public Methods |====================================
 
    /**
+    * Prefer {@link #getRow(int, int, int, int, int[])} or {@link #getTile(int, int, int)} which do not need to copy a
+    * section that is backed by a {@link TileGrid}.
+    *
     * @return the map layers defined in this map file. e.g. returning an array with dimensions int[3][20][30] would represent a map
     *         file with 3 map layers each with 20 rows and 30 columns.
     */
-   public int[][][] getMaps()
+   public synchronized int[][][] getMaps()
    {
+      if( ( this.maps == null ) && ( this.grid != null ) )
+      {
+         final int[][][] copy = new int[ this.sparseMapCount + 1 ][ this.height ][];
+         for( int layer = 0; layer <= this.sparseMapCount; layer++ )
+         {
+            for( int row = 0; row < this.height; row++ )
+            {
+               copy[ layer ][ row ] = this.grid.getRow( layer, row, 0, this.width, null );
+            }
+         }
+         this.maps = copy;
+      }
       return this.maps;
    }
 
    /**
-    * @return width of the map in tiles
+    * {@inheritDoc}
     */
+   @Override
    public int getWidth()
    {
       return this.width;
    }
 
    /**
-    * @return height of the map in tiles
+    * {@inheritDoc}
     */
+   @Override
    public int getHeight()
    {
       return this.height;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getLayerCount()
+   {
+      return this.sparseMapCount + 1;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getTile( final int layer, final int row, final int col )
+   {
+      if( this.grid != null )
+      {
+         return this.grid.getTile( layer, row, col );
+      }
+      return this.maps[ layer ][ row ][ col ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int[] getRow( final int layer, final int row, final int startCol, final int length, final int[] dest )
+   {
+      if( this.grid != null )
+      {
+         return this.grid.getRow( layer, row, startCol, length, dest );
+      }
+      final int[] tiles = ( ( dest == null ) || ( dest.length < length ) ) ? new int[ length ] : dest;
+      System.arraycopy( this.maps[ layer ][ row ], startCol, tiles, 0, length );
+      return tiles;
+   }
+
    // ================| Default Methods |====================================
 
    int getSparseMapCount()
@@ -1,27 +1,86 @@
 package uk.co.eduardo.map.sections;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-
-import uk.co.eduardo.abaddon.util.Coordinate;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 /**
  * Reads/writes a {@link MapSection}
+ * <p>
+ * Two encodings are supported. The {@link #LEGACY_ENCODING legacy encoding} is the one used by version 0 maps. The
+ * {@link #COMPACT_ENCODING compact encoding} stores:
+ *
+ * <pre>
+ * int    length of the rest of the section in bytes
+ * short  width
+ * short  height
+ * byte   sparse layer count
+ * int    palette size
+ * short  palette entries (the distinct tiles used by the map)
+ * per base layer row:
+ *   byte   {@link #ROW_RAW}: a palette index per tile
+ *          {@link #ROW_RUNS}: short run count then a (short length, palette index) pair per run
+ * per sparse layer:
+ *   byte   {@link #LAYER_EMPTY}: nothing follows
+ *          {@link #LAYER_BITMAP}: a bit per tile (row major, most significant bit first) then a palette index per set bit
+ *          {@link #LAYER_LIST}: int entry count then a (short x, short y, palette index) triplet per entry
+ * </pre>
+ *
+ * Palette indices are a byte when the palette has 256 or fewer entries and a short otherwise. The row and layer modes
+ * are chosen per row/layer, whichever is smallest.
  *
  * @author Ed
  */
 public class MapSectionProducer extends AbstractFileSectionProducer< MapSection >
 {
+   // ================| Fields |====================================
+
+   /** The encoding used by version 0 maps: a short per base layer tile and (x, y, tile) triplets for sparse layers. */
+   public static final int LEGACY_ENCODING = 0;
+
+   /** The palette and run-length based encoding. */
+   public static final int COMPACT_ENCODING = 1;
+
+   private static final int ROW_RAW = 0;
+
+   private static final int ROW_RUNS = 1;
+
+   private static final int LAYER_EMPTY = 0;
+
+   private static final int LAYER_BITMAP = 1;
+
+   private static final int LAYER_LIST = 2;
+
+   /** Palettes up to this size are indexed with a single byte. */
+   private static final int BYTE_PALETTE_SIZE = 256;
+
+   private final int encoding;
+
    // ================| Constructors |====================================
 
    /**
-    * Default Constructor.
+    * Default Constructor. Uses the {@link #LEGACY_ENCODING legacy encoding}.
     */
    public MapSectionProducer()
+   {
+      this( LEGACY_ENCODING );
+   }
+
+   /**
+    * @param encoding either {@link #LEGACY_ENCODING} or {@link #COMPACT_ENCODING}.
+    */
+   public MapSectionProducer( final int encoding )
    {
       super( MapSection.class );
+      if( ( encoding != LEGACY_ENCODING ) && ( encoding != COMPACT_ENCODING ) )
+      {
+         throw new IllegalArgumentException( "Unknown map encoding " + encoding ); //$NON-NLS-1$
+      }
+      this.encoding = encoding;
    }
 
    // ================| Public Methods |====================================
@@ -32,6 +91,13 @@ public class MapSectionProducer extends AbstractFileSectionProducer< MapSection
    @Override
    public MapSection readSection( final DataInputStream stream ) throws IOException
    {
+      if( this.encoding == COMPACT_ENCODING )
+      {
+         final byte[] data = new byte[ stream.readInt() ];
+         stream.readFully( data );
+         return readCompact( ByteBuffer.wrap( data ) );
+      }
+
       // Read the dimensions of the map
       final int width = stream.readShort();
       final int height = stream.readShort();
@@ -68,50 +134,421 @@ public class MapSectionProducer extends AbstractFileSectionProducer< MapSection
       return new MapSection( width, height, maps );
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public MapSection readSection( final ByteBuffer buffer ) throws IOException
+   {
+      if( this.encoding == COMPACT_ENCODING )
+      {
+         final int length = buffer.getInt();
+         final ByteBuffer data = buffer.slice();
+         skip( buffer, length );
+         data.limit( length );
+         return readCompact( data );
+      }
+
+      final int width = buffer.getShort();
+      final int height = buffer.getShort();
+      final int sparseLayerCount = buffer.get() & 0xFF;
+
+      final int[][][] maps = new int[ MapSection.MAX_SPARSE_MAPS + 1 ][ height ][ width ];
+
+      // The base layer is a dense block of shorts, so pull it out a row at a time.
+      final ShortBuffer base = buffer.asShortBuffer();
+      final short[] row = new short[ width ];
+      for( int y = 0; y < height; y++ )
+      {
+         base.get( row );
+         final int[] dest = maps[ 0 ][ y ];
+         for( int x = 0; x < width; x++ )
+         {
+            dest[ x ] = row[ x ];
+         }
+      }
+      skip( buffer, width * height * 2 );
+
+      for( int layer = 1; layer < ( MapSection.MAX_SPARSE_MAPS + 1 ); layer++ )
+      {
+         for( int y = 0; y < height; y++ )
+         {
+            Arrays.fill( maps[ layer ][ y ], -1 );
+         }
+      }
+
+      for( int layer = 0; layer < sparseLayerCount; layer++ )
+      {
+         final int entryCount = buffer.getShort() & 0xFFFF;
+
+         // Each entry is an (x, y, tile) triplet.
+         final short[] entries = new short[ entryCount * 3 ];
+         buffer.asShortBuffer().get( entries );
+         skip( buffer, entries.length * 2 );
+
+         final int[][] sparse = maps[ layer + 1 ];
+         for( int entry = 0; entry < entries.length; entry += 3 )
+         {
+            sparse[ entries[ entry + 1 ] ][ entries[ entry ] ] = entries[ entry + 2 ];
+         }
+      }
+      return new MapSection( width, height, maps );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void skipSection( final ByteBuffer buffer ) throws IOException
+   {
+      if( this.encoding == COMPACT_ENCODING )
+      {
+         skip( buffer, buffer.getInt() );
+         return;
+      }
+
+      final int width = buffer.getShort();
+      final int height = buffer.getShort();
+      final int sparseLayerCount = buffer.get() & 0xFF;
+
+      skip( buffer, width * height * 2 );
+
+      for( int layer = 0; layer < sparseLayerCount; layer++ )
+      {
+         final int entryCount = buffer.getShort() & 0xFFFF;
+         skip( buffer, entryCount * 3 * 2 );
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
    @Override
    public void writeSection( final DataOutputStream stream, final MapSection section ) throws IOException
    {
-      final int[][][] maps = section.getMaps();
+      if( this.encoding == COMPACT_ENCODING )
+      {
+         final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         writeCompact( new DataOutputStream( bytes ), section );
+         stream.writeInt( bytes.size() );
+         bytes.writeTo( stream );
+         return;
+      }
+
+      final int width = section.getWidth();
+      final int height = section.getHeight();
+      int[] row = new int[ width ];
 
-      stream.writeShort( section.getWidth() );
-      stream.writeShort( section.getHeight() );
+      stream.writeShort( width );
+      stream.writeShort( height );
       stream.write( section.getSparseMapCount() );
 
-      for( int y = 0; y < section.getHeight(); y++ )
+      for( int y = 0; y < height; y++ )
       {
-         for( int x = 0; x < section.getWidth(); x++ )
+         row = section.getRow( 0, y, 0, width, row );
+         for( int x = 0; x < width; x++ )
          {
             // Write the base map tile indices
-            stream.writeShort( maps[ 0 ][ y ][ x ] );
+            stream.writeShort( row[ x ] );
          }
       }
 
-      for( int layer = 0; layer < section.getSparseMapCount(); layer++ )
+      for( int layer = 1; layer <= section.getSparseMapCount(); layer++ )
       {
-         final ArrayList< Integer > sparseIdx = new ArrayList<>();
-         final ArrayList< Coordinate > sparseCoords = new ArrayList<>();
-         for( int y = 0; y < section.getHeight(); y++ )
+         stream.writeShort( countTiles( section, layer, row ) );
+         for( int y = 0; y < height; y++ )
          {
-            for( int x = 0; x < section.getWidth(); x++ )
+            row = section.getRow( layer, y, 0, width, row );
+            for( int x = 0; x < width; x++ )
             {
-               if( maps[ layer + 1 ][ y ][ x ] != -1 )
+               if( row[ x ] != -1 )
                {
-                  sparseIdx.add( maps[ layer + 1 ][ y ][ x ] );
-                  sparseCoords.add( new Coordinate( x, y ) );
+                  stream.writeShort( x );
+                  stream.writeShort( y );
+                  stream.writeShort( row[ x ] );
                }
             }
          }
+      }
+   }
 
-         stream.writeShort( sparseIdx.size() );
-         for( int s = 0; s < sparseIdx.size(); s++ )
+   // ================| Private Methods |====================================
+
+   private static MapSection readCompact( final ByteBuffer data )
+   {
+      final int width = data.getShort();
+      final int height = data.getShort();
+      final int sparseLayerCount = data.get() & 0xFF;
+
+      final short[] palette = new short[ data.getInt() ];
+      data.asShortBuffer().get( palette );
+      skip( data, palette.length * 2 );
+      final boolean wide = palette.length > BYTE_PALETTE_SIZE;
+
+      final int[][][] maps = new int[ MapSection.MAX_SPARSE_MAPS + 1 ][ height ][ width ];
+
+      for( int y = 0; y < height; y++ )
+      {
+         final int[] row = maps[ 0 ][ y ];
+         if( data.get() == ROW_RUNS )
          {
-            stream.writeShort( sparseCoords.get( s ).x );
-            stream.writeShort( sparseCoords.get( s ).y );
-            stream.writeShort( sparseIdx.get( s ) );
+            final int runCount = data.getShort() & 0xFFFF;
+            int x = 0;
+            for( int run = 0; run < runCount; run++ )
+            {
+               final int runLength = data.getShort() & 0xFFFF;
+               final int tile = palette[ readIndex( data, wide ) ];
+               Arrays.fill( row, x, x + runLength, tile );
+               x += runLength;
+            }
          }
+         else
+         {
+            for( int x = 0; x < width; x++ )
+            {
+               row[ x ] = palette[ readIndex( data, wide ) ];
+            }
+         }
+      }
+
+      for( int layer = 1; layer < ( MapSection.MAX_SPARSE_MAPS + 1 ); layer++ )
+      {
+         for( int y = 0; y < height; y++ )
+         {
+            Arrays.fill( maps[ layer ][ y ], -1 );
+         }
+      }
+
+      for( int layer = 0; layer < sparseLayerCount; layer++ )
+      {
+         final int[][] sparse = maps[ layer + 1 ];
+         final int mode = data.get();
+         if( mode == LAYER_BITMAP )
+         {
+            final byte[] bitmap = new byte[ ( ( width * height ) + 7 ) / 8 ];
+            data.get( bitmap );
+            for( int b = 0; b < bitmap.length; b++ )
+            {
+               int bits = bitmap[ b ] & 0xFF;
+               while( bits != 0 )
+               {
+                  // Visit set bits from the most significant down.
+                  final int bit = Integer.numberOfLeadingZeros( bits ) - 24;
+                  bits &= ~( 0x80 >>> bit );
+
+                  final int tile = ( b * 8 ) + bit;
+                  sparse[ tile / width ][ tile % width ] = palette[ readIndex( data, wide ) ];
+               }
+            }
+         }
+         else if( mode == LAYER_LIST )
+         {
+            final int entryCount = data.getInt();
+            for( int entry = 0; entry < entryCount; entry++ )
+            {
+               final int x = data.getShort();
+               final int y = data.getShort();
+               sparse[ y ][ x ] = palette[ readIndex( data, wide ) ];
+            }
+         }
+      }
+      return new MapSection( width, height, maps );
+   }
+
+   private static void writeCompact( final DataOutputStream stream, final MapSection section ) throws IOException
+   {
+      final int width = section.getWidth();
+      final int height = section.getHeight();
+      final int sparseLayerCount = section.getSparseMapCount();
+      int[] row = new int[ width ];
+
+      // Find the range of tiles in use so that the palette lookup table can be sized to fit.
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for( int layer = 0; layer <= sparseLayerCount; layer++ )
+      {
+         for( int y = 0; y < height; y++ )
+         {
+            row = section.getRow( layer, y, 0, width, row );
+            for( int x = 0; x < width; x++ )
+            {
+               if( ( layer == 0 ) || ( row[ x ] != -1 ) )
+               {
+                  min = Math.min( min, row[ x ] );
+                  max = Math.max( max, row[ x ] );
+               }
+            }
+         }
+      }
+      if( min > max )
+      {
+         min = max = 0;
+      }
+
+      // Map each tile to its palette index, in order of first use.
+      final int[] lookup = new int[ ( max - min ) + 1 ];
+      Arrays.fill( lookup, -1 );
+      final short[] palette = new short[ Math.min( lookup.length, 1 << 16 ) ];
+      int paletteSize = 0;
+      for( int layer = 0; layer <= sparseLayerCount; layer++ )
+      {
+         for( int y = 0; y < height; y++ )
+         {
+            row = section.getRow( layer, y, 0, width, row );
+            for( int x = 0; x < width; x++ )
+            {
+               if( ( ( layer == 0 ) || ( row[ x ] != -1 ) ) && ( lookup[ row[ x ] - min ] == -1 ) )
+               {
+                  lookup[ row[ x ] - min ] = paletteSize;
+                  palette[ paletteSize++ ] = (short) row[ x ];
+               }
+            }
+         }
+      }
+      final boolean wide = paletteSize > BYTE_PALETTE_SIZE;
+      final int indexSize = wide ? 2 : 1;
+
+      stream.writeShort( width );
+      stream.writeShort( height );
+      stream.write( sparseLayerCount );
+      stream.writeInt( paletteSize );
+      for( int p = 0; p < paletteSize; p++ )
+      {
+         stream.writeShort( palette[ p ] );
+      }
+
+      for( int y = 0; y < height; y++ )
+      {
+         row = section.getRow( 0, y, 0, width, row );
+
+         int runCount = 0;
+         for( int x = 0; x < width; x++ )
+         {
+            if( ( x == 0 ) || ( row[ x ] != row[ x - 1 ] ) )
+            {
+               runCount++;
+            }
+         }
+
+         if( ( 2 + ( runCount * ( 2 + indexSize ) ) ) < ( width * indexSize ) )
+         {
+            stream.write( ROW_RUNS );
+            stream.writeShort( runCount );
+            for( int x = 0; x < width; )
+            {
+               int runEnd = x + 1;
+               while( ( runEnd < width ) && ( row[ runEnd ] == row[ x ] ) )
+               {
+                  runEnd++;
+               }
+               stream.writeShort( runEnd - x );
+               writeIndex( stream, lookup[ row[ x ] - min ], wide );
+               x = runEnd;
+            }
+         }
+         else
+         {
+            stream.write( ROW_RAW );
+            for( int x = 0; x < width; x++ )
+            {
+               writeIndex( stream, lookup[ row[ x ] - min ], wide );
+            }
+         }
+      }
+
+      for( int layer = 1; layer <= sparseLayerCount; layer++ )
+      {
+         final int tileCount = countTiles( section, layer, row );
+         final long bitmapCost = ( ( ( (long) width * height ) + 7 ) / 8 ) + ( (long) tileCount * indexSize );
+         final long listCost = 4 + ( (long) tileCount * ( 4 + indexSize ) );
+
+         if( tileCount == 0 )
+         {
+            stream.write( LAYER_EMPTY );
+         }
+         else if( bitmapCost < listCost )
+         {
+            stream.write( LAYER_BITMAP );
+            final byte[] bitmap = new byte[ ( ( width * height ) + 7 ) / 8 ];
+            for( int y = 0; y < height; y++ )
+            {
+               row = section.getRow( layer, y, 0, width, row );
+               for( int x = 0; x < width; x++ )
+               {
+                  if( row[ x ] != -1 )
+                  {
+                     final int tile = ( y * width ) + x;
+                     bitmap[ tile / 8 ] |= 0x80 >>> ( tile % 8 );
+                  }
+               }
+            }
+            stream.write( bitmap );
+            for( int y = 0; y < height; y++ )
+            {
+               row = section.getRow( layer, y, 0, width, row );
+               for( int x = 0; x < width; x++ )
+               {
+                  if( row[ x ] != -1 )
+                  {
+                     writeIndex( stream, lookup[ row[ x ] - min ], wide );
+                  }
+               }
+            }
+         }
+         else
+         {
+            stream.write( LAYER_LIST );
+            stream.writeInt( tileCount );
+            for( int y = 0; y < height; y++ )
+            {
+               row = section.getRow( layer, y, 0, width, row );
+               for( int x = 0; x < width; x++ )
+               {
+                  if( row[ x ] != -1 )
+                  {
+                     stream.writeShort( x );
+                     stream.writeShort( y );
+                     writeIndex( stream, lookup[ row[ x ] - min ], wide );
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   private static int countTiles( final MapSection section, final int layer, final int[] rowBuffer )
+   {
+      int[] row = rowBuffer;
+      int count = 0;
+      for( int y = 0; y < section.getHeight(); y++ )
+      {
+         row = section.getRow( layer, y, 0, section.getWidth(), row );
+         for( int x = 0; x < section.getWidth(); x++ )
+         {
+            if( row[ x ] != -1 )
+            {
+               count++;
+            }
+         }
+      }
+      return count;
+   }
+
+   private static int readIndex( final ByteBuffer data, final boolean wide )
+   {
+      return wide ? data.getShort() & 0xFFFF : data.get() & 0xFF;
+   }
+
+   private static void writeIndex( final DataOutputStream stream, final int index, final boolean wide )
+      throws IOException
+   {
+      if( wide )
+      {
+         stream.writeShort( index );
+      }
+      else
+      {
+         stream.write( index );
       }
    }
 }
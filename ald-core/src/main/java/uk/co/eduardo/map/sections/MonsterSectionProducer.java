@@ -3,6 +3,7 @@ package uk.co.eduardo.map.sections;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import android.graphics.Rect;
 import uk.co.eduardo.abaddon.monsters.Monster;
@@ -56,6 +57,52 @@ public class MonsterSectionProducer extends AbstractFileSectionProducer< Monster
       return new MonsterSection( zones );
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public MonsterSection readSection( final ByteBuffer buffer ) throws IOException
+   {
+      final int zoneCount = buffer.get() & 0xFF;
+      final MonsterZone[] zones = new MonsterZone[ zoneCount ];
+
+      for( int z = 0; z < zoneCount; z++ )
+      {
+         final int tlx = buffer.getShort();
+         final int tly = buffer.getShort();
+         final int brx = buffer.getShort();
+         final int bry = buffer.getShort();
+         final Rect rect = new Rect( tlx, tly, brx, bry );
+
+         final int monsterCount = buffer.get() & 0xFF;
+         final Monster[] monsters = new Monster[ monsterCount ];
+         for( int m = 0; m < monsterCount; m++ )
+         {
+            monsters[ m ] = Monster.getMonster( buffer.get() & 0xFF );
+         }
+         zones[ z ] = new MonsterZone( rect, monsters );
+      }
+      return new MonsterSection( zones );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void skipSection( final ByteBuffer buffer ) throws IOException
+   {
+      final int zoneCount = buffer.get() & 0xFF;
+
+      for( int z = 0; z < zoneCount; z++ )
+      {
+         // Zone bounds
+         skip( buffer, 4 * 2 );
+
+         final int monsterCount = buffer.get() & 0xFF;
+         skip( buffer, monsterCount );
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
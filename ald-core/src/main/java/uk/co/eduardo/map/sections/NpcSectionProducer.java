@@ -3,6 +3,7 @@ package uk.co.eduardo.map.sections;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import uk.co.eduardo.abaddon.graphics.Animation;
 import uk.co.eduardo.abaddon.graphics.AnimationFactory;
@@ -73,6 +74,63 @@ public class NpcSectionProducer extends AbstractFileSectionProducer< NpcSection
       return new NpcSection( characters );
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public NpcSection readSection( final ByteBuffer buffer ) throws IOException
+   {
+      final int npcCount = buffer.getShort();
+      final NPC[] characters = new NPC[ npcCount ];
+
+      for( int npc = 0; npc < npcCount; npc++ )
+      {
+         final int id = buffer.getShort();
+         final int x = buffer.getShort();
+         final int y = buffer.getShort();
+         final int layerIndex = buffer.get() & 0xFF;
+         final boolean fixed = buffer.get() == 1;
+         final int speechCount = buffer.getShort();
+
+         final String key = "npc" + String.valueOf( id ); //$NON-NLS-1$
+         final int resourceId = ResourceUtilities.getDrawableResourceId( key );
+         final Animation anim = AnimationFactory.getAnimation( resourceId );
+
+         characters[ npc ] = new NPC( anim, x, y, id, fixed, speechCount );
+         characters[ npc ].setLayerIndex( layerIndex );
+
+         for( int s = 0; s < speechCount; s++ )
+         {
+            final int event = buffer.getShort();
+            final String speech = readString( buffer );
+            characters[ npc ].setSpeech( s, speech, event );
+         }
+      }
+      return new NpcSection( characters );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void skipSection( final ByteBuffer buffer ) throws IOException
+   {
+      final int npcCount = buffer.getShort();
+
+      for( int npc = 0; npc < npcCount; npc++ )
+      {
+         // Type, position, layer index and fixed flag.
+         skip( buffer, ( 3 * 2 ) + 2 );
+
+         final int speechCount = buffer.getShort();
+         for( int s = 0; s < speechCount; s++ )
+         {
+            skip( buffer, 2 );
+            skipString( buffer );
+         }
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
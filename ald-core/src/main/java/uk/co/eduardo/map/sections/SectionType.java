@@ -0,0 +1,78 @@
+package uk.co.eduardo.map.sections;
+
+/**
+ * The sections that make up a map file, in the order they are stored in a version 0 map.
+ * <p>
+ * The identifiers are written to map files so must never change.
+ *
+ * @author Ed
+ */
+public enum SectionType
+{
+   /** The {@link HeaderSection}. */
+   HEADER( 0 ),
+
+   /** The {@link NpcSection}. */
+   NPCS( 1 ),
+
+   /** The {@link ActionSection}. */
+   ACTIONS( 2 ),
+
+   /** The {@link MapSection}. */
+   MAP( 3 ),
+
+   /** The {@link MonsterSection}. */
+   MONSTERS( 4 );
+
+   // ================| Fields |====================================
+
+   /** The identifier of the section within a map file. */
+   public final int id;
+
+   // ================| Constructors |====================================
+
+   SectionType( final int id )
+   {
+      this.id = id;
+   }
+
+   // ================| Public Methods |====================================
+
+   /**
+    * @param id the identifier of the section within a map file.
+    * @return the section type with that identifier, or <code>null</code> if there is none.
+    */
+   public static SectionType fromId( final int id )
+   {
+      for( final SectionType type : SectionType.values() )
+      {
+         if( type.id == id )
+         {
+            return type;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @return a new producer that reads/writes sections of this type.
+    */
+   public FileSectionProducer< ? extends FileSection > createProducer()
+   {
+      switch( this )
+      {
+         case HEADER:
+            return new HeaderSectionProducer();
+         case NPCS:
+            return new NpcSectionProducer();
+         case ACTIONS:
+            return new ActionSectionProducer();
+         case MAP:
+            return new MapSectionProducer();
+         case MONSTERS:
+            return new MonsterSectionProducer();
+         default:
+            throw new IllegalStateException( "Unknown section type " + this ); //$NON-NLS-1$
+      }
+   }
+}
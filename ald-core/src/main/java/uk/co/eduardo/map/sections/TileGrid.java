@@ -0,0 +1,47 @@
+package uk.co.eduardo.map.sections;
+
+/**
+ * Read access to the layers of tiles that make up a map.
+ *
+ * @author Ed
+ */
+public interface TileGrid
+{
+   // ================| Public Methods |====================================
+
+   /**
+    * @return width of the map in tiles
+    */
+   int getWidth();
+
+   /**
+    * @return height of the map in tiles
+    */
+   int getHeight();
+
+   /**
+    * @return the number of layers of tiles, including the base layer.
+    */
+   int getLayerCount();
+
+   /**
+    * @param layer the map layer.
+    * @param row the row within the layer.
+    * @param col the column within the layer.
+    * @return the tile at that position, or <code>-1</code> if there is none.
+    */
+   int getTile( int layer, int row, int col );
+
+   /**
+    * Copies a run of tiles from one row of the map.
+    *
+    * @param layer the map layer.
+    * @param row the row within the layer.
+    * @param startCol the first column to copy.
+    * @param length the number of tiles to copy.
+    * @param dest the array into which the tiles are copied. If this is <code>null</code> or too short then a new array is
+    *           allocated.
+    * @return the array holding the tiles.
+    */
+   int[] getRow( int layer, int row, int startCol, int length, int[] dest );
+}
@@ -0,0 +1,174 @@
+package uk.co.eduardo.abaddon.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import uk.co.eduardo.abaddon.tileset.TileDescription;
+import uk.co.eduardo.map.sections.MapSection;
+
+/**
+ * Compiles maps and reads them back.
+ *
+ * @author Ed
+ */
+public class CompiledMapTest
+{
+   /** Blocked on every edge and both diagonals. */
+   private static final int BLOCKED = TileDescription.LEFT | TileDescription.RIGHT | TileDescription.TOP |
+                                      TileDescription.BOTTOM | TileDescription.TL_BR_DIAG | TileDescription.TR_BL_DIAG;
+
+   /**
+    * A compiled map reads back with the same header, actions and tiles.
+    *
+    * @throws IOException if the map cannot be compiled or read.
+    */
+   @Test
+   public void testRoundTrip() throws IOException
+   {
+      final MapDefinition map = Version1MapTest.createMap();
+      final CompiledMap compiled = CompiledMap.read( new ByteArrayInputStream( compile( map ) ) );
+      Version1MapTest.assertSameMap( map, compiled.getMapDefinition() );
+      Version1MapTest.assertSameTiles( map.mapsSection, new MapSection( compiled ) );
+   }
+
+   /**
+    * {@link MapFactory} reads compiled maps as well as editor maps.
+    *
+    * @throws IOException if the map cannot be compiled or read.
+    */
+   @Test
+   public void testReadThroughMapFactory() throws IOException
+   {
+      final MapDefinition map = Version1MapTest.createMap();
+      Version1MapTest.assertSameMap( map, MapFactory.readMap( new ByteArrayInputStream( compile( map ) ) ) );
+   }
+
+   /**
+    * The walkability of every tile is worked out from the tileset description when the map is compiled, and the map read
+    * back answers walk checks from it.
+    *
+    * @throws IOException if the map cannot be compiled or read.
+    */
+   @Test
+   public void testWalkability() throws IOException
+   {
+      final MapDefinition map = Version1MapTest.createMap();
+      final TileDescription description = createDescription();
+      final MapDefinition read = MapFactory.readMap( new ByteArrayInputStream( compile( map, description ) ) );
+
+      final MapSection tiles = map.mapsSection;
+      for( int layer = 0; layer < tiles.getLayerCount(); layer++ )
+      {
+         for( int row = 0; row < tiles.getHeight(); row++ )
+         {
+            for( int col = 0; col < tiles.getWidth(); col++ )
+            {
+               final int tile = tiles.getTile( layer, row, col );
+               final boolean walkable = ( tile < 0 ) ||
+                                        ( ( tile < description.walkable.length ) &&
+                                          ( description.walkable[ tile ] != BLOCKED ) );
+               // The tileset is not needed for a compiled map.
+               assertEquals( "Tile " + layer + ", " + row + ", " + col, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                             walkable,
+                             read.canWalk( null, layer, row, col ) );
+            }
+         }
+      }
+   }
+
+   /**
+    * A compiled map that has been cut short is rejected.
+    *
+    * @throws IOException if the map cannot be compiled.
+    */
+   @Test
+   public void testTruncatedMapIsRejected() throws IOException
+   {
+      final byte[] data = compile( Version1MapTest.createMap() );
+      try
+      {
+         CompiledMap.read( new ByteArrayInputStream( Arrays.copyOf( data, data.length / 2 ) ) );
+         fail( "Truncated map was read" ); //$NON-NLS-1$
+      }
+      catch( final IOException e )
+      {
+         // Expected.
+      }
+   }
+
+   /**
+    * The string table is full at 65535 strings, the most whose count fits in an unsigned short, but strings already in
+    * it can still be looked up.
+    *
+    * @throws IOException if the table fills up too early.
+    */
+   @Test
+   public void testStringTableLimit() throws IOException
+   {
+      final Map< String, Integer > indices = new HashMap<>();
+      final List< String > strings = new ArrayList<>();
+      for( int s = 0; s < 0xFFFF; s++ )
+      {
+         assertEquals( s, CompiledMap.getIndex( Integer.toString( s ), indices, strings ) );
+      }
+      assertEquals( 0xFFFE, CompiledMap.getIndex( Integer.toString( 0xFFFE ), indices, strings ) );
+      try
+      {
+         CompiledMap.getIndex( "full", indices, strings ); //$NON-NLS-1$
+         fail( "String was added to a full table" ); //$NON-NLS-1$
+      }
+      catch( final IOException e )
+      {
+         assertEquals( 0xFFFF, strings.size() );
+      }
+   }
+
+   // ================| Private Methods |====================================
+
+   /**
+    * @return a description in which every fifth tile is blocked, some tiles are blocked on only some edges and tiles from
+    *         40 up are not described.
+    */
+   private static TileDescription createDescription()
+   {
+      final int[] walkable = new int[ 40 ];
+      for( int tile = 0; tile < walkable.length; tile++ )
+      {
+         if( ( tile % 5 ) == 0 )
+         {
+            walkable[ tile ] = BLOCKED;
+         }
+         else if( ( tile % 3 ) == 0 )
+         {
+            walkable[ tile ] = TileDescription.LEFT | TileDescription.TOP;
+         }
+      }
+      return new TileDescription( walkable, new int[ 0 ] );
+   }
+
+   private static byte[] compile( final MapDefinition map ) throws IOException
+   {
+      return compile( map, createDescription() );
+   }
+
+   private static byte[] compile( final MapDefinition map, final TileDescription description ) throws IOException
+   {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream stream = new DataOutputStream( bytes );
+      CompiledMap.write( stream, map, description );
+      stream.flush();
+      return bytes.toByteArray();
+   }
+}
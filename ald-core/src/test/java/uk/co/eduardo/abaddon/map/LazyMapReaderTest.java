@@ -0,0 +1,143 @@
+package uk.co.eduardo.abaddon.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.eduardo.map.sections.MapSection;
+
+/**
+ * Reads single sections and whole maps from files of each version through a {@link LazyMapReader}.
+ *
+ * @author Ed
+ */
+public class LazyMapReaderTest
+{
+   private MapDefinition map;
+
+   private File file;
+
+   /**
+    * Creates the map and a file to write it to.
+    *
+    * @throws IOException if the file cannot be created.
+    */
+   @Before
+   public void setUp() throws IOException
+   {
+      this.map = Version1MapTest.createMap();
+      this.file = File.createTempFile( "lazy", ".map" ); //$NON-NLS-1$ //$NON-NLS-2$
+   }
+
+   /**
+    * Deletes the file.
+    */
+   @After
+   public void tearDown()
+   {
+      this.file.delete();
+   }
+
+   /**
+    * The sections of a version 1 map are found through its table of contents, whichever order they are asked for in.
+    *
+    * @throws IOException if the map cannot be written or read.
+    */
+   @Test
+   public void testReadVersion1Sections() throws IOException
+   {
+      write( new Version1Map() );
+      final LazyMapReader reader = new LazyMapReader( this.file );
+      try
+      {
+         assertEquals( 1, reader.getVersion() );
+         assertSameSections( reader );
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /**
+    * The sections of a version 0 map, which has no table of contents, are found by skipping the sections before them.
+    *
+    * @throws IOException if the map cannot be written or read.
+    */
+   @Test
+   public void testReadVersion0Sections() throws IOException
+   {
+      write( new Version0Map() );
+      final LazyMapReader reader = new LazyMapReader( this.file );
+      try
+      {
+         assertEquals( 0, reader.getVersion() );
+         assertSameSections( reader );
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /**
+    * Sections decoded before the reader was closed remain available, but no more can be decoded.
+    *
+    * @throws IOException if the map cannot be written or read.
+    */
+   @Test
+   public void testReadAfterClose() throws IOException
+   {
+      write( new Version1Map() );
+      final LazyMapReader reader = new LazyMapReader( this.file );
+      final MapSection tiles = reader.getMapSection();
+      reader.close();
+
+      assertSame( tiles, reader.getMapSection() );
+      try
+      {
+         reader.getHeaderSection();
+         fail( "Section was decoded after the reader was closed" ); //$NON-NLS-1$
+      }
+      catch( final IOException e )
+      {
+         // Expected.
+      }
+   }
+
+   // ================| Private Methods |====================================
+
+   private void write( final MapVersion version ) throws IOException
+   {
+      final DataOutputStream stream = new DataOutputStream( new FileOutputStream( this.file ) );
+      try
+      {
+         stream.writeShort( version.getVersion() );
+         version.writeMap( stream, this.map );
+      }
+      finally
+      {
+         stream.close();
+      }
+   }
+
+   /**
+    * Checks some sections on their own and out of file order, and then the whole map.
+    */
+   private void assertSameSections( final LazyMapReader reader ) throws IOException
+   {
+      Version1MapTest.assertSameTiles( this.map.mapsSection, reader.getMapSection() );
+      assertEquals( this.map.headerSection.getMapName(), reader.getHeaderSection().getMapName() );
+      assertEquals( this.map.actionsSection.getActionCount(), reader.getActionSection().getActionCount() );
+      Version1MapTest.assertSameMap( this.map, reader.getMapDefinition() );
+   }
+}
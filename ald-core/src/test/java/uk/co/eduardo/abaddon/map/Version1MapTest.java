@@ -0,0 +1,220 @@
+package uk.co.eduardo.abaddon.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import uk.co.eduardo.abaddon.graphics.layer.Direction;
+import uk.co.eduardo.abaddon.graphics.layer.NPC;
+import uk.co.eduardo.abaddon.map.actions.ChangeLayerAction;
+import uk.co.eduardo.abaddon.map.actions.MapAction;
+import uk.co.eduardo.abaddon.map.actions.TeleportAction;
+import uk.co.eduardo.abaddon.monsters.MonsterZone;
+import uk.co.eduardo.abaddon.util.Coordinate;
+import uk.co.eduardo.map.sections.ActionSection;
+import uk.co.eduardo.map.sections.HeaderSection;
+import uk.co.eduardo.map.sections.MapSection;
+import uk.co.eduardo.map.sections.MonsterSection;
+import uk.co.eduardo.map.sections.NpcSection;
+import uk.co.eduardo.map.sections.SectionType;
+
+/**
+ * Round trips maps through the version 1 format.
+ *
+ * @author Ed
+ */
+public class Version1MapTest
+{
+   private static final int WIDTH = 23;
+
+   private static final int HEIGHT = 17;
+
+   /**
+    * A map written with the latest version reads back the same through a stream.
+    *
+    * @throws IOException if the map cannot be written or read.
+    */
+   @Test
+   public void testStreamRoundTrip() throws IOException
+   {
+      final MapDefinition map = createMap();
+      final MapDefinition read = MapFactory.readMap( new ByteArrayInputStream( write( map ) ) );
+      assertSameMap( map, read );
+   }
+
+   /**
+    * A map written with the latest version reads back the same through a {@link LazyMapReader}.
+    *
+    * @throws IOException if the map cannot be written or read.
+    */
+   @Test
+   public void testFileRoundTrip() throws IOException
+   {
+      final MapDefinition map = createMap();
+      final File file = File.createTempFile( "version1", ".map" ); //$NON-NLS-1$ //$NON-NLS-2$
+      try
+      {
+         final OutputStream stream = new FileOutputStream( file );
+         try
+         {
+            stream.write( write( map ) );
+         }
+         finally
+         {
+            stream.close();
+         }
+
+         final LazyMapReader reader = MapFactory.openMap( file );
+         try
+         {
+            assertEquals( 1, reader.getVersion() );
+            assertSameMap( map, reader.getMapDefinition() );
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   /**
+    * A single section can be decoded without decoding the others.
+    *
+    * @throws IOException if the map cannot be written or read.
+    */
+   @Test
+   public void testReadSingleSection() throws IOException
+   {
+      final byte[] data = write( createMap() );
+      final ByteBuffer buffer = ByteBuffer.wrap( data, 2, data.length - 2 ).slice();
+
+      final HeaderSection header = (HeaderSection) new Version1Map().readSection( buffer, SectionType.HEADER );
+      assertEquals( "test", header.getMapName() ); //$NON-NLS-1$
+      assertEquals( 0, buffer.position() );
+   }
+
+   /**
+    * A section whose bytes have been changed fails its checksum.
+    *
+    * @throws IOException if the map cannot be written.
+    */
+   @Test
+   public void testCorruptSectionIsRejected() throws IOException
+   {
+      final byte[] data = write( createMap() );
+      // Flip a bit in the last section.
+      data[ data.length - 1 ] ^= 1;
+      try
+      {
+         MapFactory.readMap( new ByteArrayInputStream( data ) );
+         fail( "Corrupt map was read" ); //$NON-NLS-1$
+      }
+      catch( final IOException e )
+      {
+         assertTrue( e.getMessage().contains( "Checksum" ) ); //$NON-NLS-1$
+      }
+   }
+
+   // ================| Default Methods |====================================
+
+   /**
+    * @return a map with a header, actions and tiles on every layer.
+    */
+   static MapDefinition createMap()
+   {
+      final int[][][] tiles = new int[ 3 ][ HEIGHT ][ WIDTH ];
+      for( int row = 0; row < HEIGHT; row++ )
+      {
+         for( int col = 0; col < WIDTH; col++ )
+         {
+            tiles[ 0 ][ row ][ col ] = ( row * 3 + col ) % 40;
+            tiles[ 1 ][ row ][ col ] = ( ( row + col ) % 7 ) == 0 ? col : -1;
+            tiles[ 2 ][ row ][ col ] = ( row == 4 ) ? 300 + col : -1;
+         }
+      }
+      final MapAction[] actions = new MapAction[]
+      {
+         new TeleportAction( new Coordinate( 1, 2 ), new Coordinate( 3, 4 ), "other" ), //$NON-NLS-1$
+         new ChangeLayerAction( new Coordinate( 5, 6 ), 1 )
+      };
+      return new MapDefinition( new HeaderSection( "test", "tiles", new Coordinate( 2, 3 ), 1, Direction.UP ), //$NON-NLS-1$ //$NON-NLS-2$
+                                new NpcSection( new NPC[ 0 ] ),
+                                new ActionSection( actions ),
+                                new MapSection( WIDTH, HEIGHT, tiles ),
+                                new MonsterSection( new MonsterZone[ 0 ] ) );
+   }
+
+   /**
+    * Checks that two maps have the same header, actions and tiles.
+    */
+   static void assertSameMap( final MapDefinition expected, final MapDefinition actual )
+   {
+      final HeaderSection header = actual.headerSection;
+      assertEquals( expected.headerSection.getMapName(), header.getMapName() );
+      assertEquals( expected.headerSection.getTilesetName(), header.getTilesetName() );
+      assertEquals( expected.headerSection.getStartPos(), header.getStartPos() );
+      assertEquals( expected.headerSection.getLayerIndex(), header.getLayerIndex() );
+      assertEquals( expected.headerSection.getDirection(), header.getDirection() );
+
+      assertEquals( expected.npcsSection.getNpcCount(), actual.npcsSection.getNpcCount() );
+      assertEquals( expected.monstersSection.getZoneCount(), actual.monstersSection.getZoneCount() );
+
+      assertEquals( expected.actionsSection.getActionCount(), actual.actionsSection.getActionCount() );
+      for( int a = 0; a < expected.actionsSection.getActionCount(); a++ )
+      {
+         final MapAction action = actual.actionsSection.getAction( a );
+         assertEquals( expected.actionsSection.getAction( a ).getActionType(), action.getActionType() );
+         assertEquals( expected.actionsSection.getAction( a ).getSource(), action.getSource() );
+      }
+
+      assertSameTiles( expected.mapsSection, actual.mapsSection );
+   }
+
+   /**
+    * Checks that two sections have the same tiles on every layer.
+    */
+   static void assertSameTiles( final MapSection expected, final MapSection actual )
+   {
+      assertEquals( expected.getWidth(), actual.getWidth() );
+      assertEquals( expected.getHeight(), actual.getHeight() );
+      assertEquals( expected.getLayerCount(), actual.getLayerCount() );
+      for( int layer = 0; layer < expected.getLayerCount(); layer++ )
+      {
+         for( int row = 0; row < expected.getHeight(); row++ )
+         {
+            for( int col = 0; col < expected.getWidth(); col++ )
+            {
+               assertEquals( "Tile " + layer + ", " + row + ", " + col, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                             expected.getTile( layer, row, col ),
+                             actual.getTile( layer, row, col ) );
+            }
+         }
+      }
+   }
+
+   // ================| Private Methods |====================================
+
+   private static byte[] write( final MapDefinition map ) throws IOException
+   {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream stream = new DataOutputStream( bytes );
+      MapFactory.writeMap( stream, map );
+      stream.flush();
+      return bytes.toByteArray();
+   }
+}
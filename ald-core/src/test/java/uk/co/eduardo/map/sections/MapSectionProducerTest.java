@@ -0,0 +1,164 @@
+package uk.co.eduardo.map.sections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Round trips tile grids through both encodings of {@link MapSectionProducer}.
+ *
+ * @author Ed
+ */
+public class MapSectionProducerTest
+{
+   /**
+    * A map with few distinct tiles, long runs and an empty, a dense and a sparse layer.
+    *
+    * @throws IOException if the section cannot be encoded or decoded.
+    */
+   @Test
+   public void testBytePaletteRoundTrip() throws IOException
+   {
+      final int width = 64;
+      final int height = 48;
+      final int[][][] tiles = createEmptyLayers( width, height );
+      for( int row = 0; row < height; row++ )
+      {
+         // Long runs on some rows and no runs at all on others.
+         for( int col = 0; col < width; col++ )
+         {
+            tiles[ 0 ][ row ][ col ] = ( row % 2 ) == 0 ? row / 8 : ( col * 7 ) % 11;
+            tiles[ 1 ][ row ][ col ] = ( ( row + col ) % 3 ) == 0 ? 5 : -1;
+         }
+      }
+      tiles[ 2 ][ 10 ][ 20 ] = 9;
+
+      assertRoundTrip( new MapSection( width, height, tiles ) );
+   }
+
+   /**
+    * A map with more distinct tiles than fit in a byte palette.
+    *
+    * @throws IOException if the section cannot be encoded or decoded.
+    */
+   @Test
+   public void testShortPaletteRoundTrip() throws IOException
+   {
+      final int width = 40;
+      final int height = 30;
+      final int[][][] tiles = createEmptyLayers( width, height );
+      for( int row = 0; row < height; row++ )
+      {
+         for( int col = 0; col < width; col++ )
+         {
+            tiles[ 0 ][ row ][ col ] = ( row * width ) + col;
+         }
+      }
+      tiles[ 1 ][ 0 ][ 0 ] = 1000;
+      tiles[ 1 ][ height - 1 ][ width - 1 ] = 1001;
+
+      assertRoundTrip( new MapSection( width, height, tiles ) );
+   }
+
+   /**
+    * The compact encoding of a large, mostly uniform map is much smaller than the legacy encoding.
+    *
+    * @throws IOException if the section cannot be encoded.
+    */
+   @Test
+   public void testCompactIsSmaller() throws IOException
+   {
+      final int width = 200;
+      final int height = 200;
+      final int[][][] tiles = createEmptyLayers( width, height );
+      for( int row = 0; row < height; row++ )
+      {
+         Arrays.fill( tiles[ 0 ][ row ], row < 100 ? 1 : 2 );
+      }
+      final MapSection section = new MapSection( width, height, tiles );
+
+      final int legacy = encode( section, MapSectionProducer.LEGACY_ENCODING ).length;
+      final int compact = encode( section, MapSectionProducer.COMPACT_ENCODING ).length;
+      assertTrue( "Compact " + compact + " legacy " + legacy, compact * 10 < legacy ); //$NON-NLS-1$ //$NON-NLS-2$
+   }
+
+   // ================| Private Methods |====================================
+
+   private static int[][][] createEmptyLayers( final int width, final int height )
+   {
+      final int[][][] tiles = new int[ MapSection.MAX_SPARSE_MAPS + 1 ][ height ][ width ];
+      for( int layer = 1; layer < tiles.length; layer++ )
+      {
+         for( final int[] row : tiles[ layer ] )
+         {
+            Arrays.fill( row, -1 );
+         }
+      }
+      return tiles;
+   }
+
+   /**
+    * Encodes the section with each encoding and checks it decodes the same from a stream and from a buffer, and that
+    * skipping the section leaves the buffer where decoding it would.
+    */
+   private static void assertRoundTrip( final MapSection section ) throws IOException
+   {
+      for( final int encoding : new int[] { MapSectionProducer.LEGACY_ENCODING, MapSectionProducer.COMPACT_ENCODING } )
+      {
+         final MapSectionProducer producer = new MapSectionProducer( encoding );
+         final byte[] data = encode( section, encoding );
+
+         final DataInputStream stream = new DataInputStream( new ByteArrayInputStream( data ) );
+         assertSameTiles( section, producer.readSection( stream ) );
+         assertEquals( 0, stream.available() );
+
+         // Follow the section with another byte to check the buffer is left positioned after it.
+         final ByteBuffer buffer = ByteBuffer.allocate( data.length + 1 );
+         buffer.put( data ).put( (byte) 42 ).flip();
+         assertSameTiles( section, producer.readSection( buffer.duplicate() ) );
+
+         final ByteBuffer read = buffer.duplicate();
+         producer.readSection( read );
+         final ByteBuffer skipped = buffer.duplicate();
+         producer.skipSection( skipped );
+         assertEquals( data.length, read.position() );
+         assertEquals( data.length, skipped.position() );
+      }
+   }
+
+   private static byte[] encode( final MapSection section, final int encoding ) throws IOException
+   {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream stream = new DataOutputStream( bytes );
+      new MapSectionProducer( encoding ).writeSection( stream, section );
+      stream.flush();
+      return bytes.toByteArray();
+   }
+
+   private static void assertSameTiles( final MapSection expected, final MapSection actual )
+   {
+      assertEquals( expected.getWidth(), actual.getWidth() );
+      assertEquals( expected.getHeight(), actual.getHeight() );
+      for( int layer = 0; layer < expected.getLayerCount(); layer++ )
+      {
+         for( int row = 0; row < expected.getHeight(); row++ )
+         {
+            for( int col = 0; col < expected.getWidth(); col++ )
+            {
+               assertEquals( "Tile " + layer + ", " + row + ", " + col, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                             expected.getTile( layer, row, col ),
+                             actual.getTile( layer, row, col ) );
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,245 @@
+package uk.co.eduardo.abaddon.ald.data;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tiles of a map that have changed, held as a small list of rectangles in tile coordinates.
+ * <p>
+ * A region can equally hold pixel rectangles, given a merge slack suited to pixels.
+ * <p>
+ * Rectangles that touch or nearly touch are merged as they are added, so a pencil stroke becomes a handful of rectangles
+ * rather than one per tile, while edits far apart from each other stay separate and the area between them is never
+ * redrawn. The number of rectangles is bounded; once the bound is reached the two rectangles that waste the least area
+ * when merged are combined.
+ * <p>
+ * A region of tiles also records which layers of the map were changed within it.
+ *
+ * @author Ed
+ */
+public final class DirtyRegion
+{
+   /** The maximum number of rectangles held. */
+   private static final int MAX_RECTANGLES = 16;
+
+   /** Two rectangles are merged if their union covers no more than this many clean tiles. */
+   private static final int MERGE_SLACK = 16;
+
+   private final List< Rectangle > rectangles = new ArrayList<>();
+
+   private final long mergeSlack;
+
+   /** A bit for each layer changed within the region. */
+   private int layers;
+
+   /**
+    * Creates an empty region.
+    */
+   public DirtyRegion()
+   {
+      this.mergeSlack = MERGE_SLACK;
+   }
+
+   /**
+    * Creates an empty region that merges rectangles more or less eagerly than a region of tiles.
+    *
+    * @param mergeSlack two rectangles are merged if their union covers no more than this many clean units.
+    */
+   public DirtyRegion( final long mergeSlack )
+   {
+      this.mergeSlack = mergeSlack;
+   }
+
+   /**
+    * Creates a region holding a single rectangle.
+    *
+    * @param x the X tile coordinate of the top-left of the rectangle.
+    * @param y the Y tile coordinate of the top-left of the rectangle.
+    * @param width the number of tiles wide the rectangle is.
+    * @param height the number of tiles high the rectangle is.
+    */
+   public DirtyRegion( final int x, final int y, final int width, final int height )
+   {
+      this();
+      add( x, y, width, height );
+   }
+
+   /**
+    * Adds a single tile to the region.
+    *
+    * @param x the X tile coordinate of the tile.
+    * @param y the Y tile coordinate of the tile.
+    */
+   public void add( final int x, final int y )
+   {
+      add( x, y, 1, 1 );
+   }
+
+   /**
+    * Adds a rectangle of tiles to the region. Empty rectangles are ignored.
+    *
+    * @param x the X tile coordinate of the top-left of the rectangle.
+    * @param y the Y tile coordinate of the top-left of the rectangle.
+    * @param width the number of tiles wide the rectangle is.
+    * @param height the number of tiles high the rectangle is.
+    */
+   public void add( final int x, final int y, final int width, final int height )
+   {
+      if( ( width <= 0 ) || ( height <= 0 ) )
+      {
+         return;
+      }
+      for( final Rectangle existing : this.rectangles )
+      {
+         if( ( x >= existing.x ) &&
+             ( y >= existing.y ) &&
+             ( ( x + width ) <= ( existing.x + existing.width ) ) &&
+             ( ( y + height ) <= ( existing.y + existing.height ) ) )
+         {
+            // Already dirty.
+            return;
+         }
+      }
+
+      // Keep merging the new rectangle with its neighbours until none of them is close enough.
+      Rectangle added = new Rectangle( x, y, width, height );
+      boolean merged = true;
+      while( merged )
+      {
+         merged = false;
+         for( int i = 0; i < this.rectangles.size(); i++ )
+         {
+            final Rectangle existing = this.rectangles.get( i );
+            if( waste( added, existing ) <= this.mergeSlack )
+            {
+               added = added.union( existing );
+               this.rectangles.remove( i );
+               merged = true;
+               break;
+            }
+         }
+      }
+      this.rectangles.add( added );
+
+      while( this.rectangles.size() > MAX_RECTANGLES )
+      {
+         mergeCheapestPair();
+      }
+   }
+
+   /**
+    * Records that tiles of a layer were changed within the region.
+    *
+    * @param layer the map layer.
+    */
+   public void addLayer( final int layer )
+   {
+      this.layers |= 1 << layer;
+   }
+
+   /**
+    * Records that tiles of every layer may have changed within the region.
+    */
+   public void addAllLayers()
+   {
+      this.layers = ~0;
+   }
+
+   /**
+    * @param layer a map layer.
+    * @return whether tiles of the layer were changed within the region.
+    */
+   public boolean containsLayer( final int layer )
+   {
+      return ( this.layers & ( 1 << layer ) ) != 0;
+   }
+
+   /**
+    * Adds all the rectangles and layers of another region to this one.
+    *
+    * @param other the region to add.
+    */
+   public void add( final DirtyRegion other )
+   {
+      this.layers |= other.layers;
+      for( final Rectangle rectangle : other.rectangles )
+      {
+         add( rectangle.x, rectangle.y, rectangle.width, rectangle.height );
+      }
+   }
+
+   /**
+    * @return whether no tiles are dirty.
+    */
+   public boolean isEmpty()
+   {
+      return this.rectangles.isEmpty();
+   }
+
+   /**
+    * @return the dirty rectangles in tile coordinates. These do not overlap each other heavily but may share some tiles.
+    */
+   public List< Rectangle > getRectangles()
+   {
+      return Collections.unmodifiableList( this.rectangles );
+   }
+
+   /**
+    * @return the smallest rectangle containing all dirty tiles, or an empty rectangle if there are none.
+    */
+   public Rectangle getBounds()
+   {
+      Rectangle bounds = null;
+      for( final Rectangle rectangle : this.rectangles )
+      {
+         bounds = bounds == null ? new Rectangle( rectangle ) : bounds.union( rectangle );
+      }
+      return bounds == null ? new Rectangle() : bounds;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return "DirtyRegion" + this.rectangles; //$NON-NLS-1$
+   }
+
+   /**
+    * @return the number of clean tiles that would be covered by merging two rectangles.
+    */
+   private static long waste( final Rectangle a, final Rectangle b )
+   {
+      final Rectangle union = a.union( b );
+      final Rectangle intersection = a.intersection( b );
+      final long overlap = intersection.isEmpty() ? 0 : (long) intersection.width * intersection.height;
+      return ( (long) union.width * union.height ) -
+             ( ( (long) a.width * a.height ) + ( (long) b.width * b.height ) - overlap );
+   }
+
+   private void mergeCheapestPair()
+   {
+      int bestA = 0;
+      int bestB = 1;
+      long bestWaste = Long.MAX_VALUE;
+      for( int a = 0; a < this.rectangles.size(); a++ )
+      {
+         for( int b = a + 1; b < this.rectangles.size(); b++ )
+         {
+            final long waste = waste( this.rectangles.get( a ), this.rectangles.get( b ) );
+            if( waste < bestWaste )
+            {
+               bestWaste = waste;
+               bestA = a;
+               bestB = b;
+            }
+         }
+      }
+      final Rectangle union = this.rectangles.get( bestA ).union( this.rectangles.get( bestB ) );
+      this.rectangles.remove( bestB );
+      this.rectangles.set( bestA, union );
+   }
+}
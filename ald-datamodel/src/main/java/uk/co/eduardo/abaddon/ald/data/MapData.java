@@ -1,7 +1,8 @@
 package uk.co.eduardo.abaddon.ald.data;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -11,13 +12,17 @@ import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoableEdit;
 
-import uk.co.eduardo.abaddon.ald.data.utils.TileConversionUtilities;
-import uk.co.eduardo.abaddon.util.Coordinate;
 import uk.co.eduardo.map.sections.MapSection;
 
 /**
  * Wrapper for the map data being currently edited. the {@link MapSection} is immutable and this is a mutable version from which a
  * {@link MapSection} can be created.
+ * <p>
+ * The tiles are stored in square chunks that are shared copy-on-write with any {@link MapSnapshot}s taken of the map, so
+ * taking a snapshot never copies tiles and only the chunks edited afterwards are ever copied.
+ * <p>
+ * An index of where each tile is used is kept up to date on every write, recording how many times each tile appears in
+ * each chunk. Finding or replacing a tile only visits the chunks that contain it.
  *
  * @author Ed
  */
@@ -28,15 +33,58 @@ public class MapData implements FileSectionAdaptor
    /** The maximum number of layers supported by the map. */
    public static final int MAX_LAYERS = 3;
 
-   private static final int MAX_COLS = 120;
+   /** The width and height in tiles of a map that is not initialized from a file section. */
+   private static final int DEFAULT_SIZE = 30;
 
-   private static final int MAX_ROWS = 120;
+   private static final int CHUNK_SHIFT = MapSnapshot.CHUNK_SHIFT;
 
-   private final int[][][] map = new int[ MAX_LAYERS ][ MAX_ROWS ][ MAX_COLS ];
+   private static final int CHUNK_MASK = MapSnapshot.CHUNK_MASK;
+
+   /** A chunk of the base layer that has never been written to. This is shared and never modified. */
+   private static final short[] BLANK_BASE_CHUNK = new short[ MapSnapshot.CHUNK_SIZE * MapSnapshot.CHUNK_SIZE ];
+
+   /** A chunk of a sparse layer that has never been written to. This is shared and never modified. */
+   private static final short[] BLANK_SPARSE_CHUNK = new short[ MapSnapshot.CHUNK_SIZE * MapSnapshot.CHUNK_SIZE ];
+
+   static
+   {
+      Arrays.fill( BLANK_SPARSE_CHUNK, (short) -1 );
+   }
+
+   /** The chunks of each layer, row by row with {@link #chunkCols} chunks per row. */
+   private final short[][][] chunks = new short[ MAX_LAYERS ][][];
+
+   /**
+    * The generation in which each chunk was copied. Only chunks copied in the current generation belong solely to this map
+    * data; any other chunk may be shared and must be copied before it is written to.
+    */
+   private final int[][] chunkGenerations = new int[ MAX_LAYERS ][];
+
+   /** Incremented every time a snapshot is taken. */
+   private int generation;
+
+   /** The number of chunks allocated for each row of chunks. */
+   private int chunkCols;
+
+   /** The number of rows of chunks allocated. */
+   private int chunkRows;
+
+   /**
+    * For each layer, indexed by tile + 1, the number of times the tile is used in each chunk, or <code>null</code> if the
+    * tile is not used anywhere in the storage.
+    */
+   private final int[][][] tileChunkCounts = new int[ MAX_LAYERS ][ 16 ][];
+
+   /** For each layer, indexed by tile + 1, the number of times the tile is used anywhere in the storage. */
+   private final int[][] tileTotals = new int[ MAX_LAYERS ][ 16 ];
+
+   /** The last snapshot taken, or <code>null</code> if the map has changed since. */
+   private MapSnapshot lastSnapshot;
 
    private final List< MapDataListener > listeners = new CopyOnWriteArrayList<>();
 
-   private final List< Coordinate > updatedTiles = new ArrayList<>();
+   /** The tiles changed by <code>setData</code> calls that have not been reported to the listeners yet. */
+   private DirtyRegion pendingRegion = new DirtyRegion();
 
    private int width;
 
@@ -51,42 +99,25 @@ public class MapData implements FileSectionAdaptor
     */
    public MapData( final MapSection section )
    {
-      final int mapWidth = section == null ? 0 : section.getWidth();
-      final int mapHeight = section == null ? 0 : section.getHeight();
-
-      final int[][][] original = section == null ? null : section.getMaps();
+      this.width = section == null ? DEFAULT_SIZE : section.getWidth();
+      this.height = section == null ? DEFAULT_SIZE : section.getHeight();
+      ensureCapacity( this.width, this.height );
 
-      for( int layer = 0; layer < MAX_LAYERS; layer++ )
+      if( section != null )
       {
-         final int val = layer == 0 ? 0 : -1;
-         for( int row = 0; row < mapHeight; row++ )
+         int[] source = null;
+         for( int layer = 0; layer < Math.min( MAX_LAYERS, section.getLayerCount() ); layer++ )
          {
-            for( int col = 0; col < mapWidth; col++ )
+            for( int row = 0; row < this.height; row++ )
             {
-               if( original != null )
-               {
-                  this.map[ layer ][ row ][ col ] = original[ layer ][ row ][ col ];
-               }
-               else
+               source = section.getRow( layer, row, 0, this.width, source );
+               for( int col = 0; col < this.width; col++ )
                {
-                  this.map[ layer ][ row ][ col ] = val;
+                  writeTile( layer, row, col, source[ col ] );
                }
             }
-            for( int col = mapWidth; col < MAX_COLS; col++ )
-            {
-               this.map[ layer ][ row ][ col ] = val;
-            }
-         }
-         for( int row = mapHeight; row < MAX_ROWS; row++ )
-         {
-            for( int col = 0; col < MAX_COLS; col++ )
-            {
-               this.map[ layer ][ row ][ col ] = val;
-            }
          }
       }
-      this.width = section == null ? MAX_COLS / 4 : mapWidth;
-      this.height = section == null ? MAX_ROWS / 4 : mapHeight;
    }
 
    /**
@@ -125,6 +156,7 @@ public class MapData implements FileSectionAdaptor
     */
    public void setWidth( final int width )
    {
+      ensureCapacity( width, this.height );
       this.width = width;
       fireMapUpdated( 0, 0, width, this.height );
    }
@@ -144,34 +176,88 @@ public class MapData implements FileSectionAdaptor
     */
    public void setHeight( final int height )
    {
+      ensureCapacity( this.width, height );
       this.height = height;
       fireMapUpdated( 0, 0, this.width, height );
    }
 
    /**
     * Sets the width and the height of the map in tiles.
+    * <p>
+    * Tiles that fall outside the map are kept, so undoing the returned edit restores them. Successive resize edits can be
+    * merged into one with {@link UndoableEdit#addEdit(UndoableEdit)}.
     *
     * @param width the width to set in tiles
     * @param height the height to set in tiles.
+    * @return an edit that enables the change to be undone, or <code>null</code> if the size did not change.
     */
-   public void setWidthAndHeight( final int width, final int height )
+   public UndoableEdit setWidthAndHeight( final int width, final int height )
    {
+      if( ( width == this.width ) && ( height == this.height ) )
+      {
+         return null;
+      }
+      final UndoableEdit edit = new ResizeEdit( this, this.width, this.height, width, height );
+      ensureCapacity( width, height );
       this.width = width;
       this.height = height;
       fireMapUpdated( 0, 0, width, height );
+      return edit;
    }
 
    /**
-    * Get the map data. This is three-dimensional array of the form: map[layer][row][column].
-    * <p>
-    * This returns the actual underlying map. <em>Take care!!</em> do not reassign these arrays or even modify their values! To do
-    * that use the proper {@link #setData(int, int, int, int)} methods to ensure that all listeners are notified of changes made.
+    * @param layer the map layer.
+    * @param row the row within the layer.
+    * @param col the column within the layer.
+    * @return the tile at that position, or <code>-1</code> if the position is outside the map.
+    */
+   public int getTile( final int layer, final int row, final int col )
+   {
+      if( ( col < 0 ) || ( col >= this.width ) || ( row < 0 ) || ( row >= this.height ) )
+      {
+         return -1;
+      }
+      return MapSnapshot.readTile( this.chunks[ layer ], this.chunkCols, row, col );
+   }
+
+   /**
+    * Copies a run of tiles from one row of the map.
     *
-    * @return the map data.
+    * @param layer the map layer.
+    * @param row the row within the layer.
+    * @param startCol the first column to copy.
+    * @param length the number of tiles to copy.
+    * @param dest the array into which the tiles are copied. If this is <code>null</code> or too short then a new array is
+    *           allocated.
+    * @return the array holding the tiles.
+    * @throws IndexOutOfBoundsException if the run does not lie within the map.
     */
-   public int[][][] getData()
+   public int[] getRow( final int layer, final int row, final int startCol, final int length, final int[] dest )
    {
-      return this.map;
+      return MapSnapshot.readRow( this.chunks[ layer ], this.chunkCols, this.width, this.height, row, startCol, length, dest );
+   }
+
+   /**
+    * Takes an immutable snapshot of the tiles. This does not copy any tiles; chunks of the map are only copied when they
+    * are next edited.
+    *
+    * @return a snapshot of the map as it is now.
+    */
+   public MapSnapshot snapshot()
+   {
+      if( this.lastSnapshot == null )
+      {
+         final short[][][] shared = new short[ MAX_LAYERS ][][];
+         for( int layer = 0; layer < MAX_LAYERS; layer++ )
+         {
+            shared[ layer ] = this.chunks[ layer ].clone();
+         }
+         this.lastSnapshot = new MapSnapshot( this.width, this.height, this.chunkCols, shared );
+
+         // Every chunk is now shared with the snapshot.
+         this.generation++;
+      }
+      return this.lastSnapshot;
    }
 
    /**
@@ -201,54 +287,251 @@ public class MapData implements FileSectionAdaptor
       {
          return null;
       }
-      final int currentValue = this.map[ layer ][ row ][ col ];
+      final int currentValue = MapSnapshot.readTile( this.chunks[ layer ], this.chunkCols, row, col );
       if( currentValue == newValue )
       {
          return null;
       }
 
-      this.map[ layer ][ row ][ col ] = newValue;
-      this.updatedTiles.add( new Coordinate( col, row ) );
+      writeTile( layer, row, col, newValue );
+      this.pendingRegion.add( col, row );
+      this.pendingRegion.addLayer( layer );
 
       if( !isAdjusting )
       {
-         try
+         final DirtyRegion region = this.pendingRegion;
+         this.pendingRegion = new DirtyRegion();
+         fireMapUpdated( region );
+      }
+      return new TileDiffEdit( this, layer, row, col, currentValue, newValue );
+   }
+
+   /**
+    * Writes the same tile to every position in a region.
+    *
+    * @param layer the map layer to update.
+    * @param region the region to update in tiles. Any part of it outside the map is ignored.
+    * @param source supplies the tile to write at each position.
+    * @return an edit that enables the change to be undone, or <code>null</code> if no tiles changed.
+    * @see #setRegion(int, Rectangle, BitSet, TileSource)
+    */
+   public UndoableEdit setRegion( final int layer, final Rectangle region, final TileSource source )
+   {
+      return setRegion( layer, region, null, source );
+   }
+
+   /**
+    * Writes tiles to many positions at once. Listeners are notified once, and a single edit is returned for all of the
+    * changed tiles.
+    *
+    * @param layer the map layer to update.
+    * @param region the region to update in tiles. Any part of it outside the map is ignored.
+    * @param mask the positions within the region to update, indexed row by row from the top-left of the region, i.e.
+    *           <code>(row - region.y) * region.width + (col - region.x)</code>. If <code>null</code> then every position in
+    *           the region is updated.
+    * @param source supplies the tile to write at each position.
+    * @return an edit that enables the change to be undone, or <code>null</code> if no tiles changed.
+    */
+   public UndoableEdit setRegion( final int layer, final Rectangle region, final BitSet mask, final TileSource source )
+   {
+      final Rectangle bounds = region.intersection( new Rectangle( 0, 0, this.width, this.height ) );
+      if( bounds.isEmpty() )
+      {
+         return null;
+      }
+
+      int[] positions = new int[ 64 ];
+      short[] oldValues = new short[ 64 ];
+      short[] newValues = new short[ 64 ];
+      int changed = 0;
+      final DirtyRegion dirty = new DirtyRegion();
+
+      final short[][] layerChunks = this.chunks[ layer ];
+      for( int row = bounds.y; row < ( bounds.y + bounds.height ); row++ )
+      {
+         final int maskRow = ( row - region.y ) * region.width;
+         for( int col = bounds.x; col < ( bounds.x + bounds.width ); col++ )
          {
-            final Coordinate[] tiles = this.updatedTiles.toArray( new Coordinate[ 0 ] );
-            final Rectangle rect = TileConversionUtilities.tileUnion( tiles );
-            fireMapUpdated( rect.x, rect.y, rect.width, rect.height );
+            if( ( mask != null ) && !mask.get( maskRow + ( col - region.x ) ) )
+            {
+               continue;
+            }
+            final int newValue = source.getTile( row, col );
+            final int currentValue = MapSnapshot.readTile( layerChunks, this.chunkCols, row, col );
+            if( newValue == currentValue )
+            {
+               continue;
+            }
+            writeTile( layer, row, col, newValue );
+
+            if( changed == positions.length )
+            {
+               positions = Arrays.copyOf( positions, changed * 2 );
+               oldValues = Arrays.copyOf( oldValues, changed * 2 );
+               newValues = Arrays.copyOf( newValues, changed * 2 );
+            }
+            positions[ changed ] = ( row << 16 ) | col;
+            oldValues[ changed ] = (short) currentValue;
+            newValues[ changed ] = (short) newValue;
+            changed++;
+            dirty.add( col, row );
+         }
+      }
+
+      if( changed == 0 )
+      {
+         return null;
+      }
+      dirty.addLayer( layer );
+      fireMapUpdated( dirty );
+      return new TileDiffEdit( this,
+                               layer,
+                               Arrays.copyOf( positions, changed ),
+                               Arrays.copyOf( oldValues, changed ),
+                               Arrays.copyOf( newValues, changed ) );
+   }
+
+   /**
+    * @param layer the map layer.
+    * @param tile the tile to count.
+    * @return the number of times the tile is used on the layer within the map.
+    */
+   public int getTileCount( final int layer, final int tile )
+   {
+      final int[] counts = getChunkCounts( layer, tile );
+      if( counts == null )
+      {
+         return 0;
+      }
+      int total = 0;
+      for( int chunkRow = 0; chunkRow < this.chunkRows; chunkRow++ )
+      {
+         for( int chunkCol = 0; chunkCol < this.chunkCols; chunkCol++ )
+         {
+            final int count = counts[ ( chunkRow * this.chunkCols ) + chunkCol ];
+            if( count == 0 )
+            {
+               continue;
+            }
+            final Rectangle chunkBounds = getChunkBounds( chunkRow, chunkCol );
+            if( chunkBounds.isEmpty() )
+            {
+               continue;
+            }
+            if( ( chunkBounds.width == MapSnapshot.CHUNK_SIZE ) && ( chunkBounds.height == MapSnapshot.CHUNK_SIZE ) )
+            {
+               total += count;
+            }
+            else
+            {
+               // The chunk straddles the edge of the map, so only count the part inside it.
+               total += scanChunk( layer, tile, chunkBounds, null, 0 );
+            }
          }
-         finally
+      }
+      return total;
+   }
+
+   /**
+    * @param layer the map layer.
+    * @return the tiles used on the layer within the map, in ascending order.
+    */
+   public int[] getUsedTiles( final int layer )
+   {
+      final int[] totals = this.tileTotals[ layer ];
+      int[] used = new int[ 16 ];
+      int count = 0;
+      for( int slot = 0; slot < totals.length; slot++ )
+      {
+         if( ( totals[ slot ] > 0 ) && ( getTileCount( layer, slot - 1 ) > 0 ) )
          {
-            this.updatedTiles.clear();
+            if( count == used.length )
+            {
+               used = Arrays.copyOf( used, count * 2 );
+            }
+            used[ count++ ] = slot - 1;
          }
       }
-      return new MapUndoableEdit( this, layer, new Coordinate( col, row ), currentValue, newValue );
+      return Arrays.copyOf( used, count );
    }
 
    /**
-    * {@inheritDoc}
+    * Finds every position on a layer at which a tile is used. Only the chunks of the map that contain the tile are
+    * searched.
+    *
+    * @param layer the map layer.
+    * @param tile the tile to find.
+    * @return the positions within the map at which the tile is used, each packed as <code>(row &lt;&lt; 16) | col</code>.
     */
-   @Override
-   public MapSection createFileSection()
+   public int[] findTile( final int layer, final int tile )
    {
-      final int[][][] data = new int[ MAX_LAYERS ][ this.height ][ this.width ];
-      for( int layer = 0; layer < MAX_LAYERS; layer++ )
+      final int[] counts = getChunkCounts( layer, tile );
+      if( counts == null )
+      {
+         return new int[ 0 ];
+      }
+      int[] positions = new int[ 64 ];
+      int found = 0;
+      for( int chunkRow = 0; chunkRow < this.chunkRows; chunkRow++ )
       {
-         for( int row = 0; row < this.height; row++ )
+         for( int chunkCol = 0; chunkCol < this.chunkCols; chunkCol++ )
          {
-            for( int col = 0; col < this.width; col++ )
+            final int count = counts[ ( chunkRow * this.chunkCols ) + chunkCol ];
+            final Rectangle chunkBounds = getChunkBounds( chunkRow, chunkCol );
+            if( ( count == 0 ) || chunkBounds.isEmpty() )
             {
-               data[ layer ][ row ][ col ] = this.map[ layer ][ row ][ col ];
+               continue;
             }
+            if( ( found + count ) > positions.length )
+            {
+               positions = Arrays.copyOf( positions, Math.max( found + count, positions.length * 2 ) );
+            }
+            found = scanChunk( layer, tile, chunkBounds, positions, found );
          }
       }
-      final MapSection mapSection = new MapSection( this.width, this.height, data );
-      return mapSection;
+      return Arrays.copyOf( positions, found );
    }
 
    /**
-    * Notifies all listeners that an update to the map was made between the specified bounding box.
+    * Replaces every use of a tile on a layer with another tile. Listeners are notified once, and a single edit is
+    * returned for all of the changed tiles.
+    *
+    * @param layer the map layer to update.
+    * @param oldTile the tile to replace.
+    * @param newTile the tile to replace it with.
+    * @return an edit that enables the change to be undone, or <code>null</code> if no tiles changed.
+    */
+   public UndoableEdit replaceTile( final int layer, final int oldTile, final int newTile )
+   {
+      if( (short) oldTile == (short) newTile )
+      {
+         return null;
+      }
+      final int[] positions = findTile( layer, oldTile );
+      if( positions.length == 0 )
+      {
+         return null;
+      }
+
+      final short[] oldValues = new short[ positions.length ];
+      final short[] newValues = new short[ positions.length ];
+      Arrays.fill( oldValues, (short) oldTile );
+      Arrays.fill( newValues, (short) newTile );
+      applyTiles( layer, positions, newValues, positions.length, false );
+      return new TileDiffEdit( this, layer, positions, oldValues, newValues );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public MapSection createFileSection()
+   {
+      return snapshot().toFileSection();
+   }
+
+   /**
+    * Notifies all listeners that an update to the map was made between the specified bounding box, on every layer.
     *
     * @param x the x position of the tile that is the top-left of the bounding box.
     * @param y the y position of the tile that is the top-left of the bounding box.
@@ -256,48 +539,289 @@ public class MapData implements FileSectionAdaptor
     * @param boxHeight the height of the edit in tiles.
     */
    protected void fireMapUpdated( final int x, final int y, final int boxWidth, final int boxHeight )
+   {
+      final DirtyRegion region = new DirtyRegion( x, y, boxWidth, boxHeight );
+      region.addAllLayers();
+      fireMapUpdated( region );
+   }
+
+   /**
+    * Notifies all listeners that the tiles in a region of the map were updated.
+    *
+    * @param region the tiles that were updated. This must not be modified afterwards.
+    */
+   protected void fireMapUpdated( final DirtyRegion region )
    {
       for( final MapDataListener listener : this.listeners )
       {
-         listener.mapUpdated( x, y, boxWidth, boxHeight );
+         listener.mapUpdated( region );
+      }
+   }
+
+   /**
+    * Writes tiles without creating an edit, notifying listeners once for all of them. Used to undo and redo edits.
+    *
+    * @param layer the map layer to update.
+    * @param positions the positions to update, each packed as <code>(row &lt;&lt; 16) | col</code>.
+    * @param values the tile to write at each position.
+    * @param count the number of positions to update.
+    * @param reverse whether to write the positions last to first. Undoing must do this so that where a position was
+    *           changed more than once it ends up with its earliest value.
+    */
+   void applyTiles( final int layer, final int[] positions, final short[] values, final int count, final boolean reverse )
+   {
+      final DirtyRegion region = new DirtyRegion();
+      for( int n = 0; n < count; n++ )
+      {
+         final int i = reverse ? count - 1 - n : n;
+         final int row = positions[ i ] >>> 16;
+         final int col = positions[ i ] & 0xFFFF;
+         writeTile( layer, row, col, values[ i ] );
+         region.add( col, row );
+      }
+      if( count > 0 )
+      {
+         region.addLayer( layer );
+         fireMapUpdated( region );
       }
    }
 
-   private static final class MapUndoableEdit extends AbstractUndoableEdit
+   /**
+    * Writes a tile without notifying listeners, copying its chunk first if it may be shared.
+    */
+   private void writeTile( final int layer, final int row, final int col, final int value )
+   {
+      final int index = ( ( row >> CHUNK_SHIFT ) * this.chunkCols ) + ( col >> CHUNK_SHIFT );
+      final int offset = ( ( row & CHUNK_MASK ) << CHUNK_SHIFT ) + ( col & CHUNK_MASK );
+
+      short[] chunk = this.chunks[ layer ][ index ];
+      if( chunk[ offset ] == value )
+      {
+         return;
+      }
+      updateIndex( layer, index, chunk[ offset ], -1 );
+      updateIndex( layer, index, (short) value, 1 );
+      if( this.chunkGenerations[ layer ][ index ] != this.generation )
+      {
+         chunk = chunk.clone();
+         this.chunks[ layer ][ index ] = chunk;
+         this.chunkGenerations[ layer ][ index ] = this.generation;
+      }
+      chunk[ offset ] = (short) value;
+      this.lastSnapshot = null;
+   }
+
+   /**
+    * Adjusts the number of times a tile is used in a chunk.
+    */
+   private void updateIndex( final int layer, final int chunkIndex, final short tile, final int delta )
    {
-      private static final String EDIT_NAME = resources.getString( "uk.co.eduardo.abaddon.undoable.map.edit" ); //$NON-NLS-1$
+      final int slot = tile + 1;
+      if( slot < 0 )
+      {
+         // Only -1 is used to mark an empty tile; anything below it is not indexed.
+         return;
+      }
+      if( slot >= this.tileTotals[ layer ].length )
+      {
+         final int capacity = Math.max( slot + 1, this.tileTotals[ layer ].length * 2 );
+         this.tileTotals[ layer ] = Arrays.copyOf( this.tileTotals[ layer ], capacity );
+         this.tileChunkCounts[ layer ] = Arrays.copyOf( this.tileChunkCounts[ layer ], capacity );
+      }
+
+      int[] counts = this.tileChunkCounts[ layer ][ slot ];
+      if( counts == null )
+      {
+         counts = new int[ this.chunks[ layer ].length ];
+         this.tileChunkCounts[ layer ][ slot ] = counts;
+      }
+      counts[ chunkIndex ] += delta;
+      this.tileTotals[ layer ][ slot ] += delta;
+      if( this.tileTotals[ layer ][ slot ] == 0 )
+      {
+         this.tileChunkCounts[ layer ][ slot ] = null;
+      }
+   }
+
+   /**
+    * @return the number of times a tile is used in each chunk of a layer, or <code>null</code> if it is not used.
+    */
+   private int[] getChunkCounts( final int layer, final int tile )
+   {
+      final int slot = (short) tile + 1;
+      if( ( slot < 0 ) || ( slot >= this.tileChunkCounts[ layer ].length ) )
+      {
+         return null;
+      }
+      return this.tileChunkCounts[ layer ][ slot ];
+   }
+
+   /**
+    * @return the tiles of a chunk that lie within the map.
+    */
+   private Rectangle getChunkBounds( final int chunkRow, final int chunkCol )
+   {
+      final int x = chunkCol << CHUNK_SHIFT;
+      final int y = chunkRow << CHUNK_SHIFT;
+      return new Rectangle( x,
+                            y,
+                            Math.max( 0, Math.min( MapSnapshot.CHUNK_SIZE, this.width - x ) ),
+                            Math.max( 0, Math.min( MapSnapshot.CHUNK_SIZE, this.height - y ) ) );
+   }
+
+   /**
+    * Finds the uses of a tile within part of a chunk.
+    *
+    * @param positions receives the packed position of each use, starting at <code>found</code>. May be
+    *           <code>null</code> if the uses only need counting.
+    * @return <code>found</code> plus the number of uses.
+    */
+   private int scanChunk( final int layer, final int tile, final Rectangle bounds, final int[] positions, final int found )
+   {
+      final short[] chunk = this.chunks[ layer ][ ( ( bounds.y >> CHUNK_SHIFT ) * this.chunkCols ) + ( bounds.x >> CHUNK_SHIFT ) ];
+      final short value = (short) tile;
+      int next = found;
+      for( int row = bounds.y; row < ( bounds.y + bounds.height ); row++ )
+      {
+         final int rowOffset = ( row & CHUNK_MASK ) << CHUNK_SHIFT;
+         for( int col = bounds.x; col < ( bounds.x + bounds.width ); col++ )
+         {
+            if( chunk[ rowOffset + ( col & CHUNK_MASK ) ] == value )
+            {
+               if( positions != null )
+               {
+                  positions[ next ] = ( row << 16 ) | col;
+               }
+               next++;
+            }
+         }
+      }
+      return next;
+   }
+
+   /**
+    * Makes sure that there is storage for a map of the given size. Tiles outside the current bounds of the map are kept
+    * so that shrinking and then growing the map again does not lose them.
+    */
+   private void ensureCapacity( final int requiredWidth, final int requiredHeight )
+   {
+      this.lastSnapshot = null;
+
+      final int requiredCols = ( requiredWidth + CHUNK_MASK ) >> CHUNK_SHIFT;
+      final int requiredRows = ( requiredHeight + CHUNK_MASK ) >> CHUNK_SHIFT;
+      if( ( requiredCols <= this.chunkCols ) && ( requiredRows <= this.chunkRows ) && ( this.chunks[ 0 ] != null ) )
+      {
+         return;
+      }
+
+      // Grow by at least half again to avoid reallocating on every step of a resize drag. Only the chunk references are
+      // copied, never the tiles themselves.
+      final int newCols = grow( this.chunkCols, requiredCols );
+      final int newRows = grow( this.chunkRows, requiredRows );
+      for( int layer = 0; layer < MAX_LAYERS; layer++ )
+      {
+         final short[][] grown = new short[ newCols * newRows ][];
+         final int[] grownGenerations = new int[ newCols * newRows ];
+         Arrays.fill( grown, layer == 0 ? BLANK_BASE_CHUNK : BLANK_SPARSE_CHUNK );
+         Arrays.fill( grownGenerations, -1 );
+
+         if( this.chunks[ layer ] != null )
+         {
+            for( int row = 0; row < this.chunkRows; row++ )
+            {
+               System.arraycopy( this.chunks[ layer ], row * this.chunkCols, grown, row * newCols, this.chunkCols );
+               System.arraycopy( this.chunkGenerations[ layer ], row * this.chunkCols, grownGenerations, row * newCols, this.chunkCols );
+            }
+         }
+         this.chunks[ layer ] = grown;
+         this.chunkGenerations[ layer ] = grownGenerations;
+
+         // Move the index to the new layout of chunks, and count the tiles of the new blank chunks.
+         final int[][] layerCounts = this.tileChunkCounts[ layer ];
+         for( int slot = 0; slot < layerCounts.length; slot++ )
+         {
+            if( layerCounts[ slot ] != null )
+            {
+               final int[] grownCounts = new int[ newCols * newRows ];
+               for( int row = 0; row < this.chunkRows; row++ )
+               {
+                  System.arraycopy( layerCounts[ slot ], row * this.chunkCols, grownCounts, row * newCols, this.chunkCols );
+               }
+               layerCounts[ slot ] = grownCounts;
+            }
+         }
+         final short blank = layer == 0 ? BLANK_BASE_CHUNK[ 0 ] : BLANK_SPARSE_CHUNK[ 0 ];
+         for( int row = 0; row < newRows; row++ )
+         {
+            for( int col = 0; col < newCols; col++ )
+            {
+               if( ( row >= this.chunkRows ) || ( col >= this.chunkCols ) )
+               {
+                  updateIndex( layer, ( row * newCols ) + col, blank, BLANK_BASE_CHUNK.length );
+               }
+            }
+         }
+      }
+      this.chunkCols = newCols;
+      this.chunkRows = newRows;
+   }
+
+   private static int grow( final int capacity, final int required )
+   {
+      return required <= capacity ? capacity : Math.max( required, capacity + ( capacity >> 1 ) );
+   }
+
+   /**
+    * Changes the size of the map. Consecutive resizes of the same map merge into a single edit.
+    */
+   private static final class ResizeEdit extends AbstractUndoableEdit
+   {
+      private static final String EDIT_NAME = resources.getString( "uk.co.eduardo.abaddon.undoable.map.resize" ); //$NON-NLS-1$
 
       private final MapData data;
 
-      private final int layer;
+      private final int oldWidth;
 
-      private final Coordinate tile;
+      private final int oldHeight;
 
-      private final int oldValue;
+      private int newWidth;
 
-      private final int newValue;
+      private int newHeight;
 
-      private MapUndoableEdit( final MapData data, final int layer, final Coordinate tile, final int oldValue, final int newValue )
+      private ResizeEdit( final MapData data, final int oldWidth, final int oldHeight, final int newWidth, final int newHeight )
       {
          this.data = data;
-         this.layer = layer;
-         this.tile = tile;
-         this.oldValue = oldValue;
-         this.newValue = newValue;
+         this.oldWidth = oldWidth;
+         this.oldHeight = oldHeight;
+         this.newWidth = newWidth;
+         this.newHeight = newHeight;
       }
 
       @Override
       public void undo() throws CannotUndoException
       {
          super.undo();
-         this.data.setData( this.layer, this.tile.y, this.tile.x, this.oldValue );
+         this.data.setWidthAndHeight( this.oldWidth, this.oldHeight );
       }
 
       @Override
       public void redo() throws CannotRedoException
       {
          super.redo();
-         this.data.setData( this.layer, this.tile.y, this.tile.x, this.newValue );
+         this.data.setWidthAndHeight( this.newWidth, this.newHeight );
+      }
+
+      @Override
+      public boolean addEdit( final UndoableEdit anEdit )
+      {
+         if( ( anEdit instanceof ResizeEdit ) && ( ( (ResizeEdit) anEdit ).data == this.data ) && canUndo() )
+         {
+            this.newWidth = ( (ResizeEdit) anEdit ).newWidth;
+            this.newHeight = ( (ResizeEdit) anEdit ).newHeight;
+            anEdit.die();
+            return true;
+         }
+         return false;
       }
 
       @Override
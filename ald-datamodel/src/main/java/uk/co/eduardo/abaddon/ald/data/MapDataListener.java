@@ -8,13 +8,10 @@ package uk.co.eduardo.abaddon.ald.data;
 public interface MapDataListener
 {
    /**
-    * Notification that the map has been updated. The updates to the map were made between the bounding box specified (in tile
-    * coordinates).
+    * Notification that the map has been updated. Only the tiles within the rectangles of the region (in tile coordinates)
+    * and on the layers it contains were affected.
     *
-    * @param startTileX the top-left X position where the update started
-    * @param startTileY the top-right Y position where the update started.
-    * @param width the number of tiles wide that were affected.
-    * @param height the number of tiles wide that were affected.
+    * @param region the tiles that were updated. This must not be modified.
     */
-   void mapUpdated( int startTileX, int startTileY, int width, int height );
+   void mapUpdated( DirtyRegion region );
 }
@@ -0,0 +1,154 @@
+package uk.co.eduardo.abaddon.ald.data;
+
+import uk.co.eduardo.map.sections.MapSection;
+import uk.co.eduardo.map.sections.TileGrid;
+
+/**
+ * An immutable view of the tiles of a {@link MapData} at the moment {@link MapData#snapshot()} was called.
+ * <p>
+ * The snapshot shares its storage with the map data; tiles are only copied when the map data is next written to. A
+ * snapshot may safely be read from any thread, e.g. to save the map off the Event Dispatch Thread while the user keeps
+ * editing.
+ *
+ * @author Ed
+ */
+public final class MapSnapshot implements TileGrid
+{
+   /** The width and height in tiles of each chunk of storage is <code>1 &lt;&lt; CHUNK_SHIFT</code>. */
+   static final int CHUNK_SHIFT = 4;
+
+   /** The width and height in tiles of each chunk of storage. */
+   static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+   static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+   private final int width;
+
+   private final int height;
+
+   private final int chunkCols;
+
+   /** The chunks of each layer, row by row with {@link #chunkCols} chunks per row. These are never modified. */
+   private final short[][][] chunks;
+
+   /**
+    * @param width the width of the map in tiles.
+    * @param height the height of the map in tiles.
+    * @param chunkCols the number of chunks in each row of chunks.
+    * @param chunks the chunks of each layer. These must never be modified once the snapshot has been created.
+    */
+   MapSnapshot( final int width, final int height, final int chunkCols, final short[][][] chunks )
+   {
+      this.width = width;
+      this.height = height;
+      this.chunkCols = chunkCols;
+      this.chunks = chunks;
+   }
+
+   /**
+    * @return a file section that reads its tiles directly from this snapshot.
+    */
+   public MapSection toFileSection()
+   {
+      return new MapSection( this );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getWidth()
+   {
+      return this.width;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getHeight()
+   {
+      return this.height;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getLayerCount()
+   {
+      return this.chunks.length;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getTile( final int layer, final int row, final int col )
+   {
+      if( ( col < 0 ) || ( col >= this.width ) || ( row < 0 ) || ( row >= this.height ) )
+      {
+         return -1;
+      }
+      return readTile( this.chunks[ layer ], this.chunkCols, row, col );
+   }
+
+   /**
+    * {@inheritDoc}
+    *
+    * @throws IndexOutOfBoundsException if the run does not lie within the map.
+    */
+   @Override
+   public int[] getRow( final int layer, final int row, final int startCol, final int length, final int[] dest )
+   {
+      return readRow( this.chunks[ layer ], this.chunkCols, this.width, this.height, row, startCol, length, dest );
+   }
+
+   /**
+    * Reads a single tile from chunked storage. The position must lie within the storage.
+    */
+   static int readTile( final short[][] layerChunks, final int chunkCols, final int row, final int col )
+   {
+      final short[] chunk = layerChunks[ ( ( row >> CHUNK_SHIFT ) * chunkCols ) + ( col >> CHUNK_SHIFT ) ];
+      return chunk[ ( ( row & CHUNK_MASK ) << CHUNK_SHIFT ) + ( col & CHUNK_MASK ) ];
+   }
+
+   /**
+    * Copies a run of tiles from one row of chunked storage.
+    */
+   static int[] readRow( final short[][] layerChunks,
+                         final int chunkCols,
+                         final int width,
+                         final int height,
+                         final int row,
+                         final int startCol,
+                         final int length,
+                         final int[] dest )
+   {
+      if( ( startCol < 0 ) || ( length < 0 ) || ( ( startCol + length ) > width ) || ( row < 0 ) || ( row >= height ) )
+      {
+         throw new IndexOutOfBoundsException( "Row " + row + " columns " + startCol + "-" + ( startCol + length ) ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      }
+      final int[] tiles = ( ( dest == null ) || ( dest.length < length ) ) ? new int[ length ] : dest;
+
+      final int chunkRowStart = ( row >> CHUNK_SHIFT ) * chunkCols;
+      final int rowOffset = ( row & CHUNK_MASK ) << CHUNK_SHIFT;
+      int col = startCol;
+      int out = 0;
+      while( out < length )
+      {
+         // Copy the part of the row that lies within this chunk.
+         final short[] chunk = layerChunks[ chunkRowStart + ( col >> CHUNK_SHIFT ) ];
+         final int inChunk = col & CHUNK_MASK;
+         final int count = Math.min( CHUNK_SIZE - inChunk, length - out );
+         final int offset = rowOffset + inChunk;
+         for( int i = 0; i < count; i++ )
+         {
+            tiles[ out + i ] = chunk[ offset + i ];
+         }
+         out += count;
+         col += count;
+      }
+      return tiles;
+   }
+}
@@ -0,0 +1,323 @@
+package uk.co.eduardo.abaddon.ald.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.ResourceBundle;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+import uk.co.eduardo.abaddon.ald.data.undo.SpillableEdit;
+import uk.co.eduardo.abaddon.ald.data.undo.UndoJournal;
+
+/**
+ * An undoable change to any number of tiles on one layer of a {@link MapData}.
+ * <p>
+ * The changed positions and their old and new tiles are held in primitive arrays, and undoing or redoing the edit writes
+ * all of the tiles at once with a single notification to the listeners of the map.
+ * <p>
+ * Later edits to the same layer of the same map are absorbed by {@link #addEdit(UndoableEdit)}, so a whole pencil stroke
+ * becomes a single edit.
+ * <p>
+ * When spilled to an {@link UndoJournal} the positions are delta encoded as variable length integers, so a typical edit
+ * takes a little over four bytes per tile on disk.
+ *
+ * @author Ed
+ */
+public final class TileDiffEdit extends AbstractUndoableEdit implements SpillableEdit
+{
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
+
+   private static final String EDIT_NAME = resources.getString( "uk.co.eduardo.abaddon.undoable.map.edit" ); //$NON-NLS-1$
+
+   private final MapData data;
+
+   private final int layer;
+
+   /** The changed positions, each packed as <code>(row &lt;&lt; 16) | col</code>, in the order they were changed. */
+   private int[] positions;
+
+   private short[] oldValues;
+
+   private short[] newValues;
+
+   /** The number of entries in use in the arrays. */
+   private int count;
+
+   /** The journal holding the changes once they have been spilled, otherwise <code>null</code>. */
+   private UndoJournal journal;
+
+   private long journalOffset;
+
+   private int journalLength;
+
+   /**
+    * @param data the map that was edited.
+    * @param layer the layer that was edited.
+    * @param positions the changed positions, each packed as <code>(row &lt;&lt; 16) | col</code>.
+    * @param oldValues the tiles before the edit.
+    * @param newValues the tiles after the edit.
+    */
+   TileDiffEdit( final MapData data, final int layer, final int[] positions, final short[] oldValues, final short[] newValues )
+   {
+      this.data = data;
+      this.layer = layer;
+      this.positions = positions;
+      this.oldValues = oldValues;
+      this.newValues = newValues;
+      this.count = positions.length;
+   }
+
+   /**
+    * @param data the map that was edited.
+    * @param layer the layer that was edited.
+    * @param row the row of the changed tile.
+    * @param col the column of the changed tile.
+    * @param oldValue the tile before the edit.
+    * @param newValue the tile after the edit.
+    */
+   TileDiffEdit( final MapData data, final int layer, final int row, final int col, final int oldValue, final int newValue )
+   {
+      this( data, layer, new int[ 1 ], new short[ 1 ], new short[ 1 ] );
+      this.positions[ 0 ] = ( row << 16 ) | col;
+      this.oldValues[ 0 ] = (short) oldValue;
+      this.newValues[ 0 ] = (short) newValue;
+   }
+
+   /**
+    * @return the number of tile changes held by this edit.
+    */
+   public int getTileCount()
+   {
+      return this.count;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getSizeInBytes()
+   {
+      // Object headers and fields, plus the three arrays.
+      if( this.positions == null )
+      {
+         return 64;
+      }
+      return 64 + ( this.positions.length * 4L ) + ( this.oldValues.length * 2L ) + ( this.newValues.length * 2L );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isSpilled()
+   {
+      return this.journal != null;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void spill( final UndoJournal target ) throws IOException
+   {
+      if( ( this.journal != null ) || ( this.positions == null ) )
+      {
+         return;
+      }
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream( ( this.count * 5 ) + 8 );
+      final DataOutputStream stream = new DataOutputStream( bytes );
+      int previous = 0;
+      for( int i = 0; i < this.count; i++ )
+      {
+         // Zig-zag encode the difference so that small steps in either direction take a single byte.
+         final int delta = this.positions[ i ] - previous;
+         writeVarInt( stream, ( delta << 1 ) ^ ( delta >> 31 ) );
+         stream.writeShort( this.oldValues[ i ] );
+         stream.writeShort( this.newValues[ i ] );
+         previous = this.positions[ i ];
+      }
+      stream.flush();
+
+      final byte[] record = bytes.toByteArray();
+      this.journalOffset = target.write( record );
+      this.journalLength = record.length;
+      this.journal = target;
+      this.positions = null;
+      this.oldValues = null;
+      this.newValues = null;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void undo() throws CannotUndoException
+   {
+      super.undo();
+      if( this.journal == null )
+      {
+         this.data.applyTiles( this.layer, this.positions, this.oldValues, this.count, true );
+         return;
+      }
+      final int[] spilledPositions = new int[ this.count ];
+      final short[] spilledValues = new short[ this.count ];
+      try
+      {
+         readSpilled( spilledPositions, spilledValues, true );
+      }
+      catch( final IOException e )
+      {
+         final CannotUndoException exception = new CannotUndoException();
+         exception.initCause( e );
+         throw exception;
+      }
+      this.data.applyTiles( this.layer, spilledPositions, spilledValues, this.count, true );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void redo() throws CannotRedoException
+   {
+      super.redo();
+      if( this.journal == null )
+      {
+         this.data.applyTiles( this.layer, this.positions, this.newValues, this.count, false );
+         return;
+      }
+      final int[] spilledPositions = new int[ this.count ];
+      final short[] spilledValues = new short[ this.count ];
+      try
+      {
+         readSpilled( spilledPositions, spilledValues, false );
+      }
+      catch( final IOException e )
+      {
+         final CannotRedoException exception = new CannotRedoException();
+         exception.initCause( e );
+         throw exception;
+      }
+      this.data.applyTiles( this.layer, spilledPositions, spilledValues, this.count, false );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void die()
+   {
+      super.die();
+      this.positions = null;
+      this.oldValues = null;
+      this.newValues = null;
+      if( this.journal != null )
+      {
+         this.journal.release( this.journalLength );
+         this.journal = null;
+      }
+   }
+
+   /**
+    * Absorbs a later edit to the same layer of the same map.
+    * <p>
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean addEdit( final UndoableEdit anEdit )
+   {
+      if( !( anEdit instanceof TileDiffEdit ) || !canUndo() || !anEdit.canUndo() )
+      {
+         return false;
+      }
+      final TileDiffEdit other = (TileDiffEdit) anEdit;
+      if( ( other.data != this.data ) || ( other.layer != this.layer ) || isSpilled() || other.isSpilled() )
+      {
+         return false;
+      }
+
+      final int required = this.count + other.count;
+      if( required > this.positions.length )
+      {
+         final int capacity = Math.max( required, this.positions.length * 2 );
+         this.positions = Arrays.copyOf( this.positions, capacity );
+         this.oldValues = Arrays.copyOf( this.oldValues, capacity );
+         this.newValues = Arrays.copyOf( this.newValues, capacity );
+      }
+      System.arraycopy( other.positions, 0, this.positions, this.count, other.count );
+      System.arraycopy( other.oldValues, 0, this.oldValues, this.count, other.count );
+      System.arraycopy( other.newValues, 0, this.newValues, this.count, other.count );
+      this.count = required;
+
+      other.die();
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getPresentationName()
+   {
+      return EDIT_NAME;
+   }
+
+   /**
+    * Reads the spilled changes back from the journal.
+    *
+    * @param spilledPositions receives the positions.
+    * @param spilledValues receives the old or new tiles.
+    * @param old whether to read the old tiles rather than the new ones.
+    */
+   private void readSpilled( final int[] spilledPositions, final short[] spilledValues, final boolean old )
+      throws IOException
+   {
+      final byte[] record = this.journal.read( this.journalOffset, this.journalLength );
+      final DataInputStream stream = new DataInputStream( new ByteArrayInputStream( record ) );
+      int previous = 0;
+      for( int i = 0; i < this.count; i++ )
+      {
+         final int zigZag = readVarInt( stream );
+         previous += ( zigZag >>> 1 ) ^ -( zigZag & 1 );
+         spilledPositions[ i ] = previous;
+         final short oldValue = stream.readShort();
+         final short newValue = stream.readShort();
+         spilledValues[ i ] = old ? oldValue : newValue;
+      }
+   }
+
+   private static void writeVarInt( final DataOutput stream, final int value ) throws IOException
+   {
+      int remaining = value;
+      while( ( remaining & ~0x7F ) != 0 )
+      {
+         stream.writeByte( ( remaining & 0x7F ) | 0x80 );
+         remaining >>>= 7;
+      }
+      stream.writeByte( remaining );
+   }
+
+   private static int readVarInt( final DataInput stream ) throws IOException
+   {
+      int value = 0;
+      for( int shift = 0; shift < 35; shift += 7 )
+      {
+         final int b = stream.readUnsignedByte();
+         value |= ( b & 0x7F ) << shift;
+         if( ( b & 0x80 ) == 0 )
+         {
+            return value;
+         }
+      }
+      throw new IOException( "Corrupt undo journal record" ); //$NON-NLS-1$
+   }
+}
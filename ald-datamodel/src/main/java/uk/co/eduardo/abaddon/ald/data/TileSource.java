@@ -0,0 +1,21 @@
+package uk.co.eduardo.abaddon.ald.data;
+
+import java.awt.Rectangle;
+import java.util.BitSet;
+
+/**
+ * Supplies the tiles written by {@link MapData#setRegion(int, Rectangle, BitSet, TileSource)}.
+ * <p>
+ * See {@link TileSources} for common implementations.
+ *
+ * @author Ed
+ */
+public interface TileSource
+{
+   /**
+    * @param row the row being written.
+    * @param col the column being written.
+    * @return the tile to write at that position.
+    */
+   int getTile( int row, int col );
+}
@@ -0,0 +1,71 @@
+package uk.co.eduardo.abaddon.ald.data;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+/**
+ * Factory methods for commonly used {@link TileSource}s.
+ *
+ * @author Ed
+ */
+public final class TileSources
+{
+   private TileSources()
+   {
+      // Hide constructor for utility class
+   }
+
+   /**
+    * @param tile the tile to write.
+    * @return a source that writes the same tile everywhere.
+    */
+   public static TileSource constant( final int tile )
+   {
+      return new TileSource()
+      {
+         @Override
+         public int getTile( final int row, final int col )
+         {
+            return tile;
+         }
+      };
+   }
+
+   /**
+    * @param tiles the tiles to write, row by row.
+    * @param region the region of the map that the tiles cover. There must be one tile for every position in the region.
+    * @return a source that writes the tiles from an array.
+    */
+   public static TileSource array( final int[] tiles, final Rectangle region )
+   {
+      return new TileSource()
+      {
+         @Override
+         public int getTile( final int row, final int col )
+         {
+            return tiles[ ( ( row - region.y ) * region.width ) + ( col - region.x ) ];
+         }
+      };
+   }
+
+   /**
+    * @param tiles the tiles from which to choose.
+    * @param rng the random number generator used to choose each tile.
+    * @return a source that writes a randomly chosen tile at each position.
+    */
+   public static TileSource random( final int[] tiles, final Random rng )
+   {
+      if( tiles.length == 1 )
+      {
+         return constant( tiles[ 0 ] );
+      }
+      return new TileSource()
+      {
+         @Override
+         public int getTile( final int row, final int col )
+         {
+            return tiles[ rng.nextInt( tiles.length ) ];
+         }
+      };
+   }
+}
@@ -1,21 +1,35 @@
 package uk.co.eduardo.abaddon.ald.data;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.imageio.ImageIO;
 
 import uk.co.eduardo.abaddon.ald.data.project.AvailableTilesetsModel;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectSettings;
+import uk.co.eduardo.abaddon.ald.data.utils.ImageUtilities;
 import uk.co.eduardo.abaddon.tileset.TileDescription;
 import uk.co.eduardo.abaddon.tileset.TileDescriptionReader;
 
 /**
  * maintains the loaded tileset information.
+ * <p>
+ * Each tile is copied out of the tileset image into an image of its own, created by
+ * {@link ImageUtilities#createCompatibleImage(int, int, int)}: in the format of the screen if the tile is opaque, and as
+ * premultiplied ARGB if it has any transparency. Java2D can then draw tiles without converting their pixels, and can
+ * cache them in video memory, which it cannot do for views into the shared raster of the decoded image. Tiles with no
+ * transparent pixels are stored opaque so that they are copied rather than blended.
+ * <p>
+ * Scaled copies of the tiles are built the first time each {@link Zoom} is asked for and kept for the life of the
+ * tileset. Smaller zooms are built by halving the next larger one, so each level costs a quarter of the one above it.
  *
  * @author Ed
  */
@@ -35,6 +49,15 @@ public class TilesetData
 
    private final int tileCount;
 
+   /**
+    * The tiles at each zoom other than actual size, built as they are needed. Levels are only added once complete, so they
+    * can be read without a lock.
+    */
+   private final Map< Zoom, BufferedImage[] > scaledTiles = new ConcurrentHashMap<>();
+
+   /** The average colour of each tile, computed when first needed. */
+   private int[] averageColours;
+
    /**
     * Initializes the current tileset data. Uses the default tileset size of 16 x 16 pixels.
     *
@@ -49,8 +72,8 @@ public class TilesetData
       this.tileHeight = settings.get( ProjectSettings.TILE_HEIGHT );
 
       this.tileDescription = readTileDescription( tilesetDir, this.name );
-      this.tileset = readTileset( tilesetDir, this.name );
-      this.tiles = splitTiles( this.tileset, this.tileWidth, this.tileHeight );
+      this.tileset = ImageUtilities.toCompatibleImage( readTileset( tilesetDir, this.name ) );
+      this.tiles = ImageUtilities.splitImage( this.tileset, this.tileWidth, this.tileHeight );
       this.tileCount = this.tiles.length;
 
    }
@@ -116,6 +139,60 @@ public class TilesetData
       return this.tiles[ index ];
    }
 
+   /**
+    * Get a tile scaled for a zoom. This may be called from any thread.
+    * <p>
+    * The returned tile will have dimensions: (<code>zoom.scale( getTileWidth() )</code> x
+    * <code>zoom.scale( getTileHeight() )</code>)
+    *
+    * @param index the index of the tile to get.
+    * @param zoom the zoom the tile will be drawn at.
+    * @return the scaled tile.
+    */
+   public BufferedImage getTile( final int index, final Zoom zoom )
+   {
+      if( zoom == Zoom.ACTUAL )
+      {
+         return this.tiles[ index ];
+      }
+      return getScaledTiles( zoom )[ index ];
+   }
+
+   /**
+    * Get the average colour of a tile, for displaying the map at one pixel per tile. The colours of all the tiles are
+    * computed the first time one is asked for. This may be called from any thread.
+    *
+    * @param index the index of the tile.
+    * @return the colour as a non-premultiplied ARGB value; transparent pixels do not contribute to the colour, only to
+    *         the alpha.
+    */
+   public int getAverageColour( final int index )
+   {
+      return getAverageColours()[ index ];
+   }
+
+   /**
+    * Gets the memory held by the images of this tileset: the tileset image, its tiles and any scaled tiles built so far.
+    *
+    * @return the size of the images in bytes.
+    */
+   public long getMemoryUsage()
+   {
+      long bytes = ImageUtilities.getMemoryUsage( this.tileset );
+      for( final BufferedImage tile : this.tiles )
+      {
+         bytes += ImageUtilities.getMemoryUsage( tile );
+      }
+      for( final BufferedImage[] scaled : this.scaledTiles.values() )
+      {
+         for( final BufferedImage tile : scaled )
+         {
+            bytes += ImageUtilities.getMemoryUsage( tile );
+         }
+      }
+      return bytes;
+   }
+
    /**
     * @return the tileset image.
     */
@@ -124,6 +201,88 @@ public class TilesetData
       return this.tileset;
    }
 
+   private BufferedImage[] getScaledTiles( final Zoom zoom )
+   {
+      final BufferedImage[] scaled = this.scaledTiles.get( zoom );
+      return scaled != null ? scaled : buildScaledTiles( zoom );
+   }
+
+   /**
+    * Builds the tiles for a zoom, unless another thread built them while this one waited for the lock, so that each level
+    * is only built once.
+    *
+    * @param zoom the zoom to build the tiles for.
+    * @return the scaled tiles.
+    */
+   private synchronized BufferedImage[] buildScaledTiles( final Zoom zoom )
+   {
+      BufferedImage[] scaled = this.scaledTiles.get( zoom );
+      if( scaled == null )
+      {
+         // Build from the neighbouring level nearer actual size.
+         final boolean smaller = zoom.compareTo( Zoom.ACTUAL ) < 0;
+         final Zoom source = smaller ? zoom.zoomIn() : zoom.zoomOut();
+         final BufferedImage[] sourceTiles = source == Zoom.ACTUAL ? this.tiles : getScaledTiles( source );
+         final int width = zoom.scale( this.tileWidth );
+         final int height = zoom.scale( this.tileHeight );
+
+         scaled = new BufferedImage[ sourceTiles.length ];
+         for( int i = 0; i < sourceTiles.length; i++ )
+         {
+            scaled[ i ] = ImageUtilities.createCompatibleImage( width, height, sourceTiles[ i ].getTransparency() );
+            final Graphics2D g2d = scaled[ i ].createGraphics();
+            // Average when shrinking; keep pixels sharp when enlarging.
+            g2d.setRenderingHint( RenderingHints.KEY_INTERPOLATION,
+                                  smaller ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                                          : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR );
+            g2d.drawImage( sourceTiles[ i ], 0, 0, width, height, null );
+            g2d.dispose();
+         }
+         this.scaledTiles.put( zoom, scaled );
+      }
+      return scaled;
+   }
+
+   private synchronized int[] getAverageColours()
+   {
+      if( this.averageColours == null )
+      {
+         final int[] colours = new int[ this.tiles.length ];
+         int[] pixels = null;
+         for( int i = 0; i < this.tiles.length; i++ )
+         {
+            final BufferedImage tile = this.tiles[ i ];
+            pixels = tile.getRGB( 0, 0, tile.getWidth(), tile.getHeight(), pixels, 0, tile.getWidth() );
+            colours[ i ] = averageColour( pixels, tile.getWidth() * tile.getHeight() );
+         }
+         this.averageColours = colours;
+      }
+      return this.averageColours;
+   }
+
+   private static int averageColour( final int[] pixels, final int count )
+   {
+      long alpha = 0;
+      long red = 0;
+      long green = 0;
+      long blue = 0;
+      for( int i = 0; i < count; i++ )
+      {
+         // Weight each channel by the alpha so that transparent pixels do not darken the colour.
+         final int pixel = pixels[ i ];
+         final int a = pixel >>> 24;
+         alpha += a;
+         red += a * ( ( pixel >> 16 ) & 0xFF );
+         green += a * ( ( pixel >> 8 ) & 0xFF );
+         blue += a * ( pixel & 0xFF );
+      }
+      if( alpha == 0 )
+      {
+         return 0;
+      }
+      return (int) ( ( ( alpha / count ) << 24 ) | ( ( red / alpha ) << 16 ) | ( ( green / alpha ) << 8 ) | ( blue / alpha ) );
+   }
+
    private static TileDescription readTileDescription( final File tilesetDir, final String tilesetName )
    {
       final String tilesetDscName = AvailableTilesetsModel.getDscFileNameFor( tilesetName );
@@ -186,26 +345,4 @@ public class TilesetData
       }
       return null;
    }
-
-   private static BufferedImage[] splitTiles( final BufferedImage source, final int tileWidth, final int tileHeight )
-   {
-      if( source == null )
-      {
-         return new BufferedImage[ 0 ];
-      }
-      final int width = source.getWidth() / tileWidth;
-      final int height = source.getHeight() / tileHeight;
-      final int tileCount = width * height;
-      final BufferedImage[] tiles = new BufferedImage[ tileCount ];
-
-      int counter = 0;
-      for( int y = 0; y < source.getHeight(); y += tileHeight )
-      {
-         for( int x = 0; x < source.getWidth(); x += tileWidth )
-         {
-            tiles[ counter++ ] = source.getSubimage( x, y, tileWidth, tileHeight );
-         }
-      }
-      return tiles;
-   }
 }
@@ -0,0 +1,119 @@
+package uk.co.eduardo.abaddon.ald.data;
+
+import java.awt.Rectangle;
+
+/**
+ * The scales at which a map can be displayed. Each is a power of two so that every level can be built from the one next
+ * to it by halving or doubling.
+ *
+ * @author Ed
+ */
+public enum Zoom
+{
+   /** One eighth of actual size. */
+   EIGHTH( -3 ),
+
+   /** One quarter of actual size. */
+   QUARTER( -2 ),
+
+   /** Half of actual size. */
+   HALF( -1 ),
+
+   /** Actual size. */
+   ACTUAL( 0 ),
+
+   /** Twice actual size. */
+   DOUBLE( 1 ),
+
+   /** Four times actual size. */
+   QUADRUPLE( 2 );
+
+   /** The scale is <code>2<sup>shift</sup></code>. */
+   private final int shift;
+
+   Zoom( final int shift )
+   {
+      this.shift = shift;
+   }
+
+   /**
+    * @return the factor by which sizes are multiplied at this zoom.
+    */
+   public double getScale()
+   {
+      return Math.scalb( 1.0, this.shift );
+   }
+
+   /**
+    * @param size a size in pixels at actual size.
+    * @return the size at this zoom, never less than one pixel.
+    */
+   public int scale( final int size )
+   {
+      return Math.max( 1, this.shift >= 0 ? size << this.shift : size >> -this.shift );
+   }
+
+   /**
+    * @param position a position in pixels at actual size.
+    * @return the position at this zoom, rounded down.
+    */
+   public int scalePosition( final int position )
+   {
+      return this.shift >= 0 ? position << this.shift : position >> -this.shift;
+   }
+
+   /**
+    * @param position a position in pixels at this zoom.
+    * @return the position at actual size, rounded down.
+    */
+   public int unscalePosition( final int position )
+   {
+      return this.shift >= 0 ? position >> this.shift : position << -this.shift;
+   }
+
+   /**
+    * @param area an area in pixels at actual size.
+    * @return the smallest area at this zoom that covers it.
+    */
+   public Rectangle scale( final Rectangle area )
+   {
+      final int step = this.shift < 0 ? ( 1 << -this.shift ) - 1 : 0;
+      final int x = scalePosition( area.x );
+      final int y = scalePosition( area.y );
+      return new Rectangle( x,
+                            y,
+                            scalePosition( area.x + area.width + step ) - x,
+                            scalePosition( area.y + area.height + step ) - y );
+   }
+
+   /**
+    * @param area an area in pixels at this zoom.
+    * @return the smallest area at actual size that covers it.
+    */
+   public Rectangle unscale( final Rectangle area )
+   {
+      final int step = this.shift > 0 ? ( 1 << this.shift ) - 1 : 0;
+      final int x = unscalePosition( area.x );
+      final int y = unscalePosition( area.y );
+      return new Rectangle( x,
+                            y,
+                            unscalePosition( area.x + area.width + step ) - x,
+                            unscalePosition( area.y + area.height + step ) - y );
+   }
+
+   /**
+    * @return the next larger zoom, or this zoom if it is the largest.
+    */
+   public Zoom zoomIn()
+   {
+      return ordinal() < ( values().length - 1 ) ? values()[ ordinal() + 1 ] : this;
+   }
+
+   /**
+    * @return the next smaller zoom, or this zoom if it is the smallest.
+    */
+   public Zoom zoomOut()
+   {
+      return ordinal() > 0 ? values()[ ordinal() - 1 ] : this;
+   }
+}
@@ -0,0 +1,738 @@
+package uk.co.eduardo.abaddon.ald.data.journal;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+import uk.co.eduardo.abaddon.ald.data.ActionDataListener;
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
+import uk.co.eduardo.abaddon.ald.data.FileSectionAdaptor;
+import uk.co.eduardo.abaddon.ald.data.HeaderData.HeaderDataListener;
+import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.MapDataListener;
+import uk.co.eduardo.abaddon.ald.data.NpcDataListener;
+import uk.co.eduardo.abaddon.ald.data.TileSources;
+import uk.co.eduardo.abaddon.ald.data.adapter.ActionAdapter;
+import uk.co.eduardo.abaddon.ald.data.adapter.NpcAdapter;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+import uk.co.eduardo.map.sections.FileSection;
+import uk.co.eduardo.map.sections.FileSectionProducer;
+import uk.co.eduardo.map.sections.SectionType;
+
+/**
+ * A write-ahead journal of the changes made to an open map since it was last saved.
+ * <p>
+ * Every change to the tiles is appended as a primitive record: the new size of the map, or the new tiles of a rectangle of
+ * one layer. A change to the header, NPCs or actions is appended as the whole re-encoded section that changed, which is
+ * small. Records are built on the Event Dispatch Thread and handed to a background thread that appends them to the file
+ * and forces each batch to disk, so editing never waits on the disk.
+ * <p>
+ * If the journal cannot be written it is deleted, no more records are built and {@link MapJournalListener}s are told on
+ * the Event Dispatch Thread. Editing carries on without a journal.
+ * <p>
+ * The journal is emptied whenever the map is saved. If the application dies with unsaved changes, the journal is left
+ * behind and {@link #replay(MapData, FileSection[])} applies it to the saved map the next time it is opened. Each record
+ * carries a checksum and replay stops at the first torn or corrupt record.
+ *
+ * @author Ed
+ */
+public final class MapJournal implements Closeable
+{
+   // ================| Fields |====================================
+
+   private static final Logger logger = Logger.getLogger( MapJournal.class );
+
+   /** Written at the start of every journal file: "ALDJ". */
+   private static final int MAGIC = 0x414C444A;
+
+   private static final int VERSION = 0;
+
+   private static final int HEADER_SIZE = 4 + 1;
+
+   /** A record holding the new width and height of the map. */
+   private static final int RECORD_SIZE = 1;
+
+   /** A record holding the tiles of a rectangle of one layer. */
+   private static final int RECORD_TILES = 2;
+
+   /** A record holding a whole encoded section other than the tile grid. */
+   private static final int RECORD_SECTION = 3;
+
+   /** The sections recorded in {@link #RECORD_SECTION} records. */
+   private static final SectionType[] JOURNALLED_SECTIONS = new SectionType[]
+   {
+      SectionType.HEADER, SectionType.NPCS, SectionType.ACTIONS
+   };
+
+   /** Queued to empty the journal. */
+   private static final byte[] TRUNCATE = new byte[ 0 ];
+
+   /** Queued to stop the writer and delete the journal. */
+   private static final byte[] CLOSE = new byte[ 0 ];
+
+   /** Queued to stop the writer and leave the journal for replay. */
+   private static final byte[] STOP = new byte[ 0 ];
+
+   /** How long to wait for the writer to finish when the journal is closed. */
+   private static final long CLOSE_TIMEOUT = 2000;
+
+   private final File file;
+
+   private final BlockingQueue< byte[] > queue = new LinkedBlockingQueue<>();
+
+   /** The number of bytes at the start of the file that hold intact records. */
+   private long validLength;
+
+   private PropertyModel model;
+
+   private MapData mapData;
+
+   private int lastWidth;
+
+   private int lastHeight;
+
+   /** The last journalled encoding of each section, indexed by {@link SectionType#ordinal()}. */
+   private final byte[][] lastSections = new byte[ SectionType.values().length ][];
+
+   private Thread writer;
+
+   /** Set once the journal could not be written, after which nothing more is queued. */
+   private volatile boolean failed;
+
+   private final List< MapJournalListener > listeners = new CopyOnWriteArrayList<>();
+
+   private final MapDataListener mapDataListener = new MapDataListener()
+   {
+      @Override
+      public void mapUpdated( final DirtyRegion region )
+      {
+         recordTiles( region );
+      }
+   };
+
+   private final HeaderDataListener headerListener = new HeaderDataListener()
+   {
+      @Override
+      public void headerChanged()
+      {
+         recordSection( SectionType.HEADER );
+      }
+   };
+
+   private final NpcDataListener npcListener = new NpcDataListener()
+   {
+      @Override
+      public void npcAdded( final NpcAdapter npc )
+      {
+         recordSection( SectionType.NPCS );
+      }
+
+      @Override
+      public void npcRemoved( final NpcAdapter npc )
+      {
+         recordSection( SectionType.NPCS );
+      }
+
+      @Override
+      public void npcUpdated( final NpcAdapter npc )
+      {
+         recordSection( SectionType.NPCS );
+      }
+   };
+
+   private final ActionDataListener actionListener = new ActionDataListener()
+   {
+      @Override
+      public void actionAdded( final ActionAdapter action )
+      {
+         recordSection( SectionType.ACTIONS );
+      }
+
+      @Override
+      public void actionRemoved( final ActionAdapter action )
+      {
+         recordSection( SectionType.ACTIONS );
+      }
+
+      @Override
+      public void actionUpdated( final ActionAdapter action )
+      {
+         recordSection( SectionType.ACTIONS );
+      }
+   };
+
+   private final PropertyListener uncommittedChangesListener = new PropertyListener()
+   {
+      @Override
+      public void propertyChanged( final PropertyModel changed )
+      {
+         if( !changed.get( Properties.UncommittedChanges ) && !MapJournal.this.failed )
+         {
+            // Everything in the journal is now in the map file.
+            rememberSections();
+            MapJournal.this.queue.add( TRUNCATE );
+         }
+      }
+   };
+
+   // ================| Constructors |====================================
+
+   /**
+    * @param file the journal file. It need not exist yet.
+    */
+   public MapJournal( final File file )
+   {
+      this.file = file;
+   }
+
+   // ================| Public Methods |====================================
+
+   /**
+    * @param mapFile a map file.
+    * @return the journal file for the map, a hidden file alongside it.
+    */
+   public static File getJournalFile( final File mapFile )
+   {
+      return new File( mapFile.getAbsoluteFile().getParentFile(), "." + mapFile.getName() + ".journal" ); //$NON-NLS-1$ //$NON-NLS-2$
+   }
+
+   /**
+    * Applies any changes left in the journal to a map that has just been read from its file. This must be called before
+    * {@link #attach(PropertyModel)}.
+    *
+    * @param data the tiles of the map, which are updated in place.
+    * @param sections the sections of the map indexed by {@link SectionType#ordinal()}. Sections other than the tile grid
+    *           are replaced by the journalled versions.
+    * @return whether any changes were recovered.
+    */
+   public boolean replay( final MapData data, final FileSection[] sections )
+   {
+      this.validLength = 0;
+      if( !this.file.isFile() )
+      {
+         return false;
+      }
+
+      boolean recovered = false;
+      try
+      {
+         final ByteBuffer buffer = readFile();
+         if( ( buffer.remaining() < HEADER_SIZE ) || ( buffer.getInt() != MAGIC ) || ( buffer.get() != VERSION ) )
+         {
+            return false;
+         }
+         this.validLength = buffer.position();
+
+         final CRC32 crc = new CRC32();
+         while( buffer.remaining() >= ( 1 + 4 + 4 ) )
+         {
+            final int type = buffer.get();
+            final int length = buffer.getInt();
+            if( ( length < 0 ) || ( length > ( buffer.remaining() - 4 ) ) )
+            {
+               break;
+            }
+            final ByteBuffer payload = buffer.slice();
+            payload.limit( length );
+            buffer.position( buffer.position() + length );
+
+            crc.reset();
+            crc.update( payload.duplicate() );
+            if( (int) crc.getValue() != buffer.getInt() )
+            {
+               break;
+            }
+
+            applyRecord( type, payload, data, sections );
+            recovered = true;
+            this.validLength = buffer.position();
+         }
+      }
+      catch( final IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e )
+      {
+         // Keep whatever was recovered before the damage.
+         logger.warn( "Map journal " + this.file + " is damaged after " + this.validLength + " bytes", e ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      }
+      return recovered;
+   }
+
+   /**
+    * Starts journalling the changes made to a map.
+    *
+    * @param mapModel the model of the map.
+    */
+   public void attach( final PropertyModel mapModel )
+   {
+      this.model = mapModel;
+      this.mapData = mapModel.get( Properties.MapData );
+      this.lastWidth = this.mapData.getWidth();
+      this.lastHeight = this.mapData.getHeight();
+      rememberSections();
+
+      this.writer = new Thread( new Writer(), "Map journal writer - " + this.file.getName() ); //$NON-NLS-1$
+      this.writer.setDaemon( true );
+      this.writer.start();
+
+      this.mapData.addMapDataListener( this.mapDataListener );
+      mapModel.get( Properties.HeaderData ).addHeaderDataListener( this.headerListener );
+      mapModel.get( Properties.NpcData ).addNpcDataListener( this.npcListener );
+      mapModel.get( Properties.ActionData ).addActionDataListener( this.actionListener );
+      mapModel.addPropertyListener( Properties.UncommittedChanges, this.uncommittedChangesListener );
+   }
+
+   /**
+    * Stops journalling and deletes the journal. Called when the map is closed, by which time its changes have either been
+    * saved or discarded.
+    */
+   @Override
+   public void close()
+   {
+      stop( CLOSE );
+   }
+
+   /**
+    * Stops journalling and leaves the journal on disk, so that its changes are recovered the next time the map is opened.
+    * Called when the map is closed with changes that could not be saved.
+    */
+   public void closeAndKeep()
+   {
+      stop( STOP );
+   }
+
+   /**
+    * Adds a listener that will be notified if the journal cannot be written.
+    *
+    * @param listener the listener to add.
+    */
+   public void addMapJournalListener( final MapJournalListener listener )
+   {
+      if( ( listener != null ) && !this.listeners.contains( listener ) )
+      {
+         this.listeners.add( listener );
+      }
+   }
+
+   /**
+    * Removes a listener.
+    *
+    * @param listener the listener to remove.
+    */
+   public void removeMapJournalListener( final MapJournalListener listener )
+   {
+      this.listeners.remove( listener );
+   }
+
+   // ================| Private Methods |====================================
+
+   /**
+    * Stops listening to the map and stops the writer once it has written everything queued before the sentinel.
+    */
+   private void stop( final byte[] sentinel )
+   {
+      if( this.model != null )
+      {
+         this.mapData.removeMapDataListener( this.mapDataListener );
+         this.model.get( Properties.HeaderData ).removeHeaderDataListener( this.headerListener );
+         this.model.get( Properties.NpcData ).removeNpcDataListener( this.npcListener );
+         this.model.get( Properties.ActionData ).removeActionDataListener( this.actionListener );
+         this.model.removePropertyListener( Properties.UncommittedChanges, this.uncommittedChangesListener );
+         this.model = null;
+      }
+
+      if( this.writer == null )
+      {
+         if( sentinel == CLOSE )
+         {
+            this.file.delete();
+         }
+         return;
+      }
+      this.queue.add( sentinel );
+      try
+      {
+         this.writer.join( CLOSE_TIMEOUT );
+      }
+      catch( final InterruptedException e )
+      {
+         Thread.currentThread().interrupt();
+      }
+      if( ( sentinel == CLOSE ) && !this.writer.isAlive() )
+      {
+         // Otherwise the writer deletes the journal once it gets to the end of the queue.
+         this.file.delete();
+      }
+      this.writer = null;
+   }
+
+   private ByteBuffer readFile() throws IOException
+   {
+      final RandomAccessFile raf = new RandomAccessFile( this.file, "r" ); //$NON-NLS-1$
+      try
+      {
+         final byte[] bytes = new byte[ (int) Math.min( raf.length(), Integer.MAX_VALUE ) ];
+         raf.readFully( bytes );
+         return ByteBuffer.wrap( bytes );
+      }
+      finally
+      {
+         raf.close();
+      }
+   }
+
+   private static void applyRecord( final int type,
+                                    final ByteBuffer payload,
+                                    final MapData data,
+                                    final FileSection[] sections ) throws IOException
+   {
+      switch( type )
+      {
+         case RECORD_SIZE:
+            data.setWidthAndHeight( payload.getInt(), payload.getInt() );
+            break;
+         case RECORD_TILES:
+         {
+            final int layer = payload.get();
+            final Rectangle rectangle = new Rectangle( payload.getInt(), payload.getInt(), payload.getInt(), payload.getInt() );
+            final int[] tiles = new int[ rectangle.width * rectangle.height ];
+            for( int i = 0; i < tiles.length; i++ )
+            {
+               tiles[ i ] = payload.getShort();
+            }
+            data.setRegion( layer, rectangle, TileSources.array( tiles, rectangle ) );
+            break;
+         }
+         case RECORD_SECTION:
+         {
+            final SectionType section = SectionType.fromId( payload.get() );
+            if( ( section == null ) || ( section == SectionType.MAP ) )
+            {
+               throw new IOException( "Unexpected section in map journal" ); //$NON-NLS-1$
+            }
+            sections[ section.ordinal() ] = section.createProducer().readSection( payload );
+            break;
+         }
+         default:
+            throw new IOException( "Unknown map journal record " + type ); //$NON-NLS-1$
+      }
+   }
+
+   /**
+    * Records the new tiles in a region, or the new size of the map if it has been resized.
+    */
+   private void recordTiles( final DirtyRegion region )
+   {
+      if( this.failed )
+      {
+         return;
+      }
+      final int width = this.mapData.getWidth();
+      final int height = this.mapData.getHeight();
+      if( ( width != this.lastWidth ) || ( height != this.lastHeight ) )
+      {
+         // Resizing never changes any tiles, but growing the map can reveal tiles kept from before an earlier shrink
+         // that are not in the map file.
+         final ByteBuffer record = ByteBuffer.allocate( 8 );
+         record.putInt( width ).putInt( height );
+         enqueue( RECORD_SIZE, record.array() );
+         if( width > this.lastWidth )
+         {
+            recordRectangle( new Rectangle( this.lastWidth, 0, width - this.lastWidth, height ), region );
+         }
+         if( height > this.lastHeight )
+         {
+            recordRectangle( new Rectangle( 0, this.lastHeight, Math.min( width, this.lastWidth ), height - this.lastHeight ),
+                             region );
+         }
+         this.lastWidth = width;
+         this.lastHeight = height;
+         return;
+      }
+
+      for( final Rectangle rectangle : region.getRectangles() )
+      {
+         recordRectangle( rectangle.intersection( new Rectangle( 0, 0, width, height ) ), region );
+      }
+   }
+
+   private void recordRectangle( final Rectangle rectangle, final DirtyRegion layers )
+   {
+      if( rectangle.isEmpty() )
+      {
+         return;
+      }
+      int[] row = null;
+      for( int layer = 0; layer < MapData.MAX_LAYERS; layer++ )
+      {
+         if( !layers.containsLayer( layer ) )
+         {
+            continue;
+         }
+         final ByteBuffer record = ByteBuffer.allocate( 1 + 16 + ( rectangle.width * rectangle.height * 2 ) );
+         record.put( (byte) layer );
+         record.putInt( rectangle.x ).putInt( rectangle.y ).putInt( rectangle.width ).putInt( rectangle.height );
+         for( int y = rectangle.y; y < ( rectangle.y + rectangle.height ); y++ )
+         {
+            row = this.mapData.getRow( layer, y, rectangle.x, rectangle.width, row );
+            for( int x = 0; x < rectangle.width; x++ )
+            {
+               record.putShort( (short) row[ x ] );
+            }
+         }
+         enqueue( RECORD_TILES, record.array() );
+      }
+   }
+
+   /**
+    * Records a section if it has changed since it was last recorded.
+    */
+   private void recordSection( final SectionType type )
+   {
+      if( ( this.model == null ) || this.failed )
+      {
+         return;
+      }
+      final byte[] encoded = encodeSection( type );
+      if( ( encoded != null ) && !Arrays.equals( encoded, this.lastSections[ type.ordinal() ] ) )
+      {
+         final byte[] record = new byte[ encoded.length + 1 ];
+         record[ 0 ] = (byte) type.id;
+         System.arraycopy( encoded, 0, record, 1, encoded.length );
+         enqueue( RECORD_SECTION, record );
+         this.lastSections[ type.ordinal() ] = encoded;
+      }
+   }
+
+   /**
+    * Remembers the current encoding of every journalled section without recording them.
+    */
+   private void rememberSections()
+   {
+      for( final SectionType type : JOURNALLED_SECTIONS )
+      {
+         this.lastSections[ type.ordinal() ] = encodeSection( type );
+      }
+   }
+
+   /**
+    * @return the current encoding of a section, or <code>null</code> if it could not be encoded, in which case the journal
+    *         has failed.
+    */
+   private byte[] encodeSection( final SectionType type )
+   {
+      try
+      {
+         return encode( type, getData( type ).createFileSection() );
+      }
+      catch( final IOException e )
+      {
+         fail( e );
+         return null;
+      }
+   }
+
+   private FileSectionAdaptor getData( final SectionType type )
+   {
+      switch( type )
+      {
+         case HEADER:
+            return this.model.get( Properties.HeaderData );
+         case NPCS:
+            return this.model.get( Properties.NpcData );
+         case ACTIONS:
+            return this.model.get( Properties.ActionData );
+         default:
+            throw new IllegalArgumentException( "Section is not journalled " + type ); //$NON-NLS-1$
+      }
+   }
+
+   @SuppressWarnings( "unchecked" )
+   private static byte[] encode( final SectionType type, final FileSection section ) throws IOException
+   {
+      final FileSectionProducer< FileSection > producer = (FileSectionProducer< FileSection >) type.createProducer();
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream stream = new DataOutputStream( bytes );
+      producer.writeSection( stream, section );
+      stream.flush();
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Frames a record with its type, length and checksum and queues it for the writer.
+    */
+   private void enqueue( final int type, final byte[] payload )
+   {
+      if( this.failed )
+      {
+         return;
+      }
+      final CRC32 crc = new CRC32();
+      crc.update( payload );
+
+      final ByteBuffer record = ByteBuffer.allocate( 1 + 4 + payload.length + 4 );
+      record.put( (byte) type ).putInt( payload.length ).put( payload ).putInt( (int) crc.getValue() );
+      this.queue.add( record.array() );
+   }
+
+   /**
+    * Stops journalling after the journal could not be written, and tells the listeners on the Event Dispatch Thread.
+    */
+   private void fail( final IOException cause )
+   {
+      logger.error( "Map journal " + this.file + " could not be written", cause ); //$NON-NLS-1$ //$NON-NLS-2$
+      this.failed = true;
+      this.queue.clear();
+      this.queue.add( CLOSE );
+      SwingUtilities.invokeLater( new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            for( final MapJournalListener listener : MapJournal.this.listeners )
+            {
+               listener.journalFailed( cause );
+            }
+         }
+      } );
+   }
+
+   // ================| Inner Classes |====================================
+
+   /**
+    * Appends queued records to the journal, forcing each batch of records to disk before waiting for more.
+    */
+   private class Writer implements Runnable
+   {
+      @Override
+      public void run()
+      {
+         final List< byte[] > batch = new ArrayList<>();
+         FileChannel channel = null;
+         try
+         {
+            channel = new RandomAccessFile( MapJournal.this.file, "rw" ).getChannel(); //$NON-NLS-1$
+            if( MapJournal.this.validLength < HEADER_SIZE )
+            {
+               truncate( channel, 0 );
+            }
+            else
+            {
+               // Drop any torn record left at the end by a crash.
+               channel.truncate( MapJournal.this.validLength );
+               channel.position( MapJournal.this.validLength );
+            }
+
+            while( true )
+            {
+               batch.add( MapJournal.this.queue.take() );
+               MapJournal.this.queue.drainTo( batch );
+               for( final byte[] record : batch )
+               {
+                  if( record == CLOSE )
+                  {
+                     return;
+                  }
+                  if( record == STOP )
+                  {
+                     channel.force( false );
+                     return;
+                  }
+                  if( record == TRUNCATE )
+                  {
+                     truncate( channel, HEADER_SIZE );
+                  }
+                  else
+                  {
+                     final ByteBuffer buffer = ByteBuffer.wrap( record );
+                     while( buffer.hasRemaining() )
+                     {
+                        channel.write( buffer );
+                     }
+                  }
+               }
+               batch.clear();
+               channel.force( false );
+            }
+         }
+         catch( final IOException e )
+         {
+            fail( e );
+         }
+         catch( final InterruptedException e )
+         {
+            // Stop journalling.
+         }
+         finally
+         {
+            if( channel != null )
+            {
+               try
+               {
+                  channel.close();
+               }
+               catch( final IOException e )
+               {
+                  // Nothing more can be done.
+               }
+            }
+            // A journal missing some changes could undo later ones if it were replayed.
+            if( batch.contains( CLOSE ) || MapJournal.this.failed )
+            {
+               MapJournal.this.file.delete();
+            }
+         }
+      }
+
+      /**
+       * Empties the journal down to the given length, rewriting the file header if needed.
+       */
+      private void truncate( final FileChannel channel, final long length ) throws IOException
+      {
+         channel.truncate( length );
+         channel.position( length );
+         if( length < HEADER_SIZE )
+         {
+            final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            header.putInt( MAGIC ).put( (byte) VERSION ).flip();
+            channel.position( 0 );
+            while( header.hasRemaining() )
+            {
+               channel.write( header );
+            }
+         }
+      }
+   }
+
+   /**
+    * Notification that a journal could not be written.
+    */
+   public static interface MapJournalListener
+   {
+      /**
+       * Notification that the journal could not be written and has stopped. Changes made from now on cannot be recovered
+       * if the application dies before the map is saved.
+       *
+       * @param cause the error that stopped the journal.
+       */
+      void journalFailed( IOException cause );
+   }
+}
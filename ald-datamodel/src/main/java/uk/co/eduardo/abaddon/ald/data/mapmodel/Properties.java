@@ -1,5 +1,6 @@
 package uk.co.eduardo.abaddon.ald.data.mapmodel;
 
+import java.awt.Rectangle;
 import java.io.File;
 
 import uk.co.eduardo.abaddon.ald.data.ActionData;
@@ -8,6 +9,8 @@ import uk.co.eduardo.abaddon.ald.data.MapData;
 import uk.co.eduardo.abaddon.ald.data.MonsterData;
 import uk.co.eduardo.abaddon.ald.data.NpcData;
 import uk.co.eduardo.abaddon.ald.data.TilesetData;
+import uk.co.eduardo.abaddon.ald.data.Zoom;
+import uk.co.eduardo.abaddon.ald.data.journal.MapJournal;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectSettings;
 import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
 import uk.co.eduardo.abaddon.util.Coordinate;
@@ -66,6 +69,15 @@ public final class Properties
    /** The active layer that is being edited. */
    public static final Property< Integer > ActiveLayer = new Property<>( "ActiveLayer" ); //$NON-NLS-1$
 
+   /** The scale at which the map is displayed. */
+   public static final Property< Zoom > Zoom = new Property<>( "Zoom" ); //$NON-NLS-1$
+
+   /**
+    * The part of the map in view in the editor, in pixels at actual size, or <code>null</code> if the map is not shown.
+    * Setting it scrolls the editor to show the area.
+    */
+   public static final Property< Rectangle > VisibleArea = new Property<>( "VisibleArea" ); //$NON-NLS-1$
+
    /** This property determines whether a particular layer is visible. */
    public static final Property< Boolean > LayerVisible = new Property<>( "LayerVisible" ); //$NON-NLS-1$
 
@@ -78,6 +90,12 @@ public final class Properties
    /** The selected tile IDs */
    public static final Property< int[] > SelectedTiles = new Property<>( "SelectedTiles" ); //$NON-NLS-1$
 
+   /** The tile whose uses are highlighted on the active layer, or <code>null</code> if none are highlighted. */
+   public static final Property< Integer > HighlightedTile = new Property<>( "HighlightedTile" ); //$NON-NLS-1$
+
    /** Maintains the undo/redo stack. */
    public static final Property< UndoManager > UndoManager = new Property<>( "UndoManager" ); //$NON-NLS-1$
+
+   /** Journals the changes made since the map was last saved. */
+   public static final Property< MapJournal > MapJournal = new Property<>( "MapJournal" ); //$NON-NLS-1$
 }
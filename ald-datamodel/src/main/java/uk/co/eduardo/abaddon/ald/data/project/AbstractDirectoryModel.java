@@ -3,15 +3,20 @@ package uk.co.eduardo.abaddon.ald.data.project;
 import java.io.File;
 import java.io.FileFilter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import uk.co.eduardo.abaddon.ald.data.utils.DirectoryChangeEvent;
 import uk.co.eduardo.abaddon.ald.data.utils.DirectoryWatcher;
 
 /**
@@ -29,6 +34,9 @@ abstract class AbstractDirectoryModel
 
    private final List< File > readOnlyFiles = Collections.unmodifiableList( this.files );
 
+   /** The last modified time of each file when the directory was last scanned. */
+   private final Map< File, Long > lastModified = new HashMap<>();
+
    private final List< AvailableFileListener > listeners = new CopyOnWriteArrayList<>();
 
    private final ChangeListener changeListener = new ChangeListener()
@@ -36,7 +44,14 @@ abstract class AbstractDirectoryModel
       @Override
       public void stateChanged( final ChangeEvent e )
       {
-         rescan();
+         if( ( e instanceof DirectoryChangeEvent ) && !( (DirectoryChangeEvent) e ).isOverflow() )
+         {
+            update( (DirectoryChangeEvent) e );
+         }
+         else
+         {
+            rescan();
+         }
       }
    };
 
@@ -131,19 +146,25 @@ abstract class AbstractDirectoryModel
    protected void rescan()
    {
       final Set< File > addedFiles = new HashSet<>();
-      final Set< File > removedFiles = new HashSet<>( this.files );
+      final Set< File > removedFiles = new HashSet<>( this.lastModified.keySet() );
+      final Set< File > changedFiles = new HashSet<>();
 
       for( final File file : this.rootDir.listFiles( this.filter ) )
       {
          if( accept( file ) )
          {
-            if( !this.files.contains( file ) )
+            if( !this.lastModified.containsKey( file ) )
             {
                addedFiles.add( file );
             }
             else
             {
                removedFiles.remove( file );
+               final Long modified = Long.valueOf( file.lastModified() );
+               if( !modified.equals( this.lastModified.put( file, modified ) ) )
+               {
+                  changedFiles.add( file );
+               }
             }
          }
       }
@@ -153,19 +174,78 @@ abstract class AbstractDirectoryModel
          for( final File file : addedFiles )
          {
             this.files.add( file );
+            this.lastModified.put( file, Long.valueOf( file.lastModified() ) );
             fireFileAdded( file );
          }
       }
       if( removedFiles.size() > 0 )
       {
+         // Removing them together checks each file against the hashed set once.
+         this.files.removeAll( removedFiles );
+         this.lastModified.keySet().removeAll( removedFiles );
          for( final File file : removedFiles )
+         {
+            fireFileRemoved( file );
+         }
+      }
+      for( final File file : changedFiles )
+      {
+         fireFileChanged( file );
+      }
+   }
+
+   /**
+    * Applies a batch of changes to the directory, checking only the files that changed.
+    *
+    * @param event the changes.
+    */
+   protected void update( final DirectoryChangeEvent event )
+   {
+      final Set< File > changed = new LinkedHashSet<>();
+      for( final Set< File > files : Arrays.asList( event.getCreated(), event.getModified(), event.getDeleted() ) )
+      {
+         for( final File file : files )
+         {
+            changed.add( getTrackedFile( file ) );
+         }
+      }
+
+      for( final File file : changed )
+      {
+         final boolean known = this.lastModified.containsKey( file );
+         final boolean available = this.filter.accept( file ) && accept( file );
+         if( available && !known )
+         {
+            this.files.add( file );
+            this.lastModified.put( file, Long.valueOf( file.lastModified() ) );
+            fireFileAdded( file );
+         }
+         else if( available )
+         {
+            this.lastModified.put( file, Long.valueOf( file.lastModified() ) );
+            fireFileChanged( file );
+         }
+         else if( known )
          {
             this.files.remove( file );
+            this.lastModified.remove( file );
             fireFileRemoved( file );
          }
       }
    }
 
+   /**
+    * Gets the file in the model whose availability depends on a file in the directory. By default each file only
+    * affects itself.
+    *
+    * @param file a file in the directory.
+    * @return the file in the model that the file affects.
+    */
+   protected File getTrackedFile( final File file )
+   {
+      return file;
+   }
+
    protected boolean accept( @SuppressWarnings( "unused" ) final File file )
    {
       return true;
@@ -186,4 +266,12 @@ abstract class AbstractDirectoryModel
          listener.fileRemoved( file );
       }
    }
+
+   protected void fireFileChanged( final File file )
+   {
+      for( final AvailableFileListener listener : this.listeners )
+      {
+         listener.fileChanged( file );
+      }
+   }
 }
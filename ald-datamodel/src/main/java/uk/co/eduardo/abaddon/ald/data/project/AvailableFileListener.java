@@ -3,7 +3,7 @@ package uk.co.eduardo.abaddon.ald.data.project;
 import java.io.File;
 
 /**
- * Notification that a file has becom available or unavailable from the filesystem.
+ * Notification that a file has becom available or unavailable from the filesystem, or has been rewritten.
  *
  * @author Ed
  */
@@ -18,4 +18,9 @@ public interface AvailableFileListener
     * @param file the file that was removed.
     */
    void fileRemoved( final File file );
+
+   /**
+    * @param file the file whose contents were changed.
+    */
+   void fileChanged( final File file );
 }
@@ -3,6 +3,8 @@ package uk.co.eduardo.abaddon.ald.data.project;
 import java.io.File;
 import java.util.List;
 
+import uk.co.eduardo.abaddon.ald.data.utils.DirectoryChangeEvent;
+
 /**
  * Manages the list of maps that are currently available (but not necessarily open).
  *
@@ -14,14 +16,18 @@ public class AvailableMapsModel extends AbstractDirectoryModel
 
    private static final String MAP_SUFFIX = ".map"; //$NON-NLS-1$
 
+   private final ProjectManifest manifest;
+
    /**
     * Initializes a model for the available map files.
     *
     * @param rootDir the directory to scan for map files.
+    * @param manifest the project manifest, which remembers the headers of the maps.
     */
-   public AvailableMapsModel( final File rootDir )
+   public AvailableMapsModel( final File rootDir, final ProjectManifest manifest )
    {
       super( rootDir, MAP_DIR_NAME, MAP_SUFFIX );
+      this.manifest = manifest;
       rescan();
    }
 
@@ -52,6 +58,37 @@ public class AvailableMapsModel extends AbstractDirectoryModel
       return null;
    }
 
+   /**
+    * Gets the name of the tileset a map uses without opening the map.
+    *
+    * @param mapFile the file for the map.
+    * @return the name of the map's tileset, or <code>null</code> if the map cannot be read.
+    */
+   public String getTilesetName( final File mapFile )
+   {
+      return this.manifest.getMapTilesetName( mapFile );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void rescan()
+   {
+      super.rescan();
+      saveManifest();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void update( final DirectoryChangeEvent event )
+   {
+      super.update( event );
+      saveManifest();
+   }
+
    /**
     * @param mapFile the file for the map.
     * @return the name of the map.
@@ -65,4 +102,16 @@ public class AvailableMapsModel extends AbstractDirectoryModel
       }
       return null;
    }
+
+   /**
+    * Saves the map headers read while scanning. The directory can change before the constructor has assigned the
+    * manifest, in which case the scan made by the constructor saves them.
+    */
+   private void saveManifest()
+   {
+      if( this.manifest != null )
+      {
+         this.manifest.save();
+      }
+   }
 }
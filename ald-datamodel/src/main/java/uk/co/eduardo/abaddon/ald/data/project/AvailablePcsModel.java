@@ -14,6 +14,8 @@ public class AvailablePcsModel extends AbstractDirectoryModel
 
    private static final String PC_SUFFIX = ".png"; //$NON-NLS-1$
 
+   private static final String PC_NAME_FORMAT = "pc%d.png"; //$NON-NLS-1$
+
    /**
     * Initializes a model for the available Player Character files.
     *
@@ -34,4 +36,21 @@ public class AvailablePcsModel extends AbstractDirectoryModel
    {
       return getAvailableFiles();
    }
+
+   /**
+    * @param type the PC id
+    * @return the File for the PC or <code>null</code> if no PC with that ID exists.
+    */
+   public File getPcFile( final int type )
+   {
+      final String toCheck = String.format( PC_NAME_FORMAT, type );
+      for( final File file : getAvailablePcFiles() )
+      {
+         if( file.getName().equalsIgnoreCase( toCheck ) )
+         {
+            return file;
+         }
+      }
+      return null;
+   }
 }
@@ -1,13 +1,12 @@
 package uk.co.eduardo.abaddon.ald.data.project;
 
-import java.awt.image.BufferedImage;
+import java.awt.Dimension;
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import javax.imageio.ImageIO;
+import uk.co.eduardo.abaddon.ald.data.utils.DirectoryChangeEvent;
 
 /**
  * Manages the list of tilesets that are currently available.
@@ -24,6 +23,8 @@ public class AvailableTilesetsModel extends AbstractDirectoryModel
 
    private final int tileSize;
 
+   private final ProjectManifest manifest;
+
    /**
     * Initializes a model for the available tileset files.
     * <p>
@@ -36,11 +37,13 @@ public class AvailableTilesetsModel extends AbstractDirectoryModel
     *
     * @param rootDir the directory to scan for tileset files.
     * @param tileSize the tile dimensions in pixels.
+    * @param manifest the project manifest, which remembers the dimensions of the tileset images.
     */
-   public AvailableTilesetsModel( final File rootDir, final int tileSize )
+   public AvailableTilesetsModel( final File rootDir, final int tileSize, final ProjectManifest manifest )
    {
       super( rootDir, TILESETS_DIR_NAME, DSC_SUFFIX );
       this.tileSize = tileSize;
+      this.manifest = manifest;
       rescan();
    }
 
@@ -95,24 +98,52 @@ public class AvailableTilesetsModel extends AbstractDirectoryModel
       final File pngFile = new File( rootName + PNG_SUFFIX );
       if( pngFile.exists() && pngFile.isFile() )
       {
-         // Read the image and determine whether its dimensions are multiples of the allowed tile size
-         try
-         {
-            final BufferedImage image = ImageIO.read( pngFile );
-            if( image != null )
-            {
-               return ( image.getWidth() > 0 ) && ( ( image.getWidth() % this.tileSize ) == 0 ) && ( image.getHeight() > 0 ) &&
-                      ( ( image.getHeight() % this.tileSize ) == 0 );
-            }
-         }
-         catch( final IOException e )
+         // Determine whether the image's dimensions are multiples of the allowed tile size. The manifest is not yet
+         // assigned if the directory changes while the super constructor runs; the constructor scans again afterwards.
+         final Dimension size = this.manifest == null ? null : this.manifest.getImageSize( pngFile );
+         if( size != null )
          {
-            return false;
+            return ( ( size.width % this.tileSize ) == 0 ) && ( ( size.height % this.tileSize ) == 0 );
          }
       }
       return false;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void rescan()
+   {
+      super.rescan();
+      saveManifest();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void update( final DirectoryChangeEvent event )
+   {
+      super.update( event );
+      saveManifest();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected File getTrackedFile( final File file )
+   {
+      // A tileset becomes available or unavailable when its image changes.
+      final String name = file.getName();
+      if( name.toLowerCase().endsWith( PNG_SUFFIX ) )
+      {
+         return new File( file.getParentFile(), name.substring( 0, name.length() - PNG_SUFFIX.length() ) + DSC_SUFFIX );
+      }
+      return file;
+   }
+
    /**
     * @param dscFile a tileset description file (".dsc")
     * @return the corresponding PNG file for that descriptor.
@@ -158,4 +189,16 @@ public class AvailableTilesetsModel extends AbstractDirectoryModel
       }
       return tilesetName.toLowerCase() + DSC_SUFFIX;
    }
+
+   /**
+    * Saves the image sizes read while scanning. The directory can change before the constructor has assigned the
+    * manifest, in which case the scan made by the constructor saves them.
+    */
+   private void saveManifest()
+   {
+      if( this.manifest != null )
+      {
+         this.manifest.save();
+      }
+   }
 }
@@ -27,6 +27,12 @@ public class Project
 
    private final AvailableMusicModel availableMusicModel;
 
+   private final ProjectManifest manifest;
+
+   private final TilesetCache tilesetCache;
+
+   private final SpriteSheetCache spriteSheetCache;
+
    /**
     * Opens the project at the specified directory.
     * <p>
@@ -56,11 +62,15 @@ public class Project
       this.settings = getProjectSettings( rootDir );
       final int tileSize = this.settings.get( ProjectSettings.TILE_HEIGHT );
 
-      this.availableMapsModel = new AvailableMapsModel( rootDir );
-      this.availableTilesetsModel = new AvailableTilesetsModel( rootDir, tileSize );
+      this.manifest = new ProjectManifest( rootDir );
+      this.availableMapsModel = new AvailableMapsModel( rootDir, this.manifest );
+      this.availableTilesetsModel = new AvailableTilesetsModel( rootDir, tileSize, this.manifest );
       this.availableNpcsModel = new AvailableNpcsModel( rootDir );
       this.availablePcsModel = new AvailablePcsModel( rootDir );
       this.availableMusicModel = new AvailableMusicModel( rootDir );
+      this.tilesetCache = new TilesetCache( this.availableTilesetsModel, this.settings, this.mapEditorModel );
+      this.spriteSheetCache = new SpriteSheetCache( this.availableNpcsModel, this.availablePcsModel, this.settings );
+      this.manifest.save();
    }
 
    /**
@@ -103,6 +113,22 @@ public class Project
       return this.availableTilesetsModel;
    }
 
+   /**
+    * @return the tilesets loaded for the maps of the project.
+    */
+   public TilesetCache getTilesetCache()
+   {
+      return this.tilesetCache;
+   }
+
+   /**
+    * @return the frames of the NPC and PC sprite sheets of the project.
+    */
+   public SpriteSheetCache getSpriteSheetCache()
+   {
+      return this.spriteSheetCache;
+   }
+
    /**
     * @return the model for the available NPC files that are present in the project.
     */
@@ -127,6 +153,15 @@ public class Project
       return this.availableMusicModel;
    }
 
+   /**
+    * Releases the caches of the project. Called once the project has been closed, after all its maps have been closed.
+    */
+   public void dispose()
+   {
+      this.tilesetCache.dispose();
+      this.spriteSheetCache.dispose();
+   }
+
    private ProjectSettings getProjectSettings( final File root )
    {
       return new ProjectSettings( new File( root, PROJECT_FILE_NAME ) );
@@ -0,0 +1,225 @@
+package uk.co.eduardo.abaddon.ald.data.project;
+
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Properties;
+
+import uk.co.eduardo.abaddon.ald.data.utils.ImageUtilities;
+import uk.co.eduardo.abaddon.map.LazyMapReader;
+import uk.co.eduardo.abaddon.map.MapFactory;
+
+/**
+ * Remembers what was learnt about the files of a project between sessions, so that opening a project does not need to
+ * read them again.
+ * <p>
+ * Each entry records the size and last modified time of a file along with the dimensions of an image or a summary of
+ * a map's header. An entry is only used while the file's size and last modified time are unchanged; otherwise the file
+ * is read again and the entry replaced. The manifest is kept in the project directory and is only written when it has
+ * changed.
+ *
+ * @author Ed
+ */
+public class ProjectManifest
+{
+   private static final String MANIFEST_FILE_NAME = "manifest.cfg"; //$NON-NLS-1$
+
+   private static final String SEPARATOR = "|"; //$NON-NLS-1$
+
+   private static final String SEPARATOR_PATTERN = "\\|"; //$NON-NLS-1$
+
+   private final File rootDir;
+
+   private final File source;
+
+   /** Entries keyed by the path of the file relative to the project directory. */
+   private final Properties entries = new Properties();
+
+   private boolean dirty;
+
+   /**
+    * Initializes the manifest of a project, reading the entries saved by the last session.
+    *
+    * @param rootDir the project directory.
+    */
+   public ProjectManifest( final File rootDir )
+   {
+      this.rootDir = rootDir;
+      this.source = new File( rootDir, MANIFEST_FILE_NAME );
+      if( this.source.isFile() )
+      {
+         InputStream stream = null;
+         try
+         {
+            stream = new BufferedInputStream( new FileInputStream( this.source ) );
+            this.entries.load( stream );
+         }
+         catch( final IOException e )
+         {
+            // Start again with an empty manifest.
+            this.entries.clear();
+         }
+         finally
+         {
+            close( stream );
+         }
+      }
+   }
+
+   /**
+    * Gets the dimensions of a PNG image, reading them from the image's header if they are not known.
+    *
+    * @param pngFile the image file.
+    * @return the dimensions of the image, or <code>null</code> if the file is not a readable PNG image.
+    */
+   public synchronized Dimension getImageSize( final File pngFile )
+   {
+      final String data = getData( pngFile );
+      if( data != null )
+      {
+         final String[] size = data.split( "x" ); //$NON-NLS-1$
+         if( size.length == 2 )
+         {
+            try
+            {
+               return new Dimension( Integer.parseInt( size[ 0 ] ), Integer.parseInt( size[ 1 ] ) );
+            }
+            catch( final NumberFormatException e )
+            {
+               // Read the image again.
+            }
+         }
+      }
+
+      final Dimension size = ImageUtilities.readPngSize( pngFile );
+      if( size != null )
+      {
+         putData( pngFile, size.width + "x" + size.height ); //$NON-NLS-1$
+      }
+      return size;
+   }
+
+   /**
+    * Gets the name of the tileset a map uses, reading it from the map's header if it is not known.
+    *
+    * @param mapFile the map file.
+    * @return the name of the map's tileset, or <code>null</code> if the map cannot be read.
+    */
+   public synchronized String getMapTilesetName( final File mapFile )
+   {
+      final String data = getData( mapFile );
+      if( data != null )
+      {
+         return data;
+      }
+
+      try
+      {
+         final LazyMapReader reader = MapFactory.openMap( mapFile );
+         try
+         {
+            final String tilesetName = reader.getHeaderSection().getTilesetName();
+            putData( mapFile, tilesetName );
+            return tilesetName;
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      catch( final IOException e )
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Writes the manifest if it has changed, dropping the entries for files that no longer exist.
+    */
+   public synchronized void save()
+   {
+      if( !this.dirty )
+      {
+         return;
+      }
+      for( final Iterator< Object > iterator = this.entries.keySet().iterator(); iterator.hasNext(); )
+      {
+         if( !new File( this.rootDir, (String) iterator.next() ).isFile() )
+         {
+            iterator.remove();
+         }
+      }
+
+      OutputStream stream = null;
+      try
+      {
+         stream = new BufferedOutputStream( new FileOutputStream( this.source ) );
+         this.entries.store( stream, null );
+         this.dirty = false;
+      }
+      catch( final IOException exception )
+      {
+         // The files will be read again next time.
+      }
+      finally
+      {
+         close( stream );
+      }
+   }
+
+   /**
+    * @return the data recorded for the file, or <code>null</code> if there is none or the file has changed since.
+    */
+   private String getData( final File file )
+   {
+      final String entry = this.entries.getProperty( getKey( file ) );
+      if( entry == null )
+      {
+         return null;
+      }
+      final String[] fields = entry.split( SEPARATOR_PATTERN, 3 );
+      if( ( fields.length == 3 ) && fields[ 0 ].equals( Long.toString( file.length() ) )
+          && fields[ 1 ].equals( Long.toString( file.lastModified() ) ) )
+      {
+         return fields[ 2 ];
+      }
+      return null;
+   }
+
+   private void putData( final File file, final String data )
+   {
+      this.entries.setProperty( getKey( file ), file.length() + SEPARATOR + file.lastModified() + SEPARATOR + data );
+      this.dirty = true;
+   }
+
+   private String getKey( final File file )
+   {
+      final String path = file.getAbsolutePath();
+      final String root = this.rootDir.getAbsolutePath() + File.separator;
+      final String relative = path.startsWith( root ) ? path.substring( root.length() ) : path;
+      return relative.replace( File.separatorChar, '/' );
+   }
+
+   private static void close( final Closeable stream )
+   {
+      if( stream != null )
+      {
+         try
+         {
+            stream.close();
+         }
+         catch( final IOException e )
+         {
+            // Nothing we can do at this point.
+         }
+      }
+   }
+}
@@ -0,0 +1,329 @@
+package uk.co.eduardo.abaddon.ald.data.project;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import uk.co.eduardo.abaddon.ald.data.utils.ImageUtilities;
+import uk.co.eduardo.abaddon.graphics.layer.Direction;
+
+/**
+ * Holds the frames of the NPC and PC sprite sheets of a project.
+ * <p>
+ * Each sheet is decoded once, the first time any of its frames is asked for, and split into all of its frames. Sheets
+ * are found by their type and frames by their direction and frame number, so that painting sprites does not need to
+ * build file names or search the project's directories. The cache is bounded by the memory used by the frames; when it
+ * is full the sheets that were used least recently are dropped. Sheets are dropped as soon as their file is added,
+ * removed or rewritten.
+ *
+ * @author Ed
+ */
+public class SpriteSheetCache
+{
+   /** The default limit on the memory used by the cached frames, in bytes. */
+   public static final long DEFAULT_MAX_MEMORY = 16L * 1024 * 1024;
+
+   private static final BufferedImage[] NO_FRAMES = new BufferedImage[ 0 ];
+
+   private final AvailableNpcsModel npcsModel;
+
+   private final AvailablePcsModel pcsModel;
+
+   private final ProjectSettings settings;
+
+   private final long maxMemory;
+
+   /** The NPC sheets, indexed by type. */
+   private Sheet[] npcSheets = new Sheet[ 0 ];
+
+   /** The PC sheets, indexed by type. */
+   private Sheet[] pcSheets = new Sheet[ 0 ];
+
+   private long memoryUsage;
+
+   /** Incremented each time a sheet is used, to find the least recently used sheet. */
+   private long useCounter;
+
+   private final AvailableFileListener npcFileListener = new AvailableFileListener()
+   {
+      @Override
+      public void fileAdded( final File file )
+      {
+         // A type that was missing may now exist.
+         removeSheets( false, null );
+      }
+
+      @Override
+      public void fileRemoved( final File file )
+      {
+         removeSheets( false, file );
+      }
+
+      @Override
+      public void fileChanged( final File file )
+      {
+         removeSheets( false, file );
+      }
+   };
+
+   private final AvailableFileListener pcFileListener = new AvailableFileListener()
+   {
+      @Override
+      public void fileAdded( final File file )
+      {
+         removeSheets( true, null );
+      }
+
+      @Override
+      public void fileRemoved( final File file )
+      {
+         removeSheets( true, file );
+      }
+
+      @Override
+      public void fileChanged( final File file )
+      {
+         removeSheets( true, file );
+      }
+   };
+
+   /**
+    * Initializes a cache limited to {@link #DEFAULT_MAX_MEMORY}.
+    *
+    * @param npcsModel the NPC files available in the project.
+    * @param pcsModel the PC files available in the project.
+    * @param settings the project settings, which give the size of the frames.
+    */
+   public SpriteSheetCache( final AvailableNpcsModel npcsModel,
+                            final AvailablePcsModel pcsModel,
+                            final ProjectSettings settings )
+   {
+      this( npcsModel, pcsModel, settings, DEFAULT_MAX_MEMORY );
+   }
+
+   /**
+    * @param npcsModel the NPC files available in the project.
+    * @param pcsModel the PC files available in the project.
+    * @param settings the project settings, which give the size of the frames.
+    * @param maxMemory the most memory, in bytes, the cached frames may use. The sheet in use is always kept, even if it
+    *           is larger than this.
+    */
+   public SpriteSheetCache( final AvailableNpcsModel npcsModel,
+                            final AvailablePcsModel pcsModel,
+                            final ProjectSettings settings,
+                            final long maxMemory )
+   {
+      this.npcsModel = npcsModel;
+      this.pcsModel = pcsModel;
+      this.settings = settings;
+      this.maxMemory = maxMemory;
+      npcsModel.addAvailableFileListener( this.npcFileListener );
+      pcsModel.addAvailableFileListener( this.pcFileListener );
+   }
+
+   /**
+    * Stops following the NPC and PC files and drops the cached sheets. Called when the project is closed.
+    */
+   public synchronized void dispose()
+   {
+      this.npcsModel.removeAvailableFileListener( this.npcFileListener );
+      this.pcsModel.removeAvailableFileListener( this.pcFileListener );
+      this.npcSheets = new Sheet[ 0 ];
+      this.pcSheets = new Sheet[ 0 ];
+      this.memoryUsage = 0;
+   }
+
+   /**
+    * @param type the NPC type.
+    * @param direction the direction the NPC is facing.
+    * @param frame the frame of the animation, from 0 to {@link Direction#FRAMES} - 1.
+    * @return the frame, or <code>null</code> if there is no NPC of that type or its sheet has no such frame.
+    */
+   public synchronized BufferedImage getNpcFrame( final int type, final Direction direction, final int frame )
+   {
+      if( type < 0 )
+      {
+         return null;
+      }
+      Sheet sheet = type < this.npcSheets.length ? this.npcSheets[ type ] : null;
+      if( sheet == null )
+      {
+         sheet = new Sheet( this.npcsModel.getNpcFile( type ) );
+         putSheet( false, type, sheet );
+      }
+      return sheet.getFrame( direction, frame );
+   }
+
+   /**
+    * @param type the PC type.
+    * @param direction the direction the PC is facing.
+    * @param frame the frame of the animation, from 0 to {@link Direction#FRAMES} - 1.
+    * @return the frame, or <code>null</code> if there is no PC of that type or its sheet has no such frame.
+    */
+   public synchronized BufferedImage getPcFrame( final int type, final Direction direction, final int frame )
+   {
+      if( type < 0 )
+      {
+         return null;
+      }
+      Sheet sheet = type < this.pcSheets.length ? this.pcSheets[ type ] : null;
+      if( sheet == null )
+      {
+         sheet = new Sheet( this.pcsModel.getPcFile( type ) );
+         putSheet( true, type, sheet );
+      }
+      return sheet.getFrame( direction, frame );
+   }
+
+   /**
+    * @return the memory used by the cached frames, in bytes.
+    */
+   public synchronized long getMemoryUsage()
+   {
+      return this.memoryUsage;
+   }
+
+   /**
+    * Drops all the cached sheets.
+    */
+   public synchronized void clear()
+   {
+      Arrays.fill( this.npcSheets, null );
+      Arrays.fill( this.pcSheets, null );
+      this.memoryUsage = 0;
+   }
+
+   private void putSheet( final boolean pc, final int type, final Sheet sheet )
+   {
+      if( pc )
+      {
+         if( type >= this.pcSheets.length )
+         {
+            this.pcSheets = Arrays.copyOf( this.pcSheets, type + 1 );
+         }
+         this.pcSheets[ type ] = sheet;
+      }
+      else
+      {
+         if( type >= this.npcSheets.length )
+         {
+            this.npcSheets = Arrays.copyOf( this.npcSheets, type + 1 );
+         }
+         this.npcSheets[ type ] = sheet;
+      }
+      this.memoryUsage += sheet.memory;
+
+      // Make room, keeping the new sheet.
+      sheet.lastUsed = ++this.useCounter;
+      while( this.memoryUsage > this.maxMemory )
+      {
+         if( !removeLeastRecentlyUsed( sheet ) )
+         {
+            break;
+         }
+      }
+   }
+
+   private boolean removeLeastRecentlyUsed( final Sheet keep )
+   {
+      Sheet[] oldestSheets = null;
+      int oldestType = -1;
+      for( final Sheet[] sheets : new Sheet[][]
+      {
+         this.npcSheets, this.pcSheets
+      } )
+      {
+         for( int type = 0; type < sheets.length; type++ )
+         {
+            final Sheet sheet = sheets[ type ];
+            if( ( sheet != null ) && ( sheet != keep ) && ( sheet.memory > 0 )
+                && ( ( oldestSheets == null ) || ( sheet.lastUsed < oldestSheets[ oldestType ].lastUsed ) ) )
+            {
+               oldestSheets = sheets;
+               oldestType = type;
+            }
+         }
+      }
+      if( oldestSheets == null )
+      {
+         return false;
+      }
+      this.memoryUsage -= oldestSheets[ oldestType ].memory;
+      oldestSheets[ oldestType ] = null;
+      return true;
+   }
+
+   /**
+    * @param pc whether to remove PC sheets rather than NPC sheets.
+    * @param file the file whose sheets are removed, or <code>null</code> to remove the sheets of missing types.
+    */
+   private synchronized void removeSheets( final boolean pc, final File file )
+   {
+      final Sheet[] sheets = pc ? this.pcSheets : this.npcSheets;
+      for( int type = 0; type < sheets.length; type++ )
+      {
+         final Sheet sheet = sheets[ type ];
+         if( ( sheet != null ) && ( file == null ? sheet.file == null : file.equals( sheet.file ) ) )
+         {
+            this.memoryUsage -= sheet.memory;
+            sheets[ type ] = null;
+         }
+      }
+   }
+
+   /**
+    * The frames of one sprite sheet.
+    */
+   private final class Sheet
+   {
+      /** The sheet's file, or <code>null</code> if there is no sheet of its type. */
+      private final File file;
+
+      private final BufferedImage[] frames;
+
+      private final long memory;
+
+      private long lastUsed;
+
+      Sheet( final File file )
+      {
+         this.file = file;
+         this.frames = readFrames( file );
+         long bytes = 0;
+         for( final BufferedImage frame : this.frames )
+         {
+            bytes += ImageUtilities.getMemoryUsage( frame );
+         }
+         this.memory = bytes;
+      }
+
+      BufferedImage getFrame( final Direction direction, final int frame )
+      {
+         this.lastUsed = ++SpriteSheetCache.this.useCounter;
+         final int index = direction.offset + frame;
+         return ( frame >= 0 ) && ( index < this.frames.length ) ? this.frames[ index ] : null;
+      }
+
+      private BufferedImage[] readFrames( final File sheetFile )
+      {
+         if( sheetFile == null )
+         {
+            return NO_FRAMES;
+         }
+         try
+         {
+            return ImageUtilities.splitImage( ImageIO.read( sheetFile ),
+                                              SpriteSheetCache.this.settings.get( ProjectSettings.TILE_WIDTH ),
+                                              SpriteSheetCache.this.settings.get( ProjectSettings.SPRITE_HEIGHT ) );
+         }
+         catch( final IOException e )
+         {
+            // No frames.
+            return NO_FRAMES;
+         }
+      }
+   }
+}
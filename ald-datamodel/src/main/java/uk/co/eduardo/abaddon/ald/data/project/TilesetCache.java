@@ -0,0 +1,250 @@
+package uk.co.eduardo.abaddon.ald.data.project;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import uk.co.eduardo.abaddon.ald.data.TilesetData;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+import uk.co.eduardo.abaddon.ald.data.utils.DirectoryWatcher;
+
+/**
+ * Shares the loaded {@link TilesetData} of a project between all the maps that use it.
+ * <p>
+ * Tilesets are keyed by name, and each entry remembers the size and last modified time of the tileset's image and
+ * descriptor so that a tileset that has changed on disk is loaded again. The cache counts how many open maps use each
+ * tileset. While a tileset is in use it is held strongly; once no open map uses it, it is only softly referenced, so
+ * switching back to it is instant unless the memory was needed for something else.
+ *
+ * @author Ed
+ */
+public class TilesetCache
+{
+   private final AvailableTilesetsModel tilesetsModel;
+
+   private final ProjectSettings settings;
+
+   private final OpenMapModel openMapModel;
+
+   private final Map< String, Entry > entries = new HashMap<>();
+
+   /** The tileset each open map is using. */
+   private final Map< PropertyModel, TilesetData > openMaps = new IdentityHashMap<>();
+
+   private final PropertyListener tilesetListener = new PropertyListener()
+   {
+      @Override
+      public void propertyChanged( final PropertyModel map )
+      {
+         final TilesetData tileset = map.get( Properties.Tileset );
+         release( TilesetCache.this.openMaps.put( map, tileset ) );
+         acquire( tileset );
+      }
+   };
+
+   private final OpenMapListener mapListener = new OpenMapAdapter()
+   {
+      @Override
+      public void mapOpened( final PropertyModel opened )
+      {
+         final TilesetData tileset = opened.get( Properties.Tileset );
+         TilesetCache.this.openMaps.put( opened, tileset );
+         acquire( tileset );
+         opened.addPropertyListener( Properties.Tileset, TilesetCache.this.tilesetListener );
+      }
+
+      @Override
+      public void mapClosed( final PropertyModel closed )
+      {
+         closed.removePropertyListener( Properties.Tileset, TilesetCache.this.tilesetListener );
+         release( TilesetCache.this.openMaps.remove( closed ) );
+      }
+   };
+
+   private final ChangeListener directoryListener = new ChangeListener()
+   {
+      @Override
+      public void stateChanged( final ChangeEvent e )
+      {
+         removeStaleEntries();
+      }
+   };
+
+   /**
+    * @param tilesetsModel the tilesets available in the project.
+    * @param settings the project settings.
+    * @param openMapModel the maps open in the project, whose tilesets are counted as in use.
+    */
+   public TilesetCache( final AvailableTilesetsModel tilesetsModel,
+                        final ProjectSettings settings,
+                        final OpenMapModel openMapModel )
+   {
+      this.tilesetsModel = tilesetsModel;
+      this.settings = settings;
+      this.openMapModel = openMapModel;
+      openMapModel.addMapModelListener( this.mapListener );
+      DirectoryWatcher.getInstance().addListener( tilesetsModel.getDirectory(), this.directoryListener );
+   }
+
+   /**
+    * Stops following the open maps and the tileset directory, and drops the cached tilesets. Called when the project is
+    * closed.
+    */
+   public synchronized void dispose()
+   {
+      this.openMapModel.removeMapModelListener( this.mapListener );
+      DirectoryWatcher.getInstance().removeListener( this.tilesetsModel.getDirectory(), this.directoryListener );
+      for( final PropertyModel map : this.openMaps.keySet() )
+      {
+         map.removePropertyListener( Properties.Tileset, this.tilesetListener );
+      }
+      this.openMaps.clear();
+      this.entries.clear();
+   }
+
+   /**
+    * Gets a tileset, loading it if it is not cached or has changed on disk since it was loaded.
+    *
+    * @param tilesetName the name of the tileset.
+    * @return the tileset.
+    */
+   public synchronized TilesetData get( final String tilesetName )
+   {
+      final String key = tilesetName.toLowerCase();
+      final Entry entry = this.entries.get( key );
+      if( ( entry != null ) && !entry.isStale() )
+      {
+         final TilesetData cached = entry.getData();
+         if( cached != null )
+         {
+            return cached;
+         }
+      }
+
+      final TilesetData loaded = new TilesetData( this.tilesetsModel.getDirectory(), tilesetName, this.settings );
+      this.entries.put( key, new Entry( key, loaded ) );
+      return loaded;
+   }
+
+   /**
+    * Gets the memory held by the images of the cached tilesets that have not been reclaimed.
+    *
+    * @return the size of the images in bytes.
+    */
+   public synchronized long getMemoryUsage()
+   {
+      long bytes = 0;
+      for( final Entry entry : this.entries.values() )
+      {
+         final TilesetData data = entry.getData();
+         if( data != null )
+         {
+            bytes += data.getMemoryUsage();
+         }
+      }
+      return bytes;
+   }
+
+   private synchronized void acquire( final TilesetData tileset )
+   {
+      final Entry entry = getEntryFor( tileset );
+      if( entry != null )
+      {
+         entry.setReferences( entry.references + 1 );
+      }
+   }
+
+   private synchronized void release( final TilesetData tileset )
+   {
+      final Entry entry = getEntryFor( tileset );
+      if( ( entry != null ) && ( entry.references > 0 ) )
+      {
+         entry.setReferences( entry.references - 1 );
+      }
+   }
+
+   private Entry getEntryFor( final TilesetData tileset )
+   {
+      if( tileset == null )
+      {
+         return null;
+      }
+      final Entry entry = this.entries.get( tileset.getTilesetName().toLowerCase() );
+      // Tilesets loaded elsewhere, or replaced since, are not counted.
+      return ( entry != null ) && ( entry.getData() == tileset ) ? entry : null;
+   }
+
+   private synchronized void removeStaleEntries()
+   {
+      for( final Iterator< Entry > iterator = this.entries.values().iterator(); iterator.hasNext(); )
+      {
+         final Entry entry = iterator.next();
+         if( entry.isStale() || ( entry.getData() == null ) )
+         {
+            iterator.remove();
+         }
+      }
+   }
+
+   /**
+    * A loaded tileset and the state of its files when it was loaded.
+    */
+   private final class Entry
+   {
+      private final File pngFile;
+
+      private final File dscFile;
+
+      private final long pngLength;
+
+      private final long pngModified;
+
+      private final long dscLength;
+
+      private final long dscModified;
+
+      private final SoftReference< TilesetData > softData;
+
+      /** Holds the tileset strongly while open maps use it. */
+      private TilesetData data;
+
+      private int references;
+
+      Entry( final String tilesetName, final TilesetData loaded )
+      {
+         final File directory = TilesetCache.this.tilesetsModel.getDirectory();
+         this.pngFile = new File( directory, AvailableTilesetsModel.getPngFileNameFor( tilesetName ) );
+         this.dscFile = new File( directory, AvailableTilesetsModel.getDscFileNameFor( tilesetName ) );
+         this.pngLength = this.pngFile.length();
+         this.pngModified = this.pngFile.lastModified();
+         this.dscLength = this.dscFile.length();
+         this.dscModified = this.dscFile.lastModified();
+         this.softData = new SoftReference<>( loaded );
+      }
+
+      TilesetData getData()
+      {
+         return this.data != null ? this.data : this.softData.get();
+      }
+
+      void setReferences( final int count )
+      {
+         this.references = count;
+         this.data = count > 0 ? getData() : null;
+      }
+
+      boolean isStale()
+      {
+         return ( this.pngFile.length() != this.pngLength ) || ( this.pngFile.lastModified() != this.pngModified ) ||
+                ( this.dscFile.length() != this.dscLength ) || ( this.dscFile.lastModified() != this.dscModified );
+      }
+   }
+}
@@ -0,0 +1,36 @@
+package uk.co.eduardo.abaddon.ald.data.undo;
+
+import java.io.IOException;
+
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An edit that can move the bulk of its data out of the heap into an {@link UndoJournal} and still be undone or redone
+ * afterwards.
+ * <p>
+ * The {@link UndoManager} uses the size of each edit to keep its history within a memory budget, spilling the oldest
+ * edits to disk when the budget is exceeded.
+ *
+ * @author Ed
+ */
+public interface SpillableEdit extends UndoableEdit
+{
+   /**
+    * @return the approximate number of bytes of heap held by this edit.
+    */
+   long getSizeInBytes();
+
+   /**
+    * @return whether the data of this edit has been moved to a journal.
+    */
+   boolean isSpilled();
+
+   /**
+    * Writes the data of this edit to the journal and releases it from the heap. Once spilled the edit no longer absorbs
+    * other edits.
+    *
+    * @param journal the journal to write to.
+    * @throws IOException if the journal could not be written. The edit is left unchanged.
+    */
+   void spill( UndoJournal journal ) throws IOException;
+}
@@ -0,0 +1,138 @@
+package uk.co.eduardo.abaddon.ald.data.undo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An append-only temporary file holding the data of edits that have been spilled out of the heap.
+ * <p>
+ * The file is created when the first record is written and deleted when the journal is closed or the application exits.
+ * Records are not reclaimed one by one, but once every record has been released the file is truncated and reused from
+ * the start.
+ *
+ * @author Ed
+ */
+public final class UndoJournal implements Closeable
+{
+   private File file;
+
+   private RandomAccessFile access;
+
+   private boolean closed;
+
+   /** The number of bytes of records that have been written and not yet released. */
+   private long liveBytes;
+
+   /**
+    * Appends a record to the journal.
+    *
+    * @param record the bytes of the record.
+    * @return the offset of the record within the journal, to be passed to {@link #read(long, int)}.
+    * @throws IOException if the record could not be written.
+    */
+   public synchronized long write( final byte[] record ) throws IOException
+   {
+      final RandomAccessFile raf = open();
+      final long offset = raf.length();
+      raf.seek( offset );
+      raf.write( record );
+      this.liveBytes += record.length;
+      return offset;
+   }
+
+   /**
+    * Releases a record that will not be read again. When no records are left the file is truncated.
+    *
+    * @param length the length of the record in bytes.
+    */
+   public synchronized void release( final int length )
+   {
+      this.liveBytes -= length;
+      if( ( this.liveBytes <= 0 ) && ( this.access != null ) )
+      {
+         this.liveBytes = 0;
+         try
+         {
+            this.access.setLength( 0 );
+         }
+         catch( final IOException e )
+         {
+            // The space is reclaimed when the journal is closed instead.
+         }
+      }
+   }
+
+   /**
+    * Reads back a record.
+    *
+    * @param offset the offset returned when the record was written.
+    * @param length the length of the record in bytes.
+    * @return the bytes of the record.
+    * @throws IOException if the record could not be read.
+    */
+   public synchronized byte[] read( final long offset, final int length ) throws IOException
+   {
+      final RandomAccessFile raf = open();
+      final byte[] record = new byte[ length ];
+      raf.seek( offset );
+      raf.readFully( record );
+      return record;
+   }
+
+   /**
+    * @return the number of bytes written to the journal.
+    */
+   public synchronized long getSize()
+   {
+      try
+      {
+         return this.access == null ? 0 : this.access.length();
+      }
+      catch( final IOException e )
+      {
+         return 0;
+      }
+   }
+
+   /**
+    * Closes and deletes the journal file. Records can no longer be written or read.
+    */
+   @Override
+   public synchronized void close()
+   {
+      this.closed = true;
+      if( this.access != null )
+      {
+         try
+         {
+            this.access.close();
+         }
+         catch( final IOException e )
+         {
+            // Nothing more can be done, the file is deleted below or on exit.
+         }
+         this.access = null;
+      }
+      if( ( this.file != null ) && this.file.delete() )
+      {
+         this.file = null;
+      }
+   }
+
+   private RandomAccessFile open() throws IOException
+   {
+      if( this.closed )
+      {
+         throw new IOException( "The undo journal has been closed" ); //$NON-NLS-1$
+      }
+      if( this.access == null )
+      {
+         this.file = File.createTempFile( "ald-undo", ".journal" ); //$NON-NLS-1$ //$NON-NLS-2$
+         this.file.deleteOnExit();
+         this.access = new RandomAccessFile( this.file, "rw" ); //$NON-NLS-1$
+      }
+      return this.access;
+   }
+}
@@ -1,26 +1,91 @@
 package uk.co.eduardo.abaddon.ald.data.undo;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.undo.UndoableEdit;
 
+import org.apache.log4j.Logger;
+
 /**
  * Manages a stack of undo actions.
  * <p>
- * Some actions can be consolidated into a single undo action.
+ * Pencil strokes can be consolidated into a single undo action: a stroke added with {@link #addStroke(UndoableEdit)}
+ * shortly after the previous stroke is offered to it through {@link UndoableEdit#addEdit(UndoableEdit)}, so a quick
+ * succession of strokes on the same layer is undone in one step. Edits added with {@link #addEdit(UndoableEdit)}, such
+ * as fills and replacements, are never merged with their neighbours.
+ * <p>
+ * The heap used by the history is kept within a budget for each manager and a budget shared by all managers. When a
+ * budget is exceeded the oldest {@link SpillableEdit}s are moved to a temporary {@link UndoJournal}; they can still be
+ * undone, they are just read back from disk to do so.
  *
  * @author Ed
  */
 public final class UndoManager
 {
+   /** The default number of bytes of history each manager may keep in memory. */
+   public static final long DEFAULT_MEMORY_BUDGET = 16L * 1024 * 1024;
+
+   /** The number of bytes of history all managers together may keep in memory. */
+   public static final long GLOBAL_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+   private static final Logger logger = Logger.getLogger( UndoManager.class );
+
+   /** Strokes added within this many milliseconds of the previous stroke are offered to it for coalescing. */
+   private static final long COALESCE_WINDOW = 1000;
+
+   /** The size accounted for edits that do not report their own size. */
+   private static final long DEFAULT_EDIT_SIZE = 256;
+
+   /** All live managers, so that the global budget can be enforced across them. */
+   private static final List< WeakReference< UndoManager > > managers = new ArrayList<>();
+
    private final List< UndoManagerListener > listeners = new CopyOnWriteArrayList<>();
 
    private final List< UndoableEdit > edits = new ArrayList<>();
 
+   private final UndoJournal journal = new UndoJournal();
+
+   private final long memoryBudget;
+
    private int insertionPoint = 0;
 
+   /** The number of bytes of heap held by the edits. */
+   private long residentBytes;
+
+   /** All edits before this index have been spilled or cannot be spilled. */
+   private int spillPoint;
+
+   /** Set if the journal could not be written, after which the history is kept in memory. */
+   private boolean spillFailed;
+
+   /** The time the last edit was added if it was a stroke, or 0 if the next stroke must not be coalesced with it. */
+   private long lastStrokeTime;
+
+   /**
+    * Creates an undo manager with the {@link #DEFAULT_MEMORY_BUDGET}.
+    */
+   public UndoManager()
+   {
+      this( DEFAULT_MEMORY_BUDGET );
+   }
+
+   /**
+    * @param memoryBudget the number of bytes of history this manager may keep in memory before spilling it to disk.
+    */
+   public UndoManager( final long memoryBudget )
+   {
+      this.memoryBudget = memoryBudget;
+      synchronized( managers )
+      {
+         managers.add( new WeakReference<>( this ) );
+      }
+   }
+
    /**
     * Adds a listener that will be notified whenever an undo or redo is performed with this undo manager.
     *
@@ -45,19 +110,35 @@ public final class UndoManager
    }
 
    /**
-    * Adds an {@link UndoableEdit} to the Undo stack.
+    * Adds an {@link UndoableEdit} to the Undo stack as an entry of its own.
     *
     * @param edit the edit to add to the stack.
     */
    public void addEdit( final UndoableEdit edit )
    {
-      // First clear all the edits after the insertion point.
-      for( int erase = this.insertionPoint; erase < this.edits.size(); erase++ )
-      {
-         this.edits.remove( this.insertionPoint );
-      }
-      this.edits.add( this.insertionPoint++, edit );
-      fireStackChanged();
+      addEdit( edit, false );
+   }
+
+   /**
+    * Adds a pencil stroke to the Undo stack.
+    * <p>
+    * If the previous entry is a stroke that was added moments ago and it accepts the new stroke, the two become one
+    * entry on the stack.
+    *
+    * @param edit the edit made by the stroke.
+    */
+   public void addStroke( final UndoableEdit edit )
+   {
+      addEdit( edit, true );
+   }
+
+   /**
+    * Prevents the next edit from being coalesced with the current one, e.g. because the map has just been saved and the
+    * save point must remain reachable by undo.
+    */
+   public void markSavePoint()
+   {
+      this.lastStrokeTime = 0;
    }
 
    /**
@@ -89,6 +170,7 @@ public final class UndoManager
          // Pop the last edit
          final UndoableEdit lastEdit = this.edits.get( --this.insertionPoint );
          lastEdit.undo();
+         this.lastStrokeTime = 0;
          fireStackChanged();
       }
    }
@@ -105,6 +187,7 @@ public final class UndoManager
       {
          final UndoableEdit nextEdit = this.edits.get( this.insertionPoint++ );
          nextEdit.redo();
+         this.lastStrokeTime = 0;
          fireStackChanged();
       }
    }
@@ -143,6 +226,30 @@ public final class UndoManager
       return this.insertionPoint;
    }
 
+   /**
+    * @return the approximate number of bytes of heap held by the history.
+    */
+   public long getResidentBytes()
+   {
+      return this.residentBytes;
+   }
+
+   /**
+    * Discards the whole history and deletes its journal. The manager must not be used afterwards.
+    */
+   public void dispose()
+   {
+      for( final UndoableEdit edit : this.edits )
+      {
+         edit.die();
+      }
+      this.edits.clear();
+      this.insertionPoint = 0;
+      this.spillPoint = 0;
+      this.residentBytes = 0;
+      this.journal.close();
+   }
+
    /**
     * Notify listeners that an edit happened.
     */
@@ -153,4 +260,142 @@ public final class UndoManager
          listener.stackChanged();
       }
    }
+
+   private void addEdit( final UndoableEdit edit, final boolean stroke )
+   {
+      // First clear all the edits after the insertion point.
+      if( this.insertionPoint < this.edits.size() )
+      {
+         final List< UndoableEdit > redoEdits = this.edits.subList( this.insertionPoint, this.edits.size() );
+         for( final UndoableEdit redoEdit : redoEdits )
+         {
+            this.residentBytes -= sizeOf( redoEdit );
+            redoEdit.die();
+         }
+         redoEdits.clear();
+         this.spillPoint = Math.min( this.spillPoint, this.insertionPoint );
+      }
+
+      final long now = System.currentTimeMillis();
+      if( stroke && ( this.lastStrokeTime != 0 ) && ( ( now - this.lastStrokeTime ) <= COALESCE_WINDOW )
+          && ( this.insertionPoint > 0 ) )
+      {
+         final UndoableEdit lastEdit = this.edits.get( this.insertionPoint - 1 );
+         final long lastSize = sizeOf( lastEdit );
+         if( lastEdit.addEdit( edit ) )
+         {
+            this.residentBytes += sizeOf( lastEdit ) - lastSize;
+            this.lastStrokeTime = now;
+            enforceBudgets();
+            fireStackChanged();
+            return;
+         }
+      }
+
+      this.edits.add( this.insertionPoint++, edit );
+      this.residentBytes += sizeOf( edit );
+      this.lastStrokeTime = stroke ? now : 0;
+      enforceBudgets();
+      fireStackChanged();
+   }
+
+   private static long sizeOf( final UndoableEdit edit )
+   {
+      return edit instanceof SpillableEdit ? ( (SpillableEdit) edit ).getSizeInBytes() : DEFAULT_EDIT_SIZE;
+   }
+
+   /**
+    * Spills the oldest edits of this manager until it is within its own budget, then the oldest edits of the largest
+    * managers until all managers together are within the global budget.
+    */
+   private void enforceBudgets()
+   {
+      while( ( this.residentBytes > this.memoryBudget ) && spillOldest() )
+      {
+         // Keep spilling.
+      }
+
+      synchronized( managers )
+      {
+         long total = 0;
+         final List< UndoManager > live = new ArrayList<>();
+         for( final Iterator< WeakReference< UndoManager > > it = managers.iterator(); it.hasNext(); )
+         {
+            final UndoManager manager = it.next().get();
+            if( manager == null )
+            {
+               it.remove();
+            }
+            else
+            {
+               live.add( manager );
+               total += manager.residentBytes;
+            }
+         }
+
+         while( total > GLOBAL_MEMORY_BUDGET )
+         {
+            UndoManager largest = null;
+            for( final UndoManager manager : live )
+            {
+               if( ( largest == null ) || ( manager.residentBytes > largest.residentBytes ) )
+               {
+                  largest = manager;
+               }
+            }
+            final long before = largest.residentBytes;
+            if( !largest.spillOldest() )
+            {
+               // Nothing more can be spilled from the largest history, so the rest will not help much either.
+               live.remove( largest );
+               if( live.isEmpty() )
+               {
+                  break;
+               }
+               continue;
+            }
+            total -= before - largest.residentBytes;
+         }
+      }
+   }
+
+   /**
+    * Spills the oldest edit still held in memory. The newest edit is never spilled so that it can still absorb the next
+    * edit.
+    *
+    * @return whether an edit was spilled.
+    */
+   private boolean spillOldest()
+   {
+      if( this.spillFailed )
+      {
+         return false;
+      }
+      for( ; this.spillPoint < ( this.edits.size() - 1 ); this.spillPoint++ )
+      {
+         final UndoableEdit edit = this.edits.get( this.spillPoint );
+         if( !( edit instanceof SpillableEdit ) || ( (SpillableEdit) edit ).isSpilled() )
+         {
+            continue;
+         }
+
+         final SpillableEdit spillable = (SpillableEdit) edit;
+         final long before = spillable.getSizeInBytes();
+         try
+         {
+            spillable.spill( this.journal );
+         }
+         catch( final IOException e )
+         {
+            // Without a journal the history has to stay in memory. Nothing has been lost, so carry on over budget.
+            logger.warn( "Undo history could not be written to disk and will be kept in memory", e ); //$NON-NLS-1$
+            this.spillFailed = true;
+            return false;
+         }
+         this.residentBytes -= before - spillable.getSizeInBytes();
+         this.spillPoint++;
+         return true;
+      }
+      return false;
+   }
 }
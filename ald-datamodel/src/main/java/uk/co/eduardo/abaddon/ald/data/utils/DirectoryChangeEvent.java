@@ -0,0 +1,86 @@
+package uk.co.eduardo.abaddon.ald.data.utils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.swing.event.ChangeEvent;
+
+/**
+ * Describes a batch of changes to the files within a directory. The source of the event is the directory.
+ * <p>
+ * Each file appears in at most one of the created, modified and deleted sets. If the changes could not all be recorded
+ * the event is an overflow, and listeners must examine the whole directory again.
+ *
+ * @author Ed
+ */
+public class DirectoryChangeEvent extends ChangeEvent
+{
+   private final Set< File > created;
+
+   private final Set< File > modified;
+
+   private final Set< File > deleted;
+
+   private final boolean overflow;
+
+   /**
+    * @param directory the directory whose files changed.
+    * @param created the files that were created.
+    * @param modified the files whose contents changed.
+    * @param deleted the files that were deleted.
+    * @param overflow whether some changes may not have been recorded.
+    */
+   public DirectoryChangeEvent( final File directory,
+                                final Set< File > created,
+                                final Set< File > modified,
+                                final Set< File > deleted,
+                                final boolean overflow )
+   {
+      super( directory );
+      this.created = Collections.unmodifiableSet( created );
+      this.modified = Collections.unmodifiableSet( modified );
+      this.deleted = Collections.unmodifiableSet( deleted );
+      this.overflow = overflow;
+   }
+
+   /**
+    * @return the directory whose files changed.
+    */
+   public File getDirectory()
+   {
+      return (File) getSource();
+   }
+
+   /**
+    * @return the files that were created.
+    */
+   public Set< File > getCreated()
+   {
+      return this.created;
+   }
+
+   /**
+    * @return the files whose contents changed.
+    */
+   public Set< File > getModified()
+   {
+      return this.modified;
+   }
+
+   /**
+    * @return the files that were deleted.
+    */
+   public Set< File > getDeleted()
+   {
+      return this.deleted;
+   }
+
+   /**
+    * @return whether some changes may not have been recorded, in which case the whole directory must be examined again.
+    */
+   public boolean isOverflow()
+   {
+      return this.overflow;
+   }
+}
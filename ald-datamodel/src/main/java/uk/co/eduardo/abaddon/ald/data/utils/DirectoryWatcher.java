@@ -1,38 +1,72 @@
 package uk.co.eduardo.abaddon.ald.data.utils;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
-import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 /**
- * Listens for changes to directories.
+ * Listens for changes to the files within directories.
+ * <p>
+ * Directories are watched with the file system's {@link WatchService}. Directories on file systems that cannot be
+ * watched are instead listed once a second and compared with the previous listing. Either way the changes are collected
+ * until the directory has been quiet for a moment, so that copying many files into a directory is reported as one
+ * batch. Listeners are notified from the watcher's thread with a {@link DirectoryChangeEvent}.
  *
  * @author Ed
  */
 public class DirectoryWatcher
 {
+   /** How long a directory must be quiet before its changes are reported. */
+   private static final long QUIET_MILLIS = 250;
+
+   /** The longest changes are held back while a directory keeps changing. */
+   private static final long MAX_DELAY_MILLIS = 5000;
+
+   /** How often directories that cannot be watched are listed. */
+   private static final long POLL_MILLIS = 1000;
+
    private static final DirectoryWatcher INSTANCE = new DirectoryWatcher();
 
-   private final Map< File, List< ChangeListener > > listeners = new HashMap<>();
+   private final Map< File, Directory > directories = new HashMap<>();
 
-   private final Map< File, Long > lastModified = new HashMap<>();
+   private final Map< WatchKey, Directory > watchKeys = new HashMap<>();
 
-   private final Timer timer = new Timer( "DirectoryWatcher Poller", true ); //$NON-NLS-1$
+   /** The file system's watch service, or <code>null</code> if it does not have one. */
+   private final WatchService watchService;
 
-   private final TimerTask task = new TimerTask()
+   private final Runnable watcher = new Runnable()
    {
       @Override
       public void run()
       {
-         checkForChanges();
+         try
+         {
+            while( true )
+            {
+               waitForChanges();
+               pollDirectories();
+               fireChanges();
+            }
+         }
+         catch( final InterruptedException e )
+         {
+            // Stop watching.
+         }
       }
    };
 
@@ -40,7 +74,20 @@ public class DirectoryWatcher
    {
       // Hide constructor for singleton.
 
-      this.timer.scheduleAtFixedRate( this.task, 0, 1000 );
+      WatchService service = null;
+      try
+      {
+         service = FileSystems.getDefault().newWatchService();
+      }
+      catch( final IOException | UnsupportedOperationException e )
+      {
+         // Every directory will be polled.
+      }
+      this.watchService = service;
+
+      final Thread thread = new Thread( this.watcher, "DirectoryWatcher" ); //$NON-NLS-1$
+      thread.setDaemon( true );
+      thread.start();
    }
 
    /**
@@ -52,28 +99,25 @@ public class DirectoryWatcher
    }
 
    /**
-    * Registers a listener that will be notified when the last modified date of a directory is changed.
+    * Registers a listener that will be notified when files within a directory are created, modified or deleted. The
+    * listener is passed a {@link DirectoryChangeEvent}.
     *
     * @param directory the directory to watch. Cannot be <code>null</code> and must be a directory.
     * @param listener the listener to add.
     */
-   public void addListener( final File directory, final ChangeListener listener )
+   public synchronized void addListener( final File directory, final ChangeListener listener )
    {
-      if( ( directory != null ) && directory.isDirectory() )
+      if( ( directory != null ) && directory.isDirectory() && ( listener != null ) )
       {
-         List< ChangeListener > directoryListeners = this.listeners.get( directory );
-         if( directoryListeners == null )
+         Directory watched = this.directories.get( directory );
+         if( watched == null )
          {
-            directoryListeners = new CopyOnWriteArrayList<>();
-            this.listeners.put( directory, directoryListeners );
+            watched = new Directory( directory );
+            this.directories.put( directory, watched );
          }
-         if( ( listener != null ) && !directoryListeners.contains( listener ) )
+         if( !watched.listeners.contains( listener ) )
          {
-            directoryListeners.add( listener );
-            if( !this.lastModified.containsKey( directory ) )
-            {
-               this.lastModified.put( directory, directory.lastModified() );
-            }
+            watched.listeners.add( listener );
          }
       }
    }
@@ -84,40 +128,311 @@ public class DirectoryWatcher
     * @param directory the directory to stop watching.
     * @param listener the listener to remove.
     */
-   public void removeListener( final File directory, final ChangeListener listener )
+   public synchronized void removeListener( final File directory, final ChangeListener listener )
+   {
+      final Directory watched = this.directories.get( directory );
+      if( watched != null )
+      {
+         watched.listeners.remove( listener );
+         if( watched.listeners.isEmpty() )
+         {
+            this.directories.remove( directory );
+            if( watched.key != null )
+            {
+               watched.key.cancel();
+               this.watchKeys.remove( watched.key );
+            }
+         }
+      }
+   }
+
+   /**
+    * Waits until the file system reports changes, changes are due to be reported, or directories are due to be polled.
+    */
+   private void waitForChanges() throws InterruptedException
    {
-      final List< ChangeListener > directoryListeners = this.listeners.get( directory );
-      if( directoryListeners != null )
+      final long timeout = getTimeout();
+      if( this.watchService == null )
       {
-         directoryListeners.remove( listener );
-         if( directoryListeners.size() == 0 )
+         Thread.sleep( timeout );
+         return;
+      }
+
+      WatchKey key = this.watchService.poll( timeout, TimeUnit.MILLISECONDS );
+      while( key != null )
+      {
+         recordEvents( key );
+         key = this.watchService.poll();
+      }
+   }
+
+   private synchronized long getTimeout()
+   {
+      final long now = System.currentTimeMillis();
+      long timeout = POLL_MILLIS;
+      for( final Directory directory : this.directories.values() )
+      {
+         if( directory.hasChanges() )
          {
-            this.listeners.remove( directory );
-            this.lastModified.remove( directory );
+            timeout = Math.min( timeout, directory.getDueTime() - now );
          }
       }
+      return Math.max( 1, timeout );
    }
 
-   private void checkForChanges()
+   private synchronized void recordEvents( final WatchKey key )
    {
-      // Check all directories for their last modified date
-      for( final Entry< File, Long > entry : this.lastModified.entrySet() )
+      final Directory directory = this.watchKeys.get( key );
+      for( final WatchEvent< ? > event : key.pollEvents() )
+      {
+         if( directory == null )
+         {
+            continue;
+         }
+         final WatchEvent.Kind< ? > kind = event.kind();
+         if( kind == StandardWatchEventKinds.OVERFLOW )
+         {
+            directory.overflow();
+            continue;
+         }
+         final File file = new File( directory.directory, ( (Path) event.context() ).toString() );
+         if( kind == StandardWatchEventKinds.ENTRY_CREATE )
+         {
+            directory.created( file );
+         }
+         else if( kind == StandardWatchEventKinds.ENTRY_MODIFY )
+         {
+            directory.modified( file );
+         }
+         else if( kind == StandardWatchEventKinds.ENTRY_DELETE )
+         {
+            directory.deleted( file );
+         }
+      }
+      if( !key.reset() && ( directory != null ) )
       {
-         final File directory = entry.getKey();
-         final Long currentModified = directory.lastModified();
+         // The directory has gone; keep an eye on it in case it comes back.
+         this.watchKeys.remove( key );
+         directory.startPolling();
+         directory.overflow();
+      }
+   }
 
-         if( !currentModified.equals( entry.getValue() ) )
+   private synchronized void pollDirectories()
+   {
+      final long now = System.currentTimeMillis();
+      for( final Directory directory : this.directories.values() )
+      {
+         if( ( directory.key == null ) && ( now >= directory.nextPoll ) )
          {
-            // First update our time.
-            entry.setValue( currentModified );
+            directory.poll();
+            directory.nextPoll = now + POLL_MILLIS;
+         }
+      }
+   }
 
-            final ChangeEvent event = new ChangeEvent( directory );
-            final List< ChangeListener > directoryListeners = this.listeners.get( directory );
-            for( final ChangeListener listener : directoryListeners )
+   private void fireChanges()
+   {
+      final List< DirectoryChangeEvent > events = new ArrayList<>();
+      final List< List< ChangeListener > > eventListeners = new ArrayList<>();
+      synchronized( this )
+      {
+         final long now = System.currentTimeMillis();
+         for( final Directory directory : this.directories.values() )
+         {
+            if( directory.hasChanges() && ( now >= directory.getDueTime() ) )
             {
-               listener.stateChanged( event );
+               events.add( directory.takeChanges() );
+               eventListeners.add( directory.listeners );
             }
          }
       }
+
+      // Notify outside the lock so that listeners may add and remove listeners.
+      for( int i = 0; i < events.size(); i++ )
+      {
+         for( final ChangeListener listener : eventListeners.get( i ) )
+         {
+            listener.stateChanged( events.get( i ) );
+         }
+      }
+   }
+
+   /**
+    * A watched directory and the changes to it that have not been reported yet.
+    */
+   private final class Directory
+   {
+      private final File directory;
+
+      private final List< ChangeListener > listeners = new CopyOnWriteArrayList<>();
+
+      /** The directory's key with the watch service, or <code>null</code> if it is polled. */
+      private WatchKey key;
+
+      /** The last modified time of each file when the directory was last polled. */
+      private Map< File, Long > listing;
+
+      private long nextPoll;
+
+      private Set< File > created = new LinkedHashSet<>();
+
+      private Set< File > modified = new LinkedHashSet<>();
+
+      private Set< File > deleted = new LinkedHashSet<>();
+
+      private boolean overflow;
+
+      private long firstChange;
+
+      private long lastChange;
+
+      Directory( final File directory )
+      {
+         this.directory = directory;
+         if( DirectoryWatcher.this.watchService != null )
+         {
+            try
+            {
+               this.key = directory.toPath().register( DirectoryWatcher.this.watchService,
+                                                       StandardWatchEventKinds.ENTRY_CREATE,
+                                                       StandardWatchEventKinds.ENTRY_MODIFY,
+                                                       StandardWatchEventKinds.ENTRY_DELETE );
+               DirectoryWatcher.this.watchKeys.put( this.key, this );
+            }
+            catch( final IOException | UnsupportedOperationException e )
+            {
+               // Fall back to polling this directory.
+            }
+         }
+         if( this.key == null )
+         {
+            startPolling();
+         }
+      }
+
+      void startPolling()
+      {
+         this.key = null;
+         this.listing = list();
+         this.nextPoll = System.currentTimeMillis() + POLL_MILLIS;
+      }
+
+      /**
+       * Lists the directory and records the differences from the previous listing.
+       */
+      void poll()
+      {
+         final Map< File, Long > current = list();
+         for( final Map.Entry< File, Long > entry : current.entrySet() )
+         {
+            final Long previous = this.listing.remove( entry.getKey() );
+            if( previous == null )
+            {
+               created( entry.getKey() );
+            }
+            else if( !previous.equals( entry.getValue() ) )
+            {
+               modified( entry.getKey() );
+            }
+         }
+         for( final File file : this.listing.keySet() )
+         {
+            deleted( file );
+         }
+         this.listing = current;
+      }
+
+      private Map< File, Long > list()
+      {
+         final Map< File, Long > files = new HashMap<>();
+         final File[] contents = this.directory.listFiles();
+         if( contents != null )
+         {
+            for( final File file : contents )
+            {
+               files.put( file, Long.valueOf( file.lastModified() ) );
+            }
+         }
+         return files;
+      }
+
+      void created( final File file )
+      {
+         // A file that is deleted and then created again has been modified.
+         if( this.deleted.remove( file ) )
+         {
+            this.modified.add( file );
+         }
+         else
+         {
+            this.created.add( file );
+         }
+         changed();
+      }
+
+      void modified( final File file )
+      {
+         if( !this.created.contains( file ) )
+         {
+            this.modified.add( file );
+         }
+         changed();
+      }
+
+      void deleted( final File file )
+      {
+         // A file that is created and then deleted again was never there.
+         if( !this.created.remove( file ) )
+         {
+            this.modified.remove( file );
+            this.deleted.add( file );
+         }
+         changed();
+      }
+
+      void overflow()
+      {
+         this.overflow = true;
+         changed();
+      }
+
+      private void changed()
+      {
+         final long now = System.currentTimeMillis();
+         if( !hasChanges() )
+         {
+            this.firstChange = now;
+         }
+         this.lastChange = now;
+      }
+
+      boolean hasChanges()
+      {
+         return this.lastChange != 0;
+      }
+
+      /**
+       * @return when the changes are to be reported.
+       */
+      long getDueTime()
+      {
+         return Math.min( this.lastChange + QUIET_MILLIS, this.firstChange + MAX_DELAY_MILLIS );
+      }
+
+      DirectoryChangeEvent takeChanges()
+      {
+         final DirectoryChangeEvent event = new DirectoryChangeEvent( this.directory,
+                                                                      this.created,
+                                                                      this.modified,
+                                                                      this.deleted,
+                                                                      this.overflow );
+         this.created = new LinkedHashSet<>();
+         this.modified = new LinkedHashSet<>();
+         this.deleted = new LinkedHashSet<>();
+         this.overflow = false;
+         this.lastChange = 0;
+         return event;
+      }
    }
 }
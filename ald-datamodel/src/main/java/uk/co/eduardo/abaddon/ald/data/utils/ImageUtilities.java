@@ -0,0 +1,185 @@
+package uk.co.eduardo.abaddon.ald.data.utils;
+
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Provides utility methods for reading images and copying them into images that can be drawn quickly.
+ *
+ * @author Ed
+ */
+public final class ImageUtilities
+{
+   /** The eight bytes every PNG file starts with. */
+   private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+
+   /** The type of the PNG header chunk, which always comes first. */
+   private static final int IHDR = 0x49484452;
+
+   private ImageUtilities()
+   {
+      // Hide constructor for utility class
+   }
+
+   /**
+    * Splits an image into equally sized cells, reading left to right and then top to bottom. Each cell is copied into an
+    * image of its own rather than being a view into the source's raster, and cells with no transparent pixels are made
+    * opaque.
+    *
+    * @param source the image to split. May be <code>null</code>.
+    * @param cellWidth the width of each cell.
+    * @param cellHeight the height of each cell.
+    * @return the cells, which is empty if the source is <code>null</code>.
+    */
+   public static BufferedImage[] splitImage( final BufferedImage source, final int cellWidth, final int cellHeight )
+   {
+      if( source == null )
+      {
+         return new BufferedImage[ 0 ];
+      }
+      final int width = source.getWidth() / cellWidth;
+      final int height = source.getHeight() / cellHeight;
+      final BufferedImage[] cells = new BufferedImage[ width * height ];
+
+      final int[] pixels = new int[ cellWidth * cellHeight ];
+      int counter = 0;
+      for( int row = 0; row < height; row++ )
+      {
+         for( int col = 0; col < width; col++ )
+         {
+            source.getRGB( col * cellWidth, row * cellHeight, cellWidth, cellHeight, pixels, 0, cellWidth );
+            final BufferedImage cell = createCompatibleImage( cellWidth, cellHeight, getTransparency( pixels ) );
+            cell.setRGB( 0, 0, cellWidth, cellHeight, pixels, 0, cellWidth );
+            cells[ counter++ ] = cell;
+         }
+      }
+      return cells;
+   }
+
+   /**
+    * @param source the image to copy. May be <code>null</code>.
+    * @return a translucent, premultiplied copy of the image, or <code>null</code> if the source is <code>null</code>.
+    */
+   public static BufferedImage toCompatibleImage( final BufferedImage source )
+   {
+      if( source == null )
+      {
+         return null;
+      }
+      final BufferedImage image = createCompatibleImage( source.getWidth(), source.getHeight(), Transparency.TRANSLUCENT );
+      final Graphics2D g2d = image.createGraphics();
+      g2d.setComposite( AlphaComposite.Src );
+      g2d.drawImage( source, 0, 0, null );
+      g2d.dispose();
+      return image;
+   }
+
+   /**
+    * Creates an image that can be drawn quickly. Opaque images are in the format of the default screen, or plain RGB if
+    * there is no screen. Images with any transparency always use premultiplied ARGB, which the screen's compatible format
+    * often is not, so that drawing them does not have to multiply every pixel by its alpha.
+    *
+    * @param width the width of the image.
+    * @param height the height of the image.
+    * @param transparency the {@link Transparency} the image must support.
+    * @return the new image.
+    */
+   public static BufferedImage createCompatibleImage( final int width, final int height, final int transparency )
+   {
+      if( transparency != Transparency.OPAQUE )
+      {
+         return new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB_PRE );
+      }
+      if( GraphicsEnvironment.isHeadless() )
+      {
+         return new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+      }
+      final GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                                                                     .getDefaultScreenDevice()
+                                                                     .getDefaultConfiguration();
+      return configuration.createCompatibleImage( width, height, transparency );
+   }
+
+   /**
+    * @param image the image. May be <code>null</code>.
+    * @return the size of the image's pixels in bytes.
+    */
+   public static long getMemoryUsage( final BufferedImage image )
+   {
+      if( image == null )
+      {
+         return 0;
+      }
+      return ( (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() ) / 8;
+   }
+
+   /**
+    * Reads the dimensions of a PNG image from its header chunk, without decoding any of its pixels.
+    *
+    * @param file the PNG file.
+    * @return the dimensions of the image, or <code>null</code> if the file cannot be read or is not a PNG.
+    */
+   public static Dimension readPngSize( final File file )
+   {
+      DataInputStream stream = null;
+      try
+      {
+         stream = new DataInputStream( new FileInputStream( file ) );
+         if( stream.readLong() != PNG_SIGNATURE )
+         {
+            return null;
+         }
+         // Skip the chunk length.
+         stream.readInt();
+         if( stream.readInt() != IHDR )
+         {
+            return null;
+         }
+         final int width = stream.readInt();
+         final int height = stream.readInt();
+         return ( width > 0 ) && ( height > 0 ) ? new Dimension( width, height ) : null;
+      }
+      catch( final IOException e )
+      {
+         return null;
+      }
+      finally
+      {
+         if( stream != null )
+         {
+            try
+            {
+               stream.close();
+            }
+            catch( final IOException e )
+            {
+               // Ignore.
+            }
+         }
+      }
+   }
+
+   /**
+    * @return {@link Transparency#OPAQUE} if every pixel is opaque, otherwise {@link Transparency#TRANSLUCENT}.
+    */
+   private static int getTransparency( final int[] pixels )
+   {
+      for( final int pixel : pixels )
+      {
+         if( ( pixel >>> 24 ) != 0xFF )
+         {
+            return Transparency.TRANSLUCENT;
+         }
+      }
+      return Transparency.OPAQUE;
+   }
+}
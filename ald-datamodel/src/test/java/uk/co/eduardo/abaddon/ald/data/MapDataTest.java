@@ -0,0 +1,140 @@
+package uk.co.eduardo.abaddon.ald.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import javax.swing.undo.UndoableEdit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
+import uk.co.eduardo.map.sections.MapSection;
+
+/**
+ * Checks that the tile usage index of {@link MapData} follows the tiles as they are edited.
+ *
+ * @author Ed
+ */
+public class MapDataTest
+{
+   /** Not a multiple of the chunk size, so the chunks along the right and bottom edges straddle the map. */
+   private static final int WIDTH = 100;
+
+   private static final int HEIGHT = 70;
+
+   private MapData data;
+
+   /**
+    * Creates a map whose base layer is all tile 0 and whose other layers are empty.
+    */
+   @Before
+   public void setUp()
+   {
+      final int[][][] tiles = new int[ 3 ][ HEIGHT ][ WIDTH ];
+      for( int layer = 1; layer < tiles.length; layer++ )
+      {
+         for( final int[] row : tiles[ layer ] )
+         {
+            Arrays.fill( row, -1 );
+         }
+      }
+      this.data = new MapData( new MapSection( WIDTH, HEIGHT, tiles ) );
+   }
+
+   /**
+    * Writing, overwriting and undoing single tiles keeps the counts, used tiles and positions in step with the map.
+    */
+   @Test
+   public void testIndexFollowsSetData()
+   {
+      assertEquals( WIDTH * HEIGHT, this.data.getTileCount( 0, 0 ) );
+      assertArrayEquals( new int[] { 0 }, this.data.getUsedTiles( 0 ) );
+
+      this.data.setData( 0, 3, 4, 7 );
+      this.data.setData( 0, HEIGHT - 1, WIDTH - 1, 7 );
+      this.data.setData( 1, 3, 4, 7 );
+      assertEquals( 2, this.data.getTileCount( 0, 7 ) );
+      assertEquals( ( WIDTH * HEIGHT ) - 2, this.data.getTileCount( 0, 0 ) );
+      assertEquals( 1, this.data.getTileCount( 1, 7 ) );
+      assertArrayEquals( new int[] { 0, 7 }, this.data.getUsedTiles( 0 ) );
+      assertArrayEquals( new int[] { position( 3, 4 ), position( HEIGHT - 1, WIDTH - 1 ) },
+                         sorted( this.data.findTile( 0, 7 ) ) );
+
+      // Overwriting a tile moves its use to the new tile, and undoing moves it back.
+      final UndoableEdit edit = this.data.setData( 0, 3, 4, 8 );
+      assertEquals( 1, this.data.getTileCount( 0, 7 ) );
+      assertEquals( 1, this.data.getTileCount( 0, 8 ) );
+      assertArrayEquals( new int[] { position( HEIGHT - 1, WIDTH - 1 ) }, this.data.findTile( 0, 7 ) );
+
+      edit.undo();
+      assertEquals( 2, this.data.getTileCount( 0, 7 ) );
+      assertEquals( 0, this.data.getTileCount( 0, 8 ) );
+      assertArrayEquals( new int[] { 0, 7 }, this.data.getUsedTiles( 0 ) );
+   }
+
+   /**
+    * Tiles cut off by shrinking the map are not counted until the map grows back over them.
+    */
+   @Test
+   public void testIndexFollowsResize()
+   {
+      this.data.setData( 0, HEIGHT - 1, WIDTH - 1, 7 );
+      this.data.setWidthAndHeight( WIDTH - 10, HEIGHT );
+      assertEquals( 0, this.data.getTileCount( 0, 7 ) );
+      assertArrayEquals( new int[ 0 ], this.data.findTile( 0, 7 ) );
+      assertArrayEquals( new int[] { 0 }, this.data.getUsedTiles( 0 ) );
+
+      this.data.setWidthAndHeight( WIDTH, HEIGHT );
+      assertEquals( 1, this.data.getTileCount( 0, 7 ) );
+   }
+
+   /**
+    * Replacing every use of a tile is a single step in the undo history, and undoing it restores the tile everywhere.
+    */
+   @Test
+   public void testReplaceTileIsOneUndo()
+   {
+      for( int row = 0; row < HEIGHT; row += 9 )
+      {
+         this.data.setData( 0, row, ( row * 7 ) % WIDTH, 7 );
+      }
+      final int[] positions = sorted( this.data.findTile( 0, 7 ) );
+
+      final UndoManager undoManager = new UndoManager();
+      try
+      {
+         undoManager.addEdit( this.data.replaceTile( 0, 7, 9 ) );
+         assertEquals( 1, undoManager.getUndoStackSize() );
+         assertEquals( 0, this.data.getTileCount( 0, 7 ) );
+         assertArrayEquals( positions, sorted( this.data.findTile( 0, 9 ) ) );
+
+         undoManager.undo();
+         assertEquals( 0, this.data.getTileCount( 0, 9 ) );
+         assertArrayEquals( positions, sorted( this.data.findTile( 0, 7 ) ) );
+
+         undoManager.redo();
+         assertEquals( positions.length, this.data.getTileCount( 0, 9 ) );
+      }
+      finally
+      {
+         undoManager.dispose();
+      }
+   }
+
+   // ================| Private Methods |====================================
+
+   private static int position( final int row, final int col )
+   {
+      return ( row << 16 ) | col;
+   }
+
+   private static int[] sorted( final int[] positions )
+   {
+      final int[] copy = positions.clone();
+      Arrays.sort( copy );
+      return copy;
+   }
+}
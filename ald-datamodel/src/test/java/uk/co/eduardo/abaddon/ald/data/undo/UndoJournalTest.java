@@ -0,0 +1,61 @@
+package uk.co.eduardo.abaddon.ald.data.undo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@link UndoJournal} reclaims its file once every record has been released.
+ *
+ * @author Ed
+ */
+public class UndoJournalTest
+{
+   private UndoJournal journal;
+
+   /**
+    * Creates an empty journal.
+    */
+   @Before
+   public void setUp()
+   {
+      this.journal = new UndoJournal();
+   }
+
+   /**
+    * Deletes the journal.
+    */
+   @After
+   public void tearDown()
+   {
+      this.journal.close();
+   }
+
+   /**
+    * The file keeps its size while any record is live, and is truncated and reused once the last one is released.
+    *
+    * @throws IOException if the journal cannot be written or read.
+    */
+   @Test
+   public void testReleasedRecordsAreReclaimed() throws IOException
+   {
+      final byte[] first = new byte[] { 1, 2, 3 };
+      final byte[] second = new byte[] { 4, 5 };
+      this.journal.write( first );
+      final long secondOffset = this.journal.write( second );
+
+      this.journal.release( first.length );
+      assertEquals( first.length + second.length, this.journal.getSize() );
+      assertArrayEquals( second, this.journal.read( secondOffset, second.length ) );
+
+      this.journal.release( second.length );
+      assertEquals( 0, this.journal.getSize() );
+      assertEquals( 0, this.journal.write( first ) );
+      assertArrayEquals( first, this.journal.read( 0, first.length ) );
+   }
+}
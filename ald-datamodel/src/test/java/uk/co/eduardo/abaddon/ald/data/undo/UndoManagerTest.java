@@ -0,0 +1,117 @@
+package uk.co.eduardo.abaddon.ald.data.undo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import javax.swing.undo.UndoableEdit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.TileSource;
+import uk.co.eduardo.map.sections.MapSection;
+
+/**
+ * Checks which edits {@link UndoManager} coalesces.
+ *
+ * @author Ed
+ */
+public class UndoManagerTest
+{
+   private MapData data;
+
+   private UndoManager undoManager;
+
+   /**
+    * Creates an empty map and history.
+    */
+   @Before
+   public void setUp()
+   {
+      final int[][][] tiles = new int[ 3 ][ 10 ][ 10 ];
+      for( int layer = 1; layer < tiles.length; layer++ )
+      {
+         for( final int[] row : tiles[ layer ] )
+         {
+            Arrays.fill( row, -1 );
+         }
+      }
+      this.data = new MapData( new MapSection( 10, 10, tiles ) );
+      this.undoManager = new UndoManager();
+   }
+
+   /**
+    * Discards the history.
+    */
+   @After
+   public void tearDown()
+   {
+      this.undoManager.dispose();
+   }
+
+   /**
+    * Consecutive strokes on the same layer are undone in one step.
+    */
+   @Test
+   public void testStrokesAreCoalesced()
+   {
+      this.undoManager.addStroke( this.data.setData( 0, 1, 1, 5 ) );
+      this.undoManager.addStroke( this.data.setData( 0, 2, 2, 6 ) );
+      assertEquals( 1, this.undoManager.getUndoStackSize() );
+
+      this.undoManager.undo();
+      assertEquals( 0, this.data.getTile( 0, 1, 1 ) );
+      assertEquals( 0, this.data.getTile( 0, 2, 2 ) );
+   }
+
+   /**
+    * Edits that are not strokes stay separate steps, even when made in quick succession on the same layer.
+    */
+   @Test
+   public void testOtherEditsAreNotCoalesced()
+   {
+      this.undoManager.addEdit( fill( 3 ) );
+      this.undoManager.addEdit( fill( 4 ) );
+      assertEquals( 2, this.undoManager.getUndoStackSize() );
+
+      // A stroke after a fill is not merged into the fill.
+      this.undoManager.addStroke( this.data.setData( 0, 1, 1, 5 ) );
+      assertEquals( 3, this.undoManager.getUndoStackSize() );
+
+      // Nor is an edit after a stroke merged into the stroke.
+      this.undoManager.addEdit( this.data.replaceTile( 0, 4, 7 ) );
+      assertEquals( 4, this.undoManager.getUndoStackSize() );
+
+      this.undoManager.undo();
+      assertEquals( 4, this.data.getTile( 0, 0, 0 ) );
+      assertEquals( 5, this.data.getTile( 0, 1, 1 ) );
+   }
+
+   /**
+    * A stroke after a save point starts a new step, so that undo can return to the saved state.
+    */
+   @Test
+   public void testSavePointSeparatesStrokes()
+   {
+      this.undoManager.addStroke( this.data.setData( 0, 1, 1, 5 ) );
+      this.undoManager.markSavePoint();
+      this.undoManager.addStroke( this.data.setData( 0, 2, 2, 6 ) );
+      assertEquals( 2, this.undoManager.getUndoStackSize() );
+   }
+
+   private UndoableEdit fill( final int tile )
+   {
+      return this.data.setRegion( 0, new Rectangle( 0, 0, 10, 10 ), new TileSource()
+      {
+         @Override
+         public int getTile( final int row, final int col )
+         {
+            return tile;
+         }
+      } );
+   }
+}
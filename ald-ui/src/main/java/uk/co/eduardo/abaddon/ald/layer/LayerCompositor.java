@@ -0,0 +1,494 @@
+package uk.co.eduardo.abaddon.ald.layer;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JComponent;
+
+import uk.co.eduardo.abaddon.ald.data.Zoom;
+
+/**
+ * Combines the layers of a map into the image painted by a {@link MapPanel}.
+ * <p>
+ * The compositor owns a {@link TiledBackingStore} holding the rasterized tiles of each map layer, drawn by that layer's
+ * renderer on worker threads so that opening a map or changing its tileset does not block the Event Dispatch Thread.
+ * Each layer may also have overlays, such as sprites, that are drawn over its tiles but are cheap enough not to need a
+ * store of their own.
+ * <p>
+ * The layers below the active layer and the layers above it are each flattened into one further store, so painting
+ * only ever composites three images however many layers there are. Changing the visibility or opacity of a layer, or
+ * the active layer, only recomposites the flattened stores from the layer stores; no tiles are rasterized again.
+ * Editing a layer invalidates the edited area of its own store and of the flattened store that contains it, if any.
+ * <p>
+ * Each {@link Zoom} has its own set of stores, created the first time the map is painted at that zoom. Layers are
+ * rasterized directly at the zoomed size, and going back to a zoom reuses whatever of its stores is still resident.
+ * Areas and sizes passed to the compositor are in pixels at actual size.
+ * <p>
+ * The compositor must only be used from the Event Dispatch Thread.
+ *
+ * @author Ed
+ */
+public class LayerCompositor
+{
+   /**
+    * Draws the tiles of a map layer at a zoom.
+    */
+   public interface LayerRenderer
+   {
+      /**
+       * Called on the Event Dispatch Thread to capture the state to draw.
+       *
+       * @param zoom the zoom to draw at.
+       * @return a renderer that draws the layer as it is now, in pixels at the zoom, and may be used from any thread.
+       */
+      TiledBackingStore.Renderer prepare( Zoom zoom );
+   }
+
+   /** Draws nothing, for layers that have no renderer. */
+   private static final TiledBackingStore.Renderer EMPTY_RENDERER = new TiledBackingStore.Renderer()
+   {
+      @Override
+      public void render( final Graphics2D g2d, final Rectangle area )
+      {
+         // Nothing to draw.
+      }
+   };
+
+   private final RepaintScheduler repaintScheduler;
+
+   private final LayerRenderer[] renderers;
+
+   private final Color[] placeholders;
+
+   private final List< List< TiledBackingStore.Renderer > > overlays = new ArrayList<>();
+
+   private final boolean[] visible;
+
+   private final float[] opacity;
+
+   /** The stores for each zoom that the map has been painted at. */
+   private final Map< Zoom, ZoomStores > zoomStores = new EnumMap<>( Zoom.class );
+
+   private int activeLayer;
+
+   private Zoom zoom = Zoom.ACTUAL;
+
+   private int width;
+
+   private int height;
+
+   /**
+    * @param host the component the compositor paints on. Changed areas are repainted on it through its
+    *           {@link RepaintScheduler}.
+    * @param layerCount the number of map layers.
+    */
+   public LayerCompositor( final JComponent host, final int layerCount )
+   {
+      this.repaintScheduler = RepaintScheduler.forComponent( host );
+      this.renderers = new LayerRenderer[ layerCount ];
+      this.placeholders = new Color[ layerCount ];
+      this.visible = new boolean[ layerCount ];
+      this.opacity = new float[ layerCount ];
+      for( int layer = 0; layer < layerCount; layer++ )
+      {
+         this.overlays.add( new ArrayList< TiledBackingStore.Renderer >() );
+         this.visible[ layer ] = true;
+         this.opacity[ layer ] = 1.0f;
+      }
+   }
+
+   /**
+    * Sets the renderer that draws the tiles of a layer into its stores.
+    *
+    * @param layer the index of the map layer.
+    * @param renderer prepares renderers that draw the tiles of the layer from worker threads.
+    * @param placeholder the colour to paint parts of the layer that have not been drawn yet, or <code>null</code> to
+    *           leave them transparent.
+    */
+   public void setRenderer( final int layer, final LayerRenderer renderer, final Color placeholder )
+   {
+      this.renderers[ layer ] = renderer;
+      this.placeholders[ layer ] = placeholder;
+      for( final ZoomStores stores : this.zoomStores.values() )
+      {
+         stores.layers[ layer ].clear();
+         stores.layers[ layer ] = stores.createLayerStore( layer );
+         stores.recomposite();
+      }
+      this.repaintScheduler.repaintAll();
+   }
+
+   /**
+    * Adds something to draw over the tiles of a layer. Overlays draw in pixels at actual size and are scaled to the
+    * zoom. They are drawn each time the layer is composited rather than being stored; call
+    * {@link #invalidateOverlay(int, Rectangle)} when what they draw changes.
+    *
+    * @param layer the index of the map layer.
+    * @param overlay draws over the layer.
+    */
+   public void addOverlay( final int layer, final TiledBackingStore.Renderer overlay )
+   {
+      this.overlays.get( layer ).add( overlay );
+      recomposite();
+   }
+
+   /**
+    * Sets the size of the composited image. If the size changes everything is drawn again.
+    *
+    * @param newWidth the width in pixels at actual size.
+    * @param newHeight the height in pixels at actual size.
+    * @return whether the size changed.
+    */
+   public boolean setSize( final int newWidth, final int newHeight )
+   {
+      if( ( newWidth == this.width ) && ( newHeight == this.height ) )
+      {
+         return false;
+      }
+      this.width = newWidth;
+      this.height = newHeight;
+      for( final ZoomStores stores : this.zoomStores.values() )
+      {
+         stores.setSize();
+      }
+      this.repaintScheduler.repaintAll();
+      return true;
+   }
+
+   /**
+    * Sets the zoom that the layers are painted at.
+    *
+    * @param newZoom the zoom.
+    */
+   public void setZoom( final Zoom newZoom )
+   {
+      if( newZoom != this.zoom )
+      {
+         this.zoom = newZoom;
+         this.repaintScheduler.repaintAll();
+      }
+   }
+
+   /**
+    * Sets the layer that is composited on its own, between the flattened layers below and above it.
+    *
+    * @param layer the index of the active map layer.
+    */
+   public void setActiveLayer( final int layer )
+   {
+      if( layer != this.activeLayer )
+      {
+         this.activeLayer = layer;
+         recomposite();
+      }
+   }
+
+   /**
+    * Shows or hides a layer and its overlays.
+    *
+    * @param layer the index of the map layer.
+    * @param isVisible whether the layer should be painted.
+    */
+   public void setLayerVisible( final int layer, final boolean isVisible )
+   {
+      if( this.visible[ layer ] != isVisible )
+      {
+         this.visible[ layer ] = isVisible;
+         recomposite();
+      }
+   }
+
+   /**
+    * Sets how opaque a layer and its overlays are painted.
+    *
+    * @param layer the index of the map layer.
+    * @param alpha the opacity, from 0 for transparent to 1 for opaque.
+    */
+   public void setLayerOpacity( final int layer, final float alpha )
+   {
+      final float clamped = Math.max( 0.0f, Math.min( 1.0f, alpha ) );
+      if( this.opacity[ layer ] != clamped )
+      {
+         this.opacity[ layer ] = clamped;
+         recomposite();
+      }
+   }
+
+   /**
+    * Marks part of a layer's tiles as needing to be rasterized again, and repaints it.
+    *
+    * @param layer the index of the map layer.
+    * @param area the area that has changed, in pixels at actual size.
+    */
+   public void invalidate( final int layer, final Rectangle area )
+   {
+      for( final ZoomStores stores : this.zoomStores.values() )
+      {
+         final Rectangle scaled = stores.zoom.scale( area );
+         stores.layers[ layer ].invalidate( scaled );
+         stores.invalidateFlattened( layer, scaled );
+      }
+      this.repaintScheduler.repaint( this.zoom.scale( area ) );
+   }
+
+   /**
+    * Marks part of what a layer's overlays draw as changed, and repaints it.
+    *
+    * @param layer the index of the map layer.
+    * @param area the area that has changed, in pixels at actual size.
+    */
+   public void invalidateOverlay( final int layer, final Rectangle area )
+   {
+      for( final ZoomStores stores : this.zoomStores.values() )
+      {
+         stores.invalidateFlattened( layer, stores.zoom.scale( area ) );
+      }
+      this.repaintScheduler.repaint( this.zoom.scale( area ) );
+   }
+
+   /**
+    * Marks everything a layer's overlays draw as changed, and repaints it.
+    *
+    * @param layer the index of the map layer.
+    */
+   public void invalidateOverlays( final int layer )
+   {
+      invalidateOverlay( layer, new Rectangle( 0, 0, this.width, this.height ) );
+   }
+
+   /**
+    * Discards all stored pixels at every zoom. They are drawn again as they are next painted.
+    */
+   public void releaseResources()
+   {
+      for( final ZoomStores stores : this.zoomStores.values() )
+      {
+         stores.clear();
+      }
+   }
+
+   /**
+    * Paints the layers within the clip of the graphics, at the current zoom.
+    *
+    * @param g2d the graphics to paint on, in pixels at the current zoom.
+    */
+   public void paint( final Graphics2D g2d )
+   {
+      ZoomStores stores = this.zoomStores.get( this.zoom );
+      if( stores == null )
+      {
+         stores = new ZoomStores( this.zoom );
+         this.zoomStores.put( this.zoom, stores );
+      }
+
+      final int layerCount = this.renderers.length;
+      TiledBackingStore.beginPaint();
+      try
+      {
+         if( this.activeLayer > 0 )
+         {
+            stores.below.paint( g2d );
+         }
+         paintLayers( stores, g2d, Math.max( 0, this.activeLayer ), Math.min( this.activeLayer + 1, layerCount ) );
+         if( this.activeLayer < ( layerCount - 1 ) )
+         {
+            stores.above.paint( g2d );
+         }
+      }
+      finally
+      {
+         TiledBackingStore.endPaint();
+      }
+   }
+
+   /**
+    * Redraws the flattened stores at every zoom from the layer stores, without rasterizing any tiles.
+    */
+   private void recomposite()
+   {
+      for( final ZoomStores stores : this.zoomStores.values() )
+      {
+         stores.recomposite();
+      }
+      this.repaintScheduler.repaintAll();
+   }
+
+   /**
+    * Paints a range of layers and their overlays, clipped to the clip of the graphics.
+    */
+   private void paintLayers( final ZoomStores stores, final Graphics2D g2d, final int from, final int to )
+   {
+      Rectangle area = g2d.getClipBounds();
+      if( area == null )
+      {
+         area = new Rectangle( 0, 0, stores.below.getWidth(), stores.below.getHeight() );
+      }
+      final Composite oldComposite = g2d.getComposite();
+      for( int layer = from; layer < to; layer++ )
+      {
+         if( !this.visible[ layer ] || ( this.opacity[ layer ] == 0.0f ) )
+         {
+            continue;
+         }
+         if( this.opacity[ layer ] < 1.0f )
+         {
+            g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER, this.opacity[ layer ] ) );
+         }
+         stores.layers[ layer ].paint( g2d );
+         paintOverlays( stores.zoom, g2d, area, layer );
+         g2d.setComposite( oldComposite );
+      }
+   }
+
+   /**
+    * Paints the overlays of a layer, scaling them from actual size to the zoom.
+    */
+   private void paintOverlays( final Zoom overlayZoom, final Graphics2D g2d, final Rectangle area, final int layer )
+   {
+      final List< TiledBackingStore.Renderer > layerOverlays = this.overlays.get( layer );
+      if( layerOverlays.isEmpty() )
+      {
+         return;
+      }
+      if( overlayZoom == Zoom.ACTUAL )
+      {
+         for( final TiledBackingStore.Renderer overlay : layerOverlays )
+         {
+            overlay.render( g2d, area );
+         }
+         return;
+      }
+      final Graphics2D scaled = (Graphics2D) g2d.create();
+      try
+      {
+         scaled.scale( overlayZoom.getScale(), overlayZoom.getScale() );
+         final Rectangle unscaledArea = overlayZoom.unscale( area );
+         for( final TiledBackingStore.Renderer overlay : layerOverlays )
+         {
+            overlay.render( scaled, unscaledArea );
+         }
+      }
+      finally
+      {
+         scaled.dispose();
+      }
+   }
+
+   /**
+    * The stores that hold the map at one zoom.
+    */
+   private final class ZoomStores
+   {
+      final Zoom zoom;
+
+      final TiledBackingStore[] layers;
+
+      /** The layers below the active layer, flattened. */
+      final TiledBackingStore below;
+
+      /** The layers above the active layer, flattened. */
+      final TiledBackingStore above;
+
+      ZoomStores( final Zoom zoom )
+      {
+         this.zoom = zoom;
+         this.below = new TiledBackingStore( new TiledBackingStore.Renderer()
+         {
+            @Override
+            public void render( final Graphics2D g2d, final Rectangle area )
+            {
+               paintLayers( ZoomStores.this, g2d, 0, LayerCompositor.this.activeLayer );
+            }
+         } );
+         this.above = new TiledBackingStore( new TiledBackingStore.Renderer()
+         {
+            @Override
+            public void render( final Graphics2D g2d, final Rectangle area )
+            {
+               paintLayers( ZoomStores.this, g2d, LayerCompositor.this.activeLayer + 1, ZoomStores.this.layers.length );
+            }
+         } );
+         this.layers = new TiledBackingStore[ LayerCompositor.this.renderers.length ];
+         for( int layer = 0; layer < this.layers.length; layer++ )
+         {
+            this.layers[ layer ] = createLayerStore( layer );
+         }
+         setSize();
+      }
+
+      void setSize()
+      {
+         final int scaledWidth = this.zoom.scalePosition( LayerCompositor.this.width );
+         final int scaledHeight = this.zoom.scalePosition( LayerCompositor.this.height );
+         this.below.setSize( scaledWidth, scaledHeight );
+         this.above.setSize( scaledWidth, scaledHeight );
+         for( final TiledBackingStore store : this.layers )
+         {
+            store.setSize( scaledWidth, scaledHeight );
+         }
+      }
+
+      void invalidateFlattened( final int layer, final Rectangle area )
+      {
+         if( layer < LayerCompositor.this.activeLayer )
+         {
+            this.below.invalidate( area );
+         }
+         else if( layer > LayerCompositor.this.activeLayer )
+         {
+            this.above.invalidate( area );
+         }
+      }
+
+      void recomposite()
+      {
+         final Rectangle all = new Rectangle( 0, 0, this.below.getWidth(), this.below.getHeight() );
+         this.below.invalidate( all );
+         this.above.invalidate( all );
+      }
+
+      void clear()
+      {
+         this.below.clear();
+         this.above.clear();
+         for( final TiledBackingStore store : this.layers )
+         {
+            store.clear();
+         }
+      }
+
+      TiledBackingStore createLayerStore( final int layer )
+      {
+         final LayerRenderer renderer = LayerCompositor.this.renderers[ layer ];
+         final TiledBackingStore store = new TiledBackingStore( new TiledBackingStore.AsyncRenderer()
+         {
+            @Override
+            public TiledBackingStore.Renderer prepare()
+            {
+               return renderer == null ? EMPTY_RENDERER : renderer.prepare( ZoomStores.this.zoom );
+            }
+         }, LayerCompositor.this.placeholders[ layer ], new TiledBackingStore.ReadyListener()
+         {
+            @Override
+            public void tilesReady( final Rectangle area )
+            {
+               // The layer's tiles are already up to date; only the composite needs redrawing.
+               invalidateFlattened( layer, area );
+               if( ZoomStores.this.zoom == LayerCompositor.this.zoom )
+               {
+                  LayerCompositor.this.repaintScheduler.repaint( area );
+               }
+            }
+         } );
+         store.setSize( this.below.getWidth(), this.below.getHeight() );
+         return store;
+      }
+   }
+}
@@ -2,10 +2,13 @@ package uk.co.eduardo.abaddon.ald.layer;
 
 import java.awt.Cursor;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 
 import javax.swing.JComponent;
 
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
 import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.Zoom;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
 
@@ -60,6 +63,32 @@ public abstract class MapLayer
       // Do nothing
    }
 
+   /**
+    * Called when the layer is asked to render itself at a zoom. By default the graphics is scaled so that
+    * {@link #paint(Graphics2D)} can paint in pixels at actual size; override this method to paint at the zoom directly.
+    *
+    * @param g2d the graphics on which to paint, in pixels at the zoom.
+    * @param zoom the zoom the map is displayed at.
+    */
+   public void paintZoomed( final Graphics2D g2d, final Zoom zoom )
+   {
+      if( zoom == Zoom.ACTUAL )
+      {
+         paint( g2d );
+         return;
+      }
+      final Graphics2D scaled = (Graphics2D) g2d.create();
+      try
+      {
+         scaled.scale( zoom.getScale(), zoom.getScale() );
+         paint( scaled );
+      }
+      finally
+      {
+         scaled.dispose();
+      }
+   }
+
    /**
     * Called when a portion of the map needs to be updated. The portion to update is a rectangular area defined in tiles.
     *
@@ -73,6 +102,20 @@ public abstract class MapLayer
       // Do nothing
    }
 
+   /**
+    * Called when parts of the map need to be updated. By default each rectangle of the region is passed to
+    * {@link #updateSection(int, int, int, int)} in turn.
+    *
+    * @param region the tiles that need to be updated.
+    */
+   public void updateRegion( final DirtyRegion region )
+   {
+      for( final Rectangle rectangle : region.getRectangles() )
+      {
+         updateSection( rectangle.x, rectangle.y, rectangle.width, rectangle.height );
+      }
+   }
+
    /**
     * Notification that the mouse has moved over the specified tile.
     *
@@ -143,6 +186,15 @@ public abstract class MapLayer
       // Do nothing.
    }
 
+   /**
+    * Called when the host is removed from the display. Override this method to discard anything that can be rebuilt
+    * when the layer is next painted, such as off-screen images.
+    */
+   public void releaseResources()
+   {
+      // Do nothing
+   }
+
    /**
     * Override this method to detach any listeners installed.
     */
@@ -177,6 +229,28 @@ public abstract class MapLayer
       return this.host;
    }
 
+   /**
+    * Schedules part of the host to be repainted. Repaints requested by all layers are coalesced and painted at most once
+    * per frame by the host's {@link RepaintScheduler}.
+    *
+    * @param area the area to repaint in pixels at actual size.
+    */
+   protected final void repaint( final Rectangle area )
+   {
+      if( area != null )
+      {
+         RepaintScheduler.forComponent( this.host ).repaint( this.model.get( Properties.Zoom ).scale( area ) );
+      }
+   }
+
+   /**
+    * Schedules the whole host to be repainted.
+    */
+   protected final void repaint()
+   {
+      RepaintScheduler.forComponent( this.host ).repaintAll();
+   }
+
    /**
     * @return the current model.
     */
@@ -4,6 +4,7 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseAdapter;
@@ -15,13 +16,18 @@ import java.util.List;
 import java.util.Map;
 
 import javax.swing.JComponent;
+import javax.swing.JViewport;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
 import uk.co.eduardo.abaddon.ald.data.MapData;
 import uk.co.eduardo.abaddon.ald.data.MapDataListener;
 import uk.co.eduardo.abaddon.ald.data.TilesetData;
+import uk.co.eduardo.abaddon.ald.data.Zoom;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
@@ -34,6 +40,9 @@ import uk.co.eduardo.abaddon.util.Coordinate;
  */
 public class MapPanel extends JComponent implements Scrollable
 {
+   /** The number of tiles beyond the edge of the map that the panel extends, so that the map can be grown by cropping. */
+   private static final int GROWTH_MARGIN = 16;
+
    // Tried the EnumMap but it always returns null
    private final Map< Integer, List< MapLayer > > layerMap = new HashMap<>();
 
@@ -42,26 +51,69 @@ public class MapPanel extends JComponent implements Scrollable
    private final MapDataListener mapDataListener = new MapDataListener()
    {
       @Override
-      public void mapUpdated( final int startTileX, final int startTileY, final int width, final int height )
+      public void mapUpdated( final DirtyRegion region )
       {
          for( final MapLayer layer : getLayers() )
          {
-            layer.updateSection( startTileX, startTileY, width, height );
+            layer.updateRegion( region );
+         }
+         // Resizing the map changes the size of the panel.
+         final Dimension previousSize = MapPanel.this.lastPreferredSize;
+         if( !getPreferredSize().equals( previousSize ) )
+         {
+            revalidate();
          }
       }
    };
 
+   private final ChangeListener viewportListener = new ChangeListener()
+   {
+      @Override
+      public void stateChanged( final ChangeEvent e )
+      {
+         MapPanel.this.model.set( Properties.VisibleArea, MapPanel.this.zoom.unscale( getVisibleRect() ) );
+      }
+   };
+
+   private final PropertyListener visibleAreaListener = new PropertyListener()
+   {
+      @Override
+      public void propertyChanged( final PropertyModel s )
+      {
+         final Rectangle area = s.get( Properties.VisibleArea );
+         if( area != null )
+         {
+            // Scroll after the change has been notified, as scrolling sets the property again.
+            SwingUtilities.invokeLater( new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  centreOn( (int) area.getCenterX(), (int) area.getCenterY() );
+               }
+            } );
+         }
+      }
+   };
+
+   private final PropertyModel model;
+
    private final MapData mapData;
 
    private TilesetData tilesetData = null;
 
+   private Zoom zoom;
+
    private Collection< MapLayer > cachedSortedLayers;
 
+   private Dimension lastPreferredSize;
+
    /**
     * @param model the current model.
     */
    public MapPanel( final PropertyModel model )
    {
+      this.model = model;
       this.tilesetData = model.get( Properties.Tileset );
       this.mapData = model.get( Properties.MapData );
       this.mapData.addMapDataListener( this.mapDataListener );
@@ -73,6 +125,15 @@ public class MapPanel extends JComponent implements Scrollable
             MapPanel.this.tilesetData = s.get( Properties.Tileset );
          }
       } );
+      this.zoom = model.get( Properties.Zoom );
+      model.addPropertyListener( Properties.Zoom, new PropertyListener()
+      {
+         @Override
+         public void propertyChanged( final PropertyModel s )
+         {
+            setZoom( s.get( Properties.Zoom ) );
+         }
+      } );
    }
 
    /**
@@ -105,6 +166,11 @@ public class MapPanel extends JComponent implements Scrollable
       super.addNotify();
       addMouseListener( this.mouseListener );
       addMouseMotionListener( this.mouseListener );
+      if( getParent() instanceof JViewport )
+      {
+         ( (JViewport) getParent() ).addChangeListener( this.viewportListener );
+         this.model.addPropertyListener( Properties.VisibleArea, this.visibleAreaListener );
+      }
       for( final MapLayer layer : getLayers() )
       {
          layer.updateAll();
@@ -119,6 +185,16 @@ public class MapPanel extends JComponent implements Scrollable
    {
       removeMouseListener( this.mouseListener );
       removeMouseMotionListener( this.mouseListener );
+      if( getParent() instanceof JViewport )
+      {
+         ( (JViewport) getParent() ).removeChangeListener( this.viewportListener );
+         this.model.removePropertyListener( Properties.VisibleArea, this.visibleAreaListener );
+         this.model.set( Properties.VisibleArea, null );
+      }
+      for( final MapLayer layer : getLayers() )
+      {
+         layer.releaseResources();
+      }
       super.removeNotify();
    }
 
@@ -133,9 +209,10 @@ public class MapPanel extends JComponent implements Scrollable
          return new Dimension( 0, 0 );
       }
 
-      final int width = this.mapData.getData()[ 0 ][ 0 ].length * this.tilesetData.getTileWidth();
-      final int height = this.mapData.getData()[ 0 ].length * this.tilesetData.getTileHeight();
-      return new Dimension( width, height );
+      final int width = this.zoom.scale( ( this.mapData.getWidth() + GROWTH_MARGIN ) * this.tilesetData.getTileWidth() );
+      final int height = this.zoom.scale( ( this.mapData.getHeight() + GROWTH_MARGIN ) * this.tilesetData.getTileHeight() );
+      this.lastPreferredSize = new Dimension( width, height );
+      return this.lastPreferredSize;
    }
 
    /**
@@ -163,7 +240,7 @@ public class MapPanel extends JComponent implements Scrollable
    {
       for( final MapLayer layer : getLayers() )
       {
-         layer.paint( (Graphics2D) g );
+         layer.paintZoomed( (Graphics2D) g, this.zoom );
       }
    }
 
@@ -218,8 +295,8 @@ public class MapPanel extends JComponent implements Scrollable
       final Dimension dim = getPreferredSize();
       final int x = visibleRect.x + visibleRect.width;
       final int y = visibleRect.y + visibleRect.height;
-      final int tileWidth = this.tilesetData == null ? 0 : this.tilesetData.getTileWidth();
-      final int tileHeight = this.tilesetData == null ? 0 : this.tilesetData.getTileHeight();
+      final int tileWidth = this.tilesetData == null ? 0 : this.zoom.scale( this.tilesetData.getTileWidth() );
+      final int tileHeight = this.tilesetData == null ? 0 : this.zoom.scale( this.tilesetData.getTileHeight() );
 
       if( orientation == SwingConstants.HORIZONTAL )
       {
@@ -241,6 +318,56 @@ public class MapPanel extends JComponent implements Scrollable
       return Math.min( tileHeight * count, dim.height - y );
    }
 
+   /**
+    * Changes the zoom, keeping the part of the map at the centre of the view where it is.
+    */
+   private void setZoom( final Zoom newZoom )
+   {
+      final Zoom oldZoom = this.zoom;
+      if( newZoom == oldZoom )
+      {
+         return;
+      }
+      final Rectangle visible = getVisibleRect();
+      final int centreX = oldZoom.unscalePosition( visible.x + ( visible.width / 2 ) );
+      final int centreY = oldZoom.unscalePosition( visible.y + ( visible.height / 2 ) );
+      this.zoom = newZoom;
+      revalidate();
+      repaint();
+
+      // Scroll once the new size has been laid out.
+      SwingUtilities.invokeLater( new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            centreOn( centreX, centreY );
+         }
+      } );
+   }
+
+   /**
+    * Scrolls the viewport so that a point of the map is in the centre of the view, or as near as the edges allow.
+    *
+    * @param x the X coordinate in pixels at actual size.
+    * @param y the Y coordinate in pixels at actual size.
+    */
+   private void centreOn( final int x, final int y )
+   {
+      if( !( getParent() instanceof JViewport ) )
+      {
+         return;
+      }
+      final JViewport viewport = (JViewport) getParent();
+      final Rectangle visible = getVisibleRect();
+      final int viewX = Math.max( 0, Math.min( this.zoom.scalePosition( x ) - ( visible.width / 2 ), getWidth() - visible.width ) );
+      final int viewY = Math.max( 0, Math.min( this.zoom.scalePosition( y ) - ( visible.height / 2 ), getHeight() - visible.height ) );
+      if( ( viewX != visible.x ) || ( viewY != visible.y ) )
+      {
+         viewport.setViewPosition( new Point( viewX, viewY ) );
+      }
+   }
+
    private Collection< MapLayer > getLayers()
    {
       if( this.cachedSortedLayers == null )
@@ -372,8 +499,9 @@ public class MapPanel extends JComponent implements Scrollable
             return null;
          }
 
-         return new Coordinate( event.getX() / MapPanel.this.tilesetData.getTileWidth(),
-                                event.getY() / MapPanel.this.tilesetData.getTileHeight() );
+         final Zoom currentZoom = MapPanel.this.zoom;
+         return new Coordinate( currentZoom.unscalePosition( event.getX() ) / MapPanel.this.tilesetData.getTileWidth(),
+                                currentZoom.unscalePosition( event.getY() ) / MapPanel.this.tilesetData.getTileHeight() );
       }
 
       private int getModifiers( final MouseEvent event )
@@ -0,0 +1,138 @@
+package uk.co.eduardo.abaddon.ald.layer;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
+
+/**
+ * Collects the areas of a component that need repainting and paints them at most once per display frame.
+ * <p>
+ * Swing's own repaint manager unions every area requested for a component into one rectangle, so two small changes at
+ * opposite corners of a map repaint everything in between, and it paints as often as repaints are requested. This
+ * scheduler instead keeps the areas as a few separate rectangles, merging only those that nearly touch, and paints each
+ * visible rectangle with its own clip once per frame. A drag that changes many tiles between frames therefore costs one
+ * paint of the changed areas per frame however fast the mouse moves.
+ * <p>
+ * The scheduler must only be used from the Event Dispatch Thread.
+ *
+ * @author Ed
+ */
+public final class RepaintScheduler
+{
+   /** The minimum time in milliseconds between paints. */
+   public static final int FRAME_INTERVAL = 16;
+
+   /** Two areas are painted together if their union covers no more than this many unchanged pixels. */
+   private static final long MERGE_SLACK = 64 * 64;
+
+   private final JComponent component;
+
+   private final Timer timer;
+
+   private DirtyRegion pending = new DirtyRegion( MERGE_SLACK );
+
+   private boolean repaintAll = false;
+
+   private long lastFlush = 0;
+
+   private RepaintScheduler( final JComponent component )
+   {
+      this.component = component;
+      this.timer = new Timer( FRAME_INTERVAL, new ActionListener()
+      {
+         @Override
+         public void actionPerformed( final ActionEvent e )
+         {
+            flush();
+         }
+      } );
+      this.timer.setRepeats( false );
+   }
+
+   /**
+    * @param component the component to repaint.
+    * @return the scheduler for the component, created the first time it is needed.
+    */
+   public static RepaintScheduler forComponent( final JComponent component )
+   {
+      RepaintScheduler scheduler = (RepaintScheduler) component.getClientProperty( RepaintScheduler.class );
+      if( scheduler == null )
+      {
+         scheduler = new RepaintScheduler( component );
+         component.putClientProperty( RepaintScheduler.class, scheduler );
+      }
+      return scheduler;
+   }
+
+   /**
+    * Schedules part of the component to be repainted.
+    *
+    * @param area the area to repaint, in the component's coordinates.
+    */
+   public void repaint( final Rectangle area )
+   {
+      if( !this.repaintAll && ( area != null ) )
+      {
+         this.pending.add( area.x, area.y, area.width, area.height );
+         schedule();
+      }
+   }
+
+   /**
+    * Schedules the whole component to be repainted.
+    */
+   public void repaintAll()
+   {
+      this.repaintAll = true;
+      this.pending = new DirtyRegion( MERGE_SLACK );
+      schedule();
+   }
+
+   /**
+    * Starts the timer if it is not already running. If nothing has been painted for a frame the paint happens as soon
+    * as the current event has been handled; otherwise it waits for the rest of the frame.
+    */
+   private void schedule()
+   {
+      if( !this.timer.isRunning() )
+      {
+         final long sinceFlush = System.currentTimeMillis() - this.lastFlush;
+         this.timer.setInitialDelay( (int) Math.max( 0, Math.min( FRAME_INTERVAL, FRAME_INTERVAL - sinceFlush ) ) );
+         this.timer.start();
+      }
+   }
+
+   private void flush()
+   {
+      this.lastFlush = System.currentTimeMillis();
+      final boolean all = this.repaintAll;
+      final DirtyRegion region = this.pending;
+      this.repaintAll = false;
+      this.pending = new DirtyRegion( MERGE_SLACK );
+
+      if( !this.component.isShowing() )
+      {
+         // Everything is painted when the component is shown again.
+         return;
+      }
+      final Rectangle visible = this.component.getVisibleRect();
+      if( all )
+      {
+         this.component.paintImmediately( visible );
+         return;
+      }
+      for( final Rectangle area : region.getRectangles() )
+      {
+         final Rectangle clipped = area.intersection( visible );
+         if( !clipped.isEmpty() )
+         {
+            this.component.paintImmediately( clipped );
+         }
+      }
+   }
+}
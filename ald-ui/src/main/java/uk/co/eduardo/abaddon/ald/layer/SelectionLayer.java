@@ -7,6 +7,8 @@ import java.util.Map;
 
 import javax.swing.JComponent;
 
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
+import uk.co.eduardo.abaddon.ald.data.Zoom;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
@@ -43,7 +45,7 @@ public class SelectionLayer< T > extends MapLayer
          {
             SelectionLayer.this.selectedLayer = getCurrentLayer();
 
-            getHost().repaint();
+            repaint();
          }
       } );
       this.selectedLayer = getCurrentLayer();
@@ -81,6 +83,18 @@ public class SelectionLayer< T > extends MapLayer
       }
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void paintZoomed( final Graphics2D g2d, final Zoom zoom )
+   {
+      if( this.selectedLayer != null )
+      {
+         this.selectedLayer.paintZoomed( g2d, zoom );
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -93,6 +107,18 @@ public class SelectionLayer< T > extends MapLayer
       }
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void updateRegion( final DirtyRegion region )
+   {
+      if( this.selectedLayer != null )
+      {
+         this.selectedLayer.updateRegion( region );
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -165,6 +191,18 @@ public class SelectionLayer< T > extends MapLayer
       }
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void releaseResources()
+   {
+      for( final MapLayer layer : this.layers.values() )
+      {
+         layer.releaseResources();
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
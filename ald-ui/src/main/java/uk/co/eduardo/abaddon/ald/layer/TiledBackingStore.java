@@ -0,0 +1,532 @@
+package uk.co.eduardo.abaddon.ald.layer;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An off-screen image split into fixed-size pixel tiles that are only allocated when they are painted.
+ * <p>
+ * A tile is created and drawn by the store's {@link Renderer} the first time part of it is visible, and redrawn lazily
+ * when it has been invalidated. All stores share one least-recently-painted list of tiles and a single memory budget,
+ * so scrolling around a large map, or keeping several maps open, evicts the tiles that have been off-screen the longest
+ * rather than holding every map's pixels in memory. Tiles needed by the paint in progress are never evicted, so the
+ * budget can be exceeded briefly if the visible area alone is larger than it.
+ * <p>
+ * A store created with an {@link AsyncRenderer} draws new tiles, and large areas of existing ones, on a pool of worker
+ * threads. Each tile is drawn into an image of its own which is only swapped in on the Event Dispatch Thread once it is
+ * complete; until then the previous image of the tile, or a placeholder, is painted. Areas invalidated while a tile is
+ * being drawn stay invalid and are drawn again once the new image has been swapped in, so no edit is lost.
+ * <p>
+ * Tile images use premultiplied alpha, so drawing the premultiplied tiles of a tileset into them, and drawing them on
+ * screen, needs no conversion of pixels.
+ * <p>
+ * Stores must only be used from the Event Dispatch Thread.
+ *
+ * @author Ed
+ */
+public class TiledBackingStore
+{
+   private static final Logger logger = Logger.getLogger( TiledBackingStore.class );
+
+   /** The width and height in pixels of each tile of a store. */
+   public static final int TILE_SIZE = 256;
+
+   /** The number of bytes of tile pixels kept across all stores before the least recently painted are evicted. */
+   public static final long MEMORY_BUDGET = 96L * 1024 * 1024;
+
+   /** Invalid areas at least this many pixels in size are drawn on a worker thread by stores that support it. */
+   private static final int ASYNC_AREA = ( TILE_SIZE * TILE_SIZE ) / 4;
+
+   /** Draws tiles for the stores that have an {@link AsyncRenderer}. */
+   private static final ExecutorService workers =
+      Executors.newFixedThreadPool( Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 ), new ThreadFactory()
+      {
+         @Override
+         public Thread newThread( final Runnable runnable )
+         {
+            final Thread thread = new Thread( runnable, "Tile renderer" ); //$NON-NLS-1$
+            thread.setDaemon( true );
+            thread.setPriority( Thread.NORM_PRIORITY - 1 );
+            return thread;
+         }
+      } );
+
+   /** The resident tiles of all stores, least recently painted first. */
+   private static final LinkedHashMap< Tile, Tile > residentTiles = new LinkedHashMap<>( 64, 0.75f, true );
+
+   private static long residentBytes = 0;
+
+   /** Incremented for each paint so that the tiles it uses can be told apart from older ones. */
+   private static long paintCount = 0;
+
+   /** How many paints are in progress, as a store's renderer may itself paint other stores. */
+   private static int paintDepth = 0;
+
+   /**
+    * Draws the contents of a store.
+    */
+   public interface Renderer
+   {
+      /**
+       * Draws part of the image. The area has already been cleared to transparent.
+       *
+       * @param g2d the graphics to draw on, translated so that it uses the coordinates of the whole image and clipped
+       *           to the area to draw.
+       * @param area the area to draw in the coordinates of the whole image.
+       */
+      void render( Graphics2D g2d, Rectangle area );
+   }
+
+   /**
+    * Draws the contents of a store from worker threads.
+    */
+   public interface AsyncRenderer
+   {
+      /**
+       * Called on the Event Dispatch Thread to capture the state to draw, e.g. an immutable snapshot of the data.
+       *
+       * @return a renderer that draws the state as it is now and may be called from any thread, including several at
+       *         once.
+       */
+      Renderer prepare();
+   }
+
+   /**
+    * Notified when tiles drawn on worker threads have been swapped in.
+    */
+   public interface ReadyListener
+   {
+      /**
+       * Called on the Event Dispatch Thread when part of the image has been drawn.
+       *
+       * @param area the area that has changed, in the coordinates of the whole image.
+       */
+      void tilesReady( Rectangle area );
+   }
+
+   private final Renderer renderer;
+
+   private final AsyncRenderer asyncRenderer;
+
+   private final Color placeholder;
+
+   private final ReadyListener readyListener;
+
+   private int width;
+
+   private int height;
+
+   private int tileCols;
+
+   private Tile[] tiles;
+
+   /**
+    * @param renderer draws the contents of the store.
+    */
+   public TiledBackingStore( final Renderer renderer )
+   {
+      this.renderer = renderer;
+      this.asyncRenderer = null;
+      this.placeholder = null;
+      this.readyListener = null;
+      this.tiles = new Tile[ 0 ];
+   }
+
+   /**
+    * @param renderer prepares renderers that draw the contents of the store on worker threads.
+    * @param placeholder the colour to paint tiles that have not been drawn yet, or <code>null</code> to leave them
+    *           transparent.
+    * @param readyListener notified when tiles drawn on worker threads have been swapped in.
+    */
+   public TiledBackingStore( final AsyncRenderer renderer, final Color placeholder, final ReadyListener readyListener )
+   {
+      this.renderer = null;
+      this.asyncRenderer = renderer;
+      this.placeholder = placeholder;
+      this.readyListener = readyListener;
+      this.tiles = new Tile[ 0 ];
+   }
+
+   /**
+    * @return the width in pixels of the image.
+    */
+   public int getWidth()
+   {
+      return this.width;
+   }
+
+   /**
+    * @return the height in pixels of the image.
+    */
+   public int getHeight()
+   {
+      return this.height;
+   }
+
+   /**
+    * Sets the size of the image. If the size changes all tiles are discarded.
+    *
+    * @param newWidth the width in pixels of the image.
+    * @param newHeight the height in pixels of the image.
+    * @return whether the size changed.
+    */
+   public boolean setSize( final int newWidth, final int newHeight )
+   {
+      if( ( newWidth == this.width ) && ( newHeight == this.height ) )
+      {
+         return false;
+      }
+      clear();
+      this.width = newWidth;
+      this.height = newHeight;
+      this.tileCols = ( newWidth + TILE_SIZE - 1 ) / TILE_SIZE;
+      final int tileRows = ( newHeight + TILE_SIZE - 1 ) / TILE_SIZE;
+      this.tiles = new Tile[ this.tileCols * tileRows ];
+      return true;
+   }
+
+   /**
+    * Marks part of the image as needing to be drawn again. Tiles that are not resident are unaffected, as they will be
+    * drawn in full when they are next painted.
+    *
+    * @param area the area that has changed, in pixels.
+    */
+   public void invalidate( final Rectangle area )
+   {
+      final Rectangle clipped = area.intersection( new Rectangle( 0, 0, this.width, this.height ) );
+      if( clipped.isEmpty() )
+      {
+         return;
+      }
+      final int lastCol = ( ( clipped.x + clipped.width ) - 1 ) / TILE_SIZE;
+      final int lastRow = ( ( clipped.y + clipped.height ) - 1 ) / TILE_SIZE;
+      for( int row = clipped.y / TILE_SIZE; row <= lastRow; row++ )
+      {
+         for( int col = clipped.x / TILE_SIZE; col <= lastCol; col++ )
+         {
+            final Tile tile = this.tiles[ ( row * this.tileCols ) + col ];
+            if( tile != null )
+            {
+               final Rectangle dirty = clipped.intersection( tile.bounds );
+               tile.dirty = tile.dirty == null ? dirty : tile.dirty.union( dirty );
+            }
+         }
+      }
+   }
+
+   /**
+    * Discards all the tiles of the store, e.g. because the whole image has changed or will not be painted for a while.
+    */
+   public void clear()
+   {
+      for( int i = 0; i < this.tiles.length; i++ )
+      {
+         if( this.tiles[ i ] != null )
+         {
+            release( this.tiles[ i ] );
+            this.tiles[ i ] = null;
+         }
+      }
+   }
+
+   /**
+    * Paints the part of the image that lies within the clip of the graphics, creating and drawing any tiles needed.
+    *
+    * @param g2d the graphics to paint on, in the coordinates of the whole image.
+    */
+   public void paint( final Graphics2D g2d )
+   {
+      Rectangle clip = g2d.getClipBounds();
+      if( clip == null )
+      {
+         clip = new Rectangle( 0, 0, this.width, this.height );
+      }
+      else
+      {
+         clip = clip.intersection( new Rectangle( 0, 0, this.width, this.height ) );
+      }
+      if( clip.isEmpty() )
+      {
+         return;
+      }
+
+      beginPaint();
+      try
+      {
+         // Prepared at most once per paint, and only if something needs drawing.
+         Renderer prepared = this.renderer;
+         final int lastCol = ( ( clip.x + clip.width ) - 1 ) / TILE_SIZE;
+         final int lastRow = ( ( clip.y + clip.height ) - 1 ) / TILE_SIZE;
+         for( int row = clip.y / TILE_SIZE; row <= lastRow; row++ )
+         {
+            for( int col = clip.x / TILE_SIZE; col <= lastCol; col++ )
+            {
+               final Tile tile = getTile( row, col );
+               tile.lastPainted = paintCount;
+               if( ( tile.dirty != null ) && !tile.pending )
+               {
+                  if( prepared == null )
+                  {
+                     prepared = this.asyncRenderer.prepare();
+                  }
+                  final Rectangle dirty = tile.dirty;
+                  tile.dirty = null;
+                  if( ( this.asyncRenderer != null ) &&
+                      ( ( tile.image == null ) || ( ( dirty.width * dirty.height ) >= ASYNC_AREA ) ) )
+                  {
+                     submit( tile, dirty, prepared );
+                  }
+                  else
+                  {
+                     render( tile.image, tile.bounds, dirty, prepared );
+                  }
+               }
+               if( tile.image != null )
+               {
+                  g2d.drawImage( tile.image, tile.bounds.x, tile.bounds.y, null );
+               }
+               else if( this.placeholder != null )
+               {
+                  final Color oldColor = g2d.getColor();
+                  g2d.setColor( this.placeholder );
+                  g2d.fillRect( tile.bounds.x, tile.bounds.y, tile.bounds.width, tile.bounds.height );
+                  g2d.setColor( oldColor );
+               }
+            }
+         }
+      }
+      finally
+      {
+         endPaint();
+      }
+   }
+
+   /**
+    * @return the number of bytes of tile pixels currently held across all stores.
+    */
+   public static long getResidentBytes()
+   {
+      return residentBytes;
+   }
+
+   /**
+    * Starts a paint. Stores painted before the matching {@link #endPaint()} all count as being painted at once, so none
+    * of their tiles are evicted to make room for the others.
+    */
+   static void beginPaint()
+   {
+      if( paintDepth == 0 )
+      {
+         paintCount++;
+      }
+      paintDepth++;
+   }
+
+   /**
+    * Ends a paint started by {@link #beginPaint()}, evicting tiles if over budget once the outermost paint ends.
+    */
+   static void endPaint()
+   {
+      paintDepth--;
+      if( paintDepth == 0 )
+      {
+         evict();
+      }
+   }
+
+   private Tile getTile( final int row, final int col )
+   {
+      final int index = ( row * this.tileCols ) + col;
+      Tile tile = this.tiles[ index ];
+      if( tile == null )
+      {
+         final int x = col * TILE_SIZE;
+         final int y = row * TILE_SIZE;
+         final Rectangle bounds = new Rectangle( x,
+                                                 y,
+                                                 Math.min( TILE_SIZE, this.width - x ),
+                                                 Math.min( TILE_SIZE, this.height - y ) );
+         tile = new Tile( this, index, bounds, this.asyncRenderer == null );
+         tile.dirty = bounds;
+         this.tiles[ index ] = tile;
+         residentBytes += tile.getSizeInBytes();
+      }
+      residentTiles.put( tile, tile );
+      return tile;
+   }
+
+   /**
+    * Draws a tile on a worker thread, then swaps the new image in on the Event Dispatch Thread.
+    */
+   private void submit( final Tile tile, final Rectangle area, final Renderer prepared )
+   {
+      tile.pending = true;
+      final BufferedImage previous = tile.image;
+      workers.execute( new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            // Nothing draws on the previous image while the tile is pending, so it can be copied safely.
+            final BufferedImage image = new BufferedImage( tile.bounds.width,
+                                                           tile.bounds.height,
+                                                           BufferedImage.TYPE_INT_ARGB_PRE );
+            boolean rendered = false;
+            try
+            {
+               if( ( previous != null ) && !area.equals( tile.bounds ) )
+               {
+                  previous.copyData( image.getRaster() );
+               }
+               render( image, tile.bounds, area, prepared );
+               rendered = true;
+            }
+            catch( final RuntimeException e )
+            {
+               logger.error( "Map tile " + tile.bounds + " could not be drawn", e ); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            final boolean publish = rendered;
+            SwingUtilities.invokeLater( new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  if( publish )
+                  {
+                     publish( tile, image );
+                  }
+                  else
+                  {
+                     abandon( tile, area );
+                  }
+               }
+            } );
+         }
+      } );
+   }
+
+   private void publish( final Tile tile, final BufferedImage image )
+   {
+      tile.pending = false;
+      if( ( tile.index >= this.tiles.length ) || ( this.tiles[ tile.index ] != tile ) )
+      {
+         // Evicted or discarded while it was being drawn.
+         return;
+      }
+      tile.image = image;
+      if( this.readyListener != null )
+      {
+         this.readyListener.tilesReady( tile.bounds );
+      }
+   }
+
+   /**
+    * Leaves a tile whose image could not be drawn as it was, with the area still invalid so that it is drawn again the
+    * next time the tile is painted.
+    */
+   private void abandon( final Tile tile, final Rectangle area )
+   {
+      tile.pending = false;
+      tile.dirty = tile.dirty == null ? area : tile.dirty.union( area );
+   }
+
+   /**
+    * Clears an area of a tile's image and draws it.
+    */
+   private static void render( final BufferedImage image,
+                               final Rectangle bounds,
+                               final Rectangle area,
+                               final Renderer renderer )
+   {
+      final Graphics2D g2d = image.createGraphics();
+      try
+      {
+         g2d.translate( -bounds.x, -bounds.y );
+         g2d.clip( area );
+         g2d.setComposite( AlphaComposite.Clear );
+         g2d.fillRect( area.x, area.y, area.width, area.height );
+         g2d.setComposite( AlphaComposite.SrcOver );
+         renderer.render( g2d, area );
+      }
+      finally
+      {
+         g2d.dispose();
+      }
+   }
+
+   private static void release( final Tile tile )
+   {
+      if( residentTiles.remove( tile ) != null )
+      {
+         residentBytes -= tile.getSizeInBytes();
+      }
+   }
+
+   /**
+    * Evicts the least recently painted tiles until the budget is met or only tiles used by the latest paint remain.
+    */
+   private static void evict()
+   {
+      final Iterator< Tile > iterator = residentTiles.keySet().iterator();
+      while( ( residentBytes > MEMORY_BUDGET ) && iterator.hasNext() )
+      {
+         final Tile tile = iterator.next();
+         if( tile.lastPainted == paintCount )
+         {
+            break;
+         }
+         iterator.remove();
+         residentBytes -= tile.getSizeInBytes();
+         tile.owner.tiles[ tile.index ] = null;
+      }
+   }
+
+   /**
+    * A resident tile of a store.
+    */
+   private static final class Tile
+   {
+      final TiledBackingStore owner;
+
+      final int index;
+
+      /** The area of the whole image the tile covers. */
+      final Rectangle bounds;
+
+      /** The pixels of the tile, or <code>null</code> if it is still being drawn for the first time. */
+      BufferedImage image;
+
+      /** The area of the tile that must be drawn before it is next painted, or <code>null</code> if it is up to date. */
+      Rectangle dirty;
+
+      /** Whether the tile is being drawn on a worker thread. */
+      boolean pending;
+
+      long lastPainted;
+
+      Tile( final TiledBackingStore owner, final int index, final Rectangle bounds, final boolean allocate )
+      {
+         this.owner = owner;
+         this.index = index;
+         this.bounds = bounds;
+         this.image = allocate ? new BufferedImage( bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE ) : null;
+      }
+
+      long getSizeInBytes()
+      {
+         return (long) this.bounds.width * this.bounds.height * 4;
+      }
+   }
+}
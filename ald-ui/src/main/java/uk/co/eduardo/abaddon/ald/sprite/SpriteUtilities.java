@@ -7,15 +7,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.imageio.ImageIO;
 
 import uk.co.eduardo.abaddon.ald.data.adapter.NpcAdapter;
-import uk.co.eduardo.abaddon.ald.data.project.AvailableNpcsModel;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectManager;
 import uk.co.eduardo.abaddon.ald.data.project.ProjectSettings;
+import uk.co.eduardo.abaddon.ald.data.utils.ImageUtilities;
 import uk.co.eduardo.abaddon.graphics.layer.Direction;
 
 /**
@@ -25,9 +23,13 @@ import uk.co.eduardo.abaddon.graphics.layer.Direction;
  */
 public class SpriteUtilities
 {
-   private static final String PC_PREFIX = "pc"; //$NON-NLS-1$
+   /** The type of the sprite used for the player character. */
+   private static final int PC_TYPE = 3;
 
-   private static final Map< String, BufferedImage > spriteMap = new HashMap<>();
+   private static final String OUTLINE_NAME = "outline.png"; //$NON-NLS-1$
+
+   /** The frames of the outline sprite, decoded on first use. */
+   private static BufferedImage[] outlineFrames;
 
    private SpriteUtilities()
    {
@@ -36,62 +38,52 @@ public class SpriteUtilities
 
    /**
     * @param npc the NPC
-    * @param settings the current project settings
-    * @return the image for the sprite.
+    * @return the image for the sprite, or <code>null</code> if the NPC has no sprite sheet.
     */
-   public static BufferedImage getSpriteImage( final NpcAdapter npc, final ProjectSettings settings )
+   public static BufferedImage getSpriteImage( final NpcAdapter npc )
    {
       if( npc == null )
       {
          return null;
       }
-      return getNpcImage( npc.getType(), npc.getDirection(), settings );
+      return getNpcImage( npc.getType(), npc.getDirection() );
    }
 
    /**
-    * @param settings the current project settings
     * @param direction the direction in which to face.
-    * @return the image for the player character
+    * @return the image for the player character, or <code>null</code> if there is no sprite sheet for it.
     */
-   public static BufferedImage getPCImage( final ProjectSettings settings, final Direction direction )
+   public static BufferedImage getPCImage( final Direction direction )
    {
-      final String spriteName = String.format( "%s%d.png", PC_PREFIX, 3, direction ); //$NON-NLS-1$
-      final String spriteKey = String.format( "%s_%d", spriteName, direction.offset ); //$NON-NLS-1$
-
-      BufferedImage image = spriteMap.get( spriteKey );
-      if( image == null )
-      {
-         image = getSpriteImage( spriteName,
-                                 ProjectManager.getInstance().getLockedProject().getAvailablePcsModel().getDirectory(),
-                                 direction,
-                                 settings );
-
-         spriteMap.put( spriteKey, image );
-      }
-      return image;
+      return ProjectManager.getInstance().getLockedProject().getSpriteSheetCache().getPcFrame( PC_TYPE, direction, 0 );
    }
 
    /**
     * @param type the NPC type index.
     * @param direction the direction in which the NPC is facing
-    * @param settings the current project settings
-    * @return the NPC image for the specified sprite facing the given direction.
+    * @return the NPC image for the specified sprite facing the given direction, or <code>null</code> if there is no
+    *         sprite sheet for the type.
     */
-   public static BufferedImage getNpcImage( final int type, final Direction direction, final ProjectSettings settings )
+   public static BufferedImage getNpcImage( final int type, final Direction direction )
    {
-      final AvailableNpcsModel model = ProjectManager.getInstance().getLockedProject().getAvailableNpcsModel();
-
-      final File npcFile = model.getNpcFile( type );
-      final String spriteName = npcFile.getName();
-      final String spriteKey = String.format( "%s_%d", spriteName, direction.offset ); //$NON-NLS-1$
+      return ProjectManager.getInstance().getLockedProject().getSpriteSheetCache().getNpcFrame( type, direction, 0 );
+   }
 
-      BufferedImage image = spriteMap.get( spriteKey );
-      if( image == null )
+   /**
+    * @param direction the direction the outline is facing.
+    * @param settings the current project settings
+    * @return the outline sprite used to show a direction.
+    */
+   public static synchronized BufferedImage getOutlineImage( final Direction direction, final ProjectSettings settings )
+   {
+      final int spriteWidth = settings.get( ProjectSettings.TILE_WIDTH );
+      final int spriteHeight = settings.get( ProjectSettings.SPRITE_HEIGHT );
+      if( ( outlineFrames == null ) || ( outlineFrames.length == 0 ) || ( outlineFrames[ 0 ].getWidth() != spriteWidth )
+          || ( outlineFrames[ 0 ].getHeight() != spriteHeight ) )
       {
-         image = getSpriteImage( spriteName, model.getDirectory(), direction, settings );
-         spriteMap.put( spriteKey, image );
+         outlineFrames = ImageUtilities.splitImage( readImage( OUTLINE_NAME, null ), spriteWidth, spriteHeight );
       }
-      return image;
+      return direction.offset < outlineFrames.length ? outlineFrames[ direction.offset ] : null;
    }
 
    /**
@@ -106,6 +98,26 @@ public class SpriteUtilities
                                                final File directory,
                                                final Direction direction,
                                                final ProjectSettings settings )
+   {
+      final BufferedImage fullImage = readImage( name, directory );
+      if( fullImage == null )
+      {
+         return null;
+      }
+      final int spriteWidth = settings.get( ProjectSettings.TILE_WIDTH );
+      final int spriteHeight = settings.get( ProjectSettings.SPRITE_HEIGHT );
+      final int cols = fullImage.getWidth() / spriteWidth;
+      if( ( cols == 0 ) || ( ( direction.offset / cols ) >= ( fullImage.getHeight() / spriteHeight ) ) )
+      {
+         return null;
+      }
+      return fullImage.getSubimage( ( direction.offset % cols ) * spriteWidth,
+                                    ( direction.offset / cols ) * spriteHeight,
+                                    spriteWidth,
+                                    spriteHeight );
+   }
+
+   private static BufferedImage readImage( final String name, final File directory )
    {
       BufferedImage image = null;
       try
@@ -114,8 +126,14 @@ public class SpriteUtilities
                                                                                                                                                                     name ) ) );
          if( stream != null )
          {
-            final BufferedImage fullImage = ImageIO.read( stream );
-            image = cropImage( fullImage, direction, settings );
+            try
+            {
+               image = ImageIO.read( stream );
+            }
+            finally
+            {
+               stream.close();
+            }
          }
       }
       catch( final IOException e )
@@ -125,28 +143,6 @@ public class SpriteUtilities
       return image;
    }
 
-   private static BufferedImage cropImage( final BufferedImage fullImage,
-                                           final Direction direction,
-                                           final ProjectSettings settings )
-   {
-      final int spriteWidth = settings.get( ProjectSettings.TILE_WIDTH );
-      final int spriteHeight = settings.get( ProjectSettings.SPRITE_HEIGHT );
-
-      final int cols = fullImage.getWidth() / spriteWidth;
-      final int rows = fullImage.getHeight() / spriteHeight;
-
-      final BufferedImage[] images = new BufferedImage[ cols * rows ];
-      int count = 0;
-      for( int row = 0; row < rows; row++ )
-      {
-         for( int col = 0; col < cols; col++ )
-         {
-            images[ count++ ] = fullImage.getSubimage( col * spriteWidth, row * spriteHeight, spriteWidth, spriteHeight );
-         }
-      }
-      return images[ direction.offset ];
-   }
-
    /**
     * @param input the input image.
     * @return an image with alpha that, when overlayed on the source image, will make it look like it's glowing.
@@ -83,7 +83,7 @@ public class DirectionSelector extends JComponent
          final Direction oldDirection = this.direction;
 
          this.direction = direction;
-         final BufferedImage image = SpriteUtilities.getSpriteImage( "outline.png", null, direction, this.settings ); //$NON-NLS-1$
+         final BufferedImage image = SpriteUtilities.getOutlineImage( direction, this.settings );
 
          this.directionDisplay.setIcon( new ImageIcon( image ) );
 
@@ -117,7 +117,7 @@ public class HoverTileDisplay extends JLabel
       {
          if( ( position.x != -1 ) && ( position.y != -1 ) )
          {
-            final int tileIndex = mapData.getData()[ layer ][ position.y ][ position.x ];
+            final int tileIndex = mapData.getTile( layer, position.y, position.x );
             if( tileIndex >= 0 )
             {
                icon = new ImageIcon( tileset.getTile( tileIndex ) );
@@ -1,10 +1,7 @@
 package uk.co.eduardo.abaddon.ald.ui;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
@@ -17,6 +14,8 @@ import uk.co.eduardo.abaddon.ald.data.MapData;
 import uk.co.eduardo.abaddon.ald.data.MonsterData;
 import uk.co.eduardo.abaddon.ald.data.NpcData;
 import uk.co.eduardo.abaddon.ald.data.TilesetData;
+import uk.co.eduardo.abaddon.ald.data.Zoom;
+import uk.co.eduardo.abaddon.ald.data.journal.MapJournal;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
 import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
@@ -25,10 +24,12 @@ import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
 import uk.co.eduardo.abaddon.map.MapDefinition;
 import uk.co.eduardo.abaddon.map.MapFactory;
 import uk.co.eduardo.map.sections.ActionSection;
+import uk.co.eduardo.map.sections.FileSection;
 import uk.co.eduardo.map.sections.HeaderSection;
 import uk.co.eduardo.map.sections.MapSection;
 import uk.co.eduardo.map.sections.MonsterSection;
 import uk.co.eduardo.map.sections.NpcSection;
+import uk.co.eduardo.map.sections.SectionType;
 
 /**
  * Creates and installs a new map model from a Map file.
@@ -74,11 +75,9 @@ public class MapModelAdapter
          MonsterSection monsterSection = null;
          NpcSection npcSection = null;
          MapDefinition mapDefinition = null;
-         InputStream stream = null;
          try
          {
-            stream = new BufferedInputStream( new FileInputStream( this.mapFile ) );
-            mapDefinition = MapFactory.readMap( stream );
+            mapDefinition = MapFactory.readMap( this.mapFile );
             actionSection = mapDefinition.actionsSection;
             headerSection = mapDefinition.headerSection;
             mapSection = mapDefinition.mapsSection;
@@ -98,21 +97,21 @@ public class MapModelAdapter
          {
             t.printStackTrace();
          }
-         finally
-         {
-            if( stream != null )
-            {
-               stream.close();
-            }
-         }
-         final ActionData actionData = new ActionData( actionSection );
-         final HeaderData headerData = new HeaderData( headerSection );
+         // Recover any changes that were not saved before the editor last stopped.
          final MapData mapData = new MapData( mapSection );
-         final MonsterData monsterData = new MonsterData( monsterSection );
-         final NpcData npcData = new NpcData( npcSection );
-         final TilesetData tilesetData = new TilesetData( this.project.getAvailableTilesetsModel().getDirectory(),
-                                                          headerData.getTilesetName(),
-                                                          this.project.getSettings() );
+         final FileSection[] sections = new FileSection[ SectionType.values().length ];
+         sections[ SectionType.HEADER.ordinal() ] = headerSection;
+         sections[ SectionType.NPCS.ordinal() ] = npcSection;
+         sections[ SectionType.ACTIONS.ordinal() ] = actionSection;
+         sections[ SectionType.MONSTERS.ordinal() ] = monsterSection;
+         final MapJournal journal = new MapJournal( MapJournal.getJournalFile( this.mapFile ) );
+         final boolean recovered = journal.replay( mapData, sections );
+
+         final ActionData actionData = new ActionData( (ActionSection) sections[ SectionType.ACTIONS.ordinal() ] );
+         final HeaderData headerData = new HeaderData( (HeaderSection) sections[ SectionType.HEADER.ordinal() ] );
+         final MonsterData monsterData = new MonsterData( (MonsterSection) sections[ SectionType.MONSTERS.ordinal() ] );
+         final NpcData npcData = new NpcData( (NpcSection) sections[ SectionType.NPCS.ordinal() ] );
+         final TilesetData tilesetData = this.project.getTilesetCache().get( headerData.getTilesetName() );
 
          newModel.add( Properties.MapName, this.mapFile.getName() );
          newModel.add( Properties.ProjectSettings, this.project.getSettings() );
@@ -123,9 +122,11 @@ public class MapModelAdapter
          newModel.add( Properties.NpcData, npcData );
          newModel.add( Properties.Tileset, tilesetData );
          newModel.add( Properties.SaveLocation, this.mapFile );
-         newModel.add( Properties.UncommittedChanges, false );
+         newModel.add( Properties.UncommittedChanges, recovered );
          newModel.add( Properties.LayerCount, MapData.MAX_LAYERS );
          newModel.add( Properties.ActiveLayer, 0 );
+         newModel.add( Properties.Zoom, Zoom.ACTUAL );
+         newModel.add( Properties.VisibleArea, null );
          newModel.add( Properties.SpriteVisible, true );
          newModel.add( Properties.MouseTile, null );
          newModel.add( Properties.SelectedControl, null );
@@ -133,13 +134,29 @@ public class MapModelAdapter
          {
             0
          } );
+         newModel.add( Properties.HighlightedTile, null );
          newModel.add( Properties.UndoManager, new UndoManager() );
+         newModel.add( Properties.MapJournal, journal );
 
          // Now add the per-layer properties
          for( int layer = 0; layer < MapData.MAX_LAYERS; layer++ )
          {
             newModel.add( Property.getLayerProperty( layer, Properties.LayerVisible ), true );
          }
+         journal.attach( newModel );
+         journal.addMapJournalListener( new MapJournal.MapJournalListener()
+         {
+            @Override
+            public void journalFailed( final IOException cause )
+            {
+               final String messageFormat = resources.getString( "uk.co.eduardo.abaddon.map.journal.error" ); //$NON-NLS-1$
+               final String message = MessageFormat.format( messageFormat, new Object[]
+               {
+                  MapModelAdapter.this.mapFile
+               } );
+               showError( message );
+            }
+         } );
 
          return newModel;
       }
@@ -0,0 +1,293 @@
+package uk.co.eduardo.abaddon.ald.ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+
+import uk.co.eduardo.abaddon.ald.data.DirtyRegion;
+import uk.co.eduardo.abaddon.ald.data.MapData;
+import uk.co.eduardo.abaddon.ald.data.MapDataListener;
+import uk.co.eduardo.abaddon.ald.data.TilesetData;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Properties;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.Property;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyListener;
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+
+/**
+ * Displays the whole of a map at a few pixels per tile, with the part of the map in view in the editor outlined.
+ * Clicking or dragging on the overview scrolls the editor.
+ * <p>
+ * Each tile is drawn in its average colour, blended over the visible layers below it, into an image with one pixel per
+ * tile. Edits to the map only update the pixels of the tiles that changed.
+ *
+ * @author Ed
+ */
+public class MapOverview extends JComponent
+{
+   /** The largest the overview is made, in pixels along its longest side. */
+   private static final int MAX_SIZE = 200;
+
+   /** The most pixels used to display each tile. */
+   private static final int MAX_SCALE = 4;
+
+   private static final Color VIEW_COLOUR = Color.red;
+
+   private final PropertyModel model;
+
+   private final MapData mapData;
+
+   private final MapDataListener mapDataListener = new MapDataListener()
+   {
+      @Override
+      public void mapUpdated( final DirtyRegion region )
+      {
+         if( ( MapOverview.this.image == null )
+             || ( MapOverview.this.image.getWidth() != MapOverview.this.mapData.getWidth() )
+             || ( MapOverview.this.image.getHeight() != MapOverview.this.mapData.getHeight() ) )
+         {
+            updateAll();
+            revalidate();
+            return;
+         }
+         for( final Rectangle rectangle : region.getRectangles() )
+         {
+            updateTiles( rectangle );
+         }
+      }
+   };
+
+   private final PropertyListener updateListener = new PropertyListener()
+   {
+      @Override
+      public void propertyChanged( final PropertyModel s )
+      {
+         updateAll();
+      }
+   };
+
+   private final PropertyListener visibleAreaListener = new PropertyListener()
+   {
+      @Override
+      public void propertyChanged( final PropertyModel s )
+      {
+         repaint();
+      }
+   };
+
+   /** The overview at one pixel per tile. */
+   private BufferedImage image;
+
+   private int[] rowTiles;
+
+   /**
+    * @param model the model of the map to display.
+    */
+   public MapOverview( final PropertyModel model )
+   {
+      this.model = model;
+      this.mapData = model.get( Properties.MapData );
+
+      final MouseAdapter mouseListener = new MouseAdapter()
+      {
+         @Override
+         public void mousePressed( final MouseEvent e )
+         {
+            scrollTo( e.getX(), e.getY() );
+         }
+
+         @Override
+         public void mouseDragged( final MouseEvent e )
+         {
+            scrollTo( e.getX(), e.getY() );
+         }
+      };
+      addMouseListener( mouseListener );
+      addMouseMotionListener( mouseListener );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void addNotify()
+   {
+      super.addNotify();
+
+      this.mapData.addMapDataListener( this.mapDataListener );
+      this.model.addPropertyListener( Properties.Tileset, this.updateListener );
+      for( int layer = 0; layer < MapData.MAX_LAYERS; layer++ )
+      {
+         this.model.addPropertyListener( Property.getLayerProperty( layer, Properties.LayerVisible ), this.updateListener );
+      }
+      this.model.addPropertyListener( Properties.VisibleArea, this.visibleAreaListener );
+
+      updateAll();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void removeNotify()
+   {
+      this.mapData.removeMapDataListener( this.mapDataListener );
+      this.model.removePropertyListener( Properties.Tileset, this.updateListener );
+      for( int layer = 0; layer < MapData.MAX_LAYERS; layer++ )
+      {
+         this.model.removePropertyListener( Property.getLayerProperty( layer, Properties.LayerVisible ), this.updateListener );
+      }
+      this.model.removePropertyListener( Properties.VisibleArea, this.visibleAreaListener );
+      this.image = null;
+
+      super.removeNotify();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Dimension getPreferredSize()
+   {
+      final int scale = getScale();
+      return new Dimension( this.mapData.getWidth() * scale, this.mapData.getHeight() * scale );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void paintComponent( final Graphics g )
+   {
+      if( this.image == null )
+      {
+         return;
+      }
+      final int scale = getScale();
+      g.drawImage( this.image, 0, 0, this.image.getWidth() * scale, this.image.getHeight() * scale, null );
+
+      final TilesetData tileset = this.model.get( Properties.Tileset );
+      final Rectangle area = this.model.get( Properties.VisibleArea );
+      if( ( tileset != null ) && ( area != null ) )
+      {
+         final int x = ( area.x * scale ) / tileset.getTileWidth();
+         final int y = ( area.y * scale ) / tileset.getTileHeight();
+         final int width = ( area.width * scale ) / tileset.getTileWidth();
+         final int height = ( area.height * scale ) / tileset.getTileHeight();
+         g.setColor( VIEW_COLOUR );
+         g.drawRect( x, y, Math.max( 1, width - 1 ), Math.max( 1, height - 1 ) );
+      }
+   }
+
+   /**
+    * @return the number of pixels along each side of a tile.
+    */
+   private int getScale()
+   {
+      final int longest = Math.max( 1, Math.max( this.mapData.getWidth(), this.mapData.getHeight() ) );
+      return Math.max( 1, Math.min( MAX_SCALE, MAX_SIZE / longest ) );
+   }
+
+   /**
+    * Centres the editor's view on a point of the overview.
+    */
+   private void scrollTo( final int x, final int y )
+   {
+      final TilesetData tileset = this.model.get( Properties.Tileset );
+      final Rectangle area = this.model.get( Properties.VisibleArea );
+      if( ( tileset == null ) || ( area == null ) )
+      {
+         return;
+      }
+      final int scale = getScale();
+      final int centreX = ( x * tileset.getTileWidth() ) / scale;
+      final int centreY = ( y * tileset.getTileHeight() ) / scale;
+      this.model.set( Properties.VisibleArea,
+                      new Rectangle( centreX - ( area.width / 2 ), centreY - ( area.height / 2 ), area.width, area.height ) );
+   }
+
+   private void updateAll()
+   {
+      if( !isDisplayable() )
+      {
+         return;
+      }
+      final int width = this.mapData.getWidth();
+      final int height = this.mapData.getHeight();
+      if( ( this.image == null ) || ( this.image.getWidth() != width ) || ( this.image.getHeight() != height ) )
+      {
+         this.image = new BufferedImage( Math.max( 1, width ), Math.max( 1, height ), BufferedImage.TYPE_INT_ARGB );
+      }
+      updateTiles( new Rectangle( 0, 0, width, height ) );
+   }
+
+   /**
+    * Redraws the pixels of some tiles.
+    *
+    * @param tiles the tiles to redraw, in tile coordinates.
+    */
+   private void updateTiles( final Rectangle tiles )
+   {
+      final BufferedImage overview = this.image;
+      final Rectangle area = tiles.intersection( new Rectangle( 0, 0, overview.getWidth(), overview.getHeight() ) );
+      final TilesetData tileset = this.model.get( Properties.Tileset );
+      if( area.isEmpty() )
+      {
+         return;
+      }
+
+      final int[] pixels = new int[ area.width ];
+      for( int row = area.y; row < ( area.y + area.height ); row++ )
+      {
+         Arrays.fill( pixels, 0 );
+         for( int layer = 0; ( tileset != null ) && ( layer < MapData.MAX_LAYERS ); layer++ )
+         {
+            if( !this.model.get( Property.getLayerProperty( layer, Properties.LayerVisible ) ) )
+            {
+               continue;
+            }
+            this.rowTiles = this.mapData.getRow( layer, row, area.x, area.width, this.rowTiles );
+            for( int i = 0; i < area.width; i++ )
+            {
+               final int tile = this.rowTiles[ i ];
+               if( ( tile >= 0 ) && ( tile < tileset.getTileCount() ) )
+               {
+                  pixels[ i ] = blend( tileset.getAverageColour( tile ), pixels[ i ] );
+               }
+            }
+         }
+         overview.setRGB( area.x, row, area.width, 1, pixels, 0, area.width );
+      }
+
+      final int scale = getScale();
+      repaint( area.x * scale, area.y * scale, area.width * scale, area.height * scale );
+   }
+
+   /**
+    * Blends one non-premultiplied ARGB colour over another.
+    */
+   private static int blend( final int over, final int under )
+   {
+      final int overAlpha = over >>> 24;
+      if( overAlpha == 0xFF )
+      {
+         return over;
+      }
+      if( overAlpha == 0 )
+      {
+         return under;
+      }
+      final int underAlpha = ( ( under >>> 24 ) * ( 0xFF - overAlpha ) ) / 0xFF;
+      final int alpha = overAlpha + underAlpha;
+      final int red = ( ( ( ( over >> 16 ) & 0xFF ) * overAlpha ) + ( ( ( under >> 16 ) & 0xFF ) * underAlpha ) ) / alpha;
+      final int green = ( ( ( ( over >> 8 ) & 0xFF ) * overAlpha ) + ( ( ( under >> 8 ) & 0xFF ) * underAlpha ) ) / alpha;
+      final int blue = ( ( ( over & 0xFF ) * overAlpha ) + ( ( under & 0xFF ) * underAlpha ) ) / alpha;
+      return ( alpha << 24 ) | ( red << 16 ) | ( green << 8 ) | blue;
+   }
+}
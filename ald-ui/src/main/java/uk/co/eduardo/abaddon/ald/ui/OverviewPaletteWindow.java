@@ -0,0 +1,128 @@
+package uk.co.eduardo.abaddon.ald.ui;
+
+import java.awt.BorderLayout;
+import java.util.ResourceBundle;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+
+import uk.co.eduardo.abaddon.ald.data.mapmodel.PropertyModel;
+import uk.co.eduardo.abaddon.ald.data.project.OpenMapAdapter;
+import uk.co.eduardo.abaddon.ald.data.project.OpenMapListener;
+import uk.co.eduardo.abaddon.ald.data.project.Project;
+import uk.co.eduardo.abaddon.ald.data.project.ProjectListener;
+import uk.co.eduardo.abaddon.ald.data.project.ProjectManager;
+
+/**
+ * A palette window showing an overview of the active map.
+ *
+ * @author Ed
+ */
+public class OverviewPaletteWindow extends AldPaletteWindow
+{
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
+
+   private static final String OVERVIEW = resources.getString( "uk.co.eduardo.abaddon.palette.overview" ); //$NON-NLS-1$
+
+   private final ProjectListener projectListener = new ProjectListener()
+   {
+      @Override
+      public void projectOpened( final Project project )
+      {
+         if( project != null )
+         {
+            project.getOpenMapsModel().addMapModelListener( OverviewPaletteWindow.this.mapListener );
+            if( project.getOpenMapsModel().getActiveMap() != null )
+            {
+               recreateUI( project.getOpenMapsModel().getActiveMap() );
+            }
+            setVisible( true );
+         }
+         else
+         {
+            setVisible( false );
+         }
+      }
+
+      @Override
+      public void projectClosed( final Project project )
+      {
+         if( project != null )
+         {
+            project.getOpenMapsModel().removeMapModelListener( OverviewPaletteWindow.this.mapListener );
+         }
+         removeElements();
+         setVisible( false );
+      }
+   };
+
+   private final OpenMapListener mapListener = new OpenMapAdapter()
+   {
+      @Override
+      public void mapActivated( final PropertyModel activeMap )
+      {
+         recreateUI( activeMap );
+      }
+
+      @Override
+      public void mapInactivated( final PropertyModel inactivated )
+      {
+         removeElements();
+      }
+   };
+
+   private final JComponent content = new JPanel( new BorderLayout() );
+
+   /**
+    * Create a floating palette window for the map overview.
+    */
+   public OverviewPaletteWindow()
+   {
+      super( OVERVIEW, false, false );
+      setContentPane( this.content );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void addNotify()
+   {
+      ProjectManager.getInstance().addProjectListener( this.projectListener );
+      super.addNotify();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void removeNotify()
+   {
+      detachListeners();
+      super.removeNotify();
+   }
+
+   private void recreateUI( final PropertyModel map )
+   {
+      this.content.removeAll();
+      this.content.add( new MapOverview( map ), BorderLayout.CENTER );
+      pack();
+   }
+
+   private void removeElements()
+   {
+      this.content.removeAll();
+      pack();
+   }
+
+   private void detachListeners()
+   {
+      final Project lockedProject = ProjectManager.getInstance().getLockedProject();
+      if( lockedProject != null )
+      {
+         // Remove the map listener
+         lockedProject.getOpenMapsModel().removeMapModelListener( this.mapListener );
+      }
+      ProjectManager.getInstance().removeProjectListener( this.projectListener );
+   }
+}
@@ -338,6 +338,12 @@ public class ProjectBrowser extends JComponent
          updateNode( this.node, file, getFiles(), Operation.REMOVED );
       }
 
+      @Override
+      public void fileChanged( final File file )
+      {
+         // The tree only shows the names of the files.
+      }
+
       public void updateAll()
       {
          updateNode( this.node, null, getFiles(), Operation.UPDATE_ALL );
@@ -2,6 +2,8 @@ package uk.co.eduardo.abaddon.ald.ui;
 
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JComboBox;
@@ -26,6 +28,8 @@ import uk.co.eduardo.abaddon.ald.data.undo.UndoManager;
  */
 public class TilesetSelector extends JComboBox< String >
 {
+   private static final ResourceBundle resources = ResourceBundle.getBundle( "ALD" ); //$NON-NLS-1$
+
    private final OpenMapListener mapListener = new OpenMapAdapter()
    {
       @Override
@@ -66,6 +70,8 @@ public class TilesetSelector extends JComboBox< String >
       this.project = project;
 
       setFocusable( false );
+      // Registers with the tooltip manager; the text is supplied by getToolTipText().
+      setToolTipText( "" ); //$NON-NLS-1$
       addItemListener( new ItemListener()
       {
          @Override
@@ -97,6 +103,19 @@ public class TilesetSelector extends JComboBox< String >
       super.removeNotify();
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getToolTipText()
+   {
+      final String messageFormat = resources.getString( "uk.co.eduardo.abaddon.tileset.memory" ); //$NON-NLS-1$
+      return MessageFormat.format( messageFormat, new Object[]
+      {
+         Long.valueOf( this.project.getTilesetCache().getMemoryUsage() / 1024 )
+      } );
+   }
+
    private void setMapModel( final PropertyModel mapModel )
    {
       if( mapModel == this.mapModel )
@@ -140,9 +159,7 @@ public class TilesetSelector extends JComboBox< String >
          final String newName = (String) getSelectedItem();
          if( newName != null )
          {
-            final TilesetData newTileset = new TilesetData( this.project.getAvailableTilesetsModel().getDirectory(),
-                                                            newName,
-                                                            this.project.getSettings() );
+            final TilesetData newTileset = this.project.getTilesetCache().get( newName );
 
             // See if a current tileset exists
             final TilesetData oldTileset = this.mapModel.get( Properties.Tileset );